@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Sort;
+
+/**
+ * All the documents matching a query, collected in one search into an array
+ * of document ids. Their node ids are looked up in a {@link NodeIdColumn}
+ * by {@link #nodeId(int)}, rather than by loading each stored document.
+ * This replaces {@link Hits}, which re-runs the query
+ * with a doubled number of top docs every time iteration goes past what it
+ * has fetched so far.
+ * <p>
+ * Unsorted results are ordered like {@link Hits} orders them, by score and
+ * then by document id, but scores are only kept (and sorted on) if they
+ * differ between the matching documents. A sorted search collects once to
+ * know the number of hits and then asks for that many top docs.
+ */
+final class CollectedHits
+{
+    private final IndexSearcher searcher;
+    private final int[] docIds;
+    private final int length;
+    private NodeIdColumn nodeIds;
+    
+    private CollectedHits( IndexSearcher searcher, int[] docIds, int length )
+    {
+        this.searcher = searcher;
+        this.docIds = docIds;
+        this.length = length;
+    }
+    
+    static CollectedHits search( IndexSearcher searcher, Query query,
+        Sort sortingOrNull ) throws IOException
+    {
+        DocIdCollector collector = new DocIdCollector();
+        searcher.search( query, collector );
+        if ( sortingOrNull == null || collector.size == 0 )
+        {
+            return new CollectedHits( searcher, collector.getDocIds(),
+                collector.size );
+        }
+        
+        ScoreDoc[] scoreDocs = searcher.search( query, null, collector.size,
+            sortingOrNull ).scoreDocs;
+        int[] docIds = new int[scoreDocs.length];
+        for ( int i = 0; i < scoreDocs.length; i++ )
+        {
+            docIds[i] = scoreDocs[i].doc;
+        }
+        return new CollectedHits( searcher, docIds, docIds.length );
+    }
+    
+    /**
+     * @return the number of hits.
+     */
+    int length()
+    {
+        return length;
+    }
+    
+    /**
+     * @return the document id of the {@code n}th hit.
+     */
+    int id( int n )
+    {
+        if ( n >= length )
+        {
+            throw new IndexOutOfBoundsException( "Not a valid hit number: " +
+                n );
+        }
+        return docIds[n];
+    }
+    
+    /**
+     * @return the node id of the {@code n}th hit.
+     */
+    long nodeId( int n ) throws IOException
+    {
+        int docId = id( n );
+        if ( nodeIds == null )
+        {
+            nodeIds = new NodeIdColumn( searcher.getIndexReader() );
+        }
+        return nodeIds.nodeId( docId );
+    }
+    
+    /**
+     * @return the stored fields of the {@code n}th hit.
+     */
+    Document doc( int n ) throws IOException
+    {
+        return searcher.doc( id( n ) );
+    }
+    
+    private static class DocIdCollector extends Collector
+    {
+        private Scorer scorer;
+        private int docBase;
+        private int[] docIds = new int[16];
+        private int size;
+        private float firstScore;
+        private float[] scoresOrNull;
+        
+        @Override
+        public void setScorer( Scorer scorer )
+        {
+            this.scorer = scorer;
+        }
+        
+        @Override
+        public void setNextReader( IndexReader reader, int docBase )
+        {
+            this.docBase = docBase;
+        }
+        
+        @Override
+        public boolean acceptsDocsOutOfOrder()
+        {
+            // in order, so that equal scores leave the ids sorted
+            return false;
+        }
+        
+        @Override
+        public void collect( int doc ) throws IOException
+        {
+            if ( size == docIds.length )
+            {
+                docIds = grow( docIds );
+            }
+            float score = scorer.score();
+            if ( size == 0 )
+            {
+                firstScore = score;
+            }
+            else if ( scoresOrNull == null && score != firstScore )
+            {
+                scoresOrNull = new float[docIds.length];
+                Arrays.fill( scoresOrNull, 0, size, firstScore );
+            }
+            if ( scoresOrNull != null )
+            {
+                if ( scoresOrNull.length < docIds.length )
+                {
+                    float[] newScores = new float[docIds.length];
+                    System.arraycopy( scoresOrNull, 0, newScores, 0, size );
+                    scoresOrNull = newScores;
+                }
+                scoresOrNull[size] = score;
+            }
+            docIds[size++] = docBase + doc;
+        }
+        
+        private static int[] grow( int[] array )
+        {
+            int[] newArray = new int[array.length * 2];
+            System.arraycopy( array, 0, newArray, 0, array.length );
+            return newArray;
+        }
+        
+        /**
+         * @return the collected ids, ordered by score (highest first) and
+         * then by id.
+         */
+        int[] getDocIds()
+        {
+            if ( scoresOrNull == null )
+            {
+                return docIds;
+            }
+            
+            // Scores are never negative, so the bits of a float sort like
+            // the float itself. Inverted in the high half to get the highest
+            // score first, the id in the low half breaks ties.
+            long[] sortable = new long[size];
+            for ( int i = 0; i < size; i++ )
+            {
+                long invertedScore = Integer.MAX_VALUE -
+                    Float.floatToIntBits( scoresOrNull[i] );
+                sortable[i] = ( invertedScore << 32 ) | docIds[i];
+            }
+            Arrays.sort( sortable );
+            for ( int i = 0; i < size; i++ )
+            {
+                docIds[i] = (int) sortable[i];
+            }
+            scoresOrNull = null;
+            return docIds;
+        }
+    }
+}
@@ -20,25 +20,26 @@
 
 package org.neo4j.index.lucene;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
-import org.apache.lucene.document.Document;
 import org.neo4j.helpers.collection.PrefetchingIterator;
 
 class DocToIdIterator extends PrefetchingIterator<Long>
 {
-    private final Iterator<Document> docs;
+    private final CollectedHits hits;
     private final Collection<Long> exclude;
     private final IndexSearcherRef searcherOrNull;
     private final Set<Long> alreadyReturnedIds = new HashSet<Long>();
     
-    DocToIdIterator( Iterator<Document> docs, Collection<Long> exclude,
+    private int index;
+    
+    DocToIdIterator( CollectedHits hits, Collection<Long> exclude,
         IndexSearcherRef searcherOrNull )
     {
-        this.docs = docs;
+        this.hits = hits;
         this.exclude = exclude;
         this.searcherOrNull = searcherOrNull;
     }
@@ -49,14 +50,12 @@ class DocToIdIterator extends PrefetchingIterator<Long>
         Long result = null;
         while ( result == null )
         {
-            if ( !docs.hasNext() )
+            if ( index >= hits.length() )
             {
                 endReached();
                 break;
             }
-            Document doc = docs.next();
-            long id = Long.parseLong(
-                doc.getField( LuceneIndexService.DOC_ID_KEY ).stringValue() );
+            long id = nodeId( index++ );
             if ( exclude == null || !exclude.contains( id ) )
             {
                 if ( alreadyReturnedIds.add( id ) )
@@ -68,6 +67,18 @@ class DocToIdIterator extends PrefetchingIterator<Long>
         return result;
     }
     
+    private long nodeId( int n )
+    {
+        try
+        {
+            return hits.nodeId( n );
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+    
     private void endReached()
     {
         if ( this.searcherOrNull != null )
@@ -78,6 +89,6 @@ class DocToIdIterator extends PrefetchingIterator<Long>
 
     public int size()
     {
-        return ( ( HitsIterator ) this.docs ).size();
+        return this.hits.length();
     }
 }
@@ -53,11 +53,16 @@ import java.util.Vector;
  *     // do something with current hit
  *     ...
  * </pre>
+ * @deprecated re-runs the query with twice as many top docs every time
+ * iteration passes what has been fetched so far, collect the hits with a
+ * {@link Collector} instead.
  */
 
 // NOTE: This is the Hits class from lucene 2.x, it was removed in 3.x and was
 // used for iterating over all the hits from a query result, not just the N
-// top docs.
+// top docs. The index services now collect all hits in one search instead,
+// since this class re-runs the query every time it has to fetch more.
+@Deprecated
 public final class Hits {
   private Weight weight;
   private Searcher searcher;
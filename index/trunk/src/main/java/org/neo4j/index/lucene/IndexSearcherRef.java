@@ -29,6 +29,7 @@ class IndexSearcherRef
 {
     private final String key;
     private final IndexSearcher searcher;
+    private final long generation;
     private final AtomicInteger refCount = new AtomicInteger( 0 );
     private boolean isClosed;
     
@@ -41,9 +42,21 @@ class IndexSearcherRef
     private boolean detached;
     
     public IndexSearcherRef( String key, IndexSearcher searcher )
+    {
+        this( key, searcher, 0 );
+    }
+    
+    /**
+     * @param generation the {@link IndexWriterRef#getAppliedGeneration()
+     * applied generation} of the writer when the reader of
+     * {@code searcher} was opened from it.
+     */
+    public IndexSearcherRef( String key, IndexSearcher searcher,
+        long generation )
     {
         this.key = key;
         this.searcher = searcher;
+        this.generation = generation;
     }
     
     IndexSearcher getSearcher()
@@ -56,6 +69,11 @@ class IndexSearcherRef
         return this.key;
     }
     
+    long getGeneration()
+    {
+        return this.generation;
+    }
+    
     void incRef()
     {
         this.refCount.incrementAndGet();
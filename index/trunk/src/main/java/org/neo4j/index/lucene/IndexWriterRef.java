@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.SegmentInfos;
+
+/**
+ * A long lived {@link IndexWriter} shared by all transactions committing to
+ * the same index key. Transactions apply their changes to the writer and then
+ * wait for a Lucene commit covering them, one commit is done on behalf of all
+ * transactions which have applied their changes since the last one (group
+ * commit).
+ */
+class IndexWriterRef
+{
+    private final String key;
+    private final IndexWriter writer;
+    
+    private long appliedGeneration;
+    private long committedGeneration;
+    private boolean committing;
+    
+    private long commitCount;
+    private long totalCommitTime;
+    private long lastCommitTime;
+    private int largestCommitBatch;
+    
+    IndexWriterRef( String key, IndexWriter writer )
+    {
+        this.key = key;
+        this.writer = writer;
+    }
+    
+    String getKey()
+    {
+        return this.key;
+    }
+    
+    IndexWriter getWriter()
+    {
+        return this.writer;
+    }
+    
+    /**
+     * Called when a transaction has applied its changes to the writer.
+     * 
+     * @return the generation to pass in to {@link #commit(long)}.
+     */
+    synchronized long applied()
+    {
+        return ++appliedGeneration;
+    }
+    
+    synchronized long getAppliedGeneration()
+    {
+        return appliedGeneration;
+    }
+    
+    /**
+     * Makes sure that the changes applied up to and including
+     * {@code generation} are committed. If another thread is committing
+     * this waits for it and only commits if that commit didn't cover
+     * {@code generation}.
+     * 
+     * @param generation the generation returned from {@link #applied()}.
+     */
+    void commit( long generation )
+    {
+        long target;
+        synchronized ( this )
+        {
+            while ( committing && committedGeneration < generation )
+            {
+                waitForCommit();
+            }
+            if ( committedGeneration >= generation )
+            {
+                return;
+            }
+            committing = true;
+            target = appliedGeneration;
+        }
+        
+        boolean success = false;
+        long startTime = System.nanoTime();
+        try
+        {
+            writer.commit();
+            success = true;
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to commit lucene index " +
+                key, e );
+        }
+        finally
+        {
+            long time = System.nanoTime() - startTime;
+            synchronized ( this )
+            {
+                committing = false;
+                if ( success )
+                {
+                    int batch = (int) ( target - committedGeneration );
+                    committedGeneration = target;
+                    commitCount++;
+                    totalCommitTime += time;
+                    lastCommitTime = time;
+                    largestCommitBatch = Math.max( largestCommitBatch, batch );
+                }
+                notifyAll();
+            }
+        }
+    }
+    
+    private void waitForCommit()
+    {
+        try
+        {
+            wait();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.interrupted();
+        }
+    }
+    
+    /**
+     * @return a near real-time reader which sees all changes applied to
+     * the writer, committed or not.
+     */
+    IndexReader getReader() throws IOException
+    {
+        return writer.getReader();
+    }
+    
+    /**
+     * Closes the writer, which commits all applied changes. Transactions
+     * waiting in {@link #commit(long)} will return without committing.
+     */
+    synchronized void close() throws IOException
+    {
+        while ( committing )
+        {
+            waitForCommit();
+        }
+        try
+        {
+            writer.close();
+        }
+        finally
+        {
+            committedGeneration = appliedGeneration;
+            notifyAll();
+        }
+    }
+    
+    LuceneIndexInfo getInfo()
+    {
+        long committed;
+        long commits;
+        int largestBatch;
+        double averageCommitTime;
+        double lastCommit;
+        synchronized ( this )
+        {
+            committed = committedGeneration;
+            commits = commitCount;
+            largestBatch = largestCommitBatch;
+            averageCommitTime = commitCount == 0 ? 0 :
+                totalCommitTime / ( commitCount * 1000000d );
+            lastCommit = lastCommitTime / 1000000d;
+        }
+        int segmentCount = 0;
+        int documentCount = 0;
+        try
+        {
+            SegmentInfos segments = new SegmentInfos();
+            segments.read( writer.getDirectory() );
+            segmentCount = segments.size();
+            documentCount = writer.numDocs();
+        }
+        catch ( IOException e )
+        { // Report what we've got
+        }
+        return new LuceneIndexInfo( key, committed, commits, largestBatch,
+            averageCommitTime, lastCommit, segmentCount, documentCount );
+    }
+}
@@ -35,6 +35,10 @@ abstract class LuceneCommand extends XaCommand
     
     private static final byte ADD_COMMAND = (byte) 1;
     private static final byte REMOVE_COMMAND = (byte) 2;
+    private static final byte ADD_NUMERIC_COMMAND = (byte) 3;
+    
+    private static final byte LONG_VALUE = (byte) 1;
+    private static final byte DOUBLE_VALUE = (byte) 2;
     
     LuceneCommand( Long nodeId, String key, String value )
     {
@@ -92,20 +96,55 @@ abstract class LuceneCommand extends XaCommand
     
     static class AddCommand extends LuceneCommand
     {
+        private final Number numericValue;
+        
         AddCommand( Long nodeId, String key, String value )
+        {
+            this( nodeId, key, value, null );
+        }
+        
+        AddCommand( Long nodeId, String key, String value,
+            Number numericValue )
         {
             super( nodeId, key, value );
+            this.numericValue = numericValue;
         }
         
         AddCommand( CommandData data )
+        {
+            this( data, null );
+        }
+        
+        AddCommand( CommandData data, Number numericValue )
         {
             super( data );
+            this.numericValue = numericValue;
+        }
+        
+        /**
+         * @return the value as it should be indexed with numeric encoding,
+         * or {@code null} if it was added as a string.
+         */
+        Number getNumericValue()
+        {
+            return numericValue;
+        }
+        
+        @Override
+        public void writeToFile( LogBuffer buffer ) throws IOException
+        {
+            super.writeToFile( buffer );
+            if ( numericValue != null )
+            {
+                buffer.put( numericValue instanceof Double ? DOUBLE_VALUE :
+                    LONG_VALUE );
+            }
         }
 
         @Override
         protected byte getCommandValue()
         {
-            return ADD_COMMAND;
+            return numericValue != null ? ADD_NUMERIC_COMMAND : ADD_COMMAND;
         }
     }
     
@@ -225,7 +264,26 @@ abstract class LuceneCommand extends XaCommand
         {
             case ADD_COMMAND: return new AddCommand( data ); 
             case REMOVE_COMMAND: return new RemoveCommand( data );
+            case ADD_NUMERIC_COMMAND: return readNumericAddCommand( channel,
+                buffer, data );
             default: return null;
         }
     }
+    
+    private static XaCommand readNumericAddCommand(
+        ReadableByteChannel channel, ByteBuffer buffer, CommandData data )
+        throws IOException
+    {
+        buffer.clear(); buffer.limit( 1 );
+        if ( channel.read( buffer ) != buffer.limit() )
+        {
+            return null;
+        }
+        buffer.flip();
+        byte numericType = buffer.get();
+        Number numericValue = numericType == DOUBLE_VALUE ?
+            (Number) Double.valueOf( data.value ) :
+            (Number) Long.valueOf( data.value );
+        return new AddCommand( data, numericValue );
+    }
 }
@@ -23,13 +23,19 @@ package org.neo4j.index.lucene;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.LowerCaseFilter;
@@ -48,6 +54,7 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.SingleInstanceLockFactory;
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
@@ -58,7 +65,6 @@ import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
 import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransactionFactory;
-import org.neo4j.kernel.impl.util.ArrayMap;
 
 /**
  * An {@link XaDataSource} optimized for the {@link LuceneIndexService}.
@@ -66,6 +72,20 @@ import org.neo4j.kernel.impl.util.ArrayMap;
  */
 public class LuceneDataSource extends XaDataSource
 {
+    private static final Logger log =
+        Logger.getLogger( LuceneDataSource.class.getName() );
+    
+    /**
+     * Configuration key for how long (in milliseconds) searchers may lag
+     * behind committed changes. A commit only marks the searcher of an index
+     * as stale, a background thread reopens it when it has been stale for
+     * this long and lookups keep using the previous searcher until then.
+     * With the default, <code>0</code>, there's no background thread and the
+     * first lookup after a commit reopens the searcher.
+     */
+    public static final String SEARCHER_MAX_STALENESS =
+        "lucene_searcher_max_staleness";
+    
     /**
      * Default {@link Analyzer} for fulltext parsing.
      */
@@ -79,10 +99,17 @@ public class LuceneDataSource extends XaDataSource
         }
     };
 
-    private final Map<String, IndexWriter> recoveryWriters = new HashMap<String, IndexWriter>();
+    private final Map<String,IndexWriterRef> indexWriters =
+        new HashMap<String,IndexWriterRef>();
     
-    private final ArrayMap<String,IndexSearcherRef> indexSearchers = 
-        new ArrayMap<String,IndexSearcherRef>( 6, true, true );
+    private final ConcurrentHashMap<String,IndexSearcherRef> indexSearchers =
+        new ConcurrentHashMap<String,IndexSearcherRef>();
+    // key -> mark of the last commit its searcher missed
+    private final ConcurrentHashMap<String,StaleMark> staleSearchers =
+        new ConcurrentHashMap<String,StaleMark>();
+    private final Object refreshLock = new Object();
+    private final long maxStaleness;
+    private final SearcherRefresher searcherRefresher;
 
     private final XaContainer xaContainer;
     private final String storeDir;
@@ -90,6 +117,7 @@ public class LuceneDataSource extends XaDataSource
     private final Analyzer fieldAnalyzer;
     private final LuceneIndexStore store;
     private LuceneIndexService indexService;
+    private ObjectName managementName;
     
     private Map<String,LruCache<String,Collection<Long>>> caching = 
         Collections.synchronizedMap( 
@@ -107,6 +135,7 @@ public class LuceneDataSource extends XaDataSource
     {
         super( params );
         this.storeDir = (String) params.get( "dir" );
+        this.maxStaleness = getConfigLong( params, SEARCHER_MAX_STALENESS, 0 );
         this.fieldAnalyzer = instantiateAnalyzer();
         String dir = storeDir;
         File file = new File( dir );
@@ -136,6 +165,76 @@ public class LuceneDataSource extends XaDataSource
                 e );
         }
         configureLog( params );
+        registerManagementBean();
+        if ( maxStaleness > 0 )
+        {
+            searcherRefresher = new SearcherRefresher();
+            searcherRefresher.start();
+        }
+        else
+        {
+            searcherRefresher = null;
+        }
+    }
+    
+    private static long getConfigLong( Map<Object,Object> params, String key,
+        long defaultValue )
+    {
+        Object value = params.get( key );
+        if ( value != null )
+        {
+            try
+            {
+                long result = Long.parseLong( value.toString() );
+                if ( result >= 0 )
+                {
+                    return result;
+                }
+            }
+            catch ( NumberFormatException e )
+            { // Use the default
+            }
+            log.warning( "Invalid value '" + value + "' for " + key +
+                ", using " + defaultValue );
+        }
+        return defaultValue;
+    }
+    
+    private void registerManagementBean()
+    {
+        try
+        {
+            ObjectName name = new ObjectName( "org.neo4j:instance=" +
+                ObjectName.quote( new File( storeDir ).getAbsolutePath() ) +
+                ",name=" + LuceneIndexes.NAME );
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new StandardMBean( new IndexesBean(), LuceneIndexes.class ),
+                name );
+            this.managementName = name;
+        }
+        catch ( Exception e )
+        {
+            log.info( "Failed to register " + LuceneIndexes.NAME +
+                " management bean for " + storeDir );
+        }
+    }
+    
+    private void unregisterManagementBean()
+    {
+        if ( managementName == null )
+        {
+            return;
+        }
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                managementName );
+        }
+        catch ( Exception e )
+        {
+            log.warning( "Failed to unregister " + managementName );
+        }
+        managementName = null;
     }
     
     protected XaLogicalLog getLogicalLog()
@@ -192,6 +291,10 @@ public class LuceneDataSource extends XaDataSource
     @Override
     public void close()
     {
+        if ( searcherRefresher != null )
+        {
+            searcherRefresher.shutdown();
+        }
         for ( IndexSearcherRef searcher : indexSearchers.values() )
         {
             try
@@ -204,8 +307,27 @@ public class LuceneDataSource extends XaDataSource
             }
         }
         indexSearchers.clear();
+        staleSearchers.clear();
+        closeIndexWriters();
         xaContainer.close();
         store.close();
+        unregisterManagementBean();
+    }
+    
+    private synchronized void closeIndexWriters()
+    {
+        for ( IndexWriterRef writer : indexWriters.values() )
+        {
+            try
+            {
+                writer.close();
+            }
+            catch ( IOException e )
+            {
+                e.printStackTrace();
+            }
+        }
+        indexWriters.clear();
     }
 
     @Override
@@ -253,7 +375,12 @@ public class LuceneDataSource extends XaDataSource
         @Override
         public void flushAll()
         {
-            // Not much we can do...
+            // Transactions wait for a lucene commit covering their changes
+            // so this only commits what a failed transaction may have left
+            for ( IndexWriterRef writer : getIndexWriters() )
+            {
+                writer.commit( writer.getAppliedGeneration() );
+            }
         }
 
         @Override
@@ -267,16 +394,6 @@ public class LuceneDataSource extends XaDataSource
         {
             return store.incrementVersion();
         }
-        
-        @Override
-        public void recoveryComplete()
-        {
-            for ( Map.Entry<String, IndexWriter> entry : recoveryWriters.entrySet() )
-            {
-                removeWriter( entry.getKey(), entry.getValue() );
-            }
-            recoveryWriters.clear();
-        }
     }
     
     void getReadLock()
@@ -302,32 +419,134 @@ public class LuceneDataSource extends XaDataSource
     /**
      * If nothing has changed underneath (since the searcher was last created
      * or refreshed) {@code null} is returned. But if something has changed a
-     * refreshed searcher is returned. It makes use if the
-     * {@link IndexReader#reopen()} which faster than opening an index from
-     * scratch.
+     * refreshed searcher is returned. If there's an {@link IndexWriter} for
+     * the index the new searcher gets a near real-time reader from it,
+     * otherwise {@link IndexReader#reopen()} is used, both are faster than
+     * opening an index from scratch. The given searcher is left open, the
+     * caller swaps them.
      * 
      * @param searcher the {@link IndexSearcher} to refresh.
      * @return a refreshed version of the searcher or, if nothing has changed,
      * {@code null}.
      * @throws IOException if there's a problem with the index.
      */
-    private IndexSearcherRef refreshSearcher( IndexSearcherRef searcher )
+    private IndexSearcherRef reopenSearcher( IndexSearcherRef searcher )
+        throws IOException
     {
-        try
+        IndexWriterRef writer = getExistingIndexWriter( searcher.getKey() );
+        if ( writer != null )
         {
-            IndexReader reader = searcher.getSearcher().getIndexReader();
-            IndexReader reopened = reader.reopen();
-            if ( reopened != reader )
+            long generation = writer.getAppliedGeneration();
+            if ( generation == searcher.getGeneration() )
             {
-                IndexSearcher newSearcher = new IndexSearcher( reopened );
-                searcher.detachOrClose();
-                return new IndexSearcherRef( searcher.getKey(), newSearcher );
+                return null;
             }
-            return null;
+            IndexSearcher newSearcher = new IndexSearcher( writer.getReader() );
+            return new IndexSearcherRef( searcher.getKey(), newSearcher,
+                generation );
         }
-        catch ( IOException e )
+        IndexReader reader = searcher.getSearcher().getIndexReader();
+        IndexReader reopened = reader.reopen();
+        if ( reopened != reader )
         {
-            throw new RuntimeException( e );
+            IndexSearcher newSearcher = new IndexSearcher( reopened );
+            return new IndexSearcherRef( searcher.getKey(), newSearcher );
+        }
+        return null;
+    }
+    
+    /**
+     * Reopens the searcher for {@code key} if it's marked as stale. The
+     * reopen is done without holding the data source lock, lookups keep
+     * using the current searcher until the write lock is taken for the
+     * swap. The key stays marked as stale until then, and is left marked
+     * if another commit marked it again meanwhile. Must not be called
+     * holding the read lock.
+     */
+    private void refreshIndexSearcher( String key )
+    {
+        synchronized ( refreshLock )
+        {
+            StaleMark mark = staleSearchers.get( key );
+            if ( mark == null )
+            {
+                return;
+            }
+            IndexSearcherRef searcher;
+            getReadLock();
+            try
+            {
+                searcher = indexSearchers.get( key );
+                if ( searcher == null )
+                {
+                    // the next lookup opens a fresh one
+                    staleSearchers.remove( key, mark );
+                    return;
+                }
+                searcher.incRef();
+            }
+            finally
+            {
+                releaseReadLock();
+            }
+            
+            IndexSearcherRef refreshed = null;
+            try
+            {
+                refreshed = reopenSearcher( searcher );
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to reopen searcher for " +
+                    key, e );
+            }
+            finally
+            {
+                searcher.closeStrict();
+            }
+            
+            getWriteLock();
+            try
+            {
+                if ( refreshed == null )
+                {
+                    // already up to date with the commits so far
+                    staleSearchers.remove( key, mark );
+                }
+                else if ( indexSearchers.replace( key, searcher, refreshed ) )
+                {
+                    staleSearchers.remove( key, mark );
+                    searcher.detachOrClose();
+                }
+                else
+                {
+                    // closed because the whole index was removed meanwhile
+                    refreshed.dispose();
+                }
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( e );
+            }
+            finally
+            {
+                releaseWriteLock();
+            }
+        }
+    }
+    
+    /**
+     * Called before a lookup (without holding the read lock) so that it
+     * doesn't use a searcher which is staler than
+     * {@link #SEARCHER_MAX_STALENESS} allows.
+     */
+    void refreshIndexSearcherIfStale( String key )
+    {
+        StaleMark mark = staleSearchers.get( key );
+        if ( mark != null &&
+            System.currentTimeMillis() - mark.since >= maxStaleness )
+        {
+            refreshIndexSearcher( key );
         }
     }
     
@@ -336,6 +555,18 @@ public class LuceneDataSource extends XaDataSource
         return FSDirectory.open( getIndexDir( key ) );
     }
     
+    /**
+     * The writer directory is locked within this data source only, it
+     * owns the index directory and never has more than one writer for it.
+     * This way a writer left open by a data source which wasn't closed
+     * doesn't stop recovery from opening a new one.
+     */
+    private Directory getWriterDirectory( String key ) throws IOException
+    {
+        return FSDirectory.open( getIndexDir( key ),
+            new SingleInstanceLockFactory() );
+    }
+    
     private File getIndexDir( String key )
     {
         return new File( storeDir, key );
@@ -348,6 +579,14 @@ public class LuceneDataSource extends XaDataSource
             IndexSearcherRef searcher = indexSearchers.get( key );
             if ( searcher == null )
             {
+                IndexWriterRef writer = getExistingIndexWriter( key );
+                if ( writer != null )
+                {
+                    long generation = writer.getAppliedGeneration();
+                    searcher = new IndexSearcherRef( key,
+                        new IndexSearcher( writer.getReader() ), generation );
+                    return putIndexSearcher( key, searcher );
+                }
                 Directory dir = getDirectory( key );
                 try
                 {
@@ -364,7 +603,7 @@ public class LuceneDataSource extends XaDataSource
                 IndexReader indexReader = IndexReader.open( dir, false );
                 IndexSearcher indexSearcher = new IndexSearcher( indexReader );
                 searcher = new IndexSearcherRef( key, indexSearcher );
-                indexSearchers.put( key, searcher );
+                return putIndexSearcher( key, searcher );
             }
             return searcher;
         }
@@ -373,34 +612,32 @@ public class LuceneDataSource extends XaDataSource
             throw new RuntimeException( e );
         }
     }
-
-    XaTransaction createTransaction( int identifier,
-        XaLogicalLog logicalLog )
-    {
-        return new LuceneTransaction( identifier, logicalLog, this );
-    }
-
-    void invalidateIndexSearcher( String key )
+    
+    /*
+     * Lookups open searchers holding the read lock only, so two of them
+     * can race here. The loser closes its searcher and uses the winners.
+     */
+    private IndexSearcherRef putIndexSearcher( String key,
+        IndexSearcherRef searcher ) throws IOException
     {
-        IndexSearcherRef searcher = indexSearchers.get( key );
-        if ( searcher != null )
+        IndexSearcherRef existing = indexSearchers.putIfAbsent( key, searcher );
+        if ( existing != null )
         {
-            IndexSearcherRef refreshedSearcher = refreshSearcher( searcher );
-            if ( refreshedSearcher != null )
-            {
-                indexSearchers.put( key, refreshedSearcher );
-            }
+            searcher.dispose();
+            return existing;
         }
+        return searcher;
     }
-    
+
     void closeIndexSearcher( String key )
     {
         try
         {
+            staleSearchers.remove( key );
             IndexSearcherRef searcher = indexSearchers.remove( key );
             if ( searcher != null )
             {
-                searcher.dispose();
+                searcher.detachOrClose();
             }
         }
         catch ( IOException e )
@@ -408,28 +645,61 @@ public class LuceneDataSource extends XaDataSource
         }
     }
     
-    synchronized IndexWriter getRecoveryIndexWriter( String key )
+    XaTransaction createTransaction( int identifier,
+        XaLogicalLog logicalLog )
+    {
+        return new LuceneTransaction( identifier, logicalLog, this );
+    }
+
+    /**
+     * Marks the searcher for {@code key} as stale after a commit, it's
+     * reopened by the next lookup or, if {@link #SEARCHER_MAX_STALENESS} is
+     * set, in the background when it's been stale for that long.
+     */
+    void invalidateIndexSearcher( String key )
     {
-        IndexWriter writer = recoveryWriters.get( key );
-        if ( writer == null )
+        if ( !indexSearchers.containsKey( key ) )
         {
-            writer = getIndexWriter( key );
-            recoveryWriters.put( key, writer );
+            return;
+        }
+        // A new mark for every commit, so that a refresh which reopened
+        // before this commit can't clear it. Stale since the first one.
+        StaleMark previous = staleSearchers.get( key );
+        StaleMark mark = new StaleMark( previous != null ? previous.since :
+            System.currentTimeMillis() );
+        if ( staleSearchers.put( key, mark ) == null &&
+            searcherRefresher != null )
+        {
+            searcherRefresher.wakeUp();
         }
-        return writer;
     }
     
-    synchronized void removeRecoveryIndexWriter( String key )
+    private static final class StaleMark
     {
-        recoveryWriters.remove( key );
+        private final long since;
+        
+        StaleMark( long since )
+        {
+            this.since = since;
+        }
     }
-
-    synchronized IndexWriter getIndexWriter( String key )
+    
+    /**
+     * Returns the writer for {@code key}, it's opened the first time it's
+     * asked for and then kept open and shared by all transactions until
+     * this data source is closed.
+     */
+    synchronized IndexWriterRef getIndexWriter( String key )
     {
+        IndexWriterRef writer = indexWriters.get( key );
+        if ( writer != null )
+        {
+            return writer;
+        }
         try
         {
-            Directory dir = getDirectory( key );
-            IndexWriter writer = new IndexWriter( dir, getAnalyzer(),
+            Directory dir = getWriterDirectory( key );
+            IndexWriter indexWriter = new IndexWriter( dir, getAnalyzer(),
                 MaxFieldLength.UNLIMITED );
             
             // TODO We should tamper with this value and see how it affects the
@@ -437,6 +707,8 @@ public class LuceneDataSource extends XaDataSource
             // reads/writes 
 //            writer.setMergeFactor( 8 );
             
+            writer = new IndexWriterRef( key, indexWriter );
+            indexWriters.put( key, writer );
             return writer;
         }
         catch ( IOException e )
@@ -445,8 +717,37 @@ public class LuceneDataSource extends XaDataSource
         }
     }
     
+    private synchronized void closeIndexWriter( String key )
+    {
+        IndexWriterRef writer = indexWriters.remove( key );
+        if ( writer != null )
+        {
+            try
+            {
+                writer.close();
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to close lucene writer "
+                    + writer.getWriter(), e );
+            }
+        }
+    }
+    
+    private synchronized IndexWriterRef getExistingIndexWriter( String key )
+    {
+        return indexWriters.get( key );
+    }
+    
+    private synchronized IndexWriterRef[] getIndexWriters()
+    {
+        return indexWriters.values().toArray(
+            new IndexWriterRef[indexWriters.size()] );
+    }
+    
     /*
-     * Returns true if the entire index was deleted (even on disk)
+     * Returns true if the entire index was deleted (even on disk), the
+     * writer is closed then and a new one has to be gotten for this key
      */
     protected boolean deleteDocumentsUsingWriter( IndexWriter writer,
         Long nodeId, String key, Object value )
@@ -455,7 +756,7 @@ public class LuceneDataSource extends XaDataSource
         {
             if ( nodeId == null && value == null )
             {
-                writer.close();
+                closeIndexWriter( key );
                 deleteIndex( key );
                 return true;
             }
@@ -506,21 +807,16 @@ public class LuceneDataSource extends XaDataSource
         return LuceneIndexService.DOC_INDEX_KEY;
     }
 
-    void removeWriter( String key, IndexWriter writer )
+    /**
+     * Returns {@code null} while the searcher for {@code key} is stale so
+     * that results from it aren't cached after the commit invalidated them.
+     */
+    LruCache<String,Collection<Long>> getFromCache( String key )
     {
-        try
+        if ( staleSearchers.containsKey( key ) )
         {
-            writer.close();
-        }
-        catch ( IOException e )
-        {
-            throw new RuntimeException( "Unable to close lucene writer "
-                + writer, e );
+            return null;
         }
-    }
-
-    LruCache<String,Collection<Long>> getFromCache( String key )
-    {
         return caching.get( key );
     }
 
@@ -570,6 +866,7 @@ public class LuceneDataSource extends XaDataSource
         document.add( new Field( LuceneIndexService.DOC_INDEX_KEY,
             value.toString(), Field.Store.NO,
             getIndexStrategy( key, value ) ) );
+        NumericRange.addNumericField( document, value );
     }
 
     protected Index getIndexStrategy( String key, Object value )
@@ -667,4 +964,110 @@ public class LuceneDataSource extends XaDataSource
     {
         return xaContainer.getLogicalLog().isLogsKept();
     }
+    
+    private class SearcherRefresher extends Thread
+    {
+        private boolean running = true;
+        private boolean signalled;
+        
+        SearcherRefresher()
+        {
+            super( "Lucene searcher refresher[" + storeDir + "]" );
+            setDaemon( true );
+        }
+        
+        synchronized void wakeUp()
+        {
+            signalled = true;
+            notify();
+        }
+        
+        void shutdown()
+        {
+            synchronized ( this )
+            {
+                running = false;
+                notify();
+            }
+            try
+            {
+                join();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.interrupted();
+            }
+        }
+        
+        @Override
+        public void run()
+        {
+            while ( true )
+            {
+                long now = System.currentTimeMillis();
+                long nextDue = Long.MAX_VALUE;
+                for ( Map.Entry<String,StaleMark> stale :
+                    staleSearchers.entrySet() )
+                {
+                    long due = stale.getValue().since + maxStaleness;
+                    if ( due <= now )
+                    {
+                        try
+                        {
+                            refreshIndexSearcher( stale.getKey() );
+                            if ( staleSearchers.containsKey( stale.getKey() ) )
+                            {
+                                // marked again during the refresh
+                                nextDue = now;
+                            }
+                        }
+                        catch ( RuntimeException e )
+                        {
+                            log.warning( "Unable to refresh searcher for " +
+                                stale.getKey() + ": " + e );
+                            nextDue = Math.min( nextDue, now + maxStaleness );
+                        }
+                    }
+                    else
+                    {
+                        nextDue = Math.min( nextDue, due );
+                    }
+                }
+                synchronized ( this )
+                {
+                    if ( !running )
+                    {
+                        return;
+                    }
+                    if ( !signalled )
+                    {
+                        try
+                        {
+                            wait( nextDue == Long.MAX_VALUE ? 0 : Math.max( 1,
+                                nextDue - System.currentTimeMillis() ) );
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.interrupted();
+                        }
+                    }
+                    signalled = false;
+                }
+            }
+        }
+    }
+    
+    private class IndexesBean implements LuceneIndexes
+    {
+        public LuceneIndexInfo[] getIndexes()
+        {
+            IndexWriterRef[] writers = getIndexWriters();
+            LuceneIndexInfo[] result = new LuceneIndexInfo[writers.length];
+            for ( int i = 0; i < writers.length; i++ )
+            {
+                result[i] = writers[i].getInfo();
+            }
+            return result;
+        }
+    }
 }
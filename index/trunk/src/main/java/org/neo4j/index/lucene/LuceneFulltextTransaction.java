@@ -189,7 +189,8 @@ class LuceneFulltextTransaction extends LuceneTransaction
         {
             IndexSearcher searcher = directory.getSearcher();
             Query query =
-                getDataSource().getIndexService().formQuery( key, value, matching );
+                getDataSource().getIndexService().formQueryOrRange( key, value,
+                    matching );
             if ( includeAlwaysHit )
             {
                 BooleanQuery booleanQuery = new BooleanQuery();
@@ -199,12 +200,11 @@ class LuceneFulltextTransaction extends LuceneTransaction
                     Occur.SHOULD );
                 query = booleanQuery;
             }
-            Hits hits = new Hits( searcher, query, null );
+            CollectedHits hits = CollectedHits.search( searcher, query, null );
             HashSet<Long> result = new HashSet<Long>();
             for ( int i = 0; i < hits.length(); i++ )
             {
-                result.add( Long.parseLong( hits.doc( i ).getField(
-                    LuceneIndexService.DOC_ID_KEY ).stringValue() ) );
+                result.add( hits.nodeId( i ) );
             }
             return result;
         }
@@ -195,6 +195,7 @@ public class LuceneIndexBatchInserterImpl implements LuceneIndexBatchInserter
             Field.Index.NOT_ANALYZED ) );
         document.add( new Field( LuceneIndexService.DOC_INDEX_KEY,
             value.toString(), Field.Store.NO, getIndexStrategy() ) );
+        NumericRange.addNumericField( document, value );
     }
     
     protected Field.Index getIndexStrategy()
@@ -236,13 +237,10 @@ public class LuceneIndexBatchInserterImpl implements LuceneIndexBatchInserter
                 return new SimpleIndexHits<Long>(
                     Collections.<Long>emptyList(), 0 );
             }
-            Hits hits = new Hits( searcher, query, null );
+            CollectedHits hits = CollectedHits.search( searcher, query, null );
             for ( int i = 0; i < hits.length(); i++ )
             {
-                Document document = hits.doc( i );
-                long id = Long.parseLong( document.getField(
-                    LuceneIndexService.DOC_ID_KEY ).stringValue() );
-                nodeSet.add( id );
+                nodeSet.add( hits.nodeId( i ) );
             }
         }
         catch ( IOException e )
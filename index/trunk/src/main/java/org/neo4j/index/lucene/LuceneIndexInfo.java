@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import java.io.Serializable;
+
+/**
+ * Commit and segment statistics for one index key of a
+ * {@link LuceneDataSource}, as exposed by {@link LuceneIndexes}.
+ */
+public final class LuceneIndexInfo implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String key;
+    private final long committedTransactionCount;
+    private final long commitCount;
+    private final int largestCommitBatch;
+    private final double averageCommitTime;
+    private final double lastCommitTime;
+    private final int segmentCount;
+    private final int documentCount;
+
+    public LuceneIndexInfo( String key, long committedTransactionCount,
+            long commitCount, int largestCommitBatch,
+            double averageCommitTime, double lastCommitTime,
+            int segmentCount, int documentCount )
+    {
+        this.key = key;
+        this.committedTransactionCount = committedTransactionCount;
+        this.commitCount = commitCount;
+        this.largestCommitBatch = largestCommitBatch;
+        this.averageCommitTime = averageCommitTime;
+        this.lastCommitTime = lastCommitTime;
+        this.segmentCount = segmentCount;
+        this.documentCount = documentCount;
+    }
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public long getNumberOfCommittedTransactions()
+    {
+        return committedTransactionCount;
+    }
+
+    public long getNumberOfCommits()
+    {
+        return commitCount;
+    }
+
+    public double getAverageCommitBatchSize()
+    {
+        return commitCount == 0 ? 0 :
+            (double) committedTransactionCount / commitCount;
+    }
+
+    public int getLargestCommitBatch()
+    {
+        return largestCommitBatch;
+    }
+
+    public double getAverageCommitTimeMillis()
+    {
+        return averageCommitTime;
+    }
+
+    public double getLastCommitTimeMillis()
+    {
+        return lastCommitTime;
+    }
+
+    public int getNumberOfSegments()
+    {
+        return segmentCount;
+    }
+
+    public int getNumberOfDocuments()
+    {
+        return documentCount;
+    }
+}
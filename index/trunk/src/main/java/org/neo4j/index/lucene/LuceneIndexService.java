@@ -71,6 +71,9 @@ import org.neo4j.kernel.impl.util.ArrayMap;
  * when a search result is considered big enough to be returned as a lazy
  * iteration, making {@link #getNodes(String, Object)} return very fast, but
  * skips caching</li>
+ * <li>{@link #getNodesInRange(String, Number, Number)} which returns the nodes
+ * indexed with a numeric value within a range. Numeric values are also
+ * indexed with Lucene's trie encoding for this purpose.</li>
  * </ul>
  * 
  * See more information at
@@ -85,6 +88,8 @@ public class LuceneIndexService extends GenericIndexService
 
     protected static final String DOC_ID_KEY = "id";
     protected static final String DOC_INDEX_KEY = "index";
+    protected static final String DOC_LONG_KEY = "numeric_long";
+    protected static final String DOC_DOUBLE_KEY = "numeric_double";
     protected static final String DIR_NAME = "lucene";
 
     private final TransactionManager txManager;
@@ -264,6 +269,27 @@ public class LuceneIndexService extends GenericIndexService
         return getNodes( key, value, null );
     }
     
+    /**
+     * Returns the nodes indexed with {@code key} and a numeric value between
+     * {@code from} and {@code to}, both inclusive. One of them may be
+     * {@code null} for an open ended range. Values of type {@link Long},
+     * {@link Integer}, {@link Short} and {@link Byte} are matched by ranges
+     * of such values, while {@link Double} and {@link Float} values are
+     * matched by ranges where any of the bounds is a {@link Double} or
+     * {@link Float}. Big results are returned lazily, see
+     * {@link #setLazySearchResultThreshold(int)}.
+     * 
+     * @param key the index to search in.
+     * @param from the lower bound of the range, or {@code null}.
+     * @param to the upper bound of the range, or {@code null}.
+     * @return nodes that have been indexed with key and a value in the range.
+     */
+    public IndexHits<Node> getNodesInRange( String key, Number from,
+        Number to )
+    {
+        return getNodes( key, new NumericRange( from, to ), null, null );
+    }
+    
     /**
      * Just like {@link #getNodes(String, Object)}, but with sorted result.
      * 
@@ -294,6 +320,7 @@ public class LuceneIndexService extends GenericIndexService
             deletedNodes = luceneTx.getDeletedNodesFor( key, value, matching );
             deleted = luceneTx.getIndexDeleted( key );
         }
+        xaDs.refreshIndexSearcherIfStale( key );
         xaDs.getReadLock();
         Iterator<Long> nodeIdIterator = null;
         Integer nodeIdIteratorSize = null;
@@ -304,7 +331,9 @@ public class LuceneIndexService extends GenericIndexService
             searcher = xaDs.getIndexSearcher( key );
             if ( searcher != null && !deleted )
             {
-                LruCache<String, Collection<Long>> cachedNodesMap = xaDs.getFromCache( key );
+                // Ranges are never cached, only exact values
+                LruCache<String, Collection<Long>> cachedNodesMap =
+                    value instanceof NumericRange ? null : xaDs.getFromCache( key );
                 String valueAsString = value.toString();
                 boolean foundInCache = fillFromCache( cachedNodesMap, nodeIds,
                         key, valueAsString, deletedNodes );
@@ -419,6 +448,19 @@ public class LuceneIndexService extends GenericIndexService
     {
         return new TermQuery( new Term( DOC_INDEX_KEY, value.toString() ) );
     }
+    
+    /**
+     * @return a range query over the trie encoded values if {@code value} is
+     * a {@link NumericRange}, else {@link #formQuery(String, Object, Object)}.
+     */
+    final Query formQueryOrRange( String key, Object value, Object matching )
+    {
+        if ( value instanceof NumericRange )
+        {
+            return ( (NumericRange) value ).toQuery();
+        }
+        return formQuery( key, value, matching );
+    }
 
     /**
      * Returns a lazy iterator with the node ids.
@@ -426,12 +468,13 @@ public class LuceneIndexService extends GenericIndexService
     private DocToIdIterator searchForNodes( IndexSearcherRef searcher,
             String key, Object value, Object matching, Sort sortingOrNull, Set<Long> deletedNodes )
     {
-        Query query = formQuery( key, value, matching );
+        Query query = formQueryOrRange( key, value, matching );
         try
         {
             searcher.incRef();
-            Hits hits = new Hits( searcher.getSearcher(), query, null, sortingOrNull );
-            return new DocToIdIterator( new HitsIterator( hits ), deletedNodes,
+            CollectedHits hits = CollectedHits.search( searcher.getSearcher(),
+                    query, sortingOrNull );
+            return new DocToIdIterator( hits, deletedNodes,
                     searcher );
         }
         catch ( IOException e )
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+/**
+ * Management interface for the indexes of a {@link LuceneDataSource}. Each
+ * data source registers one of these with the platform MBean server, named
+ * <code>org.neo4j:instance=&lt;index directory&gt;,name=Lucene Indexes</code>.
+ */
+public interface LuceneIndexes
+{
+    final String NAME = "Lucene Indexes";
+
+    /**
+     * @return commit latency and segment statistics for each index key
+     * which has been written to since the data source was started.
+     */
+    LuceneIndexInfo[] getIndexes();
+}
@@ -253,8 +253,9 @@ public class LuceneReadOnlyIndexService extends GenericIndexService
         try
         {
             IndexSearcher searcher = xaDs.getIndexSearcher( key );
-            Hits hits = new Hits( searcher, query, null, sortingOrNull );
-            return new DocToIdIterator( new HitsIterator( hits ),
+            CollectedHits hits = CollectedHits.search( searcher, query,
+                    sortingOrNull );
+            return new DocToIdIterator( hits,
                     Collections.<Long>emptyList(), null );
         }
         catch ( IOException e )
@@ -47,6 +47,8 @@ class LuceneTransaction extends XaTransaction
 
     private final Map<String,List<LuceneCommand>> commandMap = 
         new HashMap<String,List<LuceneCommand>>();
+    private final Map<IndexWriterRef,Long> appliedGenerations =
+        new HashMap<IndexWriterRef,Long>();
 
     LuceneTransaction( int identifier, XaLogicalLog xaLog,
         LuceneDataSource luceneDs )
@@ -58,7 +60,8 @@ class LuceneTransaction extends XaTransaction
     void index( Node node, String key, Object value )
     {
         insert( node, key, value, txRemoved, txIndexed );
-        queueCommand( new AddCommand( node.getId(), key, value.toString() ) );
+        queueCommand( new AddCommand( node.getId(), key, value.toString(),
+            NumericRange.toIndexable( value ) ) );
     }
 
     void removeIndex( Node node, String key, Object value )
@@ -135,7 +138,14 @@ class LuceneTransaction extends XaTransaction
         if ( keyIndex != null )
         {
             result = new LazyMergedSet<Long>();
-            result.add( keyIndex.map.get( value ) );
+            if ( value instanceof NumericRange )
+            {
+                result.add( keyIndex.getNodesInRange( (NumericRange) value ) );
+            }
+            else
+            {
+                result.add( keyIndex.map.get( value ) );
+            }
             // the 'null' value represents those removed with
             // removeIndex( Node, String )
             result.add( keyIndex.map.get( null ) );
@@ -155,7 +165,9 @@ class LuceneTransaction extends XaTransaction
         TxCache keyIndex = txIndexed.get( key );
         if ( keyIndex != null )
         {
-            Set<Long> nodeIds = keyIndex.map.get( value );
+            Set<Long> nodeIds = value instanceof NumericRange ?
+                keyIndex.getNodesInRange( (NumericRange) value ) :
+                keyIndex.map.get( value );
             if ( nodeIds != null )
             {
                 return nodeIds;
@@ -208,21 +220,32 @@ class LuceneTransaction extends XaTransaction
                 {
                     continue;
                 }
-                boolean isRecovery = false; // entry.getValue().iterator().next().isRecovered();
                 String key = entry.getKey();
-                IndexWriter writer = isRecovery ? luceneDs.getRecoveryIndexWriter( key ) : luceneDs.getIndexWriter( key );
+                IndexWriterRef writerRef = null;
                 for ( LuceneCommand command : entry.getValue() )
                 {
                     Long nodeId = command.getNodeId();
                     String value = command.getValue();
-                    if ( writer == null )
+                    if ( writerRef == null )
                     {
-                        writer = isRecovery ? luceneDs.getRecoveryIndexWriter( key ) : luceneDs.getIndexWriter( key );
+                        writerRef = luceneDs.getIndexWriter( key );
                     }
+                    IndexWriter writer = writerRef.getWriter();
                     
                     if ( command instanceof AddCommand )
                     {
-                        indexWriter( writer, nodeId, key, value );
+                        if ( isRecovered() )
+                        {
+                            // The shared writer may have committed parts of
+                            // this transaction before a crash, don't add
+                            // the same document twice
+                            luceneDs.deleteDocumentsUsingWriter( writer,
+                                nodeId, key, value );
+                        }
+                        Number numericValue =
+                            ( (AddCommand) command ).getNumericValue();
+                        indexWriter( writer, nodeId, key,
+                            numericValue != null ? numericValue : value );
                     }
                     else if ( command instanceof RemoveCommand )
                     {
@@ -230,11 +253,7 @@ class LuceneTransaction extends XaTransaction
                             writer, nodeId, key, value ) )
                         {
                             luceneDs.closeIndexSearcher( key );
-                            if ( isRecovery )
-                            {
-                                luceneDs.removeRecoveryIndexWriter( key );
-                            }
-                            writer = null;
+                            writerRef = null;
                         }
                     }
                     else
@@ -242,7 +261,41 @@ class LuceneTransaction extends XaTransaction
                         throw new RuntimeException( "Unknown command type " +
                             command + ", " + command.getClass() );
                     }
-                    
+                }
+                if ( writerRef != null )
+                {
+                    appliedGenerations.put( writerRef, writerRef.applied() );
+                }
+            }
+        }
+        finally
+        {
+            luceneDs.releaseWriteLock();
+        }
+    }
+    
+    @Override
+    protected void doCompleteCommit()
+    {
+        // Outside of the write lock and the resource manager monitor so that
+        // other transactions can apply their changes and have them committed
+        // together with ours
+        for ( Map.Entry<IndexWriterRef,Long> entry :
+            appliedGenerations.entrySet() )
+        {
+            entry.getKey().commit( entry.getValue() );
+        }
+        
+        luceneDs.getWriteLock();
+        try
+        {
+            for ( Map.Entry<String, List<LuceneCommand>> entry :
+                this.commandMap.entrySet() )
+            {
+                String key = entry.getKey();
+                for ( LuceneCommand command : entry.getValue() )
+                {
+                    String value = command.getValue();
                     if ( value != null )
                     {
                         luceneDs.invalidateCache( key, value );
@@ -252,11 +305,6 @@ class LuceneTransaction extends XaTransaction
                         luceneDs.invalidateCache( key );
                     }
                 }
-                
-                if ( writer != null && !isRecovery )
-                {
-                    luceneDs.removeWriter( key, writer );
-                }
                 luceneDs.invalidateIndexSearcher( key );
             }
         }
@@ -404,5 +452,23 @@ class LuceneTransaction extends XaTransaction
         {
             return map.get( value );
         }
+        
+        Set<Long> getNodesInRange( NumericRange range )
+        {
+            Set<Long> result = null;
+            for ( Map.Entry<Object, Set<Long>> entry : map.entrySet() )
+            {
+                if ( !entry.getValue().isEmpty() &&
+                    range.includes( entry.getKey() ) )
+                {
+                    if ( result == null )
+                    {
+                        result = new HashSet<Long>();
+                    }
+                    result.addAll( entry.getValue() );
+                }
+            }
+            return result;
+        }
     }
 }
\ No newline at end of file
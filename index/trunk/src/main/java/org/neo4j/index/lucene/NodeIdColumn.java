@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.util.ReaderUtil;
+
+/**
+ * Maps Lucene document ids of a reader to the node ids they were indexed
+ * for, without loading the stored documents. The node ids of each segment
+ * are read into a {@code long[]} by the {@link FieldCache}, which keeps it
+ * for as long as the segment is in use. A reopened reader or near real-time
+ * reader from the writer thereby only has to read the segments that are new
+ * since the last one.
+ */
+final class NodeIdColumn
+{
+    private final int[] starts;
+    private final long[][] nodeIds;
+    private int lastSegment;
+    
+    NodeIdColumn( IndexReader reader ) throws IOException
+    {
+        List<IndexReader> segments = new ArrayList<IndexReader>();
+        ReaderUtil.gatherSubReaders( segments, reader );
+        starts = new int[segments.size()];
+        nodeIds = new long[segments.size()][];
+        int start = 0;
+        for ( int i = 0; i < segments.size(); i++ )
+        {
+            IndexReader segment = segments.get( i );
+            starts[i] = start;
+            nodeIds[i] = FieldCache.DEFAULT.getLongs( segment,
+                LuceneIndexService.DOC_ID_KEY, FieldCache.DEFAULT_LONG_PARSER );
+            start += segment.maxDoc();
+        }
+    }
+    
+    /**
+     * @return the node id of the document with id {@code docId}.
+     */
+    long nodeId( int docId )
+    {
+        // hits are mostly looked up in order, try the last segment first
+        int segment = lastSegment;
+        if ( docId < starts[segment] || ( segment + 1 < starts.length &&
+            docId >= starts[segment + 1] ) )
+        {
+            segment = segmentOf( docId );
+            lastSegment = segment;
+        }
+        return nodeIds[segment][docId - starts[segment]];
+    }
+    
+    private int segmentOf( int docId )
+    {
+        int low = 0;
+        int high = starts.length - 1;
+        while ( low < high )
+        {
+            int middle = ( low + high + 1 ) >>> 1;
+            if ( starts[middle] <= docId )
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
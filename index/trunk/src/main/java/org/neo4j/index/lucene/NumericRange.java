@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+
+/**
+ * An inclusive range of numeric values, as given to
+ * {@link LuceneIndexService#getNodesInRange(String, Number, Number)}.
+ * Integral values ({@link Long}, {@link Integer}, {@link Short} and
+ * {@link Byte}) are indexed as longs and floating point values
+ * ({@link Double} and {@link Float}) as doubles, using Lucene's trie
+ * encoding. Longs and doubles are indexed in fields of their own since
+ * their trie encoded terms overlap. A range matches values of one of those
+ * kinds only, doubles if any of its bounds is a floating point value, else
+ * longs.
+ */
+final class NumericRange
+{
+    private final Number from;
+    private final Number to;
+    private final boolean floating;
+    
+    NumericRange( Number from, Number to )
+    {
+        if ( from == null && to == null )
+        {
+            throw new IllegalArgumentException(
+                "At least one of from and to must be given" );
+        }
+        if ( ( from != null && !isNumeric( from ) ) ||
+            ( to != null && !isNumeric( to ) ) )
+        {
+            throw new IllegalArgumentException( "Unsupported range " + from +
+                "-" + to + ", only Long, Integer, Short, Byte, Double " +
+                "and Float are indexed as numbers" );
+        }
+        this.from = toIndexable( from );
+        this.to = toIndexable( to );
+        this.floating = isFloating( from ) || isFloating( to );
+    }
+    
+    Query toQuery()
+    {
+        if ( floating )
+        {
+            return NumericRangeQuery.newDoubleRange(
+                LuceneIndexService.DOC_DOUBLE_KEY,
+                from != null ? from.doubleValue() : null,
+                to != null ? to.doubleValue() : null, true, true );
+        }
+        return NumericRangeQuery.newLongRange(
+            LuceneIndexService.DOC_LONG_KEY,
+            from != null ? from.longValue() : null,
+            to != null ? to.longValue() : null, true, true );
+    }
+    
+    /**
+     * @return whether or not {@code value} would be matched by the query
+     * of this range, used for what's been indexed in a transaction.
+     */
+    boolean includes( Object value )
+    {
+        if ( !isNumeric( value ) || isFloating( value ) != floating )
+        {
+            return false;
+        }
+        Number number = toIndexable( value );
+        if ( floating )
+        {
+            double doubleValue = number.doubleValue();
+            return ( from == null || doubleValue >= from.doubleValue() ) &&
+                ( to == null || doubleValue <= to.doubleValue() );
+        }
+        long longValue = number.longValue();
+        return ( from == null || longValue >= from.longValue() ) &&
+            ( to == null || longValue <= to.longValue() );
+    }
+    
+    @Override
+    public String toString()
+    {
+        return "[" + ( from != null ? from : "*" ) + " TO " +
+            ( to != null ? to : "*" ) + "]";
+    }
+    
+    static boolean isNumeric( Object value )
+    {
+        return value instanceof Long || value instanceof Integer ||
+            value instanceof Short || value instanceof Byte ||
+            isFloating( value );
+    }
+    
+    static boolean isFloating( Object value )
+    {
+        return value instanceof Double || value instanceof Float;
+    }
+    
+    /**
+     * @return {@code value} as it's indexed, i.e. a {@link Long} for integral
+     * values and a {@link Double} for floating point values, or {@code null}
+     * if it isn't numeric. Floats are converted via their string
+     * representation so that {@code 1.1f} is indexed as {@code 1.1d}.
+     */
+    static Number toIndexable( Object value )
+    {
+        if ( !isNumeric( value ) )
+        {
+            return null;
+        }
+        if ( isFloating( value ) )
+        {
+            return value instanceof Float ? Double.valueOf( value.toString() ) :
+                (Double) value;
+        }
+        return ( (Number) value ).longValue();
+    }
+    
+    /**
+     * Adds {@code value} trie encoded to {@code document} if it's numeric,
+     * in the field for its kind.
+     */
+    static void addNumericField( Document document, Object value )
+    {
+        if ( !isNumeric( value ) )
+        {
+            return;
+        }
+        Number number = toIndexable( value );
+        NumericField numericField;
+        if ( number instanceof Double )
+        {
+            numericField = new NumericField(
+                LuceneIndexService.DOC_DOUBLE_KEY );
+            numericField.setDoubleValue( number.doubleValue() );
+        }
+        else
+        {
+            numericField = new NumericField( LuceneIndexService.DOC_LONG_KEY );
+            numericField.setLongValue( number.longValue() );
+        }
+        document.add( numericField );
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * Compares iterating over all node ids of a big search result using the
+ * re-querying {@link Hits} with {@link CollectedHits}, which collects the
+ * hits in one search. The node ids of collected hits are read both from
+ * the stored documents and from the {@link NodeIdColumn}. The index is
+ * laid out like the one of {@link LuceneIndexService}, with every document
+ * matching the query. Not run as part of the test suite, run it with:
+ * <pre>
+ * java HitsBenchmark [hits] [rounds]
+ * </pre>
+ */
+public class HitsBenchmark
+{
+    public static void main( String[] args ) throws Exception
+    {
+        int hitCount = args.length > 0 ? Integer.parseInt( args[0] ) :
+            1000000;
+        int rounds = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+        
+        RAMDirectory directory = createIndex( hitCount );
+        IndexSearcher searcher = new IndexSearcher( directory, true );
+        try
+        {
+            Query query = new TermQuery( new Term(
+                LuceneIndexService.DOC_INDEX_KEY, "value" ) );
+            Sort sort = new Sort( new SortField(
+                LuceneIndexService.DOC_ID_KEY, SortField.LONG, true ) );
+            for ( int round = 0; round < rounds; round++ )
+            {
+                runHits( "hits", searcher, query, null );
+                runCollected( "collected", searcher, query, null );
+                runColumn( "collected column", searcher, query, null );
+                runHits( "hits sorted", searcher, query, sort );
+                runCollected( "collected sorted", searcher, query, sort );
+                runColumn( "collected column sorted", searcher, query, sort );
+            }
+        }
+        finally
+        {
+            searcher.close();
+            directory.close();
+        }
+    }
+    
+    private static RAMDirectory createIndex( int hitCount ) throws Exception
+    {
+        RAMDirectory directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter( directory,
+            new WhitespaceAnalyzer(), true,
+            IndexWriter.MaxFieldLength.UNLIMITED );
+        for ( int i = 0; i < hitCount; i++ )
+        {
+            Document document = new Document();
+            document.add( new Field( LuceneIndexService.DOC_ID_KEY,
+                String.valueOf( i ), Field.Store.YES,
+                Field.Index.NOT_ANALYZED ) );
+            document.add( new Field( LuceneIndexService.DOC_INDEX_KEY,
+                "value", Field.Store.NO, Field.Index.NOT_ANALYZED ) );
+            writer.addDocument( document );
+        }
+        writer.close();
+        return directory;
+    }
+    
+    private static void runHits( String name, IndexSearcher searcher,
+        Query query, Sort sort ) throws Exception
+    {
+        long startTime = System.currentTimeMillis();
+        Hits hits = new Hits( searcher, query, null, sort );
+        long sum = 0;
+        for ( int i = 0; i < hits.length(); i++ )
+        {
+            sum += nodeId( hits.doc( i ) );
+        }
+        report( name, hits.length(), sum, startTime );
+    }
+    
+    private static void runCollected( String name, IndexSearcher searcher,
+        Query query, Sort sort ) throws Exception
+    {
+        long startTime = System.currentTimeMillis();
+        CollectedHits hits = CollectedHits.search( searcher, query, sort );
+        long sum = 0;
+        for ( int i = 0; i < hits.length(); i++ )
+        {
+            sum += nodeId( hits.doc( i ) );
+        }
+        report( name, hits.length(), sum, startTime );
+    }
+    
+    private static void runColumn( String name, IndexSearcher searcher,
+        Query query, Sort sort ) throws Exception
+    {
+        long startTime = System.currentTimeMillis();
+        CollectedHits hits = CollectedHits.search( searcher, query, sort );
+        long sum = 0;
+        for ( int i = 0; i < hits.length(); i++ )
+        {
+            sum += hits.nodeId( i );
+        }
+        report( name, hits.length(), sum, startTime );
+    }
+    
+    private static long nodeId( Document document )
+    {
+        return Long.parseLong( document.getField(
+            LuceneIndexService.DOC_ID_KEY ).stringValue() );
+    }
+    
+    private static void report( String name, int count, long sum,
+        long startTime )
+    {
+        long time = Math.max( 1, System.currentTimeMillis() - startTime );
+        // the sum is printed so that the iteration can't be optimized away
+        System.out.println( name + ": " + count + " hits in " + time +
+            "ms, " + count * 1000L / time + " hits/s (" + sum + ")" );
+    }
+}
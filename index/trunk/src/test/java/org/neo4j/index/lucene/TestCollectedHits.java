@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCollectedHits
+{
+    private static final String ID = LuceneIndexService.DOC_ID_KEY;
+    private static final int DOC_COUNT = 500;
+    
+    private RAMDirectory directory;
+    private IndexSearcher searcher;
+    
+    @Before
+    public void createIndex() throws Exception
+    {
+        directory = new RAMDirectory();
+        IndexWriter writer = new IndexWriter( directory,
+            new WhitespaceAnalyzer(), true,
+            IndexWriter.MaxFieldLength.UNLIMITED );
+        for ( int i = 0; i < DOC_COUNT; i++ )
+        {
+            Document document = new Document();
+            document.add( new Field( ID, String.valueOf( i ),
+                Field.Store.YES, Field.Index.NOT_ANALYZED ) );
+            document.add( new Field( "all", "yes", Field.Store.NO,
+                Field.Index.NOT_ANALYZED ) );
+            // every tenth document also matches "rare", scoring higher
+            document.add( new Field( "text", i % 10 == 0 ? "common rare" :
+                "common", Field.Store.NO, Field.Index.ANALYZED ) );
+            writer.addDocument( document );
+            if ( i % 100 == 99 )
+            {
+                // a couple of segments
+                writer.commit();
+            }
+        }
+        writer.close();
+        searcher = new IndexSearcher( directory, true );
+    }
+    
+    @After
+    public void closeIndex() throws Exception
+    {
+        searcher.close();
+        directory.close();
+    }
+    
+    private int id( CollectedHits hits, int n ) throws Exception
+    {
+        return Integer.parseInt( hits.doc( n ).get( ID ) );
+    }
+    
+    @Test
+    public void testEqualScoresAreInDocumentOrder() throws Exception
+    {
+        CollectedHits hits = CollectedHits.search( searcher,
+            new TermQuery( new Term( "all", "yes" ) ), null );
+        assertEquals( DOC_COUNT, hits.length() );
+        for ( int i = 0; i < DOC_COUNT; i++ )
+        {
+            assertEquals( i, id( hits, i ) );
+        }
+    }
+    
+    @Test
+    public void testHighestScoresFirst() throws Exception
+    {
+        BooleanQuery query = new BooleanQuery();
+        query.add( new TermQuery( new Term( "all", "yes" ) ), Occur.SHOULD );
+        query.add( new TermQuery( new Term( "text", "rare" ) ), Occur.SHOULD );
+        CollectedHits hits = CollectedHits.search( searcher, query, null );
+        assertEquals( DOC_COUNT, hits.length() );
+        int rareCount = DOC_COUNT / 10;
+        for ( int i = 0; i < rareCount; i++ )
+        {
+            assertEquals( i * 10, id( hits, i ) );
+        }
+        int previous = -1;
+        for ( int i = rareCount; i < DOC_COUNT; i++ )
+        {
+            int id = id( hits, i );
+            assertEquals( true, id % 10 != 0 && id > previous );
+            previous = id;
+        }
+    }
+    
+    @Test
+    public void testSorted() throws Exception
+    {
+        Query query = new TermQuery( new Term( "text", "rare" ) );
+        CollectedHits hits = CollectedHits.search( searcher, query,
+            new Sort( new SortField( ID, SortField.INT, true ) ) );
+        assertEquals( DOC_COUNT / 10, hits.length() );
+        for ( int i = 0; i < hits.length(); i++ )
+        {
+            assertEquals( DOC_COUNT - 10 - i * 10, id( hits, i ) );
+        }
+    }
+    
+    @Test
+    public void testNodeIdsFromColumn() throws Exception
+    {
+        Query query = new TermQuery( new Term( "all", "yes" ) );
+        CollectedHits hits = CollectedHits.search( searcher, query, null );
+        for ( int i = 0; i < hits.length(); i++ )
+        {
+            assertEquals( id( hits, i ), hits.nodeId( i ) );
+        }
+        // and backwards, jumping between segments
+        for ( int i = hits.length() - 1; i >= 0; i -= 7 )
+        {
+            assertEquals( id( hits, i ), hits.nodeId( i ) );
+        }
+    }
+    
+    @Test
+    public void testNodeIdsAfterReopen() throws Exception
+    {
+        IndexWriter writer = new IndexWriter( directory,
+            new WhitespaceAnalyzer(), false,
+            IndexWriter.MaxFieldLength.UNLIMITED );
+        writer.deleteDocuments( new Term( ID, "3" ) );
+        Document document = new Document();
+        document.add( new Field( ID, String.valueOf( DOC_COUNT ),
+            Field.Store.YES, Field.Index.NOT_ANALYZED ) );
+        document.add( new Field( "all", "yes", Field.Store.NO,
+            Field.Index.NOT_ANALYZED ) );
+        writer.addDocument( document );
+        writer.close();
+        
+        IndexReader reopened = searcher.getIndexReader().reopen();
+        searcher.close();
+        searcher = new IndexSearcher( reopened );
+        CollectedHits hits = CollectedHits.search( searcher,
+            new TermQuery( new Term( "all", "yes" ) ), null );
+        assertEquals( DOC_COUNT, hits.length() );
+        for ( int i = 0; i < hits.length(); i++ )
+        {
+            assertEquals( id( hits, i ), hits.nodeId( i ) );
+        }
+    }
+    
+    @Test
+    public void testNoHits() throws Exception
+    {
+        Query query = new TermQuery( new Term( "text", "missing" ) );
+        assertEquals( 0,
+            CollectedHits.search( searcher, query, null ).length() );
+        assertEquals( 0, CollectedHits.search( searcher, query,
+            new Sort( new SortField( ID, SortField.INT ) ) ).length() );
+    }
+}
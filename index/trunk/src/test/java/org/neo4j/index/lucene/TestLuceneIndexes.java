@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.index.IndexService;
+import org.neo4j.index.Neo4jWithIndexTestCase;
+
+public class TestLuceneIndexes extends Neo4jWithIndexTestCase
+{
+    @Override
+    protected IndexService instantiateIndex()
+    {
+        return new LuceneIndexService( graphDb() );
+    }
+    
+    private LuceneIndexInfo getIndexInfo( String key ) throws Exception
+    {
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        for ( ObjectName name : mbs.queryNames( new ObjectName(
+            "org.neo4j:name=" + LuceneIndexes.NAME + ",*" ), null ) )
+        {
+            LuceneIndexInfo[] infos = (LuceneIndexInfo[])
+                mbs.getAttribute( name, "Indexes" );
+            for ( LuceneIndexInfo info : infos )
+            {
+                if ( info.getKey().equals( key ) )
+                {
+                    return info;
+                }
+            }
+        }
+        return null;
+    }
+    
+    @Test
+    public void testCommitsAreExposedPerIndex() throws Exception
+    {
+        String key = "managed";
+        for ( int i = 0; i < 5; i++ )
+        {
+            index().index( graphDb().createNode(), key, "value" + i );
+            restartTx();
+        }
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertNotNull( index().getSingleNode( key, "value" + i ) );
+        }
+        
+        LuceneIndexInfo info = getIndexInfo( key );
+        assertNotNull( info );
+        assertEquals( 5, info.getNumberOfCommittedTransactions() );
+        assertTrue( info.getNumberOfCommits() >= 1 );
+        assertTrue( info.getNumberOfCommits() <= 5 );
+        assertTrue( info.getNumberOfSegments() >= 1 );
+        assertEquals( 5, info.getNumberOfDocuments() );
+    }
+    
+    @Test
+    public void testConcurrentCommitsShareTheWriter() throws Exception
+    {
+        final String key = "concurrent";
+        final int threadCount = 8;
+        final int txPerThread = 20;
+        restartTx();
+        Collection<Thread> threads = new ArrayList<Thread>();
+        final Collection<Throwable> failures = new ArrayList<Throwable>();
+        for ( int t = 0; t < threadCount; t++ )
+        {
+            final int threadId = t;
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int i = 0; i < txPerThread; i++ )
+                        {
+                            Transaction tx = graphDb().beginTx();
+                            try
+                            {
+                                Node node = graphDb().createNode();
+                                index().index( node, key, threadId + "-" + i );
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        synchronized ( failures )
+                        {
+                            failures.add( e );
+                        }
+                    }
+                }
+            };
+            threads.add( thread );
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertTrue( failures.toString(), failures.isEmpty() );
+        
+        for ( int t = 0; t < threadCount; t++ )
+        {
+            for ( int i = 0; i < txPerThread; i++ )
+            {
+                assertNotNull( index().getSingleNode( key, t + "-" + i ) );
+            }
+        }
+        LuceneIndexInfo info = getIndexInfo( key );
+        assertEquals( threadCount * txPerThread,
+            info.getNumberOfCommittedTransactions() );
+        // transactions waiting for the writer commit don't hold the
+        // resource manager, so some of them share a commit
+        assertTrue( info.getNumberOfCommits() <
+            info.getNumberOfCommittedTransactions() );
+        assertTrue( info.getLargestCommitBatch() > 1 );
+        assertEquals( threadCount * txPerThread,
+            info.getNumberOfDocuments() );
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.index.IndexHits;
+import org.neo4j.index.IndexService;
+import org.neo4j.index.Neo4jWithIndexTestCase;
+
+public class TestLuceneRangeQueries extends Neo4jWithIndexTestCase
+{
+    @Override
+    protected IndexService instantiateIndex()
+    {
+        return new LuceneIndexService( graphDb() );
+    }
+    
+    private LuceneIndexService luceneIndex()
+    {
+        return (LuceneIndexService) index();
+    }
+    
+    @Test
+    public void testLongRange()
+    {
+        String key = "age";
+        Node young = graphDb().createNode();
+        Node middle = graphDb().createNode();
+        Node old = graphDb().createNode();
+        index().index( young, key, 12 );
+        index().index( middle, key, 45L );
+        index().index( old, key, (short) 87 );
+        
+        assertCollection( luceneIndex().getNodesInRange( key, 10, 50 ),
+            young, middle );
+        restartTx();
+        assertCollection( luceneIndex().getNodesInRange( key, 10, 50 ),
+            young, middle );
+        assertCollection( luceneIndex().getNodesInRange( key, 45, null ),
+            middle, old );
+        assertCollection( luceneIndex().getNodesInRange( key, null, 12L ),
+            young );
+        assertCollection( luceneIndex().getNodesInRange( key, 88, 100 ) );
+        
+        // Exact lookups still work for numeric values
+        assertEquals( middle, index().getSingleNode( key, 45 ) );
+        
+        index().removeIndex( middle, key, 45 );
+        assertCollection( luceneIndex().getNodesInRange( key, 10, 50 ),
+            young );
+        restartTx();
+        assertCollection( luceneIndex().getNodesInRange( key, 10, 50 ),
+            young );
+        
+        index().removeIndex( key );
+        young.delete();
+        middle.delete();
+        old.delete();
+    }
+    
+    @Test
+    public void testDoubleRange()
+    {
+        String key = "weight";
+        Node light = graphDb().createNode();
+        Node heavy = graphDb().createNode();
+        Node integral = graphDb().createNode();
+        index().index( light, key, 1.1f );
+        index().index( heavy, key, 99.5d );
+        index().index( integral, key, 50 );
+        
+        assertCollection( luceneIndex().getNodesInRange( key, 1.1d, 99.5d ),
+            light, heavy );
+        restartTx();
+        assertCollection( luceneIndex().getNodesInRange( key, 1.1d, 99.5d ),
+            light, heavy );
+        assertCollection( luceneIndex().getNodesInRange( key, 1.2f, null ),
+            heavy );
+        assertCollection( luceneIndex().getNodesInRange( key, 0, 100 ),
+            integral );
+        
+        index().removeIndex( key );
+        light.delete();
+        heavy.delete();
+        integral.delete();
+    }
+    
+    @Test
+    public void testLongAndDoubleRangesDontMix()
+    {
+        String key = "mixed";
+        Node longNode = graphDb().createNode();
+        Node doubleNode = graphDb().createNode();
+        Node negativeLongNode = graphDb().createNode();
+        Node negativeDoubleNode = graphDb().createNode();
+        index().index( longNode, key, 50L );
+        index().index( doubleNode, key, 1.5d );
+        index().index( negativeLongNode, key, -7 );
+        index().index( negativeDoubleNode, key, -2.5f );
+        
+        for ( int i = 0; i < 2; i++ )
+        {
+            // The same results from the transaction state and the index
+            assertCollection( luceneIndex().getNodesInRange( key, 0.0d,
+                100.0d ), doubleNode );
+            assertCollection( luceneIndex().getNodesInRange( key, 0, null ),
+                longNode );
+            assertCollection( luceneIndex().getNodesInRange( key, null, 0 ),
+                negativeLongNode );
+            assertCollection( luceneIndex().getNodesInRange( key, null,
+                0.0d ), negativeDoubleNode );
+            assertCollection( luceneIndex().getNodesInRange( key,
+                Long.MIN_VALUE, Long.MAX_VALUE ), longNode, negativeLongNode );
+            assertCollection( luceneIndex().getNodesInRange( key,
+                -Double.MAX_VALUE, Double.MAX_VALUE ), doubleNode,
+                negativeDoubleNode );
+            restartTx();
+        }
+        
+        index().removeIndex( key );
+        longNode.delete();
+        doubleNode.delete();
+        negativeLongNode.delete();
+        negativeDoubleNode.delete();
+    }
+    
+    @Test
+    public void testBigRangeIsLazy()
+    {
+        String key = "lazy";
+        luceneIndex().setLazySearchResultThreshold( 10 );
+        Node[] nodes = new Node[50];
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            nodes[i] = graphDb().createNode();
+            index().index( nodes[i], key, i );
+        }
+        restartTx();
+        
+        IndexHits<Node> hits = luceneIndex().getNodesInRange( key, 5, 44 );
+        assertEquals( 40, hits.size() );
+        int count = 0;
+        for ( Node node : hits )
+        {
+            count++;
+        }
+        assertEquals( 40, count );
+        
+        index().removeIndex( key );
+        for ( Node node : nodes )
+        {
+            node.delete();
+        }
+    }
+    
+    @Test( expected = IllegalArgumentException.class )
+    public void testRangeNeedsABound()
+    {
+        luceneIndex().getNodesInRange( "key", null, null );
+    }
+}
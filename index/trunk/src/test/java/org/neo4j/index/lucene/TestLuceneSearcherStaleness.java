@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.index.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.index.IndexService;
+import org.neo4j.index.Neo4jTestCase;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+
+/**
+ * Don't extend Neo4jTestCase since these tests need their own configuration.
+ */
+public class TestLuceneSearcherStaleness
+{
+    private static final String PATH = "target/var/staleness";
+    
+    @Test
+    public void testSearcherIsRefreshedInTheBackground() throws Exception
+    {
+        Neo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        GraphDatabaseService graphDb = new EmbeddedGraphDatabase( PATH,
+            MapUtil.stringMap( LuceneDataSource.SEARCHER_MAX_STALENESS,
+                "1000" ) );
+        IndexService index = new LuceneIndexService( graphDb );
+        try
+        {
+            Node first = createAndIndex( graphDb, index, "first" );
+            // The first lookup opens the searcher, it isn't stale then
+            assertEquals( first, index.getSingleNode( "name", "first" ) );
+            
+            long committed = System.currentTimeMillis();
+            Node second = createAndIndex( graphDb, index, "second" );
+            Node found = index.getSingleNode( "name", "second" );
+            if ( System.currentTimeMillis() - committed < 1000 )
+            {
+                assertNull( found );
+            }
+            
+            long waitUntil = System.currentTimeMillis() + 10000;
+            while ( found == null && System.currentTimeMillis() < waitUntil )
+            {
+                Thread.sleep( 50 );
+                found = index.getSingleNode( "name", "second" );
+            }
+            assertEquals( second, found );
+            assertEquals( first, index.getSingleNode( "name", "first" ) );
+        }
+        finally
+        {
+            index.shutdown();
+            graphDb.shutdown();
+        }
+    }
+    
+    private Node createAndIndex( GraphDatabaseService graphDb,
+        IndexService index, String name )
+    {
+        Transaction tx = graphDb.beginTx();
+        try
+        {
+            Node node = graphDb.createNode();
+            index.index( node, "name", name );
+            tx.success();
+            return node;
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+}
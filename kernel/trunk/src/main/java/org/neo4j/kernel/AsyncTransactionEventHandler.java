@@ -0,0 +1,412 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+/**
+ * Wraps a {@link TransactionEventHandler} so that its
+ * {@link TransactionEventHandler#afterCommit(TransactionData, Object)} is
+ * called from an {@link Executor} instead of the committing thread. Register
+ * the wrapper in place of the handler to use it.
+ * <p>
+ * {@link #beforeCommit(TransactionData)} and
+ * {@link #afterRollback(TransactionData, Object)} are still called directly.
+ * The transaction data of committed transactions is put in a bounded ring
+ * buffer and delivered one batch at a time, in the order the transactions
+ * completed their commit. A handler implementing {@link BatchHandler} gets
+ * each batch in one call. When the buffer is full committing threads wait
+ * for the handler to catch up, how often and for how long is available
+ * from {@link #getBlockedCommitCount()} and {@link #getBlockedTime()}.
+ * 
+ * @param <T> the state type of the wrapped handler.
+ */
+public class AsyncTransactionEventHandler<T> implements 
+    TransactionEventHandler<T>
+{
+    private static Logger log = Logger.getLogger( 
+        AsyncTransactionEventHandler.class.getName() );
+    
+    /**
+     * A transaction event handler that receives the data of several 
+     * committed transactions in one call when wrapped by an
+     * {@link AsyncTransactionEventHandler}.
+     * 
+     * @param <T> the state type of the handler.
+     */
+    public interface BatchHandler<T> extends TransactionEventHandler<T>
+    {
+        /**
+         * Invoked with committed transactions in commit order.
+         * 
+         * @param data the changes of each transaction.
+         * @param states the object returned by 
+         * {@link #beforeCommit(TransactionData)} for each transaction.
+         */
+        void afterCommit( List<TransactionData> data, List<T> states );
+    }
+    
+    private final TransactionEventHandler<T> handler;
+    private final BlockingQueue<Committed<T>> buffer;
+    private final int capacity;
+    private final int maxBatchSize;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final AtomicBoolean delivering = new AtomicBoolean( false );
+    private final Runnable deliverer = new Runnable()
+    {
+        public void run()
+        {
+            deliver();
+        }
+    };
+    
+    private final AtomicLong committed = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong blockedCommits = new AtomicLong();
+    private final AtomicLong blockedTime = new AtomicLong();
+    private volatile long maxLag = 0;
+    
+    /**
+     * Wraps a handler delivering to it from a thread of its own, with room 
+     * for 1024 transactions and at most 128 transactions per batch.
+     * 
+     * @param handler the handler to wrap.
+     */
+    public AsyncTransactionEventHandler( TransactionEventHandler<T> handler )
+    {
+        this( handler, 1024, 128, null );
+    }
+    
+    /**
+     * @param handler the handler to wrap.
+     * @param capacity number of committed transactions that may wait for 
+     * delivery before committing threads have to wait.
+     * @param maxBatchSize maximum number of transactions delivered at once.
+     * @param executor executor to deliver from or <code>null</code> for a
+     * thread of its own. Only one delivery at a time is submitted to it.
+     */
+    public AsyncTransactionEventHandler( TransactionEventHandler<T> handler,
+        int capacity, int maxBatchSize, Executor executor )
+    {
+        if ( capacity < 1 || maxBatchSize < 1 )
+        {
+            throw new IllegalArgumentException( "capacity=" + capacity + 
+                ", maxBatchSize=" + maxBatchSize );
+        }
+        this.handler = handler;
+        this.capacity = capacity;
+        this.maxBatchSize = maxBatchSize;
+        this.buffer = new ArrayBlockingQueue<Committed<T>>( capacity );
+        if ( executor == null )
+        {
+            ownExecutor = new ThreadPoolExecutor( 1, 1, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+                {
+                    public Thread newThread( Runnable runnable )
+                    {
+                        Thread thread = new Thread( runnable, 
+                            "Transaction event delivery [" + 
+                            AsyncTransactionEventHandler.this.handler + "]" );
+                        thread.setDaemon( true );
+                        return thread;
+                    }
+                } );
+            this.executor = ownExecutor;
+        }
+        else
+        {
+            ownExecutor = null;
+            this.executor = executor;
+        }
+    }
+    
+    public T beforeCommit( TransactionData data ) throws Exception
+    {
+        return handler.beforeCommit( data );
+    }
+    
+    public void afterCommit( TransactionData data, T state )
+    {
+        Committed<T> entry = new Committed<T>( data, state );
+        if ( !buffer.offer( entry ) )
+        {
+            blockedCommits.incrementAndGet();
+            long start = System.nanoTime();
+            boolean interrupted = false;
+            while ( true )
+            {
+                try
+                {
+                    buffer.put( entry );
+                    break;
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                }
+            }
+            blockedTime.addAndGet( System.nanoTime() - start );
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        committed.incrementAndGet();
+        if ( delivering.compareAndSet( false, true ) )
+        {
+            executor.execute( deliverer );
+        }
+    }
+    
+    public void afterRollback( TransactionData data, T state )
+    {
+        handler.afterRollback( data, state );
+    }
+    
+    private void deliver()
+    {
+        List<Committed<T>> batch = new ArrayList<Committed<T>>();
+        while ( true )
+        {
+            buffer.drainTo( batch, maxBatchSize );
+            if ( batch.isEmpty() )
+            {
+                delivering.set( false );
+                // a commit may have added to the buffer after it was drained
+                // but before delivering was cleared
+                if ( buffer.isEmpty() || 
+                    !delivering.compareAndSet( false, true ) )
+                {
+                    return;
+                }
+                continue;
+            }
+            long lag = System.currentTimeMillis() - batch.get( 0 ).time;
+            if ( lag > maxLag )
+            {
+                maxLag = lag;
+            }
+            try
+            {
+                deliver( batch );
+            }
+            catch ( Throwable t )
+            {
+                failures.incrementAndGet();
+                log.log( Level.WARNING, "Failed to deliver " + batch.size() + 
+                    " committed transactions to " + handler, t );
+            }
+            batches.incrementAndGet();
+            delivered.addAndGet( batch.size() );
+            batch.clear();
+            synchronized ( this )
+            {
+                notifyAll();
+            }
+        }
+    }
+    
+    @SuppressWarnings( "unchecked" )
+    private void deliver( List<Committed<T>> batch )
+    {
+        if ( handler instanceof BatchHandler )
+        {
+            List<TransactionData> data = 
+                new ArrayList<TransactionData>( batch.size() );
+            List<T> states = new ArrayList<T>( batch.size() );
+            for ( Committed<T> entry : batch )
+            {
+                data.add( entry.data );
+                states.add( entry.state );
+            }
+            ((BatchHandler<T>) handler).afterCommit( data, states );
+        }
+        else
+        {
+            for ( Committed<T> entry : batch )
+            {
+                handler.afterCommit( entry.data, entry.state );
+            }
+        }
+    }
+    
+    /**
+     * Waits for all transactions committed so far to be delivered.
+     * 
+     * @param timeout maximum time to wait in milliseconds.
+     * @return <code>true</code> if everything was delivered in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitDelivery( long timeout ) throws InterruptedException
+    {
+        long target = committed.get();
+        long end = System.currentTimeMillis() + timeout;
+        synchronized ( this )
+        {
+            while ( delivered.get() < target )
+            {
+                long left = end - System.currentTimeMillis();
+                if ( left <= 0 )
+                {
+                    return false;
+                }
+                wait( left );
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Waits for committed transactions to be delivered and stops the 
+     * delivery thread if the handler was not given an executor. Should be
+     * called after the handler has been unregistered.
+     * 
+     * @param timeout maximum time to wait for delivery in milliseconds.
+     * @return <code>true</code> if everything was delivered in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean shutdown( long timeout ) throws InterruptedException
+    {
+        boolean allDelivered = awaitDelivery( timeout );
+        if ( ownExecutor != null )
+        {
+            ownExecutor.shutdown();
+        }
+        return allDelivered;
+    }
+    
+    /**
+     * @return the wrapped handler.
+     */
+    public TransactionEventHandler<T> getHandler()
+    {
+        return handler;
+    }
+    
+    public int getCapacity()
+    {
+        return capacity;
+    }
+    
+    /**
+     * @return number of committed transactions waiting to be delivered.
+     */
+    public int getQueuedCount()
+    {
+        return buffer.size();
+    }
+    
+    public long getCommittedCount()
+    {
+        return committed.get();
+    }
+    
+    public long getDeliveredCount()
+    {
+        return delivered.get();
+    }
+    
+    public long getBatchCount()
+    {
+        return batches.get();
+    }
+    
+    /**
+     * @return number of batches where the handler threw an exception.
+     */
+    public long getFailedBatchCount()
+    {
+        return failures.get();
+    }
+    
+    /**
+     * @return number of commits that had to wait for room in the buffer.
+     */
+    public long getBlockedCommitCount()
+    {
+        return blockedCommits.get();
+    }
+    
+    /**
+     * @return total time in milliseconds committing threads have waited for
+     * room in the buffer.
+     */
+    public long getBlockedTime()
+    {
+        return blockedTime.get() / 1000000;
+    }
+    
+    /**
+     * @return time in milliseconds the oldest undelivered transaction has 
+     * been waiting, <code>0</code> if there is none.
+     */
+    public long getLag()
+    {
+        Committed<T> oldest = buffer.peek();
+        return oldest != null ? System.currentTimeMillis() - oldest.time : 0;
+    }
+    
+    /**
+     * @return the longest time in milliseconds a transaction has waited to
+     * be delivered.
+     */
+    public long getMaxLag()
+    {
+        return maxLag;
+    }
+    
+    public String toString()
+    {
+        return "Async[" + handler + "]";
+    }
+    
+    private static class Committed<T>
+    {
+        private final TransactionData data;
+        private final T state;
+        private final long time = System.currentTimeMillis();
+        
+        Committed( TransactionData data, T state )
+        {
+            this.data = data;
+            this.state = state;
+        }
+    }
+}
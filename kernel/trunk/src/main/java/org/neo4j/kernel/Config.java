@@ -74,11 +74,42 @@ public class Config
     public static final String STRING_PROPERTY_STORE_MMAP_SIZE = "neostore.propertystore.db.strings.mapped_memory";
     @Description( "The size to allocate for memory mapping the relationship store" )
     public static final String RELATIONSHIP_STORE_MMAP_SIZE = "neostore.relationshipstore.db.mapped_memory";
+    @Description( "Read ahead the next part of a relationship chain in the background while the current part is iterated" )
+    public static final String RELATIONSHIP_GRAB_PREFETCH = "relationship_grab_prefetch";
+    @Description( "Let concurrently committing transactions share a single force of the logical log" )
+    public static final String LOGICAL_LOG_GROUP_COMMIT = "logical_log_group_commit";
+    @Description( "Maximum time in milliseconds to wait for more transactions to join a group commit" )
+    public static final String LOGICAL_LOG_GROUP_COMMIT_MAX_WAIT = "logical_log_group_commit_max_wait";
+    @Description( "Maximum number of transactions to gather in a group commit before forcing the logical log" )
+    public static final String LOGICAL_LOG_GROUP_COMMIT_MAX_BATCH = "logical_log_group_commit_max_batch";
+    @Description( "Bytes per second (k, M or G suffix allowed) a background checkpointer may write "
+                  + "when flushing changed store windows ahead of log rotation, not set means no checkpointer" )
+    public static final String CHECKPOINT_IO_RATE = "checkpoint_io_rate";
+    @Description( "Record the memory mapped store windows in use on shutdown and periodically, "
+                  + "and map and read them back in from background threads at startup" )
+    public static final String STORE_WARMUP = "store_warmup";
+    @Description( "Seconds between recording the memory mapped store windows in use when store_warmup "
+                  + "is enabled, default is 600, 0 only records them on shutdown" )
+    public static final String STORE_WARMUP_RECORD_INTERVAL = "store_warmup_record_interval";
+    @Description( "Number of new ids a thread reserves at a time when creating records, "
+                  + "1 (default) hands out new ids in strict order" )
+    public static final String ID_RANGE_SIZE = "id_range_size";
+    @Description( "Number of threads replaying store changes when recovering or applying a logical log, "
+                  + "defaults to the number of processors (at most 4), 1 replays them in the reading thread" )
+    public static final String RECOVERY_WORKERS = "recovery_workers";
+    @Description( "Let the batch inserter write relationships without linking them to their nodes and link "
+                  + "all relationship chains in one pass sorted on node when relationships are read or on shutdown" )
+    public static final String BATCH_SORTED_RELATIONSHIP_LINKING = "batch_sorted_relationship_linking";
     @Description( "Relative path for where the Neo4j logical log is located" )
     public static final String LOGICAL_LOG = "logical_log";
     @Description( "Relative path for where the Neo4j storage information file is located" )
     public static final String NEO_STORE = "neo_store";
-    @Description( "The type of cache to use for nodes and relationships, one of [weak, soft, none]" )
+    @Description( "Bytes of direct memory (k, M or G suffix allowed) to keep large string and array property values in "
+                  + "outside of the heap, not set means no off-heap property value cache" )
+    public static final String PROPERTY_VALUE_CACHE_SIZE = "offheap_property_value_cache_size";
+    @Description( "Minimum size in bytes of a string or array property value to keep it in the off-heap cache" )
+    public static final String PROPERTY_VALUE_CACHE_MIN_SIZE = "offheap_property_value_min_size";
+    @Description( "The type of cache to use for nodes and relationships, one of [weak, soft, old, clock, none]" )
     public static final String CACHE_TYPE = "cache_type";
 
     private AdaptiveCacheManager cacheManager;
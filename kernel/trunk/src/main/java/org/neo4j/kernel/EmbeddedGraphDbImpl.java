@@ -188,7 +188,7 @@ class EmbeddedGraphDbImpl
         {
             throw new NotFoundException( "Node[" + id + "]" );
         }
-        return nodeManager.getNodeById( (int) id );
+        return nodeManager.getNodeById( id );
     }
 
     public Relationship getRelationshipById( long id )
@@ -197,7 +197,7 @@ class EmbeddedGraphDbImpl
         {
             throw new NotFoundException( "Relationship[" + id + "]" );
         }
-        return nodeManager.getRelationshipById( (int) id );
+        return nodeManager.getRelationshipById( id );
     }
 
     public Node getReferenceNode()
@@ -20,14 +20,21 @@
 
 package org.neo4j.kernel;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import org.neo4j.graphdb.traversal.TraversalBranch;
+import org.neo4j.kernel.impl.util.LongBitmap;
+import org.neo4j.kernel.impl.util.LongHashSet;
 
+/**
+ * Remembers visited ids in a primitive hash set while it is small and
+ * switches to a bitmap over the id space once the visited ids are dense
+ * enough for the bitmap to take less memory. Neither boxes the ids.
+ */
 class GloballyUnique extends AbstractUniquenessFilter
 {
-    private final Set<Long> visited = new HashSet<Long>();
+    private LongHashSet visited = new LongHashSet();
+    private LongBitmap visitedBitmap = null;
+    // set size at which to see if a bitmap would be smaller
+    private int nextDensityCheck = 4096;
     
     GloballyUnique( PrimitiveTypeFetcher type )
     {
@@ -37,6 +44,42 @@ class GloballyUnique extends AbstractUniquenessFilter
     public boolean check( TraversalBranch branch, boolean remember )
     {
         long id = type.getId( branch );
-        return remember ? visited.add( id ) : !visited.contains( id );
+        if ( visitedBitmap != null )
+        {
+            return remember ? visitedBitmap.set( id ) : 
+                !visitedBitmap.get( id );
+        }
+        if ( !remember )
+        {
+            return !visited.contains( id );
+        }
+        if ( !visited.add( id ) )
+        {
+            return false;
+        }
+        if ( visited.size() >= nextDensityCheck )
+        {
+            checkDensity();
+        }
+        return true;
+    }
+
+    private void checkDensity()
+    {
+        long[] ids = visited.values();
+        // compared to the table of the set once it has doubled
+        if ( LongBitmap.estimateSize( ids ) < visited.capacity() * 16L )
+        {
+            visitedBitmap = new LongBitmap();
+            for ( long id : ids )
+            {
+                visitedBitmap.set( id );
+            }
+            visited = null;
+        }
+        else
+        {
+            nextDensityCheck = visited.size() * 2;
+        }
     }
 }
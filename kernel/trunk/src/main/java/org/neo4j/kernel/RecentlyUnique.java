@@ -21,30 +21,40 @@
 package org.neo4j.kernel;
 
 import org.neo4j.graphdb.traversal.TraversalBranch;
-import org.neo4j.kernel.impl.cache.LruCache;
+import org.neo4j.kernel.impl.util.LongLruSet;
 
+/**
+ * Remembers the most recently visited ids in a primitive LRU set. Finding
+ * an id again makes it the most recently used one, also when the check
+ * doesn't remember, and when the set is full the least recently used id is
+ * forgotten.
+ */
 class RecentlyUnique extends AbstractUniquenessFilter
 {
-    private static final Object PLACE_HOLDER = new Object();
     private static final int DEFAULT_RECENT_SIZE = 10000; 
     
-    private final LruCache<Long, Object> recentlyVisited;
+    private final LongLruSet recentlyVisited;
     
     RecentlyUnique( PrimitiveTypeFetcher type, Object parameter )
     {
         super( type );
         parameter = parameter != null ? parameter : DEFAULT_RECENT_SIZE;
-        recentlyVisited = new LruCache<Long, Object>( "Recently visited",
-                ((Number) parameter).intValue(), null );
+        int size = ((Number) parameter).intValue();
+        if ( size < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal recent size " + 
+                size );
+        }
+        recentlyVisited = new LongLruSet( size );
     }
 
     public boolean check( TraversalBranch branch, boolean remember )
     {
         long id = type.getId( branch );
-        boolean add = recentlyVisited.get( id ) == null;
-        if ( add&remember )
+        boolean add = !recentlyVisited.touch( id );
+        if ( add && remember )
         {
-            recentlyVisited.put( id, PLACE_HOLDER );
+            recentlyVisited.add( id );
         }
         return add;
     }
@@ -21,6 +21,7 @@
 package org.neo4j.kernel;
 
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Expander;
@@ -36,6 +37,7 @@ import org.neo4j.graphdb.traversal.TraversalBranch;
 import org.neo4j.graphdb.traversal.TraversalDescription;
 import org.neo4j.helpers.Predicate;
 import org.neo4j.kernel.impl.traversal.FinalTraversalBranch;
+import org.neo4j.kernel.impl.traversal.ParallelBreadthFirstPolicy;
 import org.neo4j.kernel.impl.traversal.TraversalDescriptionImpl;
 
 /**
@@ -362,6 +364,31 @@ public class Traversal
         return POSTORDER_BREADTH_FIRST_SELECTOR;
     }
 
+    /**
+     * Returns a breadth first ordering policy that expands all positions of
+     * a depth in parallel, as tasks on {@code executor}, before returning
+     * any position of the next depth. Positions are returned in depth order
+     * and, within a depth, in the order of the positions they were expanded
+     * from. Meant for wide traversals where loading relationships on a
+     * single thread is the limit.
+     * <p>
+     * The traversal gets a uniqueness filter that is safe to use from
+     * several threads. Relationships are loaded, and prune evaluators are
+     * called, from the executor threads, so those evaluators must be thread
+     * safe and changes made in the transaction of the calling thread are
+     * not seen during the expansion.
+     *
+     * @param executor the executor to expand positions on.
+     * @return a {@link BranchOrderingPolicy} for a parallel breadth first
+     *         selector.
+     */
+    public static BranchOrderingPolicy parallelBreadthFirst( 
+            ExecutorService executor )
+    {
+        return new ParallelBreadthFirstPolicy( executor, 
+                Runtime.getRuntime().availableProcessors() );
+    }
+
     /**
      * Provides hooks to help build a string representation of a {@link Path}.
      * @param <T> the type of {@link Path}.
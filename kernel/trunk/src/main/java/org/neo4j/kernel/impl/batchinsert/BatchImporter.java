@@ -0,0 +1,695 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.batchinsert;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
+
+/**
+ * Imports nodes and relationships through a {@link BatchInserter} using a 
+ * pipeline of stages running in their own threads, connected by bounded 
+ * queues of batches:
+ * <ol>
+ * <li>parse - input lines are parsed in the calling thread</li>
+ * <li>encode properties - property values are encoded into property 
+ * records, in several threads</li>
+ * <li>allocate ids - node and relationship ids are allocated in input 
+ * order</li>
+ * <li>write records - property, node and relationship records are written
+ * to the store, in several threads</li>
+ * <li>index - nodes are handed to an {@link Indexer}, if there is one</li>
+ * </ol>
+ * Relationships are written without being linked to their nodes, all 
+ * relationship chains are linked in one pass when the input has been 
+ * written, see {@link RelationshipLinker}.
+ * <p>
+ * A relationship must come after its nodes in the input, or refer to nodes
+ * already in the store. The batch inserter must not be used by other 
+ * threads while an import is running.
+ */
+public class BatchImporter
+{
+    private static Logger log = Logger.getLogger( 
+        BatchImporter.class.getName() );
+    
+    private static final int BATCH_SIZE = 1000;
+    private static final int QUEUE_SIZE = 16;
+    
+    private static final Batch END = new Batch( -1, 0 );
+    
+    /**
+     * Parses a line of input into a node or relationship to import.
+     */
+    public interface LineParser
+    {
+        /**
+         * @param line a line of input.
+         * @return the node or relationship to import or <code>null</code> 
+         * if the line should be skipped.
+         */
+        ImportEntity parse( String line );
+    }
+    
+    /**
+     * Indexes imported nodes, called from a single thread. 
+     */
+    public interface Indexer
+    {
+        void index( long nodeId, Map<String,Object> properties );
+    }
+    
+    private final BatchInserterImpl inserter;
+    private final int workers;
+    private final Indexer indexer;
+    
+    private List<StageStatistics> statistics = Collections.emptyList();
+    
+    public BatchImporter( BatchInserter inserter )
+    {
+        this( inserter, Runtime.getRuntime().availableProcessors(), null );
+    }
+    
+    /**
+     * @param inserter the batch inserter to import through.
+     * @param workers number of threads for each of the encode properties 
+     * and write records stages.
+     * @param indexer indexer for imported nodes or <code>null</code> if
+     * they should not be indexed.
+     */
+    public BatchImporter( BatchInserter inserter, int workers, 
+        Indexer indexer )
+    {
+        if ( !( inserter instanceof BatchInserterImpl ) )
+        {
+            throw new IllegalArgumentException( "Unsupported batch " +
+                "inserter " + inserter );
+        }
+        if ( workers < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal worker count " + 
+                workers );
+        }
+        this.inserter = (BatchInserterImpl) inserter;
+        this.workers = workers;
+        this.indexer = indexer;
+    }
+    
+    /**
+     * Imports all lines from a reader, returning when everything has been
+     * written to the store.
+     * 
+     * @param reader the input.
+     * @param parser parser of the lines read.
+     * @throws IOException if the input could not be read.
+     */
+    public void importFrom( Reader reader, LineParser parser ) 
+        throws IOException
+    {
+        BufferedReader lines = new BufferedReader( reader );
+        Pipeline pipeline = new Pipeline( parser );
+        try
+        {
+            String line;
+            while ( ( line = lines.readLine() ) != null && 
+                pipeline.add( line ) );
+        }
+        finally
+        {
+            pipeline.finish();
+        }
+    }
+    
+    /**
+     * Imports lines, returning when everything has been written to the 
+     * store.
+     * 
+     * @param lines the input.
+     * @param parser parser of the lines.
+     */
+    public void importLines( Iterator<String> lines, LineParser parser )
+    {
+        Pipeline pipeline = new Pipeline( parser );
+        try
+        {
+            while ( lines.hasNext() && pipeline.add( lines.next() ) );
+        }
+        finally
+        {
+            pipeline.finish();
+        }
+    }
+    
+    /**
+     * @return throughput of each stage of the last import.
+     */
+    public List<StageStatistics> getStageStatistics()
+    {
+        return statistics;
+    }
+    
+    /**
+     * Number of entities processed by a stage of the import pipeline and 
+     * the time the stage spent processing them.
+     */
+    public static class StageStatistics
+    {
+        private final String name;
+        private final int threads;
+        private final long count;
+        private final long busyTime;
+        private final long totalTime;
+        
+        StageStatistics( String name, int threads, long count, long busyTime,
+            long totalTime )
+        {
+            this.name = name;
+            this.threads = threads;
+            this.count = count;
+            this.busyTime = busyTime;
+            this.totalTime = Math.max( 1, totalTime );
+        }
+        
+        public String getName()
+        {
+            return name;
+        }
+        
+        public int getThreadCount()
+        {
+            return threads;
+        }
+        
+        /**
+         * @return number of nodes and relationships processed.
+         */
+        public long getCount()
+        {
+            return count;
+        }
+        
+        /**
+         * @return time in milliseconds the threads of the stage spent 
+         * processing, not counting time waiting on other stages.
+         */
+        public long getBusyTime()
+        {
+            return busyTime;
+        }
+        
+        /**
+         * @return nodes and relationships processed per second over the 
+         * whole import.
+         */
+        public long getThroughput()
+        {
+            return count * 1000 / totalTime;
+        }
+        
+        public String toString()
+        {
+            return name + " (" + threads + 
+                ( threads == 1 ? " thread): " : " threads): " ) + count + 
+                " entities, " + getThroughput() + "/s, busy " + 
+                ( busyTime * 100 / ( totalTime * threads ) ) + "%";
+        }
+    }
+    
+    private static class Batch
+    {
+        final long sequence;
+        final ImportEntity[] entities;
+        int size = 0;
+        
+        Batch( long sequence, int capacity )
+        {
+            this.sequence = sequence;
+            this.entities = new ImportEntity[capacity];
+        }
+    }
+    
+    private class Pipeline
+    {
+        private final LineParser parser;
+        private final RelationshipLinker linker = new RelationshipLinker();
+        private final List<Stage> stages = new ArrayList<Stage>();
+        private final CountDownLatch done = new CountDownLatch( 1 );
+        private volatile Throwable failure = null;
+        private final long startTime = System.currentTimeMillis();
+        
+        private long parseTime = 0;
+        private long parsed = 0;
+        private long sequence = 0;
+        private Batch batch;
+        
+        Pipeline( LineParser parser )
+        {
+            this.parser = parser;
+            // links relationships created through the inserter itself 
+            // before ours are written
+            inserter.linkRelationships();
+            stages.add( new EncodeStage() );
+            stages.add( new AllocateStage() );
+            stages.add( new WriteStage() );
+            if ( indexer != null )
+            {
+                stages.add( new IndexStage() );
+            }
+            for ( int i = 0; i < stages.size() - 1; i++ )
+            {
+                stages.get( i ).next = stages.get( i + 1 );
+            }
+            for ( Stage stage : stages )
+            {
+                stage.start();
+            }
+            batch = new Batch( sequence++, BATCH_SIZE );
+        }
+        
+        /**
+         * @return <code>false</code> if the import has failed and no more 
+         * input should be added.
+         */
+        boolean add( String line )
+        {
+            if ( failure != null )
+            {
+                return false;
+            }
+            long start = System.nanoTime();
+            ImportEntity entity;
+            try
+            {
+                entity = parser.parse( line );
+            }
+            catch ( RuntimeException e )
+            {
+                failed( e );
+                return false;
+            }
+            parseTime += System.nanoTime() - start;
+            if ( entity == null )
+            {
+                return true;
+            }
+            batch.entities[batch.size++] = entity;
+            parsed++;
+            if ( batch.size == BATCH_SIZE )
+            {
+                stages.get( 0 ).put( batch );
+                batch = new Batch( sequence++, BATCH_SIZE );
+            }
+            return true;
+        }
+        
+        /**
+         * Waits for all stages to finish and links the relationships of 
+         * the import.
+         */
+        void finish()
+        {
+            if ( batch.size > 0 )
+            {
+                stages.get( 0 ).put( batch );
+            }
+            stages.get( 0 ).put( END );
+            boolean interrupted = false;
+            while ( true )
+            {
+                try
+                {
+                    done.await();
+                    break;
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                }
+            }
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+            checkFailure();
+            long linkStart = System.currentTimeMillis();
+            int relationships = linker.size();
+            linker.link( inserter.getNodeStore(), 
+                inserter.getRelationshipStore() );
+            long now = System.currentTimeMillis();
+            long totalTime = now - startTime;
+            List<StageStatistics> result = new ArrayList<StageStatistics>();
+            result.add( new StageStatistics( "parse", 1, parsed, 
+                parseTime / 1000000, totalTime ) );
+            for ( Stage stage : stages )
+            {
+                result.add( new StageStatistics( stage.name, stage.threads, 
+                    stage.count.get(), stage.busyTime.get() / 1000000, 
+                    totalTime ) );
+            }
+            result.add( new StageStatistics( "link relationships", 1, 
+                relationships, now - linkStart, totalTime ) );
+            statistics = Collections.unmodifiableList( result );
+            log.info( "Imported " + parsed + " entities in " + totalTime + 
+                "ms" );
+            for ( StageStatistics stage : statistics )
+            {
+                log.info( stage.toString() );
+            }
+        }
+        
+        void failed( Throwable t )
+        {
+            if ( failure == null )
+            {
+                failure = t;
+            }
+        }
+        
+        private void checkFailure()
+        {
+            Throwable cause = failure;
+            if ( cause == null )
+            {
+                return;
+            }
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new UnderlyingStorageException( "Import failed", cause );
+        }
+        
+        private abstract class Stage
+        {
+            final String name;
+            final int threads;
+            final BlockingQueue<Batch> queue = 
+                new ArrayBlockingQueue<Batch>( QUEUE_SIZE );
+            final AtomicInteger running;
+            final AtomicLong count = new AtomicLong();
+            final AtomicLong busyTime = new AtomicLong();
+            Stage next;
+            
+            Stage( String name, int threads )
+            {
+                this.name = name;
+                this.threads = threads;
+                this.running = new AtomicInteger( threads );
+            }
+            
+            void start()
+            {
+                for ( int i = 0; i < threads; i++ )
+                {
+                    Thread thread = new Thread( "Import " + name + "[" + 
+                        i + "]" )
+                    {
+                        public void run()
+                        {
+                            runStage();
+                        }
+                    };
+                    thread.setDaemon( true );
+                    thread.start();
+                }
+            }
+            
+            void put( Batch batch )
+            {
+                while ( true )
+                {
+                    try
+                    {
+                        queue.put( batch );
+                        return;
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.interrupted();
+                    }
+                }
+            }
+            
+            private Batch take()
+            {
+                while ( true )
+                {
+                    try
+                    {
+                        return queue.take();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.interrupted();
+                    }
+                }
+            }
+            
+            private void runStage()
+            {
+                while ( true )
+                {
+                    Batch batch = take();
+                    if ( batch == END )
+                    {
+                        // let the other threads of this stage see it too
+                        put( END );
+                        if ( running.decrementAndGet() == 0 )
+                        {
+                            if ( next != null )
+                            {
+                                next.put( END );
+                            }
+                            else
+                            {
+                                done.countDown();
+                            }
+                        }
+                        return;
+                    }
+                    receive( batch );
+                }
+            }
+            
+            /**
+             * Processes a batch and hands it to the next stage.
+             */
+            void receive( Batch batch )
+            {
+                // once something has failed the rest is only drained
+                if ( failure == null )
+                {
+                    long start = System.nanoTime();
+                    try
+                    {
+                        process( batch );
+                        count.addAndGet( batch.size );
+                    }
+                    catch ( Throwable t )
+                    {
+                        failed( t );
+                    }
+                    busyTime.addAndGet( System.nanoTime() - start );
+                }
+                if ( next != null )
+                {
+                    next.put( batch );
+                }
+            }
+            
+            abstract void process( Batch batch );
+        }
+        
+        private class EncodeStage extends Stage
+        {
+            EncodeStage()
+            {
+                super( "encode properties", workers );
+            }
+            
+            void process( Batch batch )
+            {
+                for ( int i = 0; i < batch.size; i++ )
+                {
+                    ImportEntity entity = batch.entities[i];
+                    entity.propertyRecords = inserter.encodePropertyChain( 
+                        entity.getProperties() );
+                }
+            }
+        }
+        
+        private class AllocateStage extends Stage
+        {
+            // batches that have overtaken earlier batches in the encode 
+            // stage, keyed on sequence
+            private final Map<Long,Batch> waiting = new HashMap<Long,Batch>();
+            private long nextSequence = 0;
+            
+            AllocateStage()
+            {
+                super( "allocate ids", 1 );
+            }
+            
+            void receive( Batch batch )
+            {
+                waiting.put( batch.sequence, batch );
+                Batch ready;
+                while ( ( ready = waiting.remove( nextSequence ) ) != null )
+                {
+                    nextSequence++;
+                    super.receive( ready );
+                }
+            }
+            
+            void process( Batch batch )
+            {
+                NodeStore nodeStore = inserter.getNodeStore();
+                RelationshipStore relStore = inserter.getRelationshipStore();
+                for ( int i = 0; i < batch.size; i++ )
+                {
+                    ImportEntity entity = batch.entities[i];
+                    if ( entity.isNode() )
+                    {
+                        if ( entity.getId() == -1 )
+                        {
+                            entity.setId( nodeStore.nextId() & 0xFFFFFFFFL );
+                            continue;
+                        }
+                        int nodeId = (int) ( entity.getId() & 0xFFFFFFFF );
+                        if ( entity.getId() < nodeStore.getHighId() && 
+                            nodeStore.loadLightNode( nodeId ) )
+                        {
+                            throw new IllegalArgumentException( "id=" + 
+                                entity.getId() + " already in use" );
+                        }
+                        if ( nodeStore.getHighId() <= entity.getId() )
+                        {
+                            nodeStore.setHighId( nodeId + 1 );
+                        }
+                    }
+                    else
+                    {
+                        checkNode( nodeStore, entity.getStartNode() );
+                        checkNode( nodeStore, entity.getEndNode() );
+                        entity.typeId = inserter.getOrCreateRelationshipTypeId( 
+                            entity.getType().name() );
+                        int relId = relStore.nextId();
+                        entity.setId( relId & 0xFFFFFFFFL );
+                        linker.add( relId, (int) entity.getStartNode(), 
+                            (int) entity.getEndNode() );
+                    }
+                }
+            }
+            
+            private void checkNode( NodeStore nodeStore, long id )
+            {
+                if ( id < 0 || id >= nodeStore.getHighId() )
+                {
+                    throw new NotFoundException( "id=" + id );
+                }
+            }
+        }
+        
+        private class WriteStage extends Stage
+        {
+            WriteStage()
+            {
+                super( "write records", workers );
+            }
+            
+            void process( Batch batch )
+            {
+                NodeStore nodeStore = inserter.getNodeStore();
+                RelationshipStore relStore = inserter.getRelationshipStore();
+                for ( int i = 0; i < batch.size; i++ )
+                {
+                    ImportEntity entity = batch.entities[i];
+                    int nextProp = inserter.writePropertyChain( 
+                        entity.propertyRecords );
+                    entity.propertyRecords = null;
+                    int id = (int) ( entity.getId() & 0xFFFFFFFF );
+                    if ( entity.isNode() )
+                    {
+                        NodeRecord record = new NodeRecord( id );
+                        record.setInUse( true );
+                        record.setCreated();
+                        record.setNextProp( nextProp );
+                        nodeStore.updateRecord( record );
+                    }
+                    else
+                    {
+                        RelationshipRecord record = new RelationshipRecord( 
+                            id, (int) entity.getStartNode(), 
+                            (int) entity.getEndNode(), entity.typeId );
+                        record.setInUse( true );
+                        record.setCreated();
+                        record.setNextProp( nextProp );
+                        relStore.updateRecord( record );
+                    }
+                }
+            }
+        }
+        
+        private class IndexStage extends Stage
+        {
+            IndexStage()
+            {
+                super( "index", 1 );
+            }
+            
+            void process( Batch batch )
+            {
+                for ( int i = 0; i < batch.size; i++ )
+                {
+                    ImportEntity entity = batch.entities[i];
+                    if ( entity.isNode() && entity.getProperties() != null )
+                    {
+                        indexer.index( entity.getId(), 
+                            entity.getProperties() );
+                    }
+                }
+            }
+        }
+    }
+}
@@ -67,6 +67,8 @@ public class BatchInserterImpl implements BatchInserter
     
     private final StringLogger msgLog;
     
+    private final RelationshipLinker relationshipLinker;
+    
     public BatchInserterImpl( String storeDir )
     {
         this( storeDir, Collections.EMPTY_MAP );
@@ -118,6 +120,15 @@ public class BatchInserterImpl implements BatchInserter
         RelationshipTypeData[] types = 
             getRelationshipTypeStore().getRelationshipTypes();
         typeHolder = new RelationshipTypeHolder( types );
+        if ( "true".equals( params.get( 
+            Config.BATCH_SORTED_RELATIONSHIP_LINKING ) ) )
+        {
+            relationshipLinker = new RelationshipLinker();
+        }
+        else
+        {
+            relationshipLinker = null;
+        }
         graphDbService = new BatchGraphDatabaseImpl( this );
     }
     
@@ -168,19 +179,22 @@ public class BatchInserterImpl implements BatchInserter
         int secondNodeId = (int) (node2 & 0xFFFFFFFF );
         NodeRecord firstNode = getNodeRecord( node1 );
         NodeRecord secondNode = getNodeRecord( node2 );
-        int typeId = typeHolder.getTypeId( type.name() );
-        if ( typeId == -1 )
-        {
-            typeId = createNewRelationshipType( type.name() );
-        }
+        int typeId = getOrCreateRelationshipTypeId( type.name() );
         int id = getRelationshipStore().nextId(); 
         RelationshipRecord record = new RelationshipRecord( id, firstNodeId,
             secondNodeId, typeId );
         record.setInUse( true );
         record.setCreated();
-        connectRelationship( firstNode, secondNode, record );
-        getNodeStore().updateRecord( firstNode );
-        getNodeStore().updateRecord( secondNode );
+        if ( relationshipLinker != null )
+        {
+            relationshipLinker.add( id, firstNodeId, secondNodeId );
+        }
+        else
+        {
+            connectRelationship( firstNode, secondNode, record );
+            getNodeStore().updateRecord( firstNode );
+            getNodeStore().updateRecord( secondNode );
+        }
         record.setNextProp( createPropertyChain( properties ) );
         getRelationshipStore().updateRecord( record );
         return id & 0xFFFFFFFFL;
@@ -274,6 +288,7 @@ public class BatchInserterImpl implements BatchInserter
     
     public Iterable<Long> getRelationshipIds( long nodeId )
     {
+        linkRelationships();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         int nextRel = nodeRecord.getNextRel();
         List<Long> ids = new ArrayList<Long>();
@@ -303,6 +318,7 @@ public class BatchInserterImpl implements BatchInserter
     
     public Iterable<SimpleRelationship> getRelationships( long nodeId )
     {
+        linkRelationships();
         NodeRecord nodeRecord = getNodeRecord( nodeId );
         int nextRel = nodeRecord.getNextRel();
         List<SimpleRelationship> rels = new ArrayList<SimpleRelationship>();
@@ -355,10 +371,29 @@ public class BatchInserterImpl implements BatchInserter
     public void shutdown()
     {
         graphDbService.clearCaches();
+        linkRelationships();
         neoStore.close();
         msgLog.logMessage( Thread.currentThread() + " Clean shutdown on BatchInserter(" + this + ")" );
     }
 
+    /**
+     * Links relationships created in sorted linking mode into the
+     * relationship chains of their nodes. Done before relationships of a
+     * node are read and on shutdown.
+     */
+    void linkRelationships()
+    {
+        if ( relationshipLinker == null || relationshipLinker.size() == 0 )
+        {
+            return;
+        }
+        int count = relationshipLinker.size();
+        long startTime = System.currentTimeMillis();
+        relationshipLinker.link( getNodeStore(), getRelationshipStore() );
+        msgLog.logMessage( "Linked " + count + " relationships in " + 
+            ( System.currentTimeMillis() - startTime ) + "ms" );
+    }
+    
     private Map<Object,Object> getDefaultParams()
     {
         Map<Object,Object> params = new HashMap<Object,Object>();
@@ -393,21 +428,26 @@ public class BatchInserterImpl implements BatchInserter
     }
     
     private int createPropertyChain( Map<String,Object> properties )
+    {
+        return writePropertyChain( encodePropertyChain( properties ) );
+    }
+    
+    /**
+     * Encodes properties into a chain of property records without writing
+     * them, may be called from several threads at the same time.
+     */
+    List<PropertyRecord> encodePropertyChain( Map<String,Object> properties )
     {
         if ( properties == null )
         {
-            return Record.NO_NEXT_PROPERTY.intValue();
+            return Collections.emptyList();
         }
         PropertyStore propStore = getPropertyStore();
         List<PropertyRecord> propRecords = new ArrayList<PropertyRecord>();
         PropertyRecord prevRecord = null;
         for ( Entry<String,Object> entry : properties.entrySet() )
         {
-            int keyId = indexHolder.getKeyId( entry.getKey() );
-            if ( keyId == -1 )
-            {
-                keyId = createNewPropertyIndex( entry.getKey() );
-            }
+            int keyId = getOrCreatePropertyKeyId( entry.getKey() );
             int propertyId = propStore.nextId();
             PropertyRecord propertyRecord = new PropertyRecord( propertyId );
             propertyRecord.setInUse( true );
@@ -422,16 +462,47 @@ public class BatchInserterImpl implements BatchInserter
             propRecords.add( propertyRecord );
             prevRecord = propertyRecord;
         }
+        return propRecords;
+    }
+    
+    /**
+     * Writes a chain of property records from 
+     * {@link #encodePropertyChain(Map)} returning the id of the first 
+     * property in the chain.
+     */
+    int writePropertyChain( List<PropertyRecord> propRecords )
+    {
+        if ( propRecords.isEmpty() )
+        {
+            return Record.NO_NEXT_PROPERTY.intValue();
+        }
+        PropertyStore propStore = getPropertyStore();
         // reverse order results in forward update to store
         for ( int i = propRecords.size() - 1; i >=0; i-- )
         {
             propStore.updateRecord( propRecords.get( i ) );
         }
-        if ( prevRecord != null )
+        return propRecords.get( propRecords.size() - 1 ).getId();
+    }
+    
+    synchronized int getOrCreatePropertyKeyId( String key )
+    {
+        int keyId = indexHolder.getKeyId( key );
+        if ( keyId == -1 )
+        {
+            keyId = createNewPropertyIndex( key );
+        }
+        return keyId;
+    }
+    
+    synchronized int getOrCreateRelationshipTypeId( String name )
+    {
+        int typeId = typeHolder.getTypeId( name );
+        if ( typeId == -1 )
         {
-            return prevRecord.getId();
+            typeId = createNewRelationshipType( name );
         }
-        return Record.NO_NEXT_PROPERTY.intValue();
+        return typeId;
     }
     
     private void deletePropertyChain( int propertyId )
@@ -515,7 +586,7 @@ public class BatchInserterImpl implements BatchInserter
         return id;
     }
     
-    private NodeStore getNodeStore()
+    NodeStore getNodeStore()
     {
         return neoStore.getNodeStore();
     }
@@ -530,7 +601,7 @@ public class BatchInserterImpl implements BatchInserter
         return getPropertyStore().getIndexStore();
     }
     
-    private RelationshipStore getRelationshipStore()
+    RelationshipStore getRelationshipStore()
     {
         return neoStore.getRelationshipStore();
     }
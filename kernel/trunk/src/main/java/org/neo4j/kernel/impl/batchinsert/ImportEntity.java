@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.batchinsert;
+
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+
+/**
+ * A node or relationship read from the input of a {@link BatchImporter}.
+ * Created by the {@link BatchImporter.LineParser} of the import and then
+ * passed through the stages of the import pipeline.
+ */
+public class ImportEntity
+{
+    private final boolean node;
+    private long id;
+    private final long startNode;
+    private final long endNode;
+    private final RelationshipType type;
+    private final Map<String,Object> properties;
+    
+    // set by the stages of the pipeline
+    List<PropertyRecord> propertyRecords;
+    int typeId;
+    
+    private ImportEntity( boolean node, long id, long startNode, 
+        long endNode, RelationshipType type, Map<String,Object> properties )
+    {
+        this.node = node;
+        this.id = id;
+        this.startNode = startNode;
+        this.endNode = endNode;
+        this.type = type;
+        this.properties = properties;
+    }
+    
+    /**
+     * Creates a node that will be assigned the next available id.
+     * 
+     * @param properties a map containing properties or <code>null</code> 
+     * if no properties should be added.
+     * @return the node to import.
+     */
+    public static ImportEntity node( Map<String,Object> properties )
+    {
+        return new ImportEntity( true, -1, -1, -1, null, properties );
+    }
+    
+    /**
+     * Creates a node with the supplied id.
+     * 
+     * @param id the id of the node to create.
+     * @param properties a map containing properties or <code>null</code> 
+     * if no properties should be added.
+     * @return the node to import.
+     */
+    public static ImportEntity node( long id, Map<String,Object> properties )
+    {
+        if ( id < 0 || id > 0xFFFFFFFFL )
+        {
+            throw new IllegalArgumentException( "id=" + id );
+        }
+        return new ImportEntity( true, id, -1, -1, null, properties );
+    }
+    
+    /**
+     * Creates a relationship between two nodes of a specific type. The
+     * nodes must come before the relationship in the input, or already
+     * exist in the store.
+     * 
+     * @param startNode the start node.
+     * @param endNode the end node.
+     * @param type relationship type.
+     * @param properties a map containing properties or <code>null</code> 
+     * if no properties should be added.
+     * @return the relationship to import.
+     */
+    public static ImportEntity relationship( long startNode, long endNode, 
+        RelationshipType type, Map<String,Object> properties )
+    {
+        if ( startNode == endNode )
+        {
+            throw new IllegalArgumentException( "Start node[" + startNode + 
+                "] equals end node[" + endNode + "]" );
+        }
+        return new ImportEntity( false, -1, startNode, endNode, type, 
+            properties );
+    }
+    
+    public boolean isNode()
+    {
+        return node;
+    }
+    
+    /**
+     * @return the id of the node or relationship, <code>-1</code> until an
+     * id has been allocated.
+     */
+    public long getId()
+    {
+        return id;
+    }
+    
+    void setId( long id )
+    {
+        this.id = id;
+    }
+    
+    public long getStartNode()
+    {
+        return startNode;
+    }
+    
+    public long getEndNode()
+    {
+        return endNode;
+    }
+    
+    public RelationshipType getType()
+    {
+        return type;
+    }
+    
+    public Map<String,Object> getProperties()
+    {
+        return properties;
+    }
+}
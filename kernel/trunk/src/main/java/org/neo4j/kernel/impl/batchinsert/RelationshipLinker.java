@@ -0,0 +1,190 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.batchinsert;
+
+import org.neo4j.kernel.impl.nioneo.store.InvalidRecordException;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
+
+/**
+ * Keeps the end points of relationships written by the batch inserter
+ * without linking them into the relationship chains of their nodes. The
+ * chains are built in {@link #link(NodeStore, RelationshipStore)} by
+ * sorting the relationships on node and then going through the node and
+ * relationship stores in id order, instead of reading and rewriting the
+ * head of two chains for each created relationship.
+ * <p>
+ * Chains end up in the same order as when linking each relationship as it
+ * is created, last created relationship first, followed by any
+ * relationships the node already had.
+ */
+class RelationshipLinker
+{
+    private static final int NO_REL = Record.NO_NEXT_RELATIONSHIP.intValue();
+    private static final int NO_PREV_REL = 
+        Record.NO_PREV_RELATIONSHIP.intValue();
+    
+    private int[] relIds = new int[1024];
+    private int[] firstNodes = new int[1024];
+    private int[] secondNodes = new int[1024];
+    private int count = 0;
+    
+    void add( int relId, int firstNode, int secondNode )
+    {
+        if ( count == relIds.length )
+        {
+            relIds = grow( relIds );
+            firstNodes = grow( firstNodes );
+            secondNodes = grow( secondNodes );
+        }
+        relIds[count] = relId;
+        firstNodes[count] = firstNode;
+        secondNodes[count] = secondNode;
+        count++;
+    }
+    
+    private static int[] grow( int[] array )
+    {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy( array, 0, newArray, 0, array.length );
+        return newArray;
+    }
+    
+    int size()
+    {
+        return count;
+    }
+    
+    /**
+     * Links all relationships added since the last call into the chains of
+     * their nodes.
+     * 
+     * @param nodeStore the node store holding the chain heads.
+     * @param relStore the relationship store the relationships have been
+     * written to.
+     */
+    void link( NodeStore nodeStore, RelationshipStore relStore )
+    {
+        if ( count == 0 )
+        {
+            return;
+        }
+        int nodeCount = (int) nodeStore.getHighId();
+        // counting sort of relationship positions on node, each bucket in
+        // creation order
+        int[] offsets = new int[nodeCount + 1];
+        for ( int i = 0; i < count; i++ )
+        {
+            offsets[firstNodes[i] + 1]++;
+            offsets[secondNodes[i] + 1]++;
+        }
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            offsets[node + 1] += offsets[node];
+        }
+        int[] sorted = new int[count * 2];
+        int[] fill = new int[nodeCount];
+        for ( int i = 0; i < count; i++ )
+        {
+            int first = firstNodes[i];
+            sorted[offsets[first] + fill[first]++] = i;
+            int second = secondNodes[i];
+            sorted[offsets[second] + fill[second]++] = i;
+        }
+        fill = null;
+        
+        int[] firstPrev = new int[count];
+        int[] firstNext = new int[count];
+        int[] secondPrev = new int[count];
+        int[] secondNext = new int[count];
+        for ( int node = 0; node < nodeCount; node++ )
+        {
+            int start = offsets[node];
+            int end = offsets[node + 1];
+            if ( start == end )
+            {
+                continue;
+            }
+            NodeRecord nodeRecord = nodeStore.getRecord( node );
+            int oldHead = nodeRecord.getNextRel();
+            // walk the bucket from newest to oldest, that is chain order
+            for ( int j = end - 1; j >= start; j-- )
+            {
+                int i = sorted[j];
+                int prev = j < end - 1 ? relIds[sorted[j + 1]] : NO_PREV_REL;
+                int next = j > start ? relIds[sorted[j - 1]] : oldHead;
+                if ( firstNodes[i] == node )
+                {
+                    firstPrev[i] = prev;
+                    firstNext[i] = next;
+                }
+                else
+                {
+                    secondPrev[i] = prev;
+                    secondNext[i] = next;
+                }
+            }
+            if ( oldHead != NO_REL )
+            {
+                connectOldHead( relStore, node, oldHead, 
+                    relIds[sorted[start]] );
+            }
+            nodeRecord.setNextRel( relIds[sorted[end - 1]] );
+            nodeStore.updateRecord( nodeRecord );
+        }
+        offsets = null;
+        sorted = null;
+        
+        for ( int i = 0; i < count; i++ )
+        {
+            RelationshipRecord record = relStore.getRecord( relIds[i] );
+            record.setFirstPrevRel( firstPrev[i] );
+            record.setFirstNextRel( firstNext[i] );
+            record.setSecondPrevRel( secondPrev[i] );
+            record.setSecondNextRel( secondNext[i] );
+            relStore.updateRecord( record );
+        }
+        count = 0;
+    }
+    
+    private void connectOldHead( RelationshipStore relStore, int node, 
+        int oldHead, int prevRel )
+    {
+        RelationshipRecord record = relStore.getRecord( oldHead );
+        if ( record.getFirstNode() == node )
+        {
+            record.setFirstPrevRel( prevRel );
+        }
+        else if ( record.getSecondNode() == node )
+        {
+            record.setSecondPrevRel( prevRel );
+        }
+        else
+        {
+            throw new InvalidRecordException( "Node[" + node + 
+                "] not part of " + record );
+        }
+        relStore.updateRecord( record );
+    }
+}
@@ -83,7 +83,7 @@ public class AdaptiveCacheManager
         {
             throw new IllegalArgumentException( "Null cache" );
         }
-        if ( cache instanceof SoftLruCache<?,?> )
+        if ( cache instanceof SoftLruCache<?> )
         {
             referenceCaches.remove( cache );
             return;
@@ -0,0 +1,453 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.neo4j.kernel.impl.util.ConcurrentLongHashMap;
+
+/**
+ * Segmented concurrent cache with approximate least-recently-used eviction
+ * using the CLOCK (second chance) algorithm.
+ * <p>
+ * The cache is split into a number of segments, each with a concurrent map
+ * keyed by primitive longs and its own clock. A <CODE>get</CODE> takes no
+ * lock and allocates nothing, it only marks the element as referenced. <CODE>put</CODE> and <CODE>remove</CODE> lock the
+ * segment of the key. When a segment grows past its share of 
+ * <CODE>maxSize</CODE> the clock hand sweeps over the elements of that 
+ * segment, clearing the referenced mark of elements that have it and 
+ * evicting the first element found without it. For each element evicted the 
+ * {@link #elementCleaned} method is invoked.
+ * <p>
+ * Works with the {@link AdaptiveCacheManager} the same way as 
+ * {@link LruCache} does.
+ */
+public class ClockCache<E> implements LongKeyCache<E>
+{
+    private static final int DEFAULT_SEGMENT_COUNT = 16;
+
+    private final String name;
+    private volatile int maxSize;
+    private volatile int segmentMaxSize;
+    private volatile boolean adaptive = false;
+    private final AtomicBoolean resizing = new AtomicBoolean();
+    private final List<Segment<E>> segments;
+    private final int segmentMask;
+
+    private final AdaptiveCacheManager cacheManager;
+
+    /**
+     * Creates a clock cache. If <CODE>maxSize < 1</CODE> an
+     * IllegalArgumentException is thrown.
+     * 
+     * @param name
+     *            name of cache
+     * @param maxSize
+     *            maximum size of this cache
+     * @param cacheManager
+     *            adaptive cache manager or null if adaptive caching not needed
+     */
+    public ClockCache( String name, int maxSize, 
+        AdaptiveCacheManager cacheManager )
+    {
+        this( name, maxSize, cacheManager, DEFAULT_SEGMENT_COUNT );
+    }
+
+    ClockCache( String name, int maxSize, AdaptiveCacheManager cacheManager,
+        int segmentCount )
+    {
+        if ( name == null || maxSize < 1 || segmentCount < 1 )
+        {
+            throw new IllegalArgumentException( "maxSize=" + maxSize
+                + ", name=" + name + ", segmentCount=" + segmentCount );
+        }
+        int count = 1;
+        while ( count < segmentCount )
+        {
+            count <<= 1;
+        }
+        this.name = name;
+        this.cacheManager = cacheManager;
+        this.segments = new ArrayList<Segment<E>>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            segments.add( new Segment<E>() );
+        }
+        this.segmentMask = count - 1;
+        setMaxSize( maxSize );
+    }
+
+    private void setMaxSize( int newMaxSize )
+    {
+        this.maxSize = newMaxSize;
+        this.segmentMaxSize = Math.max( 1, 
+            ( newMaxSize + segments.size() - 1 ) / segments.size() );
+    }
+
+    private Segment<E> segmentFor( long key )
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return segments.get( (int) ( hash >>> 48 ) & segmentMask );
+    }
+
+    public String getName()
+    {
+        return this.name;
+    }
+
+    public void put( Long key, E element )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException( "Null key" );
+        }
+        put( key.longValue(), element );
+    }
+
+    public void put( long key, E element )
+    {
+        if ( element == null )
+        {
+            throw new IllegalArgumentException( "key=" + key + ", element="
+                + element );
+        }
+        Segment<E> segment = segmentFor( key );
+        boolean full;
+        synchronized ( segment )
+        {
+            segment.put( key, element );
+            full = segment.size() > segmentMaxSize;
+            if ( full && !isAdaptive() )
+            {
+                evict( segment );
+            }
+        }
+        if ( full && isAdaptive() )
+        {
+            // adapt outside of segment lock since resize locks all segments
+            if ( resizing.compareAndSet( false, true ) )
+            {
+                try
+                {
+                    cacheManager.adaptCache( this );
+                }
+                finally
+                {
+                    resizing.set( false );
+                }
+            }
+            synchronized ( segment )
+            {
+                evict( segment );
+            }
+        }
+    }
+
+    // evict elements from segment until it fits, must hold segment lock
+    private void evict( Segment<E> segment )
+    {
+        while ( segment.size() > segmentMaxSize )
+        {
+            E element = segment.evictOne();
+            if ( element == null )
+            {
+                break;
+            }
+            elementCleaned( element );
+        }
+    }
+
+    public E remove( Long key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException( "Null parameter" );
+        }
+        return remove( key.longValue() );
+    }
+
+    public E remove( long key )
+    {
+        Segment<E> segment = segmentFor( key );
+        synchronized ( segment )
+        {
+            return segment.remove( key );
+        }
+    }
+
+    public E get( Long key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException();
+        }
+        return get( key.longValue() );
+    }
+
+    public E get( long key )
+    {
+        return segmentFor( key ).get( key );
+    }
+
+    public void clear()
+    {
+        for ( Segment<E> segment : segments )
+        {
+            synchronized ( segment )
+            {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for ( Segment<E> segment : segments )
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the maximum size of this cache.
+     * 
+     * @return maximum size
+     */
+    public int maxSize()
+    {
+        return maxSize;
+    }
+
+    /**
+     * Changes the max size of the cache. If <CODE>newMaxSize</CODE> is less
+     * then <CODE>size()</CODE> each segment is shrunk to its share of the new
+     * size, for each element removed the {@link #elementCleaned} method is
+     * invoked.
+     * <p>
+     * If <CODE>newMaxSize</CODE> is less then <CODE>1</CODE> an
+     * {@link IllegalArgumentException} is thrown.
+     * 
+     * @param newMaxSize
+     *            the new maximum size of the cache
+     */
+    public void resize( int newMaxSize )
+    {
+        if ( newMaxSize < 1 )
+        {
+            throw new IllegalArgumentException( "newMaxSize=" + newMaxSize );
+        }
+        setMaxSize( newMaxSize );
+        for ( Segment<E> segment : segments )
+        {
+            synchronized ( segment )
+            {
+                evict( segment );
+            }
+        }
+    }
+
+    public void elementCleaned( E element )
+    {
+    }
+
+    public boolean isAdaptive()
+    {
+        return adaptive && cacheManager != null;
+    }
+
+    public void setAdaptiveStatus( boolean status )
+    {
+        this.adaptive = status;
+    }
+
+    public void putAll( Map<Long,E> map )
+    {
+        for ( Map.Entry<Long,E> entry : map.entrySet() )
+        {
+            put( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    private static class Node<E>
+    {
+        final long key;
+        volatile E element;
+        volatile boolean referenced;
+        boolean removed;
+        Node<E> next;
+
+        Node( long key, E element )
+        {
+            this.key = key;
+            this.element = element;
+        }
+    }
+
+    /**
+     * The map is read without locking, all modifications of the map and the
+     * clock (a queue of nodes where the head is the clock hand) are done 
+     * holding the monitor of the segment.
+     */
+    private static class Segment<E>
+    {
+        // modified under the segment monitor, so one map segment is enough
+        private final ConcurrentLongHashMap<Node<E>> map = 
+            new ConcurrentLongHashMap<Node<E>>( 16, 1 );
+        private Node<E> hand;
+        private Node<E> tail;
+        private volatile int size;
+        // removed nodes still in the clock
+        private int garbage;
+
+        E get( long key )
+        {
+            Node<E> node = map.get( key );
+            if ( node == null )
+            {
+                return null;
+            }
+            if ( !node.referenced )
+            {
+                node.referenced = true;
+            }
+            return node.element;
+        }
+
+        void put( long key, E element )
+        {
+            Node<E> node = map.get( key );
+            if ( node != null )
+            {
+                node.element = element;
+                node.referenced = true;
+                return;
+            }
+            node = new Node<E>( key, element );
+            map.put( key, node );
+            enqueue( node );
+            size++;
+        }
+
+        E remove( long key )
+        {
+            Node<E> node = map.remove( key );
+            if ( node == null )
+            {
+                return null;
+            }
+            // unlinked lazily when the hand reaches it
+            node.removed = true;
+            size--;
+            if ( ++garbage > 16 && garbage > size )
+            {
+                purgeRemoved();
+            }
+            return node.element;
+        }
+
+        E evictOne()
+        {
+            while ( hand != null )
+            {
+                Node<E> node = dequeue();
+                if ( node.removed )
+                {
+                    garbage--;
+                    continue;
+                }
+                if ( node.referenced )
+                {
+                    // second chance
+                    node.referenced = false;
+                    enqueue( node );
+                    continue;
+                }
+                map.remove( node.key );
+                node.removed = true;
+                size--;
+                return node.element;
+            }
+            return null;
+        }
+
+        void clear()
+        {
+            map.clear();
+            hand = null;
+            tail = null;
+            size = 0;
+            garbage = 0;
+        }
+
+        private void purgeRemoved()
+        {
+            Node<E> node = hand;
+            hand = null;
+            tail = null;
+            while ( node != null )
+            {
+                Node<E> next = node.next;
+                if ( !node.removed )
+                {
+                    enqueue( node );
+                }
+                node = next;
+            }
+            garbage = 0;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        private void enqueue( Node<E> node )
+        {
+            node.next = null;
+            if ( tail == null )
+            {
+                hand = node;
+            }
+            else
+            {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        private Node<E> dequeue()
+        {
+            Node<E> node = hand;
+            hand = node.next;
+            if ( hand == null )
+            {
+                tail = null;
+            }
+            node.next = null;
+            return node;
+        }
+    }
+}
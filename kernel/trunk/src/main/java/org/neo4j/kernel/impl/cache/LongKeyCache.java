@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.cache;
+
+/**
+ * A {@link Cache} keyed by primitive longs, used for the node and
+ * relationship caches. The long variants of <CODE>get</CODE>,
+ * <CODE>put</CODE> and <CODE>remove</CODE> are what the core layer calls,
+ * implementations look the key up without boxing it where they can. The
+ * {@link Long} keyed methods inherited from {@link Cache} behave the same.
+ */
+public interface LongKeyCache<V> extends Cache<Long,V>
+{
+    /**
+     * Adds <CODE>value</CODE> to cache.
+     * 
+     * @param key
+     *            the key for the element
+     * @param value
+     *            the element to cache
+     */
+    public void put( long key, V value );
+
+    /**
+     * Removes the element for <CODE>key</CODE> from cache and returns it. If
+     * the no element for <CODE>key</CODE> exists <CODE>null</CODE> is
+     * returned.
+     * 
+     * @param key
+     *            the key for the element
+     * @return the removed element or <CODE>null</CODE> if element didn't
+     *         exist
+     */
+    public V remove( long key );
+
+    /**
+     * Returns the cached element for <CODE>key</CODE>. If the element isn't
+     * in cache <CODE>null</CODE> is returned.
+     * 
+     * @param key
+     *            the key for the element
+     * @return the cached element or <CODE>null</CODE> if element didn't exist
+     */
+    public V get( long key );
+}
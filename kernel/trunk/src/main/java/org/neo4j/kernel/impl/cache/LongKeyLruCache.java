@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.cache;
+
+/**
+ * A {@link LruCache} for long keys. The cache is a
+ * {@link java.util.LinkedHashMap} in access order so the long keyed methods
+ * box the key, the {@link ClockCache} is the bounded cache with primitive
+ * long keys.
+ */
+public class LongKeyLruCache<E> extends LruCache<Long,E> 
+    implements LongKeyCache<E>
+{
+    public LongKeyLruCache( String name, int maxSize,
+        AdaptiveCacheManager cacheManager )
+    {
+        super( name, maxSize, cacheManager );
+    }
+
+    public void put( long key, E element )
+    {
+        put( Long.valueOf( key ), element );
+    }
+
+    public E remove( long key )
+    {
+        return remove( Long.valueOf( key ) );
+    }
+
+    public E get( long key )
+    {
+        return get( Long.valueOf( key ) );
+    }
+}
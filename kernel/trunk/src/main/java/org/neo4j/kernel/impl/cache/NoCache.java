@@ -22,7 +22,7 @@ package org.neo4j.kernel.impl.cache;
 
 import java.util.Map;
 
-public class NoCache<K,V> implements Cache<K,V>
+public class NoCache<V> implements LongKeyCache<V>
 {
     private final String name;
     
@@ -31,20 +31,34 @@ public class NoCache<K,V> implements Cache<K,V>
         this.name = name;
     }
     
-    public void put( K key, V value )
+    public void put( long key, V value )
     {
     }
     
-    public void putAll( Map<K,V> map )
+    public void put( Long key, V value )
     {
     }
     
-    public V get( K key )
+    public void putAll( Map<Long,V> map )
+    {
+    }
+    
+    public V get( long key )
+    {
+        return null;
+    }
+    
+    public V get( Long key )
+    {
+        return null;
+    }
+    
+    public V remove( long key )
     {
         return null;
     }
     
-    public V remove( K key )
+    public V remove( Long key )
     {
         return null;
     }
@@ -0,0 +1,568 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.neo4j.kernel.impl.util.IntMap;
+
+/**
+ * Cache of property values kept outside of the Java heap in direct
+ * {@link ByteBuffer}s. Only strings, string arrays and primitive arrays that
+ * serialize to at least <CODE>minValueSize</CODE> bytes are accepted, those
+ * are the values that are stored in dynamic records and loaded lazily.
+ * <p>
+ * The memory is split into stripes, each with its own lock, and a key always
+ * goes to the same stripe. A stripe is used as a ring: values are appended
+ * at the write position and when a new value needs space the oldest values
+ * in its way are evicted (FIFO). A value is deserialized into a new object
+ * on every {@link #get}, so the heap only holds it for as long as the caller
+ * does.
+ * <p>
+ * Keys are property record ids. Since record ids are reused the caller must
+ * {@link #remove} a key once the property it refers to is changed or
+ * deleted. A value read from the store may be stale by the time it is put
+ * in the cache, so the caller takes a {@link #stamp} before reading it and
+ * the put is refused if the stripe of the key saw a remove in between.
+ */
+public class OffHeapValueCache
+{
+    private static final byte STRING = 0;
+    private static final byte STRING_ARRAY = 1;
+    private static final byte INT_ARRAY = 2;
+    private static final byte LONG_ARRAY = 3;
+    private static final byte BYTE_ARRAY = 4;
+    private static final byte SHORT_ARRAY = 5;
+    private static final byte CHAR_ARRAY = 6;
+    private static final byte FLOAT_ARRAY = 7;
+    private static final byte DOUBLE_ARRAY = 8;
+    private static final byte BOOLEAN_ARRAY = 9;
+
+    private static final int DEFAULT_STRIPE_COUNT = 16;
+    // smaller stripes would cap the size of cacheable values too much
+    private static final int MIN_STRIPE_CAPACITY = 64 * 1024;
+
+    private static class Entry
+    {
+        final int key;
+        final int offset;
+        final int size;
+        final byte type;
+        final int length;
+        boolean removed = false;
+
+        Entry( int key, int offset, int size, byte type, int length )
+        {
+            this.key = key;
+            this.offset = offset;
+            this.size = size;
+            this.type = type;
+            this.length = length;
+        }
+    }
+
+    private final int capacity;
+    private final int minValueSize;
+    private final List<Stripe> stripes;
+    private final int stripeMask;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache allocating <CODE>capacity</CODE> bytes of direct 
+     * memory. If <CODE>capacity < 1</CODE> an IllegalArgumentException is
+     * thrown.
+     * 
+     * @param capacity size in bytes of the direct buffer
+     * @param minValueSize values serializing to fewer bytes are not cached
+     */
+    public OffHeapValueCache( int capacity, int minValueSize )
+    {
+        this( capacity, minValueSize, stripeCountFor( capacity ) );
+    }
+
+    OffHeapValueCache( int capacity, int minValueSize, int stripeCount )
+    {
+        if ( capacity < 1 || stripeCount < 1 || 
+            ( stripeCount & ( stripeCount - 1 ) ) != 0 || 
+            stripeCount > capacity )
+        {
+            throw new IllegalArgumentException( "capacity=" + capacity + 
+                ", stripeCount=" + stripeCount );
+        }
+        this.capacity = capacity;
+        this.minValueSize = minValueSize;
+        ByteBuffer memory = ByteBuffer.allocateDirect( capacity );
+        int stripeCapacity = capacity / stripeCount;
+        this.stripes = new ArrayList<Stripe>( stripeCount );
+        for ( int i = 0; i < stripeCount; i++ )
+        {
+            // the last stripe gets what is left after the division
+            int end = i == stripeCount - 1 ? capacity : 
+                ( i + 1 ) * stripeCapacity;
+            memory.limit( end );
+            memory.position( i * stripeCapacity );
+            stripes.add( new Stripe( memory.slice() ) );
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    private static int stripeCountFor( int capacity )
+    {
+        int count = DEFAULT_STRIPE_COUNT;
+        while ( count > 1 && capacity / count < MIN_STRIPE_CAPACITY )
+        {
+            count >>= 1;
+        }
+        return count;
+    }
+
+    private Stripe stripeFor( int key )
+    {
+        return stripes.get( ( ( key * 0x9E3779B9 ) >>> 16 ) & stripeMask );
+    }
+
+    /**
+     * Returns a new copy of the value cached for <CODE>key</CODE> or 
+     * <CODE>null</CODE> if there is none.
+     */
+    public Object get( int key )
+    {
+        Object value = stripeFor( key ).get( key );
+        if ( value == null )
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Returns a stamp to take before the value of <CODE>key</CODE> is read
+     * from the store and to pass to {@link #put(int, Object, long)} with the
+     * value read.
+     */
+    public long stamp( int key )
+    {
+        return stripeFor( key ).stamp();
+    }
+
+    /**
+     * Caches a value that can not have been changed concurrently, see
+     * {@link #put(int, Object, long)}.
+     */
+    public boolean put( int key, Object value )
+    {
+        Stripe stripe = stripeFor( key );
+        return put( stripe, key, value, stripe.stamp() );
+    }
+
+    /**
+     * Caches <CODE>value</CODE> under <CODE>key</CODE> if it is of a type
+     * this cache handles and its size is at least the minimum value size 
+     * and at most a quarter of the capacity of a stripe. The value is not
+     * cached if a key in the same stripe was removed since 
+     * <CODE>stamp</CODE> was taken, it may have been changed after it was
+     * read.
+     * 
+     * @return <CODE>true</CODE> if the value is (already) cached
+     */
+    public boolean put( int key, Object value, long stamp )
+    {
+        return put( stripeFor( key ), key, value, stamp );
+    }
+
+    private boolean put( Stripe stripe, int key, Object value, long stamp )
+    {
+        int size = sizeOf( value );
+        if ( size < minValueSize || size > stripe.capacity / 4 )
+        {
+            return false;
+        }
+        return stripe.put( key, value, size, stamp );
+    }
+
+    /**
+     * Removes the value cached for <CODE>key</CODE>, if any.
+     */
+    public void remove( int key )
+    {
+        stripeFor( key ).remove( key );
+    }
+
+    public void clear()
+    {
+        for ( Stripe stripe : stripes )
+        {
+            stripe.clear();
+        }
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    public long getUsedBytes()
+    {
+        long usedBytes = 0;
+        for ( Stripe stripe : stripes )
+        {
+            usedBytes += stripe.getUsedBytes();
+        }
+        return usedBytes;
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for ( Stripe stripe : stripes )
+        {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    private class Stripe
+    {
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private final IntMap<Entry> entries = new IntMap<Entry>();
+        private final LinkedList<Entry> ring = new LinkedList<Entry>();
+        private int writePosition = 0;
+        private long usedBytes = 0;
+        // number of removes, a put with an older stamp may be stale
+        private long invalidations = 0;
+
+        Stripe( ByteBuffer buffer )
+        {
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        synchronized Object get( int key )
+        {
+            Entry entry = entries.get( key );
+            if ( entry == null )
+            {
+                return null;
+            }
+            buffer.position( entry.offset );
+            return read( buffer, entry.type, entry.length );
+        }
+
+        synchronized long stamp()
+        {
+            return invalidations;
+        }
+
+        synchronized boolean put( int key, Object value, int size, 
+            long stamp )
+        {
+            if ( stamp != invalidations )
+            {
+                return false;
+            }
+            if ( entries.get( key ) != null )
+            {
+                return true;
+            }
+            if ( writePosition + size > capacity )
+            {
+                // values between write position and end of buffer are the
+                // oldest, evict them and wrap
+                while ( !ring.isEmpty() && 
+                    ring.getFirst().offset >= writePosition )
+                {
+                    evict( ring.removeFirst() );
+                }
+                writePosition = 0;
+            }
+            while ( !ring.isEmpty() && 
+                ring.getFirst().offset >= writePosition &&
+                ring.getFirst().offset < writePosition + size )
+            {
+                evict( ring.removeFirst() );
+            }
+            buffer.position( writePosition );
+            Entry entry = write( buffer, key, value, size );
+            ring.addLast( entry );
+            entries.put( key, entry );
+            writePosition += size;
+            usedBytes += size;
+            return true;
+        }
+
+        private void evict( Entry entry )
+        {
+            if ( !entry.removed )
+            {
+                entries.remove( entry.key );
+                usedBytes -= entry.size;
+                evictions.incrementAndGet();
+            }
+        }
+
+        synchronized void remove( int key )
+        {
+            invalidations++;
+            Entry entry = entries.remove( key );
+            if ( entry != null )
+            {
+                entry.removed = true;
+                usedBytes -= entry.size;
+            }
+        }
+
+        synchronized void clear()
+        {
+            invalidations++;
+            entries.clear();
+            ring.clear();
+            writePosition = 0;
+            usedBytes = 0;
+        }
+
+        synchronized long getUsedBytes()
+        {
+            return usedBytes;
+        }
+
+        synchronized int size()
+        {
+            return entries.size();
+        }
+    }
+
+    private static int sizeOf( Object value )
+    {
+        if ( value instanceof String )
+        {
+            return ((String) value).length() * 2;
+        }
+        if ( value instanceof String[] )
+        {
+            int size = 0;
+            for ( String string : (String[]) value )
+            {
+                size += 4 + string.length() * 2;
+            }
+            return size;
+        }
+        if ( value instanceof int[] )
+        {
+            return ((int[]) value).length * 4;
+        }
+        if ( value instanceof long[] )
+        {
+            return ((long[]) value).length * 8;
+        }
+        if ( value instanceof byte[] )
+        {
+            return ((byte[]) value).length;
+        }
+        if ( value instanceof short[] )
+        {
+            return ((short[]) value).length * 2;
+        }
+        if ( value instanceof char[] )
+        {
+            return ((char[]) value).length * 2;
+        }
+        if ( value instanceof float[] )
+        {
+            return ((float[]) value).length * 4;
+        }
+        if ( value instanceof double[] )
+        {
+            return ((double[]) value).length * 8;
+        }
+        if ( value instanceof boolean[] )
+        {
+            return ((boolean[]) value).length;
+        }
+        return -1;
+    }
+
+    private static Entry write( ByteBuffer buffer, int key, Object value,
+        int size )
+    {
+        int offset = buffer.position();
+        if ( value instanceof String )
+        {
+            String string = (String) value;
+            writeString( buffer, string );
+            return new Entry( key, offset, size, STRING, string.length() );
+        }
+        if ( value instanceof String[] )
+        {
+            String[] array = (String[]) value;
+            for ( String string : array )
+            {
+                buffer.putInt( string.length() );
+                writeString( buffer, string );
+            }
+            return new Entry( key, offset, size, STRING_ARRAY, array.length );
+        }
+        if ( value instanceof int[] )
+        {
+            int[] array = (int[]) value;
+            buffer.asIntBuffer().put( array );
+            return new Entry( key, offset, size, INT_ARRAY, array.length );
+        }
+        if ( value instanceof long[] )
+        {
+            long[] array = (long[]) value;
+            buffer.asLongBuffer().put( array );
+            return new Entry( key, offset, size, LONG_ARRAY, array.length );
+        }
+        if ( value instanceof byte[] )
+        {
+            byte[] array = (byte[]) value;
+            buffer.put( array );
+            return new Entry( key, offset, size, BYTE_ARRAY, array.length );
+        }
+        if ( value instanceof short[] )
+        {
+            short[] array = (short[]) value;
+            buffer.asShortBuffer().put( array );
+            return new Entry( key, offset, size, SHORT_ARRAY, array.length );
+        }
+        if ( value instanceof char[] )
+        {
+            char[] array = (char[]) value;
+            buffer.asCharBuffer().put( array );
+            return new Entry( key, offset, size, CHAR_ARRAY, array.length );
+        }
+        if ( value instanceof float[] )
+        {
+            float[] array = (float[]) value;
+            buffer.asFloatBuffer().put( array );
+            return new Entry( key, offset, size, FLOAT_ARRAY, array.length );
+        }
+        if ( value instanceof double[] )
+        {
+            double[] array = (double[]) value;
+            buffer.asDoubleBuffer().put( array );
+            return new Entry( key, offset, size, DOUBLE_ARRAY, array.length );
+        }
+        boolean[] array = (boolean[]) value;
+        for ( boolean b : array )
+        {
+            buffer.put( b ? (byte) 1 : (byte) 0 );
+        }
+        return new Entry( key, offset, size, BOOLEAN_ARRAY, array.length );
+    }
+
+    private static void writeString( ByteBuffer buffer, String string )
+    {
+        int length = string.length();
+        for ( int i = 0; i < length; i++ )
+        {
+            buffer.putChar( string.charAt( i ) );
+        }
+    }
+
+    private static String readString( ByteBuffer buffer, int length )
+    {
+        char[] chars = new char[length];
+        buffer.asCharBuffer().get( chars );
+        buffer.position( buffer.position() + length * 2 );
+        return new String( chars );
+    }
+
+    private static Object read( ByteBuffer buffer, byte type, int length )
+    {
+        switch ( type )
+        {
+            case STRING:
+                return readString( buffer, length );
+            case STRING_ARRAY:
+                String[] strings = new String[length];
+                for ( int i = 0; i < length; i++ )
+                {
+                    strings[i] = readString( buffer, buffer.getInt() );
+                }
+                return strings;
+            case INT_ARRAY:
+                int[] ints = new int[length];
+                buffer.asIntBuffer().get( ints );
+                return ints;
+            case LONG_ARRAY:
+                long[] longs = new long[length];
+                buffer.asLongBuffer().get( longs );
+                return longs;
+            case BYTE_ARRAY:
+                byte[] bytes = new byte[length];
+                buffer.get( bytes );
+                return bytes;
+            case SHORT_ARRAY:
+                short[] shorts = new short[length];
+                buffer.asShortBuffer().get( shorts );
+                return shorts;
+            case CHAR_ARRAY:
+                char[] chars = new char[length];
+                buffer.asCharBuffer().get( chars );
+                return chars;
+            case FLOAT_ARRAY:
+                float[] floats = new float[length];
+                buffer.asFloatBuffer().get( floats );
+                return floats;
+            case DOUBLE_ARRAY:
+                double[] doubles = new double[length];
+                buffer.asDoubleBuffer().get( doubles );
+                return doubles;
+            case BOOLEAN_ARRAY:
+                boolean[] booleans = new boolean[length];
+                for ( int i = 0; i < length; i++ )
+                {
+                    booleans[i] = buffer.get() != 0;
+                }
+                return booleans;
+            default:
+                throw new IllegalStateException( "Unknown type " + type );
+        }
+    }
+}
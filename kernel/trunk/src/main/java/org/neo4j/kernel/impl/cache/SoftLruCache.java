@@ -20,19 +20,24 @@
 
 package org.neo4j.kernel.impl.cache;
 
-import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
-public class SoftLruCache<K,V> extends ReferenceCache<K,V>
+import org.neo4j.kernel.impl.util.ConcurrentLongHashMap;
+
+/**
+ * Keeps elements through soft references in a concurrent map with primitive
+ * long keys, see {@link ConcurrentLongHashMap}. A <CODE>get</CODE> neither
+ * locks nor allocates.
+ */
+public class SoftLruCache<V> extends ReferenceCache<Long,V> 
+    implements LongKeyCache<V>
 {
-    private final ConcurrentHashMap<K,SoftValue<K,V>> cache =
-        new ConcurrentHashMap<K,SoftValue<K,V>>();
+    private final ConcurrentLongHashMap<SoftValue<V>> cache =
+        new ConcurrentLongHashMap<SoftValue<V>>();
     
-    private final SoftReferenceQueue<K,V> refQueue = 
-        new SoftReferenceQueue<K,V>();
+    private final SoftReferenceQueue<V> refQueue = 
+        new SoftReferenceQueue<V>();
     
     private final String name;
     
@@ -41,42 +46,50 @@ public class SoftLruCache<K,V> extends ReferenceCache<K,V>
         this.name = name;
     }
     
-    public void put( K key, V value )
+    public void put( long key, V value )
     {
-        SoftValue<K,V> ref = 
-            new SoftValue<K,V>( key, value, (ReferenceQueue<V>) refQueue ); 
+        SoftValue<V> ref = new SoftValue<V>( key, value, refQueue ); 
         cache.put( key, ref );
         pollClearedValues();
     }
     
-    public void putAll( Map<K,V> map )
+    public void put( Long key, V value )
     {
-        Map<K,SoftValue<K,V>> softMap = new HashMap<K,SoftValue<K,V>>( map.size() * 2 );
-        for ( Map.Entry<K, V> entry : map.entrySet() )
+        put( key.longValue(), value );
+    }
+    
+    public void putAll( Map<Long,V> map )
+    {
+        for ( Map.Entry<Long,V> entry : map.entrySet() )
         {
-            SoftValue<K,V> ref = 
-                new SoftValue<K,V>( entry.getKey(), entry.getValue(), (ReferenceQueue<V>) refQueue );
-            softMap.put( entry.getKey(), ref );
+            SoftValue<V> ref = new SoftValue<V>( entry.getKey(), 
+                entry.getValue(), refQueue );
+            cache.put( entry.getKey(), ref );
         }
-        cache.putAll( softMap );
         pollClearedValues();
     }
     
-    public V get( K key )
+    public V get( long key )
     {
         SoftReference<V> ref = cache.get( key );
         if ( ref != null )
         {
-            if ( ref.get() == null )
+            V value = ref.get();
+            if ( value == null )
             {
-                cache.remove( key );
+                cache.remove( key, ref );
             }
-            return ref.get();
+            return value;
         }
         return null;
     }
     
-    public V remove( K key )
+    public V get( Long key )
+    {
+        return get( key.longValue() );
+    }
+    
+    public V remove( long key )
     {
         SoftReference<V> ref = cache.remove( key );
         if ( ref != null )
@@ -86,12 +99,18 @@ public class SoftLruCache<K,V> extends ReferenceCache<K,V>
         return null;
     }
     
+    public V remove( Long key )
+    {
+        return remove( key.longValue() );
+    }
+
     protected void pollClearedValues()
     {
-        SoftValue<K,V> clearedValue = refQueue.safePoll();
+        SoftValue<?> clearedValue = refQueue.safePoll();
         while ( clearedValue != null )
         {
-            cache.remove( clearedValue.key );
+            // only if it hasn't been replaced by a newer value
+            cache.remove( clearedValue.key, clearedValue );
             clearedValue = refQueue.safePoll();
         }
     }
@@ -132,4 +151,4 @@ public class SoftLruCache<K,V> extends ReferenceCache<K,V>
     public void setAdaptiveStatus( boolean status )
     {
     }
-}
\ No newline at end of file
+}
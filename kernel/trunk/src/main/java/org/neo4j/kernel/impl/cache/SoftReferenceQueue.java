@@ -22,15 +22,15 @@ package org.neo4j.kernel.impl.cache;
 
 import java.lang.ref.ReferenceQueue;
 
-public class SoftReferenceQueue<K,V> extends ReferenceQueue<SoftValue>
+public class SoftReferenceQueue<V> extends ReferenceQueue<V>
 {
     public SoftReferenceQueue()
     {
         super();
     }
     
-    public SoftValue<K,V> safePoll()
+    public SoftValue<?> safePoll()
     {
-        return (SoftValue) poll();
+        return (SoftValue<?>) poll();
     }
 }
@@ -23,17 +23,17 @@ package org.neo4j.kernel.impl.cache;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.SoftReference;
 
-public class SoftValue<K,V> extends SoftReference<V> 
+public class SoftValue<V> extends SoftReference<V> 
 {
-    public final K key;
+    public final long key;
     
-    public SoftValue( K key, V value, ReferenceQueue<? super V> queue )
+    public SoftValue( long key, V value, ReferenceQueue<? super V> queue )
     {
         super( value, queue );
         this.key = key;
     }
 
-    public SoftValue( K key, V value )
+    public SoftValue( long key, V value )
     {
         super( value );
         this.key = key;
@@ -20,19 +20,24 @@
 
 package org.neo4j.kernel.impl.cache;
 
-import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
-public class WeakLruCache<K,V> extends ReferenceCache<K,V>
+import org.neo4j.kernel.impl.util.ConcurrentLongHashMap;
+
+/**
+ * Keeps elements through weak references in a concurrent map with primitive
+ * long keys, see {@link ConcurrentLongHashMap}. A <CODE>get</CODE> neither
+ * locks nor allocates.
+ */
+public class WeakLruCache<V> extends ReferenceCache<Long,V> 
+    implements LongKeyCache<V>
 {
-    private final ConcurrentHashMap<K,WeakValue<K,V>> cache =
-        new ConcurrentHashMap<K,WeakValue<K,V>>();
+    private final ConcurrentLongHashMap<WeakValue<V>> cache =
+        new ConcurrentLongHashMap<WeakValue<V>>();
     
-    private final WeakReferenceQueue<K,V> refQueue = 
-        new WeakReferenceQueue<K,V>();
+    private final WeakReferenceQueue<V> refQueue = 
+        new WeakReferenceQueue<V>();
     
     private final String name;
     
@@ -41,42 +46,50 @@ public class WeakLruCache<K,V> extends ReferenceCache<K,V>
         this.name = name;
     }
     
-    public void put( K key, V value )
+    public void put( long key, V value )
     {
-        WeakValue<K,V> ref = 
-            new WeakValue<K,V>( key, value, (ReferenceQueue<V>) refQueue ); 
+        WeakValue<V> ref = new WeakValue<V>( key, value, refQueue ); 
         cache.put( key, ref );
         pollClearedValues();
     }
     
-    public void putAll( Map<K,V> map )
+    public void put( Long key, V value )
     {
-        Map<K,WeakValue<K,V>> softMap = new HashMap<K,WeakValue<K,V>>( map.size() * 2 );
-        for ( Map.Entry<K, V> entry : map.entrySet() )
+        put( key.longValue(), value );
+    }
+    
+    public void putAll( Map<Long,V> map )
+    {
+        for ( Map.Entry<Long,V> entry : map.entrySet() )
         {
-            WeakValue<K,V> ref = 
-                new WeakValue<K,V>( entry.getKey(), entry.getValue(), (ReferenceQueue<V>) refQueue );
-            softMap.put( entry.getKey(), ref );
+            WeakValue<V> ref = new WeakValue<V>( entry.getKey(), 
+                entry.getValue(), refQueue );
+            cache.put( entry.getKey(), ref );
         }
-        cache.putAll( softMap );
         pollClearedValues();
     }
     
-    public V get( K key )
+    public V get( long key )
     {
         WeakReference<V> ref = cache.get( key );
         if ( ref != null )
         {
-            if ( ref.get() == null )
+            V value = ref.get();
+            if ( value == null )
             {
-                cache.remove( key );
+                cache.remove( key, ref );
             }
-            return ref.get();
+            return value;
         }
         return null;
     }
     
-    public V remove( K key )
+    public V get( Long key )
+    {
+        return get( key.longValue() );
+    }
+    
+    public V remove( long key )
     {
         WeakReference<V> ref = cache.remove( key );
         if ( ref != null )
@@ -85,13 +98,19 @@ public class WeakLruCache<K,V> extends ReferenceCache<K,V>
         }
         return null;
     }
+    
+    public V remove( Long key )
+    {
+        return remove( key.longValue() );
+    }
 
     protected void pollClearedValues()
     {
-        WeakValue<K,V> clearedValue = refQueue.safePoll();
+        WeakValue<?> clearedValue = refQueue.safePoll();
         while ( clearedValue != null )
         {
-            cache.remove( clearedValue.key );
+            // only if it hasn't been replaced by a newer value
+            cache.remove( clearedValue.key, clearedValue );
             clearedValue = refQueue.safePoll();
         }
     }
@@ -132,4 +151,4 @@ public class WeakLruCache<K,V> extends ReferenceCache<K,V>
     public void setAdaptiveStatus( boolean status )
     {
     }
-}
\ No newline at end of file
+}
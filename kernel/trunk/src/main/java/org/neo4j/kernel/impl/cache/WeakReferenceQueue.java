@@ -22,15 +22,15 @@ package org.neo4j.kernel.impl.cache;
 
 import java.lang.ref.ReferenceQueue;
 
-public class WeakReferenceQueue<K,V> extends ReferenceQueue<WeakValue>
+public class WeakReferenceQueue<V> extends ReferenceQueue<V>
 {
     public WeakReferenceQueue()
     {
         super();
     }
     
-    public WeakValue<K,V> safePoll()
+    public WeakValue<?> safePoll()
     {
-        return (WeakValue) poll();
+        return (WeakValue<?>) poll();
     }
 }
@@ -23,17 +23,17 @@ package org.neo4j.kernel.impl.cache;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 
-public class WeakValue<K,V> extends WeakReference<V> 
+public class WeakValue<V> extends WeakReference<V> 
 {
-    public final K key;
+    public final long key;
     
-    public WeakValue( K key, V value, ReferenceQueue<? super V> queue )
+    public WeakValue( long key, V value, ReferenceQueue<? super V> queue )
     {
         super( value, queue );
         this.key = key;
     }
 
-    public WeakValue( K key, V value )
+    public WeakValue( long key, V value )
     {
         super( value );
         this.key = key;
@@ -22,21 +22,22 @@ package org.neo4j.kernel.impl.core;
 
 import java.util.NoSuchElementException;
 
-import org.neo4j.kernel.impl.util.IntArray;
+import org.neo4j.kernel.impl.util.LongArray;
 
 class FastRelTypeElement extends RelTypeElementIterator
 {
-    private final IntArray src;
+    private final LongArray src;
 
     private int position = 0;
-    private Integer nextElement = null;
+    private long nextElement = 0;
+    private boolean hasNextElement = false;
 
-    FastRelTypeElement( String type, NodeImpl node, IntArray src )
+    FastRelTypeElement( String type, NodeImpl node, LongArray src )
     {
         super( type, node );
         if ( src == null )
         {
-            this.src = new IntArray();
+            this.src = new LongArray();
         }
         else
         {
@@ -47,7 +48,7 @@ class FastRelTypeElement extends RelTypeElementIterator
     @Override
     public boolean hasNext( NodeManager nodeManager )
     {
-        if ( nextElement != null )
+        if ( hasNextElement )
         {
             return true;
         }
@@ -59,20 +60,20 @@ class FastRelTypeElement extends RelTypeElementIterator
         while ( position < src.length() )
         {
             nextElement = src.get(position++);
+            hasNextElement = true;
             return true;
         }
         return false;
     }
 
     @Override
-    public int next( NodeManager nodeManager )
+    public long next( NodeManager nodeManager )
     {
         hasNext( nodeManager );
-        if ( nextElement != null )
+        if ( hasNextElement )
         {
-            Integer elementToReturn = nextElement;
-            nextElement = null;
-            return elementToReturn;
+            hasNextElement = false;
+            return nextElement;
         }
         throw new NoSuchElementException();
     }
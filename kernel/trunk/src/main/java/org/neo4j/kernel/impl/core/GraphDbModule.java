@@ -210,7 +210,7 @@ public class GraphDbModule
     public void createNewReferenceNode()
     {
         Node node = nodeManager.createNode();
-        nodeManager.setReferenceNodeId( (int) node.getId() );
+        nodeManager.setReferenceNodeId( node.getId() );
     }
 
     public void reload( Map<Object,Object> params )
@@ -79,7 +79,7 @@ class IntArrayIterator implements Iterable<Relationship>,
         {
             if ( currentTypeIterator.hasNext( nodeManager ) )
             {
-                int nextId = currentTypeIterator.next( nodeManager );
+                long nextId = currentTypeIterator.next( nodeManager );
                 try
                 {
                     Relationship possibleElement = nodeManager
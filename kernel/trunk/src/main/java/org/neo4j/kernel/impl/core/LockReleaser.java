@@ -24,6 +24,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 import javax.transaction.Status;
@@ -41,19 +43,23 @@ import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeData;
 import org.neo4j.kernel.impl.transaction.LockManager;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.util.ArrayMap;
-import org.neo4j.kernel.impl.util.IntArray;
+import org.neo4j.kernel.impl.util.LongArray;
 
 /**
- * Manages object version diffs and locks for each transaction.
+ * Manages object version diffs and locks for each transaction. The state of
+ * each transaction is kept in concurrent maps keyed on the transaction, so
+ * looking it up neither scans nor blocks on the other live transactions.
+ * Everything kept for a transaction is only touched by the thread the
+ * transaction is associated with.
  */
 public class LockReleaser
 {
     private static Logger log = Logger.getLogger( LockReleaser.class.getName() );
 
-    private final ArrayMap<Transaction,List<LockElement>> lockMap = 
-        new ArrayMap<Transaction,List<LockElement>>( 5, true, true );
-    private final ArrayMap<Transaction,PrimitiveElement> cowMap = 
-        new ArrayMap<Transaction,PrimitiveElement>( 5, true, true );
+    private final ConcurrentMap<Transaction,List<LockElement>> lockMap = 
+        new ConcurrentHashMap<Transaction,List<LockElement>>();
+    private final ConcurrentMap<Transaction,PrimitiveElement> cowMap = 
+        new ConcurrentHashMap<Transaction,PrimitiveElement>();
 
     private NodeManager nodeManager;
     private final LockManager lockManager;
@@ -66,10 +72,10 @@ public class LockReleaser
         {
         }
 
-        final ArrayMap<Integer,CowNodeElement> nodes = 
-            new ArrayMap<Integer,CowNodeElement>();
-        final ArrayMap<Integer,CowRelElement> relationships = 
-            new ArrayMap<Integer,CowRelElement>();
+        final ArrayMap<Long,CowNodeElement> nodes = 
+            new ArrayMap<Long,CowNodeElement>();
+        final ArrayMap<Long,CowRelElement> relationships = 
+            new ArrayMap<Long,CowRelElement>();
     }
 
     private static class CowNodeElement
@@ -81,8 +87,8 @@ public class LockReleaser
 
         boolean deleted = false;
         
-        ArrayMap<String,IntArray> relationshipAddMap = null;
-        ArrayMap<String,IntArray> relationshipRemoveMap = null;
+        ArrayMap<String,LongArray> relationshipAddMap = null;
+        ArrayMap<String,LongArray> relationshipRemoveMap = null;
         ArrayMap<Integer,PropertyData> propertyAddMap = null;
         ArrayMap<Integer,PropertyData> propertyRemoveMap = null;
     }
@@ -143,7 +149,7 @@ public class LockReleaser
         throws NotInTransactionException
     {
         Transaction tx = getTransaction();
-        List<LockElement> lockElements = lockMap.get( tx );
+        List<LockElement> lockElements = tx != null ? lockMap.get( tx ) : null;
         if ( lockElements != null )
         {
             lockElements.add( new LockElement( resource, type ) );
@@ -196,12 +202,18 @@ public class LockReleaser
         }
     }
 
-    public IntArray getCowRelationshipRemoveMap( NodeImpl node, String type )
+    private PrimitiveElement getPrimitiveElement()
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        Transaction tx = getTransaction();
+        return tx != null ? cowMap.get( tx ) : null;
+    }
+
+    public LongArray getCowRelationshipRemoveMap( NodeImpl node, String type )
+    {
+        PrimitiveElement primitiveElement = getPrimitiveElement();
         if ( primitiveElement != null )
         {
-            ArrayMap<Integer,CowNodeElement> cowElements = 
+            ArrayMap<Long,CowNodeElement> cowElements = 
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.id );
             if ( element != null && element.relationshipRemoveMap != null )
@@ -212,7 +224,7 @@ public class LockReleaser
         return null;
     }
 
-    public IntArray getCowRelationshipRemoveMap( NodeImpl node, String type,
+    public LongArray getCowRelationshipRemoveMap( NodeImpl node, String type,
         boolean create )
     {
         if ( !create )
@@ -220,7 +232,7 @@ public class LockReleaser
             return getCowRelationshipRemoveMap( node, type );
         }
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
-        ArrayMap<Integer,CowNodeElement> cowElements = 
+        ArrayMap<Long,CowNodeElement> cowElements = 
             primitiveElement.nodes;
         CowNodeElement element = cowElements.get( node.id );
         if ( element == null )
@@ -230,23 +242,23 @@ public class LockReleaser
         }
         if ( element.relationshipRemoveMap == null )
         {
-            element.relationshipRemoveMap = new ArrayMap<String,IntArray>();
+            element.relationshipRemoveMap = new ArrayMap<String,LongArray>();
         }
-        IntArray set = element.relationshipRemoveMap.get( type );
+        LongArray set = element.relationshipRemoveMap.get( type );
         if ( set == null )
         {
-            set = new IntArray();
+            set = new LongArray();
             element.relationshipRemoveMap.put( type, set );
         }
         return set;
     }
 
-    public ArrayMap<String,IntArray> getCowRelationshipAddMap( NodeImpl node )
+    public ArrayMap<String,LongArray> getCowRelationshipAddMap( NodeImpl node )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getPrimitiveElement();
         if ( primitiveElement != null )
         {
-            ArrayMap<Integer,CowNodeElement> cowElements = 
+            ArrayMap<Long,CowNodeElement> cowElements = 
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.id );
             if ( element != null )
@@ -257,12 +269,12 @@ public class LockReleaser
         return null;
     }
 
-    public IntArray getCowRelationshipAddMap( NodeImpl node, String type )
+    public LongArray getCowRelationshipAddMap( NodeImpl node, String type )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getPrimitiveElement();
         if ( primitiveElement != null )
         {
-            ArrayMap<Integer,CowNodeElement> cowElements = 
+            ArrayMap<Long,CowNodeElement> cowElements = 
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( node.id );
             if ( element != null && element.relationshipAddMap != null )
@@ -273,7 +285,7 @@ public class LockReleaser
         return null;
     }
 
-    public IntArray getCowRelationshipAddMap( NodeImpl node, String type,
+    public LongArray getCowRelationshipAddMap( NodeImpl node, String type,
         boolean create )
     {
         if ( !create )
@@ -281,7 +293,7 @@ public class LockReleaser
             return getCowRelationshipRemoveMap( node, type );
         }
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
-        ArrayMap<Integer,CowNodeElement> cowElements = 
+        ArrayMap<Long,CowNodeElement> cowElements = 
             primitiveElement.nodes;
         CowNodeElement element = cowElements.get( node.id );
         if ( element == null )
@@ -291,12 +303,12 @@ public class LockReleaser
         }
         if ( element.relationshipAddMap == null )
         {
-            element.relationshipAddMap = new ArrayMap<String,IntArray>();
+            element.relationshipAddMap = new ArrayMap<String,LongArray>();
         }
-        IntArray set = element.relationshipAddMap.get( type );
+        LongArray set = element.relationshipAddMap.get( type );
         if ( set == null )
         {
-            set = new IntArray();
+            set = new LongArray();
             element.relationshipAddMap.put( type, set );
         }
         return set;
@@ -322,6 +334,10 @@ public class LockReleaser
     
     void releaseLocks( Transaction tx )
     {
+        if ( tx == null )
+        {
+            return;
+        }
         List<LockElement> lockElements = lockMap.remove( tx );
         if ( lockElements != null )
         {
@@ -351,23 +367,34 @@ public class LockReleaser
 
     void releaseCows( Transaction cowTxId, int param )
     {
+        if ( cowTxId == null )
+        {
+            return;
+        }
         PrimitiveElement element = cowMap.remove( cowTxId );
         if ( element == null )
         {
             return;
         }
-        ArrayMap<Integer,CowNodeElement> cowNodeElements = element.nodes;
-        Set<Entry<Integer,CowNodeElement>> nodeEntrySet = 
+        ArrayMap<Long,CowNodeElement> cowNodeElements = element.nodes;
+        Set<Entry<Long,CowNodeElement>> nodeEntrySet = 
             cowNodeElements.entrySet();
-        for ( Entry<Integer,CowNodeElement> entry : nodeEntrySet )
+        for ( Entry<Long,CowNodeElement> entry : nodeEntrySet )
         {
+            CowNodeElement nodeElement = entry.getValue();
+            if ( param == Status.STATUS_COMMITTED )
+            {
+                // property record ids are reused, also for uncached nodes
+                nodeManager.invalidatePropertyValues( 
+                    nodeElement.propertyAddMap, nodeElement.propertyRemoveMap );
+            }
             NodeImpl node = nodeManager.getNodeIfCached( entry.getKey() );
             if ( node != null )
             {
-                CowNodeElement nodeElement = entry.getValue();
                 if ( param == Status.STATUS_COMMITTED )
                 {
-                    node.commitRelationshipMaps( nodeElement.relationshipAddMap,
+                    node.commitRelationshipMaps( nodeManager,
+                        nodeElement.relationshipAddMap,
                         nodeElement.relationshipRemoveMap );
                     node.commitPropertyMaps( nodeElement.propertyAddMap, 
                         nodeElement.propertyRemoveMap );
@@ -379,15 +406,20 @@ public class LockReleaser
                 }
             }
         }
-        ArrayMap<Integer,CowRelElement> cowRelElements = element.relationships;
-        Set<Entry<Integer,CowRelElement>> relEntrySet = 
+        ArrayMap<Long,CowRelElement> cowRelElements = element.relationships;
+        Set<Entry<Long,CowRelElement>> relEntrySet = 
             cowRelElements.entrySet();
-        for ( Entry<Integer,CowRelElement> entry : relEntrySet )
+        for ( Entry<Long,CowRelElement> entry : relEntrySet )
         {
+            CowRelElement relElement = entry.getValue();
+            if ( param == Status.STATUS_COMMITTED )
+            {
+                nodeManager.invalidatePropertyValues( 
+                    relElement.propertyAddMap, relElement.propertyRemoveMap );
+            }
             RelationshipImpl rel = nodeManager.getRelIfCached( entry.getKey() );
             if ( rel != null )
             {
-                CowRelElement relElement = entry.getValue();
                 if ( param == Status.STATUS_COMMITTED )
                 {
                     rel.commitPropertyMaps( relElement.propertyAddMap, 
@@ -406,7 +438,8 @@ public class LockReleaser
     public synchronized void dumpLocks()
     {
         System.out.print( "Locks held: " );
-        java.util.Iterator<?> itr = lockMap.keySet().iterator();
+        java.util.Iterator<Entry<Transaction,List<LockElement>>> itr = 
+            lockMap.entrySet().iterator();
         if ( !itr.hasNext() )
         {
             System.out.println( "NONE" );
@@ -417,19 +450,19 @@ public class LockReleaser
         }
         while ( itr.hasNext() )
         {
-            Transaction transaction = (Transaction) itr.next();
-            System.out.println( "" + transaction + "->" + 
-                lockMap.get( transaction ).size() );
+            Entry<Transaction,List<LockElement>> entry = itr.next();
+            System.out.println( "" + entry.getKey() + "->" + 
+                entry.getValue().size() );
         }
     }
 
     public ArrayMap<Integer,PropertyData> getCowPropertyRemoveMap(
         Primitive primitive )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getPrimitiveElement();
         if ( primitiveElement != null && primitive instanceof NodeImpl )
         {
-            ArrayMap<Integer,CowNodeElement> cowElements = 
+            ArrayMap<Long,CowNodeElement> cowElements = 
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null )
@@ -445,7 +478,7 @@ public class LockReleaser
         else if ( primitiveElement != null && 
             primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Integer,CowRelElement> cowElements = 
+            ArrayMap<Long,CowRelElement> cowElements = 
                 primitiveElement.relationships;
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null )
@@ -464,10 +497,10 @@ public class LockReleaser
     public ArrayMap<Integer,PropertyData> getCowPropertyAddMap(
         Primitive primitive )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getPrimitiveElement();
         if ( primitiveElement != null && primitive instanceof NodeImpl )
         {
-            ArrayMap<Integer,CowNodeElement> cowElements = 
+            ArrayMap<Long,CowNodeElement> cowElements = 
                 primitiveElement.nodes; 
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null )
@@ -483,7 +516,7 @@ public class LockReleaser
         else if ( primitiveElement != null && 
             primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Integer,CowRelElement> cowElements = 
+            ArrayMap<Long,CowRelElement> cowElements = 
                 primitiveElement.relationships; 
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null )
@@ -525,7 +558,7 @@ public class LockReleaser
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
         if ( primitive instanceof NodeImpl )
         {
-            ArrayMap<Integer,CowNodeElement> cowElements = 
+            ArrayMap<Long,CowNodeElement> cowElements = 
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -546,7 +579,7 @@ public class LockReleaser
         }
         else if ( primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Integer,CowRelElement> cowElements = 
+            ArrayMap<Long,CowRelElement> cowElements = 
                 primitiveElement.relationships;
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -578,7 +611,7 @@ public class LockReleaser
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
         if ( primitive instanceof NodeImpl )
         {
-            ArrayMap<Integer,CowNodeElement> cowElements = 
+            ArrayMap<Long,CowNodeElement> cowElements = 
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -599,7 +632,7 @@ public class LockReleaser
         }
         else if ( primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Integer,CowRelElement> cowElements = 
+            ArrayMap<Long,CowRelElement> cowElements = 
                 primitiveElement.relationships;
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -626,7 +659,7 @@ public class LockReleaser
         PrimitiveElement primitiveElement = getAndSetupPrimitiveElement();
         if ( primitive instanceof NodeImpl )
         {
-            ArrayMap<Integer,CowNodeElement> cowElements = 
+            ArrayMap<Long,CowNodeElement> cowElements = 
                 primitiveElement.nodes;
             CowNodeElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -643,7 +676,7 @@ public class LockReleaser
         }
         else if ( primitive instanceof RelationshipImpl )
         {
-            ArrayMap<Integer,CowRelElement> cowElements = 
+            ArrayMap<Long,CowRelElement> cowElements = 
                 primitiveElement.relationships;
             CowRelElement element = cowElements.get( primitive.id );
             if ( element != null && element.deleted )
@@ -660,7 +693,7 @@ public class LockReleaser
         }
     }
     
-    public void removeNodeFromCache( int nodeId )
+    public void removeNodeFromCache( long nodeId )
     {
         if ( nodeManager != null )
         {
@@ -684,7 +717,7 @@ public class LockReleaser
         }
     }
     
-    public void removeRelationshipFromCache( int id )
+    public void removeRelationshipFromCache( long id )
     {
         if ( nodeManager != null )
         {
@@ -730,7 +763,7 @@ public class LockReleaser
     public TransactionData getTransactionData()
     {
         TransactionDataImpl result = new TransactionDataImpl();
-        PrimitiveElement element = cowMap.get( getTransaction() );
+        PrimitiveElement element = getPrimitiveElement();
         populateCreatedNodes( element, result );
         if ( element == null )
         {
@@ -750,7 +783,7 @@ public class LockReleaser
     private void populateRelationshipPropertyEvents( PrimitiveElement element,
             TransactionDataImpl result )
     {
-        for ( int relId : element.relationships.keySet() )
+        for ( long relId : element.relationships.keySet() )
         {
             CowRelElement relElement = element.relationships.get( relId );
             RelationshipProxy rel = new RelationshipProxy( relId, nodeManager );
@@ -793,7 +826,7 @@ public class LockReleaser
     private void populateNodeRelEvent( PrimitiveElement element,
             TransactionDataImpl result )
     {
-        for ( int nodeId : element.nodes.keySet() )
+        for ( long nodeId : element.nodes.keySet() )
         {
             CowNodeElement nodeElement = element.nodes.get( nodeId );
             NodeProxy node = new NodeProxy( nodeId, nodeManager );
@@ -810,11 +843,11 @@ public class LockReleaser
             {
                 for ( String type : nodeElement.relationshipAddMap.keySet() )
                 {
-                    IntArray createdRels = 
+                    LongArray createdRels = 
                         nodeElement.relationshipAddMap.get( type );
                     for ( int i = 0; i < createdRels.length(); i++ )
                     {
-                        int relId = createdRels.get( i );
+                        long relId = createdRels.get( i );
                         CowRelElement relElement = 
                             element.relationships.get( relId );
                         if ( relElement != null && relElement.deleted )
@@ -833,11 +866,11 @@ public class LockReleaser
             {
                 for ( String type : nodeElement.relationshipRemoveMap.keySet() )
                 {
-                    IntArray deletedRels = 
+                    LongArray deletedRels = 
                         nodeElement.relationshipRemoveMap.get( type );
                     for ( int i = 0; i < deletedRels.length(); i++ )
                     {
-                        int relId = deletedRels.get( i );
+                        long relId = deletedRels.get( i );
                         if ( nodeManager.relCreated( relId ) )
                         {
                             continue;
@@ -879,10 +912,10 @@ public class LockReleaser
     private void populateCreatedNodes( PrimitiveElement element, 
             TransactionDataImpl result )
     {
-        IntArray createdNodes = nodeManager.getCreatedNodes();
+        LongArray createdNodes = nodeManager.getCreatedNodes();
         for ( int i = 0; i < createdNodes.length(); i++ )
         {
-            int nodeId = createdNodes.get( i );
+            long nodeId = createdNodes.get( i );
             if ( element != null && element.nodes != null )
             {
                 CowNodeElement nodeElement = element.nodes.get( nodeId );
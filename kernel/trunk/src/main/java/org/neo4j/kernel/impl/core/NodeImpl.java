@@ -41,26 +41,28 @@ import org.neo4j.kernel.impl.nioneo.store.RelationshipChainPosition;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.traversal.OldTraverserWrapper;
 import org.neo4j.kernel.impl.util.ArrayMap;
-import org.neo4j.kernel.impl.util.IntArray;
+import org.neo4j.kernel.impl.util.IntMap;
+import org.neo4j.kernel.impl.util.LongArray;
 
 class NodeImpl extends Primitive
 {
-    private volatile ArrayMap<String,IntArray> relationshipMap = null;
+    // committed relationships keyed on relationship type id
+    private volatile IntMap<LongArray> relationshipMap = null;
     // private RelationshipGrabber relationshipGrabber = null;
     private RelationshipChainPosition relChainPosition = null;
 
-    NodeImpl( int id )
+    NodeImpl( long id )
     {
         super( id );
     }
 
     // newNode will only be true for NodeManager.createNode
-    NodeImpl( int id, boolean newNode )
+    NodeImpl( long id, boolean newNode )
     {
         super( id, newNode );
         if ( newNode )
         {
-            relationshipMap = new ArrayMap<String,IntArray>();
+            relationshipMap = new IntMap<LongArray>();
             relChainPosition = new RelationshipChainPosition(
                 Record.NO_NEXT_RELATIONSHIP.intValue() );
         }
@@ -69,7 +71,7 @@ class NodeImpl extends Primitive
     @Override
     public int hashCode()
     {
-        return id;
+        return (int) (( id >>> 32 ) ^ id );
     }
 
     @Override
@@ -107,14 +109,15 @@ class NodeImpl extends Primitive
         ensureRelationshipMapNotNull( nodeManager );
         List<RelTypeElementIterator> relTypeList =
             new LinkedList<RelTypeElementIterator>();
-        ArrayMap<String,IntArray> addMap =
+        ArrayMap<String,LongArray> addMap =
             nodeManager.getCowRelationshipAddMap( this );
-        for ( String type : relationshipMap.keySet() )
+        for ( int typeId : relationshipMap.keys() )
         {
-            IntArray src = relationshipMap.get( type );
-            IntArray remove = nodeManager.getCowRelationshipRemoveMap(
+            String type = nodeManager.getRelationshipTypeById( typeId ).name();
+            LongArray src = relationshipMap.get( typeId );
+            LongArray remove = nodeManager.getCowRelationshipRemoveMap(
                 this, type );
-            IntArray add = null;
+            LongArray add = null;
             if ( addMap != null )
             {
                 add = addMap.get( type );
@@ -128,11 +131,12 @@ class NodeImpl extends Primitive
         {
             for ( String type : addMap.keySet() )
             {
-                if ( relationshipMap.get( type ) == null )
+                int typeId = nodeManager.getRelationshipTypeIdFor( type );
+                if ( typeId == -1 || relationshipMap.get( typeId ) == null )
                 {
-                    IntArray remove = nodeManager.getCowRelationshipRemoveMap(
+                    LongArray remove = nodeManager.getCowRelationshipRemoveMap(
                         this, type );
-                    IntArray add = addMap.get( type );
+                    LongArray add = addMap.get( type );
                     relTypeList.add( RelTypeElement.create( type, this, null, add, remove ) );
                 }
             }
@@ -148,10 +152,15 @@ class NodeImpl extends Primitive
             new LinkedList<RelTypeElementIterator>();
         for ( RelationshipType type : types )
         {
-            IntArray src = relationshipMap.get( type.name() );
-            IntArray remove = nodeManager.getCowRelationshipRemoveMap(
+            LongArray src = null;
+            int typeId = nodeManager.getRelationshipTypeIdFor( type.name() );
+            if ( typeId != -1 )
+            {
+                src = relationshipMap.get( typeId );
+            }
+            LongArray remove = nodeManager.getCowRelationshipRemoveMap(
                 this, type.name() );
-            IntArray add = nodeManager.getCowRelationshipAddMap( this,
+            LongArray add = nodeManager.getCowRelationshipAddMap( this,
                 type.name() );
             if ( src != null || add != null )
             {
@@ -258,9 +267,9 @@ class NodeImpl extends Primitive
     // caller is responsible for acquiring lock
     // this method is only called when a relationship is created or
     // a relationship delete is undone or when the full node is loaded
-    void addRelationship( NodeManager nodeManager, RelationshipType type, int relId )
+    void addRelationship( NodeManager nodeManager, RelationshipType type, long relId )
     {
-        IntArray relationshipSet = nodeManager.getCowRelationshipAddMap(
+        LongArray relationshipSet = nodeManager.getCowRelationshipAddMap(
             this, type.name(), true );
         relationshipSet.add( relId );
     }
@@ -268,9 +277,9 @@ class NodeImpl extends Primitive
     // caller is responsible for acquiring lock
     // this method is only called when a undo create relationship or
     // a relationship delete is invoked.
-    void removeRelationship( NodeManager nodeManager, RelationshipType type, int relId )
+    void removeRelationship( NodeManager nodeManager, RelationshipType type, long relId )
     {
-        IntArray relationshipSet = nodeManager.getCowRelationshipRemoveMap(
+        LongArray relationshipSet = nodeManager.getCowRelationshipRemoveMap(
             this, type.name(), true );
         relationshipSet.add( relId );
     }
@@ -285,14 +294,14 @@ class NodeImpl extends Primitive
 
     private void loadInitialRelationships( NodeManager nodeManager )
     {
-        Map<Integer,RelationshipImpl> map = null;
+        Map<Long,RelationshipImpl> map = null;
         synchronized ( this )
         {
             if ( relationshipMap == null )
             {
                 this.relChainPosition =
                     nodeManager.getRelationshipChainPosition( this );
-                ArrayMap<String,IntArray> tmpRelMap = new ArrayMap<String,IntArray>();
+                IntMap<LongArray> tmpRelMap = new IntMap<LongArray>();
                 map = getMoreRelationships( nodeManager, tmpRelMap );
                 this.relationshipMap = tmpRelMap;
             }
@@ -303,24 +312,24 @@ class NodeImpl extends Primitive
         }
     }
 
-    private Map<Integer,RelationshipImpl> getMoreRelationships( NodeManager nodeManager, 
-            ArrayMap<String,IntArray> tmpRelMap )
+    private Map<Long,RelationshipImpl> getMoreRelationships( NodeManager nodeManager, 
+            IntMap<LongArray> tmpRelMap )
     {
         if ( !relChainPosition.hasMore() )
         {
             return null;
         }
-        Pair<ArrayMap<String,IntArray>,Map<Integer,RelationshipImpl>> pair = 
+        Pair<IntMap<LongArray>,Map<Long,RelationshipImpl>> pair = 
             nodeManager.getMoreRelationships( this );
-        ArrayMap<String,IntArray> addMap = pair.first();
+        IntMap<LongArray> addMap = pair.first();
         if ( addMap.size() == 0 )
         {
             return null;
         }
-        for ( String type : addMap.keySet() )
+        for ( int type : addMap.keys() )
         {
-            IntArray addRels = addMap.get( type );
-            IntArray srcRels = tmpRelMap.get( type );
+            LongArray addRels = addMap.get( type );
+            LongArray srcRels = tmpRelMap.get( type );
             if ( srcRels == null )
             {
                 tmpRelMap.put( type, addRels );
@@ -336,8 +345,7 @@ class NodeImpl extends Primitive
     
     boolean getMoreRelationships( NodeManager nodeManager )
     {
-        // ArrayMap<String, IntArray> tmpRelMap = relationshipMap;
-        Pair<ArrayMap<String,IntArray>,Map<Integer,RelationshipImpl>> pair;
+        Pair<IntMap<LongArray>,Map<Long,RelationshipImpl>> pair;
         synchronized ( this )
         {
             if ( !relChainPosition.hasMore() )
@@ -346,16 +354,15 @@ class NodeImpl extends Primitive
             }
             
             pair = nodeManager.getMoreRelationships( this );
-            ArrayMap<String,IntArray> addMap = pair.first();
+            IntMap<LongArray> addMap = pair.first();
             if ( addMap.size() == 0 )
             {
                 return false;
             }
-            for ( String type : addMap.keySet() )
+            for ( int type : addMap.keys() )
             {
-                IntArray addRels = addMap.get( type );
-                // IntArray srcRels = tmpRelMap.get( type );
-                IntArray srcRels = relationshipMap.get( type );
+                LongArray addRels = addMap.get( type );
+                LongArray srcRels = relationshipMap.get( type );
                 if ( srcRels == null )
                 {
                     relationshipMap.put( type, addRels );
@@ -455,9 +462,9 @@ class NodeImpl extends Primitive
         return getRelationships( nodeManager, type, dir ).iterator().hasNext();
     }
 
-    protected void commitRelationshipMaps(
-        ArrayMap<String,IntArray> cowRelationshipAddMap,
-        ArrayMap<String,IntArray> cowRelationshipRemoveMap )
+    protected void commitRelationshipMaps( NodeManager nodeManager,
+        ArrayMap<String,LongArray> cowRelationshipAddMap,
+        ArrayMap<String,LongArray> cowRelationshipRemoveMap )
     {
         if ( relationshipMap == null )
         {
@@ -468,15 +475,15 @@ class NodeImpl extends Primitive
         {
             for ( String type : cowRelationshipAddMap.keySet() )
             {
-                IntArray add = cowRelationshipAddMap.get( type );
-                IntArray remove = null;
+                LongArray add = cowRelationshipAddMap.get( type );
+                LongArray remove = null;
                 if ( cowRelationshipRemoveMap != null )
                 {
                     remove = cowRelationshipRemoveMap.get( type );
                 }
-                IntArray src = relationshipMap.get( type );
-                relationshipMap.put( type, IntArray.composeNew(
-                    src, add, remove ) );
+                int typeId = nodeManager.getRelationshipTypeIdFor( type );
+                LongArray src = relationshipMap.get( typeId );
+                putOrRemove( typeId, LongArray.composeNew( src, add, remove ) );
             }
         }
         if ( cowRelationshipRemoveMap != null )
@@ -488,14 +495,27 @@ class NodeImpl extends Primitive
                 {
                     continue;
                 }
-                IntArray src = relationshipMap.get( type );
-                IntArray remove = cowRelationshipRemoveMap.get( type );
-                relationshipMap.put( type, IntArray.composeNew( src, null,
+                int typeId = nodeManager.getRelationshipTypeIdFor( type );
+                LongArray src = relationshipMap.get( typeId );
+                LongArray remove = cowRelationshipRemoveMap.get( type );
+                putOrRemove( typeId, LongArray.composeNew( src, null,
                      remove ) );
             }
         }
     }
 
+    private void putOrRemove( int typeId, LongArray relIds )
+    {
+        if ( relIds != null )
+        {
+            relationshipMap.put( typeId, relIds );
+        }
+        else
+        {
+            relationshipMap.remove( typeId );
+        }
+    }
+
     RelationshipChainPosition getRelChainPosition()
     {
         return relChainPosition;
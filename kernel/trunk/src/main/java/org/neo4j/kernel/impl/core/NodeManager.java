@@ -35,10 +35,13 @@ import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.impl.cache.AdaptiveCacheManager;
-import org.neo4j.kernel.impl.cache.Cache;
-import org.neo4j.kernel.impl.cache.LruCache;
+import org.neo4j.kernel.impl.cache.ClockCache;
+import org.neo4j.kernel.impl.cache.LongKeyCache;
+import org.neo4j.kernel.impl.cache.LongKeyLruCache;
 import org.neo4j.kernel.impl.cache.NoCache;
+import org.neo4j.kernel.impl.cache.OffHeapValueCache;
 import org.neo4j.kernel.impl.cache.SoftLruCache;
 import org.neo4j.kernel.impl.cache.WeakLruCache;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
@@ -52,17 +55,19 @@ import org.neo4j.kernel.impl.transaction.LockException;
 import org.neo4j.kernel.impl.transaction.LockManager;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.util.ArrayMap;
-import org.neo4j.kernel.impl.util.IntArray;
+import org.neo4j.kernel.impl.util.IntMap;
+import org.neo4j.kernel.impl.util.SizeUtils;
+import org.neo4j.kernel.impl.util.LongArray;
 
 public class NodeManager
 {
     private static Logger log = Logger.getLogger( NodeManager.class.getName() );
 
-    private int referenceNodeId = 0;
+    private long referenceNodeId = 0;
 
     private final GraphDatabaseService graphDbService;
-    private final Cache<Integer,NodeImpl> nodeCache;
-    private final Cache<Integer,RelationshipImpl> relCache;
+    private final LongKeyCache<NodeImpl> nodeCache;
+    private final LongKeyCache<RelationshipImpl> relCache;
     private final AdaptiveCacheManager cacheManager;
     private final CacheType cacheType;
     private final LockManager lockManager;
@@ -79,6 +84,9 @@ public class NodeManager
     private int minRelCacheSize = 0;
     private int maxNodeCacheSize = 1500;
     private int maxRelCacheSize = 3500;
+    private long propertyValueCacheSize = 0;
+    private int propertyValueCacheMinSize = 256;
+    private volatile OffHeapValueCache propertyValueCache = null;
 
     private static final int LOCK_STRIPE_COUNT = 32;
     private final ReentrantLock loadLocks[] =
@@ -211,6 +219,39 @@ public class NodeManager
                     + value );
             }
         }
+        if ( params.containsKey( Config.PROPERTY_VALUE_CACHE_SIZE ) )
+        {
+            String value = (String) params.get( 
+                Config.PROPERTY_VALUE_CACHE_SIZE );
+            try
+            {
+                propertyValueCacheSize = SizeUtils.parseSize( value );
+            }
+            catch ( NumberFormatException e )
+            {
+                propertyValueCacheSize = -1;
+            }
+            if ( propertyValueCacheSize < 0 || 
+                propertyValueCacheSize > Integer.MAX_VALUE )
+            {
+                log.warning( "Unable to parse " + 
+                    Config.PROPERTY_VALUE_CACHE_SIZE + " " + value );
+                propertyValueCacheSize = 0;
+            }
+        }
+        if ( params.containsKey( Config.PROPERTY_VALUE_CACHE_MIN_SIZE ) )
+        {
+            Object value = params.get( Config.PROPERTY_VALUE_CACHE_MIN_SIZE );
+            try
+            {
+                propertyValueCacheMinSize = Integer.parseInt( (String) value );
+            }
+            catch ( NumberFormatException e )
+            {
+                log.warning( "Unable to parse " + 
+                    Config.PROPERTY_VALUE_CACHE_MIN_SIZE + " " + value );
+            }
+        }
     }
 
     public void start( Map<Object,Object> params )
@@ -218,6 +259,11 @@ public class NodeManager
         parseParams( params );
         nodeCache.resize( maxNodeCacheSize );
         relCache.resize( maxRelCacheSize );
+        if ( propertyValueCacheSize > 0 )
+        {
+            propertyValueCache = new OffHeapValueCache( 
+                (int) propertyValueCacheSize, propertyValueCacheMinSize );
+        }
         if ( useAdaptiveCache && cacheType.needsCacheManagerRegistration )
         {
             cacheManager.registerCache( nodeCache, adaptiveCacheHeapRatio,
@@ -237,11 +283,12 @@ public class NodeManager
             cacheManager.unregisterCache( relCache );
         }
         relTypeHolder.clear();
+        propertyValueCache = null;
     }
 
     public Node createNode()
     {
-        int id = idGenerator.nextId( Node.class );
+        long id = idGenerator.nextId( Node.class ) & 0xFFFFFFFFL;
         NodeImpl node = new NodeImpl( id, true );
         acquireLock( node, LockType.WRITE );
         boolean success = false;
@@ -275,7 +322,7 @@ public class NodeManager
         {
             relTypeHolder.addValidRelationshipType( type.name(), true );
         }
-        int startNodeId = (int) startNode.getId();
+        long startNodeId = startNode.getId();
         NodeImpl firstNode = getLightNode( startNodeId );
         if ( firstNode == null )
         {
@@ -283,7 +330,7 @@ public class NodeManager
             throw new NotFoundException( "First node[" + startNode.getId()
                 + "] deleted" );
         }
-        int endNodeId = (int) endNode.getId();
+        long endNodeId = endNode.getId();
         NodeImpl secondNode = getLightNode( endNodeId );
         if ( secondNode == null )
         {
@@ -291,7 +338,7 @@ public class NodeManager
             throw new NotFoundException( "Second node[" + endNode.getId()
                 + "] deleted" );
         }
-        int id = idGenerator.nextId( Relationship.class );
+        long id = idGenerator.nextId( Relationship.class ) & 0xFFFFFFFFL;
         RelationshipImpl rel = new RelationshipImpl( id, startNodeId, endNodeId, type, true );
         boolean firstNodeTaken = false;
         boolean secondNodeTaken = false;
@@ -308,7 +355,7 @@ public class NodeManager
                 endNodeId );
             firstNode.addRelationship( this, type, id );
             secondNode.addRelationship( this, type, id );
-            relCache.put( (int) rel.getId(), rel );
+            relCache.put( id, rel );
             success = true;
             return new RelationshipProxy( id, this );
         }
@@ -355,9 +402,9 @@ public class NodeManager
         }
     }
 
-    private ReentrantLock lockId( int id )
+    private ReentrantLock lockId( long id )
     {
-        int stripe = (id / 32768) % LOCK_STRIPE_COUNT;
+        int stripe = (int) ((id / 32768) % LOCK_STRIPE_COUNT);
         if ( stripe < 0 )
         {
             stripe *= -1;
@@ -367,7 +414,7 @@ public class NodeManager
         return lock;
     }
 
-    public Node getNodeById( int nodeId ) throws NotFoundException
+    public Node getNodeById( long nodeId ) throws NotFoundException
     {
         NodeImpl node = nodeCache.get( nodeId );
         if ( node != null )
@@ -395,7 +442,7 @@ public class NodeManager
         }
     }
 
-    NodeImpl getLightNode( int nodeId )
+    NodeImpl getLightNode( long nodeId )
     {
         NodeImpl node = nodeCache.get( nodeId );
         if ( node != null )
@@ -424,7 +471,7 @@ public class NodeManager
         }
     }
 
-    NodeImpl getNodeForProxy( int nodeId )
+    NodeImpl getNodeForProxy( long nodeId )
     {
         NodeImpl node = nodeCache.get( nodeId );
         if ( node != null )
@@ -462,12 +509,12 @@ public class NodeManager
         return getNodeById( referenceNodeId );
     }
 
-    void setReferenceNodeId( int nodeId )
+    void setReferenceNodeId( long nodeId )
     {
         this.referenceNodeId = nodeId;
     }
 
-    public Relationship getRelationshipById( int relId )
+    public Relationship getRelationshipById( long relId )
         throws NotFoundException
     {
         RelationshipImpl relationship = relCache.get( relId );
@@ -497,8 +544,8 @@ public class NodeManager
                     + "] exist but relationship type[" + typeId
                     + "] not found." );
             }
-            final int startNodeId = data.firstNode();
-            final int endNodeId = data.secondNode();
+            final long startNodeId = data.firstNode() & 0xFFFFFFFFL;
+            final long endNodeId = data.secondNode() & 0xFFFFFFFFL;
             relationship = new RelationshipImpl( relId, startNodeId, endNodeId, type, false );
             relCache.put( relId, relationship );
             return new RelationshipProxy( relId, this );
@@ -514,7 +561,7 @@ public class NodeManager
         return relTypeHolder.getRelationshipType( id );
     }
 
-    RelationshipImpl getRelForProxy( int relId )
+    RelationshipImpl getRelForProxy( long relId )
     {
         RelationshipImpl relationship = relCache.get( relId );
         if ( relationship != null )
@@ -544,8 +591,9 @@ public class NodeManager
                     + "] exist but relationship type[" + typeId
                     + "] not found." );
             }
-            relationship = new RelationshipImpl( relId, data.firstNode(), data.secondNode(), type,
-                    false );
+            relationship = new RelationshipImpl( relId, 
+                    data.firstNode() & 0xFFFFFFFFL, 
+                    data.secondNode() & 0xFFFFFFFFL, type, false );
             relCache.put( relId, relationship );
             return relationship;
         }
@@ -555,69 +603,121 @@ public class NodeManager
         }
     }
 
-    public void removeNodeFromCache( int nodeId )
+    public void removeNodeFromCache( long nodeId )
     {
         nodeCache.remove( nodeId );
     }
 
-    public void removeRelationshipFromCache( int id )
+    public void removeRelationshipFromCache( long id )
     {
         relCache.remove( id );
     }
 
+    /**
+     * Returns the stamp to take before a property value is loaded and pass
+     * to {@link #cachePropertyValue(int, Object, long)} with the value.
+     */
+    long propertyValueStamp( int id )
+    {
+        OffHeapValueCache valueCache = propertyValueCache;
+        return valueCache != null ? valueCache.stamp( id ) : 0;
+    }
+
     Object loadPropertyValue( int id )
     {
+        OffHeapValueCache valueCache = propertyValueCache;
+        if ( valueCache != null )
+        {
+            Object value = valueCache.get( id );
+            if ( value != null )
+            {
+                return value;
+            }
+        }
         return persistenceManager.loadPropertyValue( id );
     }
 
+    /**
+     * Tries to keep a loaded property value in the off-heap value cache. It
+     * is refused if the value may have been changed since 
+     * <CODE>stamp</CODE> was taken.
+     * 
+     * @return <CODE>true</CODE> if the value is kept off-heap and should not
+     * be held on to by the cached primitive
+     */
+    boolean cachePropertyValue( int id, Object value, long stamp )
+    {
+        OffHeapValueCache valueCache = propertyValueCache;
+        return valueCache != null && valueCache.put( id, value, stamp );
+    }
+
+    void invalidatePropertyValues( ArrayMap<Integer,PropertyData> addMap, 
+        ArrayMap<Integer,PropertyData> removeMap )
+    {
+        OffHeapValueCache valueCache = propertyValueCache;
+        if ( valueCache == null )
+        {
+            return;
+        }
+        if ( addMap != null )
+        {
+            for ( PropertyData property : addMap.values() )
+            {
+                valueCache.remove( property.getId() );
+            }
+        }
+        if ( removeMap != null )
+        {
+            for ( PropertyData property : removeMap.values() )
+            {
+                valueCache.remove( property.getId() );
+            }
+        }
+    }
+
     RelationshipChainPosition getRelationshipChainPosition( NodeImpl node )
     {
         return persistenceManager.getRelationshipChainPosition(
-            (int) node.getId() );
+            node.getId() );
     }
 
-    Pair<ArrayMap<String,IntArray>,Map<Integer,RelationshipImpl>> getMoreRelationships( NodeImpl node )
+    Pair<IntMap<LongArray>,Map<Long,RelationshipImpl>> getMoreRelationships( NodeImpl node )
     {
-        int nodeId = (int) node.getId();
+        long nodeId = node.getId();
         RelationshipChainPosition position = node.getRelChainPosition();
         Iterable<RelationshipData> rels =
             persistenceManager.getMoreRelationships( nodeId, position );
-        ArrayMap<String,IntArray> newRelationshipMap =
-            new ArrayMap<String,IntArray>();
-        Map<Integer,RelationshipImpl> relsMap = new HashMap<Integer,RelationshipImpl>( 150 );
+        IntMap<LongArray> newRelationshipMap = new IntMap<LongArray>();
+        Map<Long,RelationshipImpl> relsMap = new HashMap<Long,RelationshipImpl>( 150 );
         for ( RelationshipData rel : rels )
         {
-            int relId = rel.getId();
+            long relId = rel.getId() & 0xFFFFFFFFL;
+            int typeId = rel.relationshipType();
             RelationshipImpl relImpl = relCache.get( relId );
-            RelationshipType type = null;
             if ( relImpl == null )
             {
-                type = getRelationshipTypeById( rel.relationshipType() );
+                RelationshipType type = getRelationshipTypeById( typeId );
                 assert type != null;
-                relImpl = new RelationshipImpl( relId, rel.firstNode(), rel.secondNode(), type,
-                        false );
+                relImpl = new RelationshipImpl( relId, 
+                        rel.firstNode() & 0xFFFFFFFFL, 
+                        rel.secondNode() & 0xFFFFFFFFL, type, false );
                 relsMap.put( relId, relImpl );
                 // relCache.put( relId, relImpl );
             }
-            else
-            {
-                type = relImpl.getType();
-            }
-            IntArray relationshipSet = newRelationshipMap.get(
-                type.name() );
+            LongArray relationshipSet = newRelationshipMap.get( typeId );
             if ( relationshipSet == null )
             {
-                relationshipSet = new IntArray();
-                newRelationshipMap.put( type.name(), relationshipSet );
+                relationshipSet = new LongArray();
+                newRelationshipMap.put( typeId, relationshipSet );
             }
             relationshipSet.add( relId );
         }
         // relCache.putAll( relsMap );
-        return new Pair<ArrayMap<String,IntArray>,Map<Integer,RelationshipImpl>>( 
+        return new Pair<IntMap<LongArray>,Map<Long,RelationshipImpl>>( 
                 newRelationshipMap, relsMap );
     }
     
-    void putAllInRelCache( Map<Integer,RelationshipImpl> map )
+    void putAllInRelCache( Map<Long,RelationshipImpl> map )
     {
         relCache.putAll( map );
     }
@@ -625,7 +725,7 @@ public class NodeManager
     ArrayMap<Integer,PropertyData> loadProperties( NodeImpl node,
             boolean light )
     {
-        return persistenceManager.loadNodeProperties( (int) node.getId(),
+        return persistenceManager.loadNodeProperties( node.getId(),
                 light );
     }
 
@@ -633,7 +733,7 @@ public class NodeManager
             RelationshipImpl relationship, boolean light )
     {
         return persistenceManager.loadRelProperties(
-            (int) relationship.getId(), light );
+            relationship.getId(), light );
     }
 
     public int getNodeCacheSize()
@@ -650,6 +750,19 @@ public class NodeManager
     {
         nodeCache.clear();
         relCache.clear();
+        if ( propertyValueCache != null )
+        {
+            propertyValueCache.clear();
+        }
+    }
+
+    /**
+     * Returns the off-heap cache for large string and array property values,
+     * or <CODE>null</CODE> if it is not enabled.
+     */
+    public OffHeapValueCache getPropertyValueCache()
+    {
+        return propertyValueCache;
     }
 
     void setRollbackOnly()
@@ -715,6 +828,16 @@ public class NodeManager
         return idGenerator.getNumberOfIdsInUse( clazz );
     }
 
+    public long getNumberOfAllocatedIds( Class<?> clazz )
+    {
+        return idGenerator.getNumberOfAllocatedIds( clazz );
+    }
+
+    public long getNumberOfFreeIds( Class<?> clazz )
+    {
+        return idGenerator.getNumberOfFreeIds( clazz );
+    }
+
     public void removeRelationshipTypeFromCache( int id )
     {
         relTypeHolder.removeRelType( id );
@@ -765,6 +888,11 @@ public class NodeManager
         return relTypeHolder.getIdFor( type );
     }
 
+    int getRelationshipTypeIdFor( String name )
+    {
+        return relTypeHolder.getIdFor( name );
+    }
+
     void addRawRelationshipTypes( RelationshipTypeData[] relTypes )
     {
         relTypeHolder.addRawRelationshipTypes( relTypes );
@@ -777,7 +905,7 @@ public class NodeManager
 
     ArrayMap<Integer,PropertyData> deleteNode( NodeImpl node )
     {
-        int nodeId = (int) node.getId();
+        long nodeId = node.getId();
         deletePrimitive( node );
         return persistenceManager.nodeDelete( nodeId );
         // remove from node cache done via event
@@ -785,25 +913,25 @@ public class NodeManager
 
     int nodeAddProperty( NodeImpl node, PropertyIndex index, Object value )
     {
-        int nodeId = (int) node.getId();
+        long nodeId = node.getId();
         return persistenceManager.nodeAddProperty( nodeId, index, value );
     }
 
     void nodeChangeProperty( NodeImpl node, int propertyId, Object value )
     {
-        int nodeId = (int) node.getId();
+        long nodeId = node.getId();
         persistenceManager.nodeChangeProperty( nodeId, propertyId, value );
     }
 
     void nodeRemoveProperty( NodeImpl node, int propertyId )
     {
-        int nodeId = (int) node.getId();
+        long nodeId = node.getId();
         persistenceManager.nodeRemoveProperty( nodeId, propertyId );
     }
 
     ArrayMap<Integer,PropertyData> deleteRelationship( RelationshipImpl rel )
     {
-        int relId = (int) rel.getId();
+        long relId = rel.getId();
         deletePrimitive( rel );
         return persistenceManager.relDelete( relId );
         // remove in rel cache done via event
@@ -812,55 +940,55 @@ public class NodeManager
     int relAddProperty( RelationshipImpl rel, PropertyIndex index,
         Object value )
     {
-        int relId = (int) rel.getId();
+        long relId = rel.getId();
         return persistenceManager.relAddProperty( relId, index, value );
     }
 
     void relChangeProperty( RelationshipImpl rel, int propertyId, Object value )
     {
-        int relId = (int) rel.getId();
+        long relId = rel.getId();
         persistenceManager.relChangeProperty( relId, propertyId, value );
     }
 
     void relRemoveProperty( RelationshipImpl rel, int propertyId )
     {
-        int relId = (int) rel.getId();
+        long relId = rel.getId();
         persistenceManager.relRemoveProperty( relId, propertyId );
     }
 
-    public IntArray getCowRelationshipRemoveMap( NodeImpl node, String type )
+    public LongArray getCowRelationshipRemoveMap( NodeImpl node, String type )
     {
         return lockReleaser.getCowRelationshipRemoveMap( node, type );
     }
 
-    public IntArray getCowRelationshipRemoveMap( NodeImpl node, String type,
+    public LongArray getCowRelationshipRemoveMap( NodeImpl node, String type,
         boolean create )
     {
         return lockReleaser.getCowRelationshipRemoveMap( node, type, create );
     }
 
-    public ArrayMap<String,IntArray> getCowRelationshipAddMap( NodeImpl node )
+    public ArrayMap<String,LongArray> getCowRelationshipAddMap( NodeImpl node )
     {
         return lockReleaser.getCowRelationshipAddMap( node );
     }
 
-    public IntArray getCowRelationshipAddMap( NodeImpl node, String string )
+    public LongArray getCowRelationshipAddMap( NodeImpl node, String string )
     {
         return lockReleaser.getCowRelationshipAddMap( node, string );
     }
 
-    public IntArray getCowRelationshipAddMap( NodeImpl node, String string,
+    public LongArray getCowRelationshipAddMap( NodeImpl node, String string,
         boolean create )
     {
         return lockReleaser.getCowRelationshipAddMap( node, string, create );
     }
 
-    public NodeImpl getNodeIfCached( int nodeId )
+    public NodeImpl getNodeIfCached( long nodeId )
     {
         return nodeCache.get( nodeId );
     }
 
-    public RelationshipImpl getRelIfCached( int nodeId )
+    public RelationshipImpl getRelIfCached( long nodeId )
     {
         return relCache.get( nodeId );
     }
@@ -914,17 +1042,17 @@ public class NodeManager
         return lockReleaser.getTransactionData();
     }
 
-    IntArray getCreatedNodes()
+    LongArray getCreatedNodes()
     {
         return persistenceManager.getCreatedNodes();
     }
 
-    boolean nodeCreated( int nodeId )
+    boolean nodeCreated( long nodeId )
     {
         return persistenceManager.isNodeCreated( nodeId );
     }
 
-    boolean relCreated( int relId )
+    boolean relCreated( long relId )
     {
         return persistenceManager.isRelationshipCreated( relId );
     }
@@ -940,58 +1068,73 @@ public class NodeManager
         weak( false, "weak reference cache" )
         {
             @Override
-            Cache<Integer, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            LongKeyCache<NodeImpl> node( AdaptiveCacheManager cacheManager )
             {
-                return new WeakLruCache<Integer,NodeImpl>( NODE_CACHE_NAME );
+                return new WeakLruCache<NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Integer, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            LongKeyCache<RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
             {
-                return new WeakLruCache<Integer,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
+                return new WeakLruCache<RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
         },
         soft( false, "soft reference cache" )
         {
             @Override
-            Cache<Integer, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            LongKeyCache<NodeImpl> node( AdaptiveCacheManager cacheManager )
             {
-                return new SoftLruCache<Integer,NodeImpl>( NODE_CACHE_NAME );
+                return new SoftLruCache<NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Integer, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            LongKeyCache<RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
             {
-                return new SoftLruCache<Integer,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
+                return new SoftLruCache<RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
         },
         old( true, "lru cache" )
         {
             @Override
-            Cache<Integer, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            LongKeyCache<NodeImpl> node( AdaptiveCacheManager cacheManager )
+            {
+                return new LongKeyLruCache<NodeImpl>( NODE_CACHE_NAME, 1500, cacheManager );
+            }
+
+            @Override
+            LongKeyCache<RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            {
+                return new LongKeyLruCache<RelationshipImpl>(
+                        RELATIONSHIP_CACHE_NAME, 3500, cacheManager );
+            }
+        },
+        clock( true, "concurrent clock cache" )
+        {
+            @Override
+            LongKeyCache<NodeImpl> node( AdaptiveCacheManager cacheManager )
             {
-                return new LruCache<Integer,NodeImpl>( NODE_CACHE_NAME, 1500, cacheManager );
+                return new ClockCache<NodeImpl>( NODE_CACHE_NAME, 1500, cacheManager );
             }
 
             @Override
-            Cache<Integer, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            LongKeyCache<RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
             {
-                return new LruCache<Integer,RelationshipImpl>(
+                return new ClockCache<RelationshipImpl>(
                         RELATIONSHIP_CACHE_NAME, 3500, cacheManager );
             }
         },
         none( false, "no cache" )
         {
             @Override
-            Cache<Integer, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            LongKeyCache<NodeImpl> node( AdaptiveCacheManager cacheManager )
             {
-                return new NoCache<Integer, NodeImpl>( NODE_CACHE_NAME );
+                return new NoCache<NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Integer, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            LongKeyCache<RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
             {
-                return new NoCache<Integer, RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
+                return new NoCache<RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
         };
         
@@ -1007,9 +1150,9 @@ public class NodeManager
             this.description = description;
         }
         
-        abstract Cache<Integer,NodeImpl> node( AdaptiveCacheManager cacheManager );
+        abstract LongKeyCache<NodeImpl> node( AdaptiveCacheManager cacheManager );
         
-        abstract Cache<Integer,RelationshipImpl> relationship( AdaptiveCacheManager cacheManager );
+        abstract LongKeyCache<RelationshipImpl> relationship( AdaptiveCacheManager cacheManager );
         
         public String getDescription()
         {
@@ -36,7 +36,7 @@ class NullRelTypeElement extends RelTypeElementIterator
     }
 
     @Override
-    public int next( NodeManager nodeManager )
+    public long next( NodeManager nodeManager )
     {
         throw new NoSuchElementException();
     }
@@ -22,18 +22,21 @@ package org.neo4j.kernel.impl.core;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.IntMap;
 
 abstract class Primitive
 {
-    protected final int id;
+    protected final long id;
 
-    private ArrayMap<Integer,PropertyData> propertyMap = null;
+    // number of properties kept in packed arrays before switching to hashing
+    private static final int PROPERTY_MAP_THRESHOLD = 9;
+
+    private IntMap<PropertyData> propertyMap = null;
 
     protected abstract void changeProperty( NodeManager nodeManager, int propertyId, Object value );
 
@@ -44,17 +47,17 @@ abstract class Primitive
     protected abstract ArrayMap<Integer, PropertyData> loadProperties( NodeManager nodeManager,
             boolean light );
 
-    Primitive( int id )
+    Primitive( long id )
     {
         this.id = id;
     }
 
-    Primitive( int id, boolean newPrimitive )
+    Primitive( long id, boolean newPrimitive )
     {
         this.id = id;
         if ( newPrimitive )
         {
-            propertyMap = new ArrayMap<Integer,PropertyData>( 9, false, true );
+            propertyMap = new IntMap<PropertyData>( PROPERTY_MAP_THRESHOLD );
         }
     }
     
@@ -73,7 +76,7 @@ abstract class Primitive
         ensureFullProperties( nodeManager );
         List<Object> values = new ArrayList<Object>();
 
-        for ( Integer index : propertyMap.keySet() )
+        for ( int index : propertyMap.keys() )
         {
             if ( skipMap != null && skipMap.get( index ) != null )
             {
@@ -83,7 +86,8 @@ abstract class Primitive
             {
                 continue;
             }
-            values.add( propertyMap.get( index ).getValue() );
+            values.add( getPropertyValue( nodeManager, 
+                propertyMap.get( index ) ) );
         }
         if ( addMap != null )
         {
@@ -105,7 +109,7 @@ abstract class Primitive
         ensureFullProperties( nodeManager );
         List<String> keys = new ArrayList<String>();
 
-        for ( Integer index : propertyMap.keySet() )
+        for ( int index : propertyMap.keys() )
         {
             if ( skipMap != null && skipMap.get( index ) != null )
             {
@@ -205,7 +209,7 @@ abstract class Primitive
                 }
             }
         }
-        for ( int keyId : propertyMap.keySet() )
+        for ( int keyId : propertyMap.keys() )
         {
             if ( !nodeManager.hasIndexFor( keyId ) )
             {
@@ -374,7 +378,7 @@ abstract class Primitive
                 }
                 if ( property == null )
                 {
-                    for ( int keyId : propertyMap.keySet() )
+                    for ( int keyId : propertyMap.keys() )
                     {
                         if ( !nodeManager.hasIndexFor( keyId ) )
                         {
@@ -490,7 +494,7 @@ abstract class Primitive
                     }
                     if ( property == null )
                     {
-                        for ( int keyId : propertyMap.keySet() )
+                        for ( int keyId : propertyMap.keys() )
                         {
                             if ( !nodeManager.hasIndexFor( keyId ) )
                             {
@@ -519,7 +523,10 @@ abstract class Primitive
             }
             removeProperty( nodeManager, property.getId() );
             success = true;
-            return getPropertyValue( nodeManager, property );
+            Object value = getPropertyValue( nodeManager, property );
+            // keep the removed value around for the transaction event data
+            property.setNewValue( value );
+            return value;
         }
         finally
         {
@@ -536,8 +543,13 @@ abstract class Primitive
         Object value = property.getValue();
         if ( value == null )
         {
+            long stamp = nodeManager.propertyValueStamp( property.getId() );
             value = nodeManager.loadPropertyValue( property.getId() );
-            property.setNewValue( value );
+            if ( !nodeManager.cachePropertyValue( property.getId(), value, 
+                stamp ) )
+            {
+                property.setNewValue( value );
+            }
         }
         return value;
     }
@@ -567,11 +579,23 @@ abstract class Primitive
         }
     }
 
+    private static IntMap<PropertyData> toIntMap(
+        ArrayMap<Integer,PropertyData> loadedProperties )
+    {
+        IntMap<PropertyData> map = 
+            new IntMap<PropertyData>( PROPERTY_MAP_THRESHOLD );
+        for ( Integer index : loadedProperties.keySet() )
+        {
+            map.put( index, loadedProperties.get( index ) );
+        }
+        return map;
+    }
+
     private boolean ensureFullProperties( NodeManager nodeManager )
     {
         if ( propertyMap == null )
         {
-            this.propertyMap = loadProperties( nodeManager, false );
+            this.propertyMap = toIntMap( loadProperties( nodeManager, false ) );
             return true;
         }
         return false;
@@ -581,7 +605,7 @@ abstract class Primitive
     {
         if ( propertyMap == null )
         {
-            this.propertyMap = loadProperties( nodeManager, true );
+            this.propertyMap = toIntMap( loadProperties( nodeManager, true ) );
             return true;
         }
         return false;
@@ -592,9 +616,9 @@ abstract class Primitive
         ensureFullLightProperties( nodeManager );
         List<PropertyEventData> props =
             new ArrayList<PropertyEventData>( propertyMap.size() );
-        for ( Map.Entry<Integer,PropertyData> entry : propertyMap.entrySet() )
+        for ( int keyId : propertyMap.keys() )
         {
-            PropertyIndex index = nodeManager.getIndexFor( entry.getKey() );
+            PropertyIndex index = nodeManager.getIndexFor( keyId );
             Object value = getPropertyValue( nodeManager, propertyMap.get( index.getKeyId() ) );
             props.add( new PropertyEventData( index.getKey(), value ) );
         }
@@ -20,25 +20,25 @@
 
 package org.neo4j.kernel.impl.core;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
-import java.util.Set;
 
-import org.neo4j.kernel.impl.util.IntArray;
+import org.neo4j.kernel.impl.util.LongArray;
 
 class RelTypeElement extends RelTypeElementIterator
 {
-    private final IntArray src;
-    private final IntArray add;
-    private final Set<Integer> remove = new HashSet<Integer>();
+    private final LongArray src;
+    private final LongArray add;
+    private final long[] remove;
     
     private boolean srcTraversed = false;
     private boolean addTraversed = false;
     private int position = 0;
-    private Integer nextElement = null;
+    private long nextElement = 0;
+    private boolean hasNextElement = false;
 
     static RelTypeElementIterator create( String type, NodeImpl node,
-        IntArray src, IntArray add, IntArray remove )
+        LongArray src, LongArray add, LongArray remove )
     {
         if ( add == null && remove == null )
         {
@@ -47,8 +47,8 @@ class RelTypeElement extends RelTypeElementIterator
         return new RelTypeElement( type, node, src, add, remove );
     }
 
-    private RelTypeElement( String type, NodeImpl node, IntArray src,
-        IntArray add, IntArray remove )
+    private RelTypeElement( String type, NodeImpl node, LongArray src,
+        LongArray add, LongArray remove )
     {
         super( type, node );
         this.src = src;
@@ -63,30 +63,40 @@ class RelTypeElement extends RelTypeElementIterator
         this.add = add;
         if ( remove != null )
         {
-            for ( int i = 0; i < remove.length(); i++ )
-            {
-                this.remove.add( remove.get( i ) );
-            }
+            this.remove = new long[remove.length()];
+            System.arraycopy( remove.getArray(), 0, this.remove, 0, 
+                remove.length() );
+            Arrays.sort( this.remove );
+        }
+        else
+        {
+            this.remove = new long[0];
         }
     }
 
+    private boolean isRemoved( long value )
+    {
+        return remove.length > 0 && Arrays.binarySearch( remove, value ) >= 0;
+    }
+
     public boolean hasNext( NodeManager nodeManager )
     {
-        if ( nextElement != null )
+        if ( hasNextElement )
         {
             return true;
         }
         while ( !addTraversed && position < add.length() )
         {
-            int value = add.get( position++ );
+            long value = add.get( position++ );
             if ( position >= add.length() )
             {
                 addTraversed = true;
                 position = 0;
             }
-            if ( !remove.contains( value ) )
+            if ( !isRemoved( value ) )
             {
                 nextElement = value;
+                hasNextElement = true;
                 return true;
             }
         }
@@ -103,24 +113,24 @@ class RelTypeElement extends RelTypeElementIterator
                     return false;
                 }
             }
-            int value = src.get( position++ );
-            if ( !remove.contains( value ) )
+            long value = src.get( position++ );
+            if ( !isRemoved( value ) )
             {
                 nextElement = value;
+                hasNextElement = true;
                 return true;
             }
         }
         return false;
     }
 
-    public int next( NodeManager nodeManager )
+    public long next( NodeManager nodeManager )
     {
         hasNext( nodeManager );
-        if ( nextElement != null )
+        if ( hasNextElement )
         {
-            Integer elementToReturn = nextElement;
-            nextElement = null;
-            return elementToReturn;
+            hasNextElement = false;
+            return nextElement;
         }
         throw new NoSuchElementException();
     }
@@ -43,5 +43,5 @@ public abstract class RelTypeElementIterator
 
     public abstract boolean hasNext( NodeManager nodeManager );
 
-    public abstract int next( NodeManager nodeManager );
+    public abstract long next( NodeManager nodeManager );
 }
@@ -30,11 +30,11 @@ import org.neo4j.kernel.impl.util.ArrayMap;
 
 class RelationshipImpl extends Primitive
 {
-    private final int startNodeId;
-    private final int endNodeId;
+    private final long startNodeId;
+    private final long endNodeId;
     private final RelationshipType type;
 
-    RelationshipImpl( int id, int startNodeId, int endNodeId, RelationshipType type, boolean newRel )
+    RelationshipImpl( long id, long startNodeId, long endNodeId, RelationshipType type, boolean newRel )
     {
         super( id, newRel );
         if ( type == null )
@@ -54,7 +54,7 @@ class RelationshipImpl extends Primitive
     @Override
     public int hashCode()
     {
-        return id;
+        return (int) (( id >>> 32 ) ^ id );
     }
 
     @Override
@@ -96,11 +96,11 @@ class RelationshipImpl extends Primitive
 
     public Node getOtherNode( NodeManager nodeManager, Node node )
     {
-        if ( startNodeId == (int) node.getId() )
+        if ( startNodeId == node.getId() )
         {
             return new NodeProxy( endNodeId, nodeManager );
         }
-        if ( endNodeId == (int) node.getId() )
+        if ( endNodeId == node.getId() )
         {
             return new NodeProxy( startNodeId, nodeManager );
         }
@@ -113,7 +113,7 @@ class RelationshipImpl extends Primitive
         return new NodeProxy( startNodeId, nodeManager );
     }
 
-    int getStartNodeId()
+    long getStartNodeId()
     {
         return startNodeId;
     }
@@ -123,7 +123,7 @@ class RelationshipImpl extends Primitive
         return new NodeProxy( endNodeId, nodeManager );
     }
 
-    int getEndNodeId()
+    long getEndNodeId()
     {
         return endNodeId;
     }
@@ -242,6 +242,16 @@ class RelationshipTypeHolder
         return relTypes.get( type.name() );
     }
 
+    /**
+     * Returns the id of the relationship type with the given name or
+     * <code>-1</code> if no such type exist.
+     */
+    int getIdFor( String name )
+    {
+        Integer id = relTypes.get( name );
+        return id != null ? id : -1;
+    }
+
     RelationshipType getRelationshipType( int id )
     {
         return relTranslation.get( id );
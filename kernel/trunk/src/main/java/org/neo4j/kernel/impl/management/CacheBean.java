@@ -25,6 +25,7 @@ import java.security.AccessControlException;
 import javax.management.MBeanOperationInfo;
 import javax.management.NotCompliantMBeanException;
 
+import org.neo4j.kernel.impl.cache.OffHeapValueCache;
 import org.neo4j.kernel.impl.core.NodeManager;
 import org.neo4j.kernel.management.Cache;
 
@@ -57,6 +58,41 @@ class CacheBean extends Neo4jMBean implements Cache
         return nodeManager.getRelationshipCacheSize();
     }
 
+    @Description( "Bytes of direct memory allocated for the off-heap property value cache, 0 if it is not enabled" )
+    public long getPropertyValueCacheCapacity()
+    {
+        OffHeapValueCache cache = nodeManager.getPropertyValueCache();
+        return cache != null ? cache.getCapacity() : 0;
+    }
+
+    @Description( "Bytes of the off-heap property value cache currently holding values" )
+    public long getPropertyValueCacheUsedBytes()
+    {
+        OffHeapValueCache cache = nodeManager.getPropertyValueCache();
+        return cache != null ? cache.getUsedBytes() : 0;
+    }
+
+    @Description( "The number of property values currently in the off-heap cache" )
+    public int getPropertyValueCacheSize()
+    {
+        OffHeapValueCache cache = nodeManager.getPropertyValueCache();
+        return cache != null ? cache.size() : 0;
+    }
+
+    @Description( "The number of property value loads served by the off-heap cache" )
+    public long getPropertyValueCacheHits()
+    {
+        OffHeapValueCache cache = nodeManager.getPropertyValueCache();
+        return cache != null ? cache.getHitCount() : 0;
+    }
+
+    @Description( "The number of property value loads that had to go to the store" )
+    public long getPropertyValueCacheMisses()
+    {
+        OffHeapValueCache cache = nodeManager.getPropertyValueCache();
+        return cache != null ? cache.getMissCount() : 0;
+    }
+
     @Description( value = "Clears the Neo4j caches", impact = MBeanOperationInfo.ACTION )
     public void clear()
     {
@@ -25,6 +25,7 @@ import java.util.Iterator;
 
 import javax.management.NotCompliantMBeanException;
 
+import org.neo4j.kernel.impl.nioneo.store.StoreWarmer;
 import org.neo4j.kernel.impl.nioneo.store.WindowPoolStats;
 import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
 import org.neo4j.kernel.management.MemoryMapping;
@@ -73,6 +74,42 @@ class MemoryMappingBean extends Neo4jMBean implements MemoryMapping
         return getMemoryPoolsImpl( datasource );
     }
 
+    @Description( "Whether the memory mapped windows in use before the last shutdown are still "
+                  + "being mapped and read in" )
+    public boolean isWarmingUp()
+    {
+        StoreWarmer warmer = datasource.getStoreWarmer();
+        return warmer != null && warmer.isWarmingUp();
+    }
+
+    @Description( "The number of memory mapped windows recorded to be warmed up at startup" )
+    public int getWarmUpWindowCount()
+    {
+        StoreWarmer warmer = datasource.getStoreWarmer();
+        return warmer != null ? warmer.getWindowsToWarmCount() : 0;
+    }
+
+    @Description( "The number of memory mapped windows warmed up so far" )
+    public int getWarmedUpWindowCount()
+    {
+        StoreWarmer warmer = datasource.getStoreWarmer();
+        return warmer != null ? warmer.getWarmedWindowCount() : 0;
+    }
+
+    @Description( "The number of recorded windows there was no memory left for when warming up" )
+    public int getSkippedWarmUpWindowCount()
+    {
+        StoreWarmer warmer = datasource.getStoreWarmer();
+        return warmer != null ? warmer.getSkippedWindowCount() : 0;
+    }
+
+    @Description( "The time in milliseconds the warm up took, or has taken so far" )
+    public long getWarmUpTime()
+    {
+        StoreWarmer warmer = datasource.getStoreWarmer();
+        return warmer != null ? warmer.getWarmUpTime() : 0;
+    }
+
     public static WindowPoolInfo[] getMemoryPoolsImpl( NeoStoreXaDataSource datasource )
     {
         Collection<WindowPoolStats> stats = datasource.getWindowPoolStats();
@@ -89,6 +126,6 @@ class MemoryMappingBean extends Neo4jMBean implements MemoryMapping
     {
         return new WindowPoolInfo( stats.getName(), stats.getMemAvail(), stats.getMemUsed(),
                 stats.getWindowCount(), stats.getWindowSize(), stats.getHitCount(),
-                stats.getMissCount(), stats.getOomCount() );
+                stats.getMissCount(), stats.getSwitchCount(), stats.getOomCount() );
     }
 }
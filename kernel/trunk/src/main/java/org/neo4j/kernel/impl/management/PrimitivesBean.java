@@ -33,11 +33,17 @@ import org.neo4j.kernel.management.Primitives;
 class PrimitivesBean extends Neo4jMBean implements Primitives
 {
     private final NodeManager nodeManager;
+    private final AllocationRate nodeRate;
+    private final AllocationRate relationshipRate;
+    private final AllocationRate propertyRate;
 
     PrimitivesBean( String instanceId, NodeManager nodeManager ) throws NotCompliantMBeanException
     {
         super( instanceId, Primitives.class );
         this.nodeManager = nodeManager;
+        this.nodeRate = new AllocationRate( Node.class );
+        this.relationshipRate = new AllocationRate( Relationship.class );
+        this.propertyRate = new AllocationRate( PropertyStore.class );
     }
 
     @Description( "An estimation of the number of nodes used in this Neo4j instance" )
@@ -63,4 +69,65 @@ class PrimitivesBean extends Neo4jMBean implements Primitives
     {
         return nodeManager.getNumberOfIdsInUse( RelationshipType.class );
     }
+
+    @Description( "Node ids handed out per second since this attribute was last read" )
+    public double getNodeIdAllocationRate()
+    {
+        return nodeRate.sample();
+    }
+
+    @Description( "Relationship ids handed out per second since this attribute was last read" )
+    public double getRelationshipIdAllocationRate()
+    {
+        return relationshipRate.sample();
+    }
+
+    @Description( "Property ids handed out per second since this attribute was last read" )
+    public double getPropertyIdAllocationRate()
+    {
+        return propertyRate.sample();
+    }
+
+    @Description( "The number of freed node ids waiting to be reused" )
+    public long getNumberOfFreeNodeIds()
+    {
+        return nodeManager.getNumberOfFreeIds( Node.class );
+    }
+
+    @Description( "The number of freed relationship ids waiting to be reused" )
+    public long getNumberOfFreeRelationshipIds()
+    {
+        return nodeManager.getNumberOfFreeIds( Relationship.class );
+    }
+
+    @Description( "The number of freed property ids waiting to be reused" )
+    public long getNumberOfFreePropertyIds()
+    {
+        return nodeManager.getNumberOfFreeIds( PropertyStore.class );
+    }
+
+    private class AllocationRate
+    {
+        private final Class<?> type;
+        private long lastCount;
+        private long lastTime;
+
+        AllocationRate( Class<?> type )
+        {
+            this.type = type;
+            this.lastCount = nodeManager.getNumberOfAllocatedIds( type );
+            this.lastTime = System.currentTimeMillis();
+        }
+
+        synchronized double sample()
+        {
+            long count = nodeManager.getNumberOfAllocatedIds( type );
+            long time = System.currentTimeMillis();
+            double rate = time > lastTime ? 
+                (count - lastCount) * 1000.0 / (time - lastTime) : 0;
+            lastCount = count;
+            lastTime = time;
+            return rate;
+        }
+    }
 }
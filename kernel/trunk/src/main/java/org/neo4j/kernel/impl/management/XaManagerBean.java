@@ -27,6 +27,7 @@ import javax.management.NotCompliantMBeanException;
 
 import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
 import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 import org.neo4j.kernel.management.XaManager;
 import org.neo4j.kernel.management.XaResourceInfo;
 
@@ -68,7 +69,9 @@ class XaManagerBean extends Neo4jMBean implements XaManager
         this.datasourceMananger = datasourceMananger;
     }
 
-    @Description( "Information about all XA resources managed by the transaction manager" )
+    @Description( "Information about all XA resources managed by the transaction manager, "
+                  + "including how many commits each force of their logical log covered "
+                  + "and the work done by background checkpoints" )
     public XaResourceInfo[] getXaResources()
     {
         return getXaResourcesImpl( datasourceMananger );
@@ -86,7 +89,25 @@ class XaManagerBean extends Neo4jMBean implements XaManager
 
     private static XaResourceInfo createXaResourceInfo( XaDataSource datasource )
     {
-        return new XaResourceInfo( datasource.getName(), toHexString( datasource.getBranchId() ) );
+        XaLogicalLog log = datasource.getXaLogicalLog();
+        if ( log == null )
+        {
+            return new XaResourceInfo( datasource.getName(),
+                    toHexString( datasource.getBranchId() ), false, 0, 0, 0, 0, 0,
+                    datasource.getCheckpointCount(), datasource.getCheckpointBytesWritten(),
+                    datasource.getLastCheckpointTime(), 0, 0,
+                    datasource.getReplayedCommandCount(), datasource.getLastReplayTime() );
+        }
+        long forceCount = log.getForceCount();
+        double averageForceTime = forceCount == 0 ? 0
+                : log.getTotalForceTime() / ( forceCount * 1000000d );
+        return new XaResourceInfo( datasource.getName(), toHexString( datasource.getBranchId() ),
+                log.isGroupCommitEnabled(), forceCount, log.getForcedEntryCount(),
+                log.getLargestForceBatch(), averageForceTime, log.getLastRotationFlushTime(),
+                datasource.getCheckpointCount(), datasource.getCheckpointBytesWritten(),
+                datasource.getLastCheckpointTime(), log.getRecoveredEntryCount(),
+                log.getLastRecoveryTime(), datasource.getReplayedCommandCount(),
+                datasource.getLastReplayTime() );
     }
 
     private static String toHexString( byte[] branchId )
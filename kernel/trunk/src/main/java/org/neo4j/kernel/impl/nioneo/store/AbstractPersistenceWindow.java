@@ -124,6 +124,13 @@ abstract class AbstractPersistenceWindow extends LockableWindow
         writeOut();
     }
 
+    @Override
+    long flushedBytes( int dirtyPageCount )
+    {
+        // the whole buffer is written out
+        return totalSize;
+    }
+
     public boolean equals( Object o )
     {
         if ( !(o instanceof AbstractPersistenceWindow) )
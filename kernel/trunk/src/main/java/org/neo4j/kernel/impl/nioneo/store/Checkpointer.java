@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread writing dirty persistence windows of a {@link NeoStore}
+ * to disk at a limited rate, so the flush done at log rotation (and close)
+ * only has to write what was changed since the last pass.
+ * <p>
+ * A checkpoint is one pass over all windows of all stores. After a pass
+ * the checkpointer sleeps for a second before starting the next one.
+ */
+public class Checkpointer
+{
+    private static Logger log = Logger.getLogger( 
+        Checkpointer.class.getName() );
+
+    // time between passes and the slice the I/O rate is enforced over
+    private static final long PASS_INTERVAL = 1000;
+    private static final long SLICES_PER_SECOND = 10;
+
+    private final NeoStore neoStore;
+    private final long bytesPerSecond;
+    private final Thread thread;
+    private volatile boolean running = false;
+
+    private final AtomicLong checkpointCount = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile long lastCheckpointTime = 0;
+
+    /**
+     * @param neoStore the store to write dirty windows of
+     * @param bytesPerSecond max number of bytes to write per second
+     */
+    public Checkpointer( NeoStore neoStore, long bytesPerSecond )
+    {
+        if ( bytesPerSecond <= 0 )
+        {
+            throw new IllegalArgumentException( "Illegal I/O rate " + 
+                bytesPerSecond );
+        }
+        this.neoStore = neoStore;
+        this.bytesPerSecond = bytesPerSecond;
+        this.thread = new Thread( new Runnable()
+        {
+            public void run()
+            {
+                runCheckpoints();
+            }
+        }, "Checkpointer [" + neoStore.getStorageFileName() + "]" );
+        this.thread.setDaemon( true );
+    }
+
+    public void start()
+    {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the checkpointer and waits for the pass in progress to finish
+     * writing its current window. The thread is not interrupted since that
+     * would close the file channel it may be writing to.
+     */
+    public void stop()
+    {
+        synchronized ( this )
+        {
+            running = false;
+            notifyAll();
+        }
+        try
+        {
+            thread.join();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.interrupted();
+        }
+    }
+
+    private void runCheckpoints()
+    {
+        while ( running )
+        {
+            try
+            {
+                checkpoint();
+                pause( PASS_INTERVAL );
+            }
+            catch ( RuntimeException e )
+            {
+                log.log( Level.WARNING, "Checkpoint of " + 
+                    neoStore.getStorageFileName() + " failed", e );
+            }
+        }
+    }
+
+    /**
+     * Writes all windows that are dirty in one pass, sleeping between
+     * slices to stay within the configured I/O rate.
+     */
+    void checkpoint()
+    {
+        long sliceBytes = Math.max( 1, bytesPerSecond / SLICES_PER_SECOND );
+        long start = System.currentTimeMillis();
+        long passBytes = 0;
+        while ( running )
+        {
+            long written = neoStore.flushDirtyWindows( sliceBytes );
+            if ( written == 0 )
+            {
+                break;
+            }
+            passBytes += written;
+            long due = start + passBytes * 1000 / bytesPerSecond;
+            long now = System.currentTimeMillis();
+            if ( due > now )
+            {
+                pause( due - now );
+            }
+        }
+        if ( passBytes > 0 )
+        {
+            lastCheckpointTime = System.currentTimeMillis() - start;
+            checkpointCount.incrementAndGet();
+            bytesWritten.addAndGet( passBytes );
+        }
+    }
+
+    private synchronized void pause( long millis )
+    {
+        long end = System.currentTimeMillis() + millis;
+        long left = millis;
+        while ( running && left > 0 )
+        {
+            try
+            {
+                wait( left );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.interrupted();
+            }
+            left = end - System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return number of checkpoints that wrote something
+     */
+    public long getCheckpointCount()
+    {
+        return checkpointCount.get();
+    }
+
+    /**
+     * @return total number of dirty bytes written by the checkpointer
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return duration of the last checkpoint in milliseconds
+     */
+    public long getLastCheckpointTime()
+    {
+        return lastCheckpointTime;
+    }
+}
@@ -27,11 +27,14 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.impl.core.ReadOnlyDbException;
+import org.neo4j.kernel.impl.util.SizeUtils;
 
 /**
  * Contains common implementation for {@link AbstractStore} and
@@ -384,25 +387,9 @@ public abstract class CommonAbstractStore
             String mem = (String) getConfig().get( realName + ".mapped_memory" );
             if ( mem != null )
             {
-                long multiplier = 1;
-                if ( mem.endsWith( "M" ) )
-                {
-                    multiplier = 1024 * 1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                else if ( mem.endsWith( "k" ) )
-                {
-                    multiplier = 1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                else if ( mem.endsWith( "G" ) )
-                {
-                    multiplier = 1024*1024*1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
                 try
                 {
-                    return Integer.parseInt( mem ) * multiplier;
+                    return SizeUtils.parseSize( mem );
                 }
                 catch ( NumberFormatException e )
                 {
@@ -502,21 +489,55 @@ public abstract class CommonAbstractStore
         windowPool.flushAll();
     }
 
-    private boolean isRecovered = false;
+    /**
+     * Writes out dirty windows of this store until about <code>maxBytes</code>
+     * has been written, see {@link Checkpointer}.
+     * 
+     * @param maxBytes number of bytes to write before returning
+     * @return number of bytes written, <code>0</code> if there was nothing to
+     * write
+     */
+    public long flushDirtyWindows( long maxBytes )
+    {
+        PersistenceWindowPool pool = windowPool;
+        if ( pool == null || maxBytes <= 0 )
+        {
+            return 0;
+        }
+        return pool.flushDirtyWindows( maxBytes );
+    }
+
+    /**
+     * Adds the window pool of this store, and those of the stores it keeps
+     * its dynamic records in, to <code>pools</code>, see 
+     * {@link StoreWarmer}.
+     * 
+     * @param pools the list to add the window pools to
+     */
+    void collectWindowPools( List<PersistenceWindowPool> pools )
+    {
+        if ( windowPool != null )
+        {
+            pools.add( windowPool );
+        }
+    }
+
+    // counted since recovery may update records from several threads
+    private final AtomicInteger recoveredCount = new AtomicInteger();
 
     protected boolean isInRecoveryMode()
     {
-        return isRecovered;
+        return recoveredCount.get() > 0;
     }
 
     protected void setRecovered()
     {
-        isRecovered = true;
+        recoveredCount.incrementAndGet();
     }
 
     protected void unsetRecovered()
     {
-        isRecovered = false;
+        recoveredCount.decrementAndGet();
     }
 
     /**
@@ -538,7 +559,32 @@ public abstract class CommonAbstractStore
     protected void openIdGenerator()
     {
         idGenerator = new IdGeneratorImpl( storageFileName + ".id",
-            DEFAULT_ID_GRAB_SIZE );
+            DEFAULT_ID_GRAB_SIZE, getIdRangeSize() );
+    }
+
+    private int getIdRangeSize()
+    {
+        if ( getConfig() != null )
+        {
+            String rangeSize = (String) getConfig().get( Config.ID_RANGE_SIZE );
+            if ( rangeSize != null )
+            {
+                try
+                {
+                    int size = Integer.parseInt( rangeSize );
+                    if ( size > 0 )
+                    {
+                        return size;
+                    }
+                }
+                catch ( NumberFormatException e )
+                { // logged below
+                }
+                logger.warning( "Unable to parse " + Config.ID_RANGE_SIZE + 
+                    " [" + rangeSize + "]" );
+            }
+        }
+        return 1;
     }
     
     protected void openReadOnlyIdGenerator( int recordSize )
@@ -689,6 +735,22 @@ public abstract class CommonAbstractStore
         return idGenerator.getNumberOfIdsInUse();
     }
 
+    /**
+     * @return The number of ids handed out since the store was opened.
+     */
+    public long getNumberOfAllocatedIds()
+    {
+        return idGenerator.getNumberOfAllocatedIds();
+    }
+
+    /**
+     * @return The number of freed ids waiting to be reused.
+     */
+    public long getNumberOfFreeIds()
+    {
+        return idGenerator.getNumberOfFreeIds();
+    }
+
     
     public WindowPoolStats getWindowPoolStats()
     {
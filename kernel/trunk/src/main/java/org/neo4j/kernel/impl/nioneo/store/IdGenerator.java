@@ -30,4 +30,6 @@ public interface IdGenerator
     void close();
     String getFileName();
     long getNumberOfIdsInUse();
+    long getNumberOfAllocatedIds();
+    long getNumberOfFreeIds();
 }
\ No newline at end of file
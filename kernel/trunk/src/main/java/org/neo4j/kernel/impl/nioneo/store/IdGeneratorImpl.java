@@ -20,14 +20,17 @@
 
 package org.neo4j.kernel.impl.nioneo.store;
 
-import java.util.LinkedList;
-import java.util.concurrent.atomic.AtomicLong;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.RandomAccessFile;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class generates unique ids for a resource type. For example, nodes in a
@@ -52,6 +55,16 @@ import java.nio.channels.FileChannel;
  * Passing a non free id will corrupt the id generator and {@link #nextId}
  * method will eventually return that id.
  * <p>
+ * {@link #nextId} and {@link #freeId} take no lock in the common case. The
+ * high id is a counter updated with compare and set, defragged and released
+ * ids are kept in concurrent queues. Reading and writing batches of
+ * defragged ids from/to file is guarded by a lock; a thread freeing ids
+ * only writes the released batch if no other thread is doing file I/O on
+ * the generator at the moment, else it leaves it for that thread or a later
+ * call. With a <CODE>rangeSize</CODE> greater than one every thread
+ * reserves that many new ids at a time and hands them out without touching
+ * the shared counter, ids from different threads will then interleave.
+ * <p>
  * The {@link #close()} method must always be invoked when done using an
  * generator (for this time). Failure to do will render the generator as
  * "sticky" and unusable next time you try to initialize a generator using the
@@ -73,30 +86,56 @@ public class IdGeneratorImpl implements IdGenerator
     private static final long OVERFLOW_ID = 4294967294l;
 
     // number of defragged ids to grab form file in batch (also used for write)
-    private int grabSize = -1;
-    private AtomicLong nextFreeId = new AtomicLong( -1 );
+    private final int grabSize;
+    // number of new ids a thread reserves at a time
+    private final int rangeSize;
+    private final AtomicLong nextFreeId = new AtomicLong( -1 );
     // total bytes read from file, used in writeIdBatch() and close()
     private long totalBytesRead = 0;
     // true if more defragged ids can be read from file
-    private boolean haveMore = true;
+    private volatile boolean haveMore = true;
     // marks where this sessions released ids will be written
     private long readBlocksTo = HEADER_SIZE;
     // used to calculate number of ids actually in use
-    private long defraggedIdCount = -1;
+    private final AtomicLong defraggedIdCount = new AtomicLong( -1 );
+    // number of ids handed out since opened
+    private final AtomicLong allocatedIdCount = new AtomicLong( 0 );
 
     private final String fileName;
-    private FileChannel fileChannel = null;
-    // in memory defragged ids read from file (and from freeId)
-    private final LinkedList<Long> defragedIdList = 
-        new LinkedList<Long>();
+    private volatile FileChannel fileChannel = null;
+    // guards the file channel, the buffers and the file positions above
+    private final ReentrantLock fileLock = new ReentrantLock();
+    // in memory defragged ids read from file
+    private final Queue<Long> defragedIdList = 
+        new ConcurrentLinkedQueue<Long>();
     // in memory newly free defragged ids that havn't been flushed to disk yet
-    private final LinkedList<Long> releasedIdList = 
-        new LinkedList<Long>();
+    private final Queue<Long> releasedIdList = 
+        new ConcurrentLinkedQueue<Long>();
+    private final AtomicInteger releasedIdCount = new AtomicInteger( 0 );
     // buffer used in readIdBatch()
     private ByteBuffer readBuffer = null;
     // buffer used in writeIdBatch() and close()
     private ByteBuffer writeBuffer = null;
 
+    private static class IdRange
+    {
+        volatile long next = 0;
+        volatile long end = 0;
+    }
+
+    // all ranges handed to threads, unused ids are freed on close
+    private final Queue<IdRange> ranges = new ConcurrentLinkedQueue<IdRange>();
+    private final ThreadLocal<IdRange> threadRange = new ThreadLocal<IdRange>()
+    {
+        @Override
+        protected IdRange initialValue()
+        {
+            IdRange range = new IdRange();
+            ranges.add( range );
+            return range;
+        }
+    };
+
     /**
      * Opens the id generator represented by <CODE>fileName</CODE>. The
      * <CODE>grabSize</CODE> means how many defragged ids we should keep in
@@ -119,13 +158,37 @@ public class IdGeneratorImpl implements IdGenerator
      *             If no such file exist or if the id generator is sticky
      */
     public IdGeneratorImpl( String fileName, int grabSize )
+    {
+        this( fileName, grabSize, 1 );
+    }
+
+    /**
+     * Opens the id generator represented by <CODE>fileName</CODE> letting
+     * each thread reserve <CODE>rangeSize</CODE> new ids at a time.
+     * 
+     * @param fileName
+     *            The file name (and path if needed) for the id generator to be
+     *            opened
+     * @param grabSize
+     *            The number of defragged ids to keep in memory
+     * @param rangeSize
+     *            The number of new ids reserved per thread, 1 hands out new
+     *            ids in strict order
+     */
+    public IdGeneratorImpl( String fileName, int grabSize, int rangeSize )
     {
         if ( grabSize < 1 )
         {
             throw new IllegalArgumentException( "Illegal grabSize: " + grabSize );
         }
+        if ( rangeSize < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal rangeSize: " + 
+                rangeSize );
+        }
         this.fileName = fileName;
         this.grabSize = grabSize;
+        this.rangeSize = rangeSize;
         readBuffer = ByteBuffer.allocate( grabSize * 8 );
         writeBuffer = ByteBuffer.allocate( grabSize * 8 );
         initGenerator();
@@ -141,27 +204,71 @@ public class IdGeneratorImpl implements IdGenerator
      * @throws IOException
      *             If the capacity is exceeded or closed generator
      */
-    public synchronized long nextId()
+    public long nextId()
     {
         if ( fileChannel == null )
         {
             throw new IllegalStateException( "Closed id generator " + fileName );
         }
-        if ( defragedIdList.size() > 0 )
+        Long defraggedId = defragedIdList.poll();
+        if ( defraggedId == null && haveMore )
+        {
+            defraggedId = readAndPollDefraggedId();
+        }
+        allocatedIdCount.incrementAndGet();
+        if ( defraggedId != null )
+        {
+            defraggedIdCount.decrementAndGet();
+            return defraggedId;
+        }
+        if ( rangeSize == 1 )
+        {
+            return reserveHighIds( 1 );
+        }
+        IdRange range = threadRange.get();
+        if ( range.next >= range.end )
+        {
+            long start = reserveHighIds( rangeSize );
+            range.end = Math.min( start + rangeSize, OVERFLOW_ID );
+            range.next = start;
+        }
+        return range.next++;
+    }
+
+    private long reserveHighIds( int count )
+    {
+        while ( true )
+        {
+            long id = nextFreeId.get();
+            if ( id >= OVERFLOW_ID || id < 0  )
+            {
+                throw new UnderlyingStorageException( "Id capacity exceeded" );
+            }
+            if ( nextFreeId.compareAndSet( id, 
+                Math.min( id + count, OVERFLOW_ID ) ) )
+            {
+                return id;
+            }
+        }
+    }
+
+    private Long readAndPollDefraggedId()
+    {
+        fileLock.lock();
+        try
         {
-            long id = defragedIdList.removeFirst();
-            if ( haveMore && defragedIdList.size() == 0 )
+            Long id = defragedIdList.poll();
+            if ( id == null && haveMore && fileChannel != null )
             {
                 readIdBatch();
+                id = defragedIdList.poll();
             }
-            defraggedIdCount--;
             return id;
         }
-        if ( nextFreeId.get() >= OVERFLOW_ID || nextFreeId.get() < 0  )
+        finally
         {
-            throw new UnderlyingStorageException( "Id capacity exceeded" );
+            fileLock.unlock();
         }
-        return nextFreeId.getAndIncrement();
     }
 
     /**
@@ -202,7 +309,7 @@ public class IdGeneratorImpl implements IdGenerator
      * @throws IOException
      *             If id is negative or greater than the highest returned id
      */
-    public synchronized void freeId( long id )
+    public void freeId( long id )
     {
         if ( id < 0 || id >= nextFreeId.get() )
         {
@@ -213,10 +320,21 @@ public class IdGeneratorImpl implements IdGenerator
             throw new IllegalStateException( "Generator closed " + fileName );
         }
         releasedIdList.add( id );
-        defraggedIdCount++;
-        if ( releasedIdList.size() >= grabSize )
+        defraggedIdCount.incrementAndGet();
+        if ( releasedIdCount.incrementAndGet() >= grabSize && 
+            fileLock.tryLock() )
         {
-            writeIdBatch();
+            try
+            {
+                if ( fileChannel != null )
+                {
+                    writeIdBatch();
+                }
+            }
+            finally
+            {
+                fileLock.unlock();
+            }
         }
     }
 
@@ -232,23 +350,49 @@ public class IdGeneratorImpl implements IdGenerator
      * @throws IOException
      *             If unable to close this id generator
      */
-    public synchronized void close()
+    public void close()
+    {
+        fileLock.lock();
+        try
+        {
+            doClose();
+        }
+        finally
+        {
+            fileLock.unlock();
+        }
+    }
+
+    private void doClose()
     {
         if ( nextFreeId.get() == -1 )
         {
             return;
         }
 
+        // give back what is left of the thread ranges
+        for ( IdRange range : ranges )
+        {
+            for ( long id = range.next; id < range.end; id++ )
+            {
+                releasedIdList.add( id );
+                releasedIdCount.incrementAndGet();
+                defraggedIdCount.incrementAndGet();
+            }
+            range.next = range.end;
+        }
         // write out lists
-        if ( releasedIdList.size() > 0 )
+        if ( releasedIdCount.get() > 0 )
         {
             writeIdBatch();
         }
-        if ( defragedIdList.size() > 0 )
+        if ( !defragedIdList.isEmpty() )
         {
-            while ( defragedIdList.size() > 0 )
+            Long id;
+            while ( ( id = defragedIdList.poll() ) != null )
             {
-                releasedIdList.add( defragedIdList.removeFirst() );
+                releasedIdList.add( id );
+                releasedIdCount.incrementAndGet();
             }
             writeIdBatch();
         }
@@ -357,7 +501,7 @@ public class IdGeneratorImpl implements IdGenerator
     }
 
     // initialize the id generator and performs a simple validation
-    private synchronized void initGenerator()
+    private void initGenerator()
     {
         try
         {
@@ -386,7 +530,7 @@ public class IdGeneratorImpl implements IdGenerator
             fileChannel.write( buffer );
             fileChannel.position( HEADER_SIZE );
             readBlocksTo = fileChannel.size();
-            defraggedIdCount = (int) (readBlocksTo - HEADER_SIZE) / 8;
+            defraggedIdCount.set( (readBlocksTo - HEADER_SIZE) / 8 );
             readIdBatch();
         }
         catch ( IOException e )
@@ -396,6 +540,7 @@ public class IdGeneratorImpl implements IdGenerator
         }
     }
 
+    // caller must hold fileLock (or be the constructor)
     private void readIdBatch()
     {
         if ( !haveMore )
@@ -409,15 +554,10 @@ public class IdGeneratorImpl implements IdGenerator
         }
         try
         {
+            readBuffer.clear();
             if ( totalBytesRead + readBuffer.capacity() > readBlocksTo )
             {
-                readBuffer.clear();
-                readBuffer
-                    .limit( (int) (readBlocksTo - fileChannel.position()) );
-            }
-            else
-            {
-                readBuffer.clear();
+                readBuffer.limit( (int) (readBlocksTo - totalBytesRead) );
             }
             fileChannel.position( totalBytesRead );
             int bytesRead = fileChannel.read( readBuffer );
@@ -426,7 +566,6 @@ public class IdGeneratorImpl implements IdGenerator
             readBuffer.flip();
             assert (bytesRead % 8) == 0;
             int idsRead = bytesRead / 8;
-            defraggedIdCount -= idsRead;
             for ( int i = 0; i < idsRead; i++ )
             {
                 long id = readBuffer.getLong();
@@ -440,7 +579,7 @@ public class IdGeneratorImpl implements IdGenerator
         }
     }
 
-    // writes a batch of defragged ids to file
+    // writes a batch of defragged ids to file, caller must hold fileLock
     private void writeIdBatch()
     {
         // position at end
@@ -448,9 +587,11 @@ public class IdGeneratorImpl implements IdGenerator
         {
             fileChannel.position( fileChannel.size() );
             writeBuffer.clear();
-            while ( releasedIdList.size() > 0 )
+            Long id;
+            while ( ( id = releasedIdList.poll() ) != null )
             {
-                writeBuffer.putLong( releasedIdList.removeFirst() );
+                releasedIdCount.decrementAndGet();
+                writeBuffer.putLong( id );
                 if ( writeBuffer.position() == writeBuffer.capacity() )
                 {
                     writeBuffer.flip();
@@ -479,23 +620,40 @@ public class IdGeneratorImpl implements IdGenerator
      * @throws IOException
      *             If problem dumping free ids
      */
-    public synchronized void dumpFreeIds()
+    public void dumpFreeIds()
     {
-        while ( haveMore )
+        fileLock.lock();
+        try
         {
-            readIdBatch();
+            while ( haveMore )
+            {
+                readIdBatch();
+            }
+            for ( Long id : defragedIdList )
+            {
+                System.out.print( " " + id );
+            }
+            System.out.println( "\nNext free id: " + nextFreeId );
+            doClose();
         }
-        java.util.Iterator<Long> itr = defragedIdList.iterator();
-        while ( itr.hasNext() )
+        finally
         {
-            System.out.print( " " + itr.next() );
+            fileLock.unlock();
         }
-        System.out.println( "\nNext free id: " + nextFreeId );
-        close();
     }
 
-    public synchronized long getNumberOfIdsInUse()
+    public long getNumberOfIdsInUse()
+    {
+        return nextFreeId.get() - defraggedIdCount.get();
+    }
+
+    public long getNumberOfAllocatedIds()
+    {
+        return allocatedIdCount.get();
+    }
+
+    public long getNumberOfFreeIds()
     {
-        return nextFreeId.get() - defraggedIdCount;
+        return defraggedIdCount.get();
     }
-}
\ No newline at end of file
+}
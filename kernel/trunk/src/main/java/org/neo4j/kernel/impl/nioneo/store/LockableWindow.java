@@ -21,7 +21,9 @@
 package org.neo4j.kernel.impl.nioneo.store;
 
 import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.neo4j.kernel.impl.transaction.LockException;
 
@@ -32,6 +34,9 @@ import org.neo4j.kernel.impl.transaction.LockException;
  */
 abstract class LockableWindow implements PersistenceWindow
 {
+    // granularity the OS writes modified memory mapped pages in
+    private static final int PAGE_SIZE = 4096;
+
     public abstract Buffer getBuffer();
 
     public abstract long position();
@@ -42,6 +47,14 @@ abstract class LockableWindow implements PersistenceWindow
 
     public abstract void close();
 
+    /**
+     * Reads the content of this window into memory if it is not already
+     * there, used when warming up a store.
+     */
+    void load()
+    {
+    }
+
     private OperationType type = null;
     private final FileChannel fileChannel;
 
@@ -50,6 +63,10 @@ abstract class LockableWindow implements PersistenceWindow
         new LinkedList<Thread>();
     private int lockCount = 0;
     private int marked = 0;
+    private final AtomicInteger pinCount = new AtomicInteger();
+    // pages written to since the last flush, guarded by this
+    private long[] dirtyPages = null;
+    private int dirtyPageCount = 0;
 
     LockableWindow( FileChannel fileChannel )
     {
@@ -125,6 +142,108 @@ abstract class LockableWindow implements PersistenceWindow
         }
     }
 
+    /**
+     * Pins this window so it can't be retired by the pool while in use. Pins
+     * are taken without locking, a window that has been retired can not be
+     * pinned again.
+     * 
+     * @return <code>true</code> if the window was pinned, <code>false</code>
+     *         if it has been retired
+     */
+    boolean pin()
+    {
+        while ( true )
+        {
+            int count = pinCount.get();
+            if ( count < 0 )
+            {
+                return false;
+            }
+            if ( pinCount.compareAndSet( count, count + 1 ) )
+            {
+                return true;
+            }
+        }
+    }
+
+    void unpin()
+    {
+        pinCount.decrementAndGet();
+    }
+
+    /**
+     * Retires this window if it isn't pinned, after that {@link #pin()} will
+     * always fail.
+     * 
+     * @return <code>true</code> if the window was retired
+     */
+    boolean retire()
+    {
+        return pinCount.compareAndSet( 0, -1 );
+    }
+
+    /**
+     * Marks the pages holding record <code>id</code> as written to since the
+     * window was last flushed, set when the window is acquired for write.
+     * 
+     * @param id the record about to be written
+     */
+    synchronized void setDirty( long id )
+    {
+        int recordSize = getRecordSize();
+        long offset = ( id - position() ) * recordSize;
+        if ( offset < 0 || offset >= (long) size() * recordSize )
+        {
+            return;
+        }
+        if ( dirtyPages == null )
+        {
+            int pages = (int) ( ( (long) size() * recordSize + PAGE_SIZE - 1 ) 
+                / PAGE_SIZE );
+            dirtyPages = new long[( pages + 63 ) >>> 6];
+        }
+        int last = (int) ( ( offset + recordSize - 1 ) / PAGE_SIZE );
+        for ( int page = (int) ( offset / PAGE_SIZE ); page <= last; page++ )
+        {
+            long bit = 1L << ( page & 63 );
+            if ( ( dirtyPages[page >>> 6] & bit ) == 0 )
+            {
+                dirtyPages[page >>> 6] |= bit;
+                dirtyPageCount++;
+            }
+        }
+    }
+
+    /**
+     * Clears the dirty pages, called before the window is flushed so writes
+     * made during the flush will mark it dirty again.
+     * 
+     * @return the number of bytes the flush of this window writes,
+     * <code>0</code> if the window is clean
+     */
+    synchronized long clearDirty()
+    {
+        if ( dirtyPageCount == 0 )
+        {
+            return 0;
+        }
+        long bytes = flushedBytes( dirtyPageCount );
+        Arrays.fill( dirtyPages, 0 );
+        dirtyPageCount = 0;
+        return bytes;
+    }
+
+    /**
+     * Returns the number of bytes {@link #force()} writes when
+     * <code>dirtyPageCount</code> pages have been written to. Only the
+     * modified pages of a memory mapped window reach the disk.
+     */
+    long flushedBytes( int dirtyPageCount )
+    {
+        return Math.min( (long) dirtyPageCount * PAGE_SIZE, 
+            (long) size() * getRecordSize() );
+    }
+
     synchronized int getWaitingThreadsCount()
     {
         return waitingThreadList.size();
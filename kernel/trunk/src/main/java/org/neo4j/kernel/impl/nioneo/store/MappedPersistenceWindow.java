@@ -98,6 +98,12 @@ class MappedPersistenceWindow extends LockableWindow
         return position() == ((MappedPersistenceWindow) o).position();
     }
 
+    @Override
+    void load()
+    {
+        ((java.nio.MappedByteBuffer) buffer.getBuffer()).load();
+    }
+
     void unmap()
     {
         if ( buffer != null )
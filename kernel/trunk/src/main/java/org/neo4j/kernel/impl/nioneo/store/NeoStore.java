@@ -128,6 +128,31 @@ public class NeoStore extends AbstractStore
         nodeStore.flushAll();
     }
 
+    @Override
+    public long flushDirtyWindows( long maxBytes )
+    {
+        if ( relTypeStore == null || propStore == null || relStore == null || 
+                nodeStore == null )
+        {
+            return 0;
+        }
+        long written = relTypeStore.flushDirtyWindows( maxBytes );
+        written += propStore.flushDirtyWindows( maxBytes - written );
+        written += relStore.flushDirtyWindows( maxBytes - written );
+        written += nodeStore.flushDirtyWindows( maxBytes - written );
+        return written + super.flushDirtyWindows( maxBytes - written );
+    }
+
+    @Override
+    void collectWindowPools( List<PersistenceWindowPool> pools )
+    {
+        relTypeStore.collectWindowPools( pools );
+        propStore.collectWindowPools( pools );
+        relStore.collectWindowPools( pools );
+        nodeStore.collectWindowPools( pools );
+        super.collectWindowPools( pools );
+    }
+
     public String getTypeAndVersionDescriptor()
     {
         return VERSION;
@@ -28,6 +28,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -37,6 +39,11 @@ import java.util.logging.Logger;
  * make the most efficient use of those windows by allocating them in such a way
  * that the most frequently used records/blocks (be it for read or write
  * operations) are encapsulated by a memory mapped persistence window.
+ * <p>
+ * Looking up and pinning a memory mapped window takes no pool wide lock. A
+ * window is pinned from acquire until release and can only be unmapped once it
+ * has been retired, which fails as long as it is pinned. Rebalancing of the
+ * windows is done by a background thread after a number of misses.
  */
 class PersistenceWindowPool
 {
@@ -45,24 +52,29 @@ class PersistenceWindowPool
     private final String storeName;
     private final int blockSize;
     private FileChannel fileChannel;
+    // guarded by itself
     private final Map<Integer,PersistenceRow> activeRowWindows = 
         new HashMap<Integer,PersistenceRow>();
     private long availableMem = 0;
-    private long memUsed = 0;
-    private int brickCount = 0;
+    private volatile long memUsed = 0;
+    private volatile int brickCount = 0;
     private int brickSize = 0;
-    private BrickElement brickArray[] = new BrickElement[0];
-    private int brickMiss = 0;
+    private volatile BrickElement brickArray[] = new BrickElement[0];
+    private final AtomicInteger brickMiss = new AtomicInteger();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    // next brick to check for dirty windows, only used by the checkpointer
+    private int flushCursor = 0;
+    private boolean closed = false;
 
     private static Logger log = Logger.getLogger( PersistenceWindowPool.class
         .getName() );
     private static final int REFRESH_BRICK_COUNT = 50000;
     private final FileChannel.MapMode mapMode;
 
-    private int hit = 0;
-    private int miss = 0;
-    private int switches = 0;
-    private int ooe = 0;
+    private final AtomicInteger hit = new AtomicInteger();
+    private final AtomicInteger miss = new AtomicInteger();
+    private volatile int switches = 0;
+    private volatile int ooe = 0;
     private boolean useMemoryMapped = true;
     
     /**
@@ -116,76 +128,165 @@ class PersistenceWindowPool
     {
         LockableWindow window = null;
         boolean readPos = false;
-//        synchronized ( activeRowWindows )
-//        {
-            if ( brickMiss >= REFRESH_BRICK_COUNT )
+        if ( brickSize > 0 )
+        {
+            int brickIndex = (int) (position * blockSize / brickSize);
+            BrickElement bricks[] = brickArray;
+            if ( brickIndex >= bricks.length )
             {
-//                brickMiss = 0;
-                refreshBricks();
+                expandBricks( brickIndex + 1 );
+                bricks = brickArray;
             }
-            if ( brickSize > 0 )
+            BrickElement brick = bricks[brickIndex];
+            window = pinWindow( brick );
+            // assert window == null || window.encapsulates( position );
+            brick.setHit();
+        }
+        if ( window == null )
+        {
+            miss.incrementAndGet();
+            if ( brickSize > 0 && 
+                brickMiss.incrementAndGet() >= REFRESH_BRICK_COUNT )
             {
-                int brickIndex = (int) (position * blockSize / brickSize);
-                if ( brickIndex < brickArray.length )
-                {
-                    synchronized ( this )
-                    {
-                        window = brickArray[brickIndex].getWindow();
-                        if ( window != null )
-                        {
-                            window.mark();
-                        }
-                    }
-                    // assert window == null || window.encapsulates( position );
-                    brickArray[brickIndex].setHit();
-                }
-                else
-                {
-                    expandBricks( brickIndex + 1 );
-                    window = brickArray[brickIndex].getWindow();
-                }
+                scheduleRefresh();
             }
-            if ( window == null )
+            synchronized ( activeRowWindows )
             {
-                synchronized ( this )
+                PersistenceRow dpw = activeRowWindows.get( (int) position ); 
+                
+                if ( dpw == null )
                 {
-                    miss++;
-                    brickMiss++;
-                    
-                    PersistenceRow dpw = activeRowWindows.get( (int) position ); 
-                    
-                    if ( dpw == null )
-                    {
-                        dpw = new PersistenceRow( position, blockSize, 
-                            fileChannel );
-                    }
-                    if ( operationType == OperationType.READ )
-                    {
-                        readPos = true;
-                    }
-                    window = dpw;
-                    activeRowWindows.put( (int) position, dpw );
-                    window.mark();
+                    dpw = new PersistenceRow( position, blockSize, 
+                        fileChannel );
                 }
+                if ( operationType == OperationType.READ )
+                {
+                    readPos = true;
+                }
+                window = dpw;
+                activeRowWindows.put( (int) position, dpw );
+                window.mark();
             }
-            else
-            {
-                hit++;
-            }
-//        }
+        }
+        else
+        {
+            hit.incrementAndGet();
+            window.mark();
+        }
         window.lock();
         if ( readPos )
         {
             ((PersistenceRow) window).readPosition();
         }
+        if ( operationType == OperationType.WRITE && 
+            !( window instanceof PersistenceRow ) )
+        {
+            // after lock, a flush waiting for it will include this write
+            window.setDirty( position );
+        }
         window.setOperationType( operationType );
         return window;
     }
 
-    void dumpStatistics()
+    String getStoreName()
     {
-        log.finest( storeName + " hit=" + hit + " miss=" + miss + " switches="
-            + switches + " ooe=" + ooe );
+        return storeName;
+    }
+
+    /**
+     * @return indexes of the bricks that have a window, in file order
+     */
+    synchronized int[] getMappedBricks()
+    {
+        ArrayList<BrickElement> mappedBricks = new ArrayList<BrickElement>();
+        for ( int i = 0; i < brickCount; i++ )
+        {
+            if ( brickArray[i].getWindow() != null )
+            {
+                mappedBricks.add( brickArray[i] );
+            }
+        }
+        int[] bricks = new int[mappedBricks.size()];
+        for ( int i = 0; i < bricks.length; i++ )
+        {
+            bricks[i] = mappedBricks.get( i ).index();
+        }
+        return bricks;
+    }
+
+    /**
+     * Gives a brick a window, if it has none and there is memory left for
+     * it, and reads the content of the window into memory. Bricks past the
+     * end of the store file are left alone.
+     * 
+     * @param brickIndex the brick to warm up
+     * @return <code>true</code> if the brick has a window
+     */
+    boolean warmUp( int brickIndex )
+    {
+        BrickElement brick;
+        synchronized ( this )
+        {
+            if ( closed || brickSize <= 0 || brickIndex >= brickCount )
+            {
+                return false;
+            }
+            brick = brickArray[brickIndex];
+            if ( brick.getWindow() == null )
+            {
+                if ( memUsed + brickSize > availableMem )
+                {
+                    return false;
+                }
+                try
+                {
+                    brick.setWindow( allocateNewWindow( brickIndex ) );
+                    memUsed += brickSize;
+                }
+                catch ( MappedMemException e )
+                {
+                    ooe++;
+                    logWarn( "Unable to memory map" );
+                    return false;
+                }
+                catch ( OutOfMemoryError e )
+                {
+                    ooe++;
+                    logWarn( "Unable to allocate direct buffer" );
+                    return false;
+                }
+            }
+            // so the next refresh does not switch it out before it is used
+            brick.setHit();
+        }
+        LockableWindow window = pinWindow( brick );
+        if ( window == null )
+        {
+            return false;
+        }
+        try
+        {
+            window.load();
+        }
+        finally
+        {
+            window.unpin();
+        }
+        return true;
+    }
+
+    private LockableWindow pinWindow( BrickElement brick )
+    {
+        while ( true )
+        {
+            LockableWindow window = brick.getWindow();
+            if ( window == null || window.pin() )
+            {
+                return window;
+            }
+            // retired by a refresh, will be removed from the brick shortly
+            Thread.yield();
+        }
     }
 
     /**
@@ -203,7 +304,7 @@ class PersistenceWindowPool
         {
             PersistenceRow dpw = (PersistenceRow) window;
             dpw.writeOut();
-            synchronized ( this )
+            synchronized ( activeRowWindows )
             {
                 if ( dpw.getWaitingThreadsCount() == 0 && !dpw.isMarked() )
                 {
@@ -215,13 +316,16 @@ class PersistenceWindowPool
         }
         else
         {
-            ((LockableWindow) window).unLock();
+            LockableWindow lockableWindow = (LockableWindow) window;
+            lockableWindow.unLock();
+            lockableWindow.unpin();
         }
     }
 
     synchronized void close()
     {
         flushAll();
+        closed = true;
 //        synchronized ( activeRowWindows )
 //        {
             for ( BrickElement element : brickArray )
@@ -233,25 +337,20 @@ class PersistenceWindowPool
                 }
             }
             fileChannel = null;
-            activeRowWindows.clear();
+            synchronized ( activeRowWindows )
+            {
+                activeRowWindows.clear();
+            }
 //        }
         // activeRowWindows = null;
-        dumpStatistics();
     }
 
     void flushAll()
     {
-//        synchronized ( activeRowWindows )
-//        {
-            for ( BrickElement element : brickArray )
-            {
-                PersistenceWindow window = element.getWindow();
-                if ( window != null )
-                {
-                    window.force();
-                }
-            }
-//        }
+        for ( BrickElement element : brickArray )
+        {
+            flushWindow( element );
+        }
         try
         {
             fileChannel.force( false );
@@ -263,11 +362,69 @@ class PersistenceWindowPool
         }
     }
 
+    /**
+     * Flushes dirty windows, starting where the previous call stopped, until
+     * at least <code>maxBytes</code> have been written or all windows have
+     * been checked. Only called by the checkpointer.
+     * 
+     * @param maxBytes the number of bytes to write before returning
+     * @return the number of bytes written, the modified pages of memory
+     * mapped windows and the whole buffer of plain windows
+     */
+    long flushDirtyWindows( long maxBytes )
+    {
+        BrickElement bricks[] = brickArray;
+        long written = 0;
+        for ( int i = 0; i < bricks.length && written < maxBytes; i++ )
+        {
+            if ( flushCursor >= bricks.length )
+            {
+                flushCursor = 0;
+            }
+            written += flushWindow( bricks[flushCursor++] );
+        }
+        return written;
+    }
+
+    private long flushWindow( BrickElement brick )
+    {
+        LockableWindow window = pinWindow( brick );
+        if ( window == null )
+        {
+            return 0;
+        }
+        try
+        {
+            long dirtyBytes = window.clearDirty();
+            if ( dirtyBytes == 0 )
+            {
+                return 0;
+            }
+            window.mark();
+            window.lock();
+            try
+            {
+                window.force();
+            }
+            finally
+            {
+                window.unLock();
+            }
+            return dirtyBytes;
+        }
+        finally
+        {
+            window.unpin();
+        }
+    }
+
     private static class BrickElement
     {
         private int index;
         private int hitCount;
-        private LockableWindow window = null;
+        // hit count as of last refresh, stable while the bricks are sorted
+        private int sortHitCount;
+        private volatile LockableWindow window = null;
 
         BrickElement( int index )
         {
@@ -303,6 +460,11 @@ class PersistenceWindowPool
             return hitCount;
         }
 
+        int getSortHit()
+        {
+            return sortHitCount;
+        }
+
         void refresh()
         {
             if ( window == null )
@@ -313,6 +475,7 @@ class PersistenceWindowPool
             {
                 hitCount /= 1.15;
             }
+            sortHitCount = hitCount;
         }
 
         public String toString()
@@ -410,13 +573,38 @@ class PersistenceWindowPool
         }
     }
 
+    private void scheduleRefresh()
+    {
+        if ( !refreshScheduled.compareAndSet( false, true ) )
+        {
+            return;
+        }
+        Thread refresher = new Thread( "Brick refresher [" + storeName + "]" )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    refreshBricks();
+                }
+                finally
+                {
+                    refreshScheduled.set( false );
+                }
+            }
+        };
+        refresher.setDaemon( true );
+        refresher.start();
+    }
+
     private synchronized void refreshBricks()
     {
-        if ( brickMiss < REFRESH_BRICK_COUNT )
+        if ( closed || brickMiss.get() < REFRESH_BRICK_COUNT )
         {
             return;
         }
-        brickMiss = 0;
+        brickMiss.set( 0 );
         if ( brickSize <= 0 )
         {
             // memory mapped turned off
@@ -481,8 +669,9 @@ class PersistenceWindowPool
                 break;
             }
             LockableWindow window = mappedBrick.getWindow();
-            if ( window.getWaitingThreadsCount() == 0 && !window.isMarked() )
+            if ( window.retire() )
             {
+                mappedBrick.setWindow( null );
                 if ( window instanceof MappedPersistenceWindow )
                 {
                     ((MappedPersistenceWindow) window).unmap();
@@ -491,7 +680,6 @@ class PersistenceWindowPool
                 {
                     ((PlainPersistenceWindow) window).writeOut();
                 }
-                mappedBrick.setWindow( null );
                 memUsed -= brickSize;
                 try
                 {
@@ -568,7 +756,7 @@ class PersistenceWindowPool
     {
         public int compare( BrickElement o1, BrickElement o2 )
         {
-            return o1.getHit() - o2.getHit();
+            return o1.getSortHit() - o2.getSortHit();
         }
 
         public boolean equals( Object o )
@@ -609,6 +797,6 @@ class PersistenceWindowPool
     WindowPoolStats getStats()
     {
         return new WindowPoolStats( storeName, availableMem, memUsed, brickCount, 
-                brickSize, hit, miss, ooe );
+                brickSize, hit.get(), miss.get(), switches, ooe );
     }
 }
\ No newline at end of file
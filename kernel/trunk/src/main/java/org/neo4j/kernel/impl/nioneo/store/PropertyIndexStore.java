@@ -122,6 +122,20 @@ public class PropertyIndexStore extends AbstractStore implements Store
         super.flushAll();
     }
 
+    @Override
+    void collectWindowPools( List<PersistenceWindowPool> pools )
+    {
+        keyPropertyStore.collectWindowPools( pools );
+        super.collectWindowPools( pools );
+    }
+
+    @Override
+    public long flushDirtyWindows( long maxBytes )
+    {
+        long written = keyPropertyStore.flushDirtyWindows( maxBytes );
+        return written + super.flushDirtyWindows( maxBytes - written );
+    }
+
     public static void createStore( String fileName )
     {
         createEmptyStore( fileName, VERSION );
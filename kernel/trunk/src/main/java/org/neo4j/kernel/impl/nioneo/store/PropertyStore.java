@@ -22,6 +22,7 @@ package org.neo4j.kernel.impl.nioneo.store;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -36,13 +37,26 @@ import java.util.Map;
 public class PropertyStore extends AbstractStore implements Store
 {
     // store version, each store ends with this string (byte encoded)
-    private static final String VERSION = "PropertyStore v0.9.5";
+    // v0.9.6 added SHORT_STRING and ENCODED_STRING, older stores are
+    // read as is and get the new encodings as properties are written
+    private static final String VERSION = "PropertyStore v0.9.6";
 
     // record header size
     // in_use(byte)+type(int)+key_indexId(int)+prop_blockId(long)+
     // prev_prop_id(int)+next_prop_id(int)
     private static final int RECORD_SIZE = 25;
 
+    // short strings: length in the highest 4 bits, Latin-1 flag in bit 59
+    // and 8 ASCII chars of 7 bits or 7 Latin-1 chars of 8 bits below that
+    private static final int SHORT_STRING_MAX_ASCII = 8;
+    private static final int SHORT_STRING_MAX_LATIN1 = 7;
+    private static final long SHORT_STRING_LATIN1 = 1L << 59;
+
+    // first byte of the dynamic data of an ENCODED_STRING
+    private static final byte ENCODING_LATIN1 = 0;
+    private static final byte ENCODING_UTF8 = 1;
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
     private DynamicStringStore stringPropertyStore;
     private PropertyIndexStore propertyIndexStore;
     private DynamicArrayStore arrayPropertyStore;
@@ -112,6 +126,24 @@ public class PropertyStore extends AbstractStore implements Store
         super.flushAll();
     }
 
+    @Override
+    void collectWindowPools( List<PersistenceWindowPool> pools )
+    {
+        stringPropertyStore.collectWindowPools( pools );
+        propertyIndexStore.collectWindowPools( pools );
+        arrayPropertyStore.collectWindowPools( pools );
+        super.collectWindowPools( pools );
+    }
+
+    @Override
+    public long flushDirtyWindows( long maxBytes )
+    {
+        long written = stringPropertyStore.flushDirtyWindows( maxBytes );
+        written += propertyIndexStore.flushDirtyWindows( maxBytes - written );
+        written += arrayPropertyStore.flushDirtyWindows( maxBytes - written );
+        return written + super.flushDirtyWindows( maxBytes - written );
+    }
+
     public String getTypeAndVersionDescriptor()
     {
         return VERSION;
@@ -284,7 +316,7 @@ public class PropertyStore extends AbstractStore implements Store
     public void makeHeavy( PropertyRecord record )
     {
         record.setIsLight( false );
-        if ( record.getType() == PropertyType.STRING )
+        if ( isDynamicString( record.getType() ) )
         {
             Collection<DynamicRecord> stringRecords = 
                 stringPropertyStore.getLightRecords( 
@@ -320,7 +352,7 @@ public class PropertyStore extends AbstractStore implements Store
         {
             releaseWindow( window );
         }
-        if ( record.getType() == PropertyType.STRING )
+        if ( isDynamicString( record.getType() ) )
         {
             Collection<DynamicRecord> stringRecords = 
                 stringPropertyStore.getLightRecords( 
@@ -388,6 +420,10 @@ public class PropertyStore extends AbstractStore implements Store
                 return PropertyType.ARRAY;
             case 10:
                 return PropertyType.SHORT;
+            case 11:
+                return PropertyType.SHORT_STRING;
+            case 12:
+                return PropertyType.ENCODED_STRING;
             default:
                 throw new InvalidRecordException( "Unknown enum type:" + type );
         }
@@ -400,7 +436,7 @@ public class PropertyStore extends AbstractStore implements Store
         {
             return (int) propertyRecord.getPropBlock();
         }
-        if ( type == PropertyType.STRING )
+        if ( isString( type ) )
         {
             return getStringFor( propertyRecord );
         }
@@ -488,20 +524,34 @@ public class PropertyStore extends AbstractStore implements Store
     {
         if ( value instanceof String )
         {
+            String string = (String) value;
+            if ( encodeShortString( record, string ) )
+            {
+                return;
+            }
             int stringBlockId = nextStringBlockId();
             record.setPropBlock( stringBlockId );
-            String string = (String) value;
-            int length = string.length();
-            char[] chars = new char[length];
-            string.getChars( 0, length, chars, 0 );
-            Collection<DynamicRecord> valueRecords = allocateStringRecords(
-                stringBlockId, chars );
+            byte[] data = encodeString( string );
+            Collection<DynamicRecord> valueRecords;
+            if ( data != null )
+            {
+                valueRecords = stringPropertyStore.allocateRecords( 
+                    stringBlockId, data );
+                record.setType( PropertyType.ENCODED_STRING );
+            }
+            else
+            {
+                int length = string.length();
+                char[] chars = new char[length];
+                string.getChars( 0, length, chars, 0 );
+                valueRecords = allocateStringRecords( stringBlockId, chars );
+                record.setType( PropertyType.STRING );
+            }
             for ( DynamicRecord valueRecord : valueRecords )
             {
                 valueRecord.setType( PropertyType.STRING.intValue() );
                 record.addValueRecord( valueRecord );
             }
-            record.setType( PropertyType.STRING );
         }
         else if ( value instanceof Integer )
         {
@@ -565,8 +615,153 @@ public class PropertyStore extends AbstractStore implements Store
         }
     }
 
+    /**
+     * @param type a property type
+     * @return <CODE>true</CODE> if properties of <CODE>type</CODE> are
+     * strings, no matter how they are encoded
+     */
+    public static boolean isString( PropertyType type )
+    {
+        return type == PropertyType.STRING || 
+            type == PropertyType.SHORT_STRING || 
+            type == PropertyType.ENCODED_STRING;
+    }
+
+    /**
+     * @param type a property type
+     * @return <CODE>true</CODE> if the value of properties of 
+     * <CODE>type</CODE> is kept in the dynamic string store
+     */
+    public static boolean isDynamicString( PropertyType type )
+    {
+        return type == PropertyType.STRING || 
+            type == PropertyType.ENCODED_STRING;
+    }
+
+    private static boolean encodeShortString( PropertyRecord record, 
+        String string )
+    {
+        int length = string.length();
+        if ( length > SHORT_STRING_MAX_ASCII )
+        {
+            return false;
+        }
+        int maxChar = 0;
+        for ( int i = 0; i < length; i++ )
+        {
+            maxChar = Math.max( maxChar, string.charAt( i ) );
+        }
+        long block = (long) length << 60;
+        int bits;
+        if ( maxChar < 0x80 )
+        {
+            bits = 7;
+        }
+        else if ( maxChar < 0x100 && length <= SHORT_STRING_MAX_LATIN1 )
+        {
+            bits = 8;
+            block |= SHORT_STRING_LATIN1;
+        }
+        else
+        {
+            return false;
+        }
+        for ( int i = 0; i < length; i++ )
+        {
+            block |= (long) string.charAt( i ) << ( i * bits );
+        }
+        record.setPropBlock( block );
+        record.setType( PropertyType.SHORT_STRING );
+        return true;
+    }
+
+    private static String decodeShortString( long block )
+    {
+        int length = (int) ( block >>> 60 );
+        int bits = ( block & SHORT_STRING_LATIN1 ) != 0 ? 8 : 7;
+        long mask = ( 1L << bits ) - 1;
+        char[] chars = new char[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            chars[i] = (char) ( ( block >>> ( i * bits ) ) & mask );
+        }
+        return new String( chars );
+    }
+
+    /**
+     * Returns the Latin-1 or UTF-8 encoding of <CODE>string</CODE> prefixed
+     * with the encoding used, or <CODE>null</CODE> if UTF-16 chars are as
+     * compact (or the string has surrogates that UTF-8 can't round trip
+     * when unpaired).
+     */
+    private static byte[] encodeString( String string )
+    {
+        int length = string.length();
+        int maxChar = 0;
+        for ( int i = 0; i < length; i++ )
+        {
+            char c = string.charAt( i );
+            if ( c >= 0xD800 && c <= 0xDFFF )
+            {
+                return null;
+            }
+            maxChar = Math.max( maxChar, c );
+        }
+        if ( maxChar < 0x100 )
+        {
+            byte[] data = new byte[length + 1];
+            data[0] = ENCODING_LATIN1;
+            for ( int i = 0; i < length; i++ )
+            {
+                data[i + 1] = (byte) string.charAt( i );
+            }
+            return data;
+        }
+        ByteBuffer utf8 = UTF8.encode( string );
+        if ( utf8.remaining() + 1 >= length * 2 )
+        {
+            return null;
+        }
+        byte[] data = new byte[utf8.remaining() + 1];
+        data[0] = ENCODING_UTF8;
+        utf8.get( data, 1, data.length - 1 );
+        return data;
+    }
+
+    private static String decodeString( byte[] data )
+    {
+        if ( data.length == 0 )
+        {
+            throw new InvalidRecordException( "No encoding found" );
+        }
+        if ( data[0] == ENCODING_LATIN1 )
+        {
+            char[] chars = new char[data.length - 1];
+            for ( int i = 0; i < chars.length; i++ )
+            {
+                chars[i] = (char) ( data[i + 1] & 0xFF );
+            }
+            return new String( chars );
+        }
+        if ( data[0] == ENCODING_UTF8 )
+        {
+            return UTF8.decode( ByteBuffer.wrap( data, 1, data.length - 1 ) )
+                .toString();
+        }
+        throw new InvalidRecordException( "Unknown string encoding " + 
+            data[0] );
+    }
+
     public Object getStringFor( PropertyRecord propRecord )
     {
+        if ( propRecord.getType() == PropertyType.SHORT_STRING )
+        {
+            return decodeShortString( propRecord.getPropBlock() );
+        }
+        if ( propRecord.getType() == PropertyType.ENCODED_STRING )
+        {
+            return getEncodedStringFor( propRecord );
+        }
         int recordToFind = (int) propRecord.getPropBlock();
         Map<Integer,DynamicRecord> recordsMap = new HashMap<Integer,DynamicRecord>();
         for ( DynamicRecord record : propRecord.getValueRecords() )
@@ -604,6 +799,39 @@ public class PropertyStore extends AbstractStore implements Store
         return buf.toString();
     }
 
+    private String getEncodedStringFor( PropertyRecord propRecord )
+    {
+        int recordToFind = (int) propRecord.getPropBlock();
+        Map<Integer,DynamicRecord> recordsMap = 
+            new HashMap<Integer,DynamicRecord>();
+        for ( DynamicRecord record : propRecord.getValueRecords() )
+        {
+            recordsMap.put( record.getId(), record );
+        }
+        List<byte[]> byteList = new LinkedList<byte[]>();
+        int totalSize = 0;
+        while ( recordToFind != Record.NO_NEXT_BLOCK.intValue() )
+        {
+            DynamicRecord record = recordsMap.get( recordToFind );
+            if ( record.isLight() )
+            {
+                stringPropertyStore.makeHeavy( record );
+            }
+            byte[] bytes = record.getData();
+            totalSize += bytes.length;
+            byteList.add( bytes );
+            recordToFind = record.getNextBlock();
+        }
+        byte[] data = new byte[totalSize];
+        int offset = 0;
+        for ( byte[] bytes : byteList )
+        {
+            System.arraycopy( bytes, 0, data, offset, bytes.length );
+            offset += bytes.length;
+        }
+        return decodeString( data );
+    }
+
     public Object getArrayFor( PropertyRecord propertyRecord )
     {
         int recordToFind = (int) propertyRecord.getPropBlock();
@@ -661,6 +889,11 @@ public class PropertyStore extends AbstractStore implements Store
             closeIdGenerator();
             return true;
         }
+        if ( version.equals( "PropertyStore v0.9.5" ) )
+        {
+            // only UTF-16 strings, still readable as they are
+            return true;
+        }
         throw new IllegalStoreVersionException( "Store version [" + version  + 
             "]. Please make sure you are not running old Neo4j kernel " + 
             " towards a store that has been created by newer version " + 
@@ -35,7 +35,11 @@ public enum PropertyType
     BYTE( 7 ), 
     CHAR( 8 ), 
     ARRAY( 9 ), 
-    SHORT( 10 );
+    SHORT( 10 ),
+    /** String of at most 8 chars stored in the property record itself */
+    SHORT_STRING( 11 ),
+    /** String stored as Latin-1 or UTF-8 in the dynamic string store */
+    ENCODED_STRING( 12 );
 
     private int type;
 
@@ -66,4 +66,14 @@ public class ReadOnlyIdGenerator implements IdGenerator
     {
         return highId;
     }
+
+    public long getNumberOfAllocatedIds()
+    {
+        return 0;
+    }
+
+    public long getNumberOfFreeIds()
+    {
+        return 0;
+    }
 }
\ No newline at end of file
@@ -23,6 +23,12 @@ package org.neo4j.kernel.impl.nioneo.store;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.kernel.Config;
 
 /**
  * Implementation of the relationship store.
@@ -39,12 +45,35 @@ public class RelationshipStore extends AbstractStore implements Store
     // second_next_rel_id+next_prop_id(int)
     private static final int RECORD_SIZE = 33;
 
+    // max number of chain parts waiting to be read ahead
+    private static final int PREFETCH_QUEUE_SIZE = 32;
+
+    private ThreadPoolExecutor prefetcher = null;
+
     /**
      * See {@link AbstractStore#AbstractStore(String, Map)}
      */
     public RelationshipStore( String fileName, Map<?,?> config )
     {
         super( fileName, config );
+        String prefetch = config != null ? 
+            (String) config.get( Config.RELATIONSHIP_GRAB_PREFETCH ) : null;
+        if ( prefetch != null && prefetch.toLowerCase().equals( "true" ) )
+        {
+            prefetcher = new ThreadPoolExecutor( 1, 1, 0, TimeUnit.SECONDS, 
+                new ArrayBlockingQueue<Runnable>( PREFETCH_QUEUE_SIZE ),
+                new ThreadFactory()
+                {
+                    public Thread newThread( Runnable runnable )
+                    {
+                        Thread thread = new Thread( runnable, 
+                            "Relationship chain prefetcher [" + 
+                            getStorageFileName() + "]" );
+                        thread.setDaemon( true );
+                        return thread;
+                    }
+                }, new ThreadPoolExecutor.DiscardPolicy() );
+        }
     }
 
     /**
@@ -68,6 +97,19 @@ public class RelationshipStore extends AbstractStore implements Store
     @Override
     public void close()
     {
+        if ( prefetcher != null )
+        {
+            prefetcher.shutdownNow();
+            try
+            {
+                prefetcher.awaitTermination( 5, TimeUnit.SECONDS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.interrupted();
+            }
+            prefetcher = null;
+        }
         super.close();
     }
 
@@ -265,6 +307,136 @@ public class RelationshipStore extends AbstractStore implements Store
         }
     }
 
+    /**
+     * Reads the next part of the relationship chain of a node, at most
+     * <code>grabSize</code> in use relationships starting at the record
+     * <code>position</code> points to. The position is moved to the first
+     * record not read.
+     * <p>
+     * Instead of acquiring a window for each record the window is kept for
+     * as long as the following records in the chain are found in it. If
+     * prefetching is enabled (see {@link Config#RELATIONSHIP_GRAB_PREFETCH})
+     * the next part of the chain is read ahead in the background so its
+     * pages are loaded when it is requested.
+     * 
+     * @param nodeId the node owning the chain
+     * @param position the chain position to continue from
+     * @param grabSize max number of relationships to return
+     * @return the in use relationships read
+     */
+    public List<RelationshipData> getMoreRelationships( int nodeId, 
+        RelationshipChainPosition position, int grabSize )
+    {
+        List<RelationshipData> rels = new ArrayList<RelationshipData>();
+        int nextRel = readChain( nodeId, position.getNextRecord(), grabSize, 
+            rels );
+        position.setNextRecord( nextRel );
+        if ( prefetcher != null && 
+            nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            prefetch( nodeId, nextRel, grabSize );
+        }
+        return rels;
+    }
+
+    private int readChain( int nodeId, int nextRel, int grabSize, 
+        List<RelationshipData> rels )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            int count = 0;
+            while ( count < grabSize && 
+                nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                if ( window != null && !windowContains( window, nextRel ) )
+                {
+                    releaseWindow( window );
+                    window = null;
+                }
+                if ( window == null )
+                {
+                    try
+                    {
+                        window = acquireWindow( nextRel, OperationType.READ );
+                    }
+                    catch ( InvalidRecordException e )
+                    {
+                        // ok to high id, return what we got so far
+                        return Record.NO_NEXT_RELATIONSHIP.intValue();
+                    }
+                }
+                else if ( ( nextRel & 0xFFFFFFFFL ) > getHighId() )
+                {
+                    // same check as acquireWindow does
+                    return Record.NO_NEXT_RELATIONSHIP.intValue();
+                }
+                RelationshipRecord relRecord = getFullRecord( nextRel, window );
+                int firstNode = relRecord.getFirstNode();
+                int secondNode = relRecord.getSecondNode();
+                if ( relRecord.inUse() )
+                {
+                    if ( rels != null )
+                    {
+                        rels.add( new RelationshipData( relRecord.getId(), 
+                            firstNode, secondNode, relRecord.getType() ) );
+                    }
+                    count++;
+                }
+                if ( firstNode == nodeId )
+                {
+                    nextRel = relRecord.getFirstNextRel();
+                }
+                else if ( secondNode == nodeId )
+                {
+                    nextRel = relRecord.getSecondNextRel();
+                }
+                else
+                {
+                    throw new InvalidRecordException( "Node[" + nodeId + 
+                        "] not part of firstNode[" + firstNode + 
+                        "] or secondNode[" + secondNode + "]" );
+                }
+            }
+            return nextRel;
+        }
+        finally
+        {
+            if ( window != null )
+            {
+                releaseWindow( window );
+            }
+        }
+    }
+
+    private static boolean windowContains( PersistenceWindow window, int id )
+    {
+        long position = id & 0xFFFFFFFFL;
+        return position >= window.position() && 
+            position < window.position() + window.size();
+    }
+
+    private void prefetch( final int nodeId, final int fromRel, 
+        final int grabSize )
+    {
+        prefetcher.execute( new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    // only touches the records, the chain may have changed
+                    // by the time it is read for real
+                    readChain( nodeId, fromRel, grabSize, null );
+                }
+                catch ( RuntimeException e )
+                {
+                    // chain modified or store closed, nothing to warm up
+                }
+            }
+        } );
+    }
+
     public List<WindowPoolStats> getAllWindowPoolStats()
     {
         List<WindowPoolStats> list = new ArrayList<WindowPoolStats>();
@@ -98,6 +98,20 @@ public class RelationshipTypeStore extends AbstractStore implements Store
         super.flushAll();
     }
 
+    @Override
+    void collectWindowPools( List<PersistenceWindowPool> pools )
+    {
+        typeNameStore.collectWindowPools( pools );
+        super.collectWindowPools( pools );
+    }
+
+    @Override
+    public long flushDirtyWindows( long maxBytes )
+    {
+        long written = typeNameStore.flushDirtyWindows( maxBytes );
+        return written + super.flushDirtyWindows( maxBytes - written );
+    }
+
     public String getTypeAndVersionDescriptor()
     {
         return VERSION;
@@ -38,6 +38,10 @@ public interface Store
     public long getHighestPossibleIdInUse();
 
     public long getNumberOfIdsInUse();
+
+    public long getNumberOfAllocatedIds();
+
+    public long getNumberOfFreeIds();
     
     public WindowPoolStats getWindowPoolStats();
 }
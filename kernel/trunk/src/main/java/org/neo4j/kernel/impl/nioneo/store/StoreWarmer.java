@@ -0,0 +1,393 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Records which memory mapped windows of a {@link NeoStore} are in use and
+ * maps and reads them back in when the store is opened again, so a
+ * restarted database does not have to fault its working set back in with
+ * random reads until the window pools have rebalanced.
+ * <p>
+ * The windows in use are written to a file next to the store when the
+ * warmer is stopped and at every record interval. On start one background
+ * thread per store file maps the recorded windows in file order, reading
+ * each window in one sequential pass. Nothing is recorded while a warm up
+ * is running since only part of the recorded windows are mapped then.
+ */
+public class StoreWarmer
+{
+    private static Logger log = Logger.getLogger( 
+        StoreWarmer.class.getName() );
+
+    private static final String FILE_SUFFIX = ".warmup";
+
+    private final NeoStore neoStore;
+    private final File file;
+    private final long recordInterval;
+    private final StringLogger msgLog;
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private volatile boolean running = false;
+
+    private final AtomicInteger runningWarmers = new AtomicInteger();
+    private final AtomicInteger warmedWindows = new AtomicInteger();
+    private final AtomicInteger skippedWindows = new AtomicInteger();
+    private volatile int windowsToWarm = 0;
+    private volatile long warmUpStart = 0;
+    private volatile long warmUpTime = 0;
+
+    /**
+     * @param neoStore the store to warm up
+     * @param recordInterval milliseconds between recording the windows in 
+     * use, <code>0</code> to only record them when stopped
+     * @param msgLog where to log when the warm up is done
+     */
+    public StoreWarmer( NeoStore neoStore, long recordInterval, 
+        StringLogger msgLog )
+    {
+        this.neoStore = neoStore;
+        this.file = new File( neoStore.getStorageFileName() + FILE_SUFFIX );
+        this.recordInterval = recordInterval;
+        this.msgLog = msgLog;
+    }
+
+    /**
+     * Starts warming up the windows recorded last time the store was used
+     * and, if there is a record interval, the thread recording them.
+     */
+    public synchronized void start()
+    {
+        running = true;
+        Map<String,int[]> recorded = readRecordedWindows();
+        List<PersistenceWindowPool> pools = 
+            new ArrayList<PersistenceWindowPool>();
+        neoStore.collectWindowPools( pools );
+        List<Warmer> warmers = new ArrayList<Warmer>();
+        int total = 0;
+        for ( PersistenceWindowPool pool : pools )
+        {
+            int[] bricks = recorded.get( getName( pool ) );
+            if ( bricks != null && bricks.length > 0 )
+            {
+                total += bricks.length;
+                warmers.add( new Warmer( pool, bricks ) );
+            }
+        }
+        windowsToWarm = total;
+        if ( total > 0 )
+        {
+            msgLog.logMessage( "Warming up " + total + 
+                " memory mapped windows" );
+        }
+        warmUpStart = System.currentTimeMillis();
+        runningWarmers.set( warmers.size() );
+        for ( Warmer warmer : warmers )
+        {
+            startThread( "Store warmup [" + warmer.pool.getStoreName() + 
+                "]", warmer );
+        }
+        if ( recordInterval > 0 )
+        {
+            startThread( "Store warmup recorder [" + 
+                neoStore.getStorageFileName() + "]", new Runnable()
+            {
+                public void run()
+                {
+                    runRecorder();
+                }
+            } );
+        }
+    }
+
+    private void startThread( String name, Runnable runnable )
+    {
+        Thread thread = new Thread( runnable, name );
+        thread.setDaemon( true );
+        threads.add( thread );
+        thread.start();
+    }
+
+    /**
+     * Stops warming up and recording, waiting for the threads to finish
+     * the window they are on, and records the windows in use unless the
+     * warm up was still running. Must be called before the store is closed.
+     */
+    public void stop()
+    {
+        synchronized ( this )
+        {
+            running = false;
+            notifyAll();
+        }
+        for ( Thread thread : threads )
+        {
+            try
+            {
+                thread.join();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.interrupted();
+            }
+        }
+        threads.clear();
+        if ( runningWarmers.get() == 0 )
+        {
+            record();
+        }
+    }
+
+    private class Warmer implements Runnable
+    {
+        private final PersistenceWindowPool pool;
+        private final int[] bricks;
+
+        Warmer( PersistenceWindowPool pool, int[] bricks )
+        {
+            this.pool = pool;
+            this.bricks = bricks;
+        }
+
+        public void run()
+        {
+            try
+            {
+                // in file order so each store file is read sequentially
+                Arrays.sort( bricks );
+                for ( int i = 0; i < bricks.length && running; i++ )
+                {
+                    if ( pool.warmUp( bricks[i] ) )
+                    {
+                        warmedWindows.incrementAndGet();
+                    }
+                    else
+                    {
+                        skippedWindows.incrementAndGet();
+                    }
+                }
+            }
+            catch ( RuntimeException e )
+            {
+                log.log( Level.WARNING, "Warm up of " + pool.getStoreName() + 
+                    " failed", e );
+            }
+            finally
+            {
+                if ( runningWarmers.decrementAndGet() == 0 )
+                {
+                    warmUpDone();
+                }
+            }
+        }
+    }
+
+    private void warmUpDone()
+    {
+        warmUpTime = System.currentTimeMillis() - warmUpStart;
+        msgLog.logMessage( "Warmed up " + warmedWindows.get() + 
+            " memory mapped windows in " + warmUpTime + "ms (" + 
+            skippedWindows.get() + " skipped" + 
+            ( running ? "" : ", stopped before done" ) + ")" );
+    }
+
+    private void runRecorder()
+    {
+        while ( pause( recordInterval ) )
+        {
+            if ( runningWarmers.get() == 0 )
+            {
+                record();
+            }
+        }
+    }
+
+    private synchronized boolean pause( long millis )
+    {
+        long end = System.currentTimeMillis() + millis;
+        long left = millis;
+        while ( running && left > 0 )
+        {
+            try
+            {
+                wait( left );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.interrupted();
+            }
+            left = end - System.currentTimeMillis();
+        }
+        return running;
+    }
+
+    // pools are named after their store file without the path, so a store
+    // that has been moved is still warmed up
+    private static String getName( PersistenceWindowPool pool )
+    {
+        return new File( pool.getStoreName() ).getName();
+    }
+
+    /**
+     * Writes the windows in use of each store file to the warm up file.
+     */
+    synchronized void record()
+    {
+        List<PersistenceWindowPool> pools = 
+            new ArrayList<PersistenceWindowPool>();
+        neoStore.collectWindowPools( pools );
+        File tmpFile = new File( file.getPath() + ".tmp" );
+        try
+        {
+            DataOutputStream out = new DataOutputStream( 
+                new BufferedOutputStream( new FileOutputStream( tmpFile ) ) );
+            try
+            {
+                out.writeInt( pools.size() );
+                for ( PersistenceWindowPool pool : pools )
+                {
+                    int[] bricks = pool.getMappedBricks();
+                    out.writeUTF( getName( pool ) );
+                    out.writeInt( bricks.length );
+                    for ( int brick : bricks )
+                    {
+                        out.writeInt( brick );
+                    }
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+            if ( file.exists() && !file.delete() || 
+                !tmpFile.renameTo( file ) )
+            {
+                throw new IOException( "Unable to replace " + file );
+            }
+        }
+        catch ( IOException e )
+        {
+            log.log( Level.WARNING, "Unable to record windows to warm up", e );
+        }
+    }
+
+    private Map<String,int[]> readRecordedWindows()
+    {
+        Map<String,int[]> recorded = new HashMap<String,int[]>();
+        if ( !file.exists() )
+        {
+            return recorded;
+        }
+        try
+        {
+            DataInputStream in = new DataInputStream( 
+                new BufferedInputStream( new FileInputStream( file ) ) );
+            try
+            {
+                int poolCount = in.readInt();
+                for ( int i = 0; i < poolCount; i++ )
+                {
+                    String name = in.readUTF();
+                    int[] bricks = new int[in.readInt()];
+                    for ( int j = 0; j < bricks.length; j++ )
+                    {
+                        bricks[j] = in.readInt();
+                    }
+                    recorded.put( name, bricks );
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch ( IOException e )
+        {
+            log.log( Level.WARNING, "Unable to read windows to warm up " + 
+                "from " + file + ", skipping warm up", e );
+            recorded.clear();
+        }
+        return recorded;
+    }
+
+    /**
+     * @return <code>true</code> while recorded windows are being mapped
+     */
+    public boolean isWarmingUp()
+    {
+        return runningWarmers.get() > 0;
+    }
+
+    /**
+     * @return number of windows recorded to be warmed up at start
+     */
+    public int getWindowsToWarmCount()
+    {
+        return windowsToWarm;
+    }
+
+    /**
+     * @return number of windows mapped and read in so far
+     */
+    public int getWarmedWindowCount()
+    {
+        return warmedWindows.get();
+    }
+
+    /**
+     * @return number of recorded windows that could not be mapped, because
+     * there was no memory left for them or the store file is shorter
+     */
+    public int getSkippedWindowCount()
+    {
+        return skippedWindows.get();
+    }
+
+    /**
+     * @return milliseconds the warm up took, or has taken so far while it
+     * is running
+     */
+    public long getWarmUpTime()
+    {
+        if ( isWarmingUp() )
+        {
+            return System.currentTimeMillis() - warmUpStart;
+        }
+        return warmUpTime;
+    }
+}
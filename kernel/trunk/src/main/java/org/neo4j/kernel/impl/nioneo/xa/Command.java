@@ -645,6 +645,10 @@ abstract class Command extends XaCommand
                     return PropertyType.ARRAY;
                 case 10:
                     return PropertyType.SHORT;
+                case 11:
+                    return PropertyType.SHORT_STRING;
+                case 12:
+                    return PropertyType.ENCODED_STRING;
                 case 0:
                     return null;
             }
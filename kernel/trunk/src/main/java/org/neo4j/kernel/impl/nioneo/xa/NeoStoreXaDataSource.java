@@ -35,9 +35,11 @@ import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.impl.core.LockReleaser;
 import org.neo4j.kernel.impl.core.PropertyIndex;
+import org.neo4j.kernel.impl.nioneo.store.Checkpointer;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.Store;
+import org.neo4j.kernel.impl.nioneo.store.StoreWarmer;
 import org.neo4j.kernel.impl.nioneo.store.WindowPoolStats;
 import org.neo4j.kernel.impl.persistence.IdGenerationFailedException;
 import org.neo4j.kernel.impl.transaction.LockManager;
@@ -46,9 +48,11 @@ import org.neo4j.kernel.impl.transaction.xaframework.XaCommandFactory;
 import org.neo4j.kernel.impl.transaction.xaframework.XaConnection;
 import org.neo4j.kernel.impl.transaction.xaframework.XaContainer;
 import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransaction;
 import org.neo4j.kernel.impl.transaction.xaframework.XaTransactionFactory;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.SizeUtils;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 /**
@@ -78,6 +82,9 @@ public class NeoStoreXaDataSource extends XaDataSource
     private boolean logApplied = false;
     
     private final StringLogger msgLog;
+    private Checkpointer checkpointer = null;
+    private StoreWarmer storeWarmer = null;
+    private final RecoveryApplier recoveryApplier;
 
     /**
      * Creates a <CODE>NeoStoreXaDataSource</CODE> using configuration from
@@ -130,12 +137,13 @@ public class NeoStoreXaDataSource extends XaDataSource
         }
 
         neoStore = new NeoStore( config );
+        recoveryApplier = createRecoveryApplier( getRecoveryWorkers( config ) );
         xaContainer = XaContainer.create( (String) config.get( "logical_log" ),
             new CommandFactory( neoStore ), new TransactionFactory(), config );
 
         if ( !readOnly )
         {
-            xaContainer.openLogicalLog();
+            openLogicalLog();
         }
         if ( !xaContainer.getResourceManager().hasRecoveredTransactions() )
         {
@@ -158,6 +166,106 @@ public class NeoStoreXaDataSource extends XaDataSource
             neoStore.getPropertyStore().getIndexStore() );
         xaContainer.getLogicalLog().setKeepLogs(
                 shouldKeepLog( (String) config.get( Config.KEEP_LOGICAL_LOGS ), "nioneodb" ) );
+        long checkpointRate = getCheckpointRate( config );
+        if ( !readOnly && checkpointRate > 0 )
+        {
+            checkpointer = new Checkpointer( neoStore, checkpointRate );
+            checkpointer.start();
+        }
+        if ( !readOnly && "true".equals( config.get( Config.STORE_WARMUP ) ) )
+        {
+            storeWarmer = new StoreWarmer( neoStore, 
+                getWarmUpRecordInterval( config ), msgLog );
+            storeWarmer.start();
+        }
+    }
+
+    private long getWarmUpRecordInterval( Map<Object,Object> config )
+    {
+        long seconds = 600;
+        String value = (String) config.get( 
+            Config.STORE_WARMUP_RECORD_INTERVAL );
+        if ( value != null )
+        {
+            try
+            {
+                seconds = Long.parseLong( value );
+            }
+            catch ( NumberFormatException e )
+            {
+                logger.warning( "Unable to parse " + 
+                    Config.STORE_WARMUP_RECORD_INTERVAL + " [" + value + 
+                    "], recording every " + seconds + "s" );
+            }
+        }
+        return seconds * 1000;
+    }
+    
+    private int getRecoveryWorkers( Map<Object,Object> config )
+    {
+        int workers = Math.min( 4, 
+            Runtime.getRuntime().availableProcessors() );
+        String value = (String) config.get( Config.RECOVERY_WORKERS );
+        if ( value != null )
+        {
+            try
+            {
+                workers = Integer.parseInt( value );
+            }
+            catch ( NumberFormatException e )
+            {
+                logger.warning( "Unable to parse " + Config.RECOVERY_WORKERS + 
+                    " [" + value + "], using " + workers + " workers" );
+            }
+        }
+        return workers;
+    }
+
+    private RecoveryApplier createRecoveryApplier( int workers )
+    {
+        if ( workers < 2 )
+        {
+            return null;
+        }
+        return new RecoveryApplier( neoStore, workers, msgLog );
+    }
+
+    private void openLogicalLog() throws IOException
+    {
+        if ( recoveryApplier != null )
+        {
+            recoveryApplier.begin();
+        }
+        try
+        {
+            xaContainer.openLogicalLog();
+        }
+        finally
+        {
+            if ( recoveryApplier != null )
+            {
+                recoveryApplier.finish();
+            }
+        }
+    }
+
+    private long getCheckpointRate( Map<Object,Object> config )
+    {
+        String rate = (String) config.get( Config.CHECKPOINT_IO_RATE );
+        if ( rate == null )
+        {
+            return 0;
+        }
+        try
+        {
+            return SizeUtils.parseSize( rate );
+        }
+        catch ( NumberFormatException e )
+        {
+            logger.warning( "Unable to parse " + Config.CHECKPOINT_IO_RATE + 
+                " [" + rate + "], background checkpointing disabled" );
+            return 0;
+        }
     }
     
     private void autoCreatePath( String store ) throws IOException
@@ -199,10 +307,11 @@ public class NeoStoreXaDataSource extends XaDataSource
         neoStore = new NeoStore( neoStoreFileName );
         Map<Object,Object> config = new HashMap<Object, Object>();
         config.put( "store_dir", storeDir );
+        recoveryApplier = createRecoveryApplier( getRecoveryWorkers( config ) );
         xaContainer = XaContainer.create( logicalLogPath + "/nioneo_logical.log", new CommandFactory(
             neoStore ), new TransactionFactory(), config );
 
-        xaContainer.openLogicalLog();
+        openLogicalLog();
         if ( !xaContainer.getResourceManager().hasRecoveredTransactions() )
         {
             neoStore.makeStoreOk();
@@ -232,6 +341,16 @@ public class NeoStoreXaDataSource extends XaDataSource
 
     public void close()
     {
+        if ( checkpointer != null )
+        {
+            checkpointer.stop();
+            checkpointer = null;
+        }
+        if ( storeWarmer != null )
+        {
+            storeWarmer.stop();
+            storeWarmer = null;
+        }
         if ( !readOnly )
         {
             neoStore.flushAll();
@@ -283,11 +402,17 @@ public class NeoStoreXaDataSource extends XaDataSource
         public XaTransaction create( int identifier )
         {
             return new WriteTransaction( identifier, getLogicalLog(), neoStore,
-                lockReleaser, lockManager );
+                lockReleaser, lockManager, recoveryApplier );
         }
 
         public void recoveryComplete()
         {
+            if ( recoveryApplier != null )
+            {
+                // high ids and id generators are rebuilt from the store
+                // below, replay must be done
+                recoveryApplier.finish();
+            }
             logger.fine( "Recovery complete, "
                 + "all transactions have been resolved" );
             logger.fine( "Rebuilding id generators as needed. "
@@ -324,6 +449,11 @@ public class NeoStoreXaDataSource extends XaDataSource
         @Override
         public void flushAll()
         {
+            if ( recoveryApplier != null )
+            {
+                // applying a log flushes before returning, replay must be done
+                recoveryApplier.finish();
+            }
             neoStore.flushAll();
         }
     }
@@ -362,6 +492,28 @@ public class NeoStoreXaDataSource extends XaDataSource
         return store.getNumberOfIdsInUse();
     }
 
+    public long getNumberOfAllocatedIds( Class<?> clazz )
+    {
+        Store store = idGenerators.get( clazz );
+        if ( store == null )
+        {
+            throw new IdGenerationFailedException( "No IdGenerator for: "
+                + clazz );
+        }
+        return store.getNumberOfAllocatedIds();
+    }
+
+    public long getNumberOfFreeIds( Class<?> clazz )
+    {
+        Store store = idGenerators.get( clazz );
+        if ( store == null )
+        {
+            throw new IdGenerationFailedException( "No IdGenerator for: "
+                + clazz );
+        }
+        return store.getNumberOfFreeIds();
+    }
+
     public String getStoreDir()
     {
         return storeDir;
@@ -379,6 +531,47 @@ public class NeoStoreXaDataSource extends XaDataSource
         return xaContainer.getLogicalLog().isLogsKept();
     }
     
+    @Override
+    public XaLogicalLog getXaLogicalLog()
+    {
+        return xaContainer.getLogicalLog();
+    }
+    
+    @Override
+    public long getCheckpointCount()
+    {
+        Checkpointer current = checkpointer;
+        return current != null ? current.getCheckpointCount() : 0;
+    }
+    
+    @Override
+    public long getCheckpointBytesWritten()
+    {
+        Checkpointer current = checkpointer;
+        return current != null ? current.getBytesWritten() : 0;
+    }
+    
+    @Override
+    public long getLastCheckpointTime()
+    {
+        Checkpointer current = checkpointer;
+        return current != null ? current.getLastCheckpointTime() : 0;
+    }
+    
+    @Override
+    public long getReplayedCommandCount()
+    {
+        return recoveryApplier != null ? 
+            recoveryApplier.getReplayedCommandCount() : 0;
+    }
+    
+    @Override
+    public long getLastReplayTime()
+    {
+        return recoveryApplier != null ? 
+            recoveryApplier.getLastReplayTime() : 0;
+    }
+    
     @Override
     public long getCreationTime()
     {
@@ -411,7 +604,21 @@ public class NeoStoreXaDataSource extends XaDataSource
     public void applyLog( ReadableByteChannel byteChannel ) throws IOException
     {
         logApplied = true;
-        xaContainer.getLogicalLog().applyLog( byteChannel );
+        if ( recoveryApplier != null )
+        {
+            recoveryApplier.begin();
+        }
+        try
+        {
+            xaContainer.getLogicalLog().applyLog( byteChannel );
+        }
+        finally
+        {
+            if ( recoveryApplier != null )
+            {
+                recoveryApplier.finish();
+            }
+        }
     }
     
     @Override
@@ -477,6 +684,15 @@ public class NeoStoreXaDataSource extends XaDataSource
         return xaContainer.getLogicalLog().getFileName( version );
     }
     
+    /**
+     * @return the warmer of the memory mapped windows, <code>null</code> if
+     * store warm up is not enabled
+     */
+    public StoreWarmer getStoreWarmer()
+    {
+        return storeWarmer;
+    }
+
     public List<WindowPoolStats> getWindowPoolStats()
     {
         return neoStore.getAllWindowPoolStats();
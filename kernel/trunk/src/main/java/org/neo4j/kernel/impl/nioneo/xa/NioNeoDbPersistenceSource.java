@@ -522,6 +522,16 @@ public class NioNeoDbPersistenceSource implements PersistenceSource
     {
         return xaDs.getNumberOfIdsInUse( clazz );
     }
+
+    public long getNumberOfAllocatedIds( Class<?> clazz )
+    {
+        return xaDs.getNumberOfAllocatedIds( clazz );
+    }
+
+    public long getNumberOfFreeIds( Class<?> clazz )
+    {
+        return xaDs.getNumberOfFreeIds( clazz );
+    }
     
     public XaDataSource getXaDataSource()
     {
@@ -20,9 +20,6 @@
 
 package org.neo4j.kernel.impl.nioneo.xa;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.neo4j.kernel.impl.nioneo.store.InvalidRecordException;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
@@ -96,47 +93,8 @@ class ReadTransaction
     public Iterable<RelationshipData> getMoreRelationships( int nodeId, 
         RelationshipChainPosition position )
     {
-        int nextRel = position.getNextRecord();
-        List<RelationshipData> rels = new ArrayList<RelationshipData>();
-        for ( int i = 0; i < getRelGrabSize() && 
-            nextRel != Record.NO_NEXT_RELATIONSHIP.intValue(); i++ )
-        {
-            RelationshipRecord relRecord = 
-                getRelationshipStore().getChainRecord( nextRel );
-            if ( relRecord == null )
-            {
-                // return what we got so far
-                position.setNextRecord( Record.NO_NEXT_RELATIONSHIP.intValue() );
-                return rels;
-            }
-            int firstNode = relRecord.getFirstNode();
-            int secondNode = relRecord.getSecondNode();
-            if ( relRecord.inUse() )
-            {
-                rels.add( new RelationshipData( relRecord.getId(), firstNode, 
-                    secondNode, relRecord.getType() ) );
-            }
-            else
-            {
-                i--;
-            }
-            if ( firstNode == nodeId )
-            {
-                nextRel = relRecord.getFirstNextRel();
-            }
-            else if ( secondNode == nodeId )
-            {
-                nextRel = relRecord.getSecondNextRel();
-            }
-            else
-            {
-                throw new InvalidRecordException( "Node[" + nodeId + 
-                    "] not part of firstNode[" + firstNode + 
-                    "] or secondNode[" + secondNode + "]" );
-            }
-        }
-        position.setNextRecord( nextRel );
-        return rels;
+        return getRelationshipStore().getMoreRelationships( nodeId, position, 
+            getRelGrabSize() );
     }
     
     public ArrayMap<Integer,PropertyData> relGetProperties( int relId )
@@ -187,7 +145,11 @@ class ReadTransaction
         {
             return (int) propertyRecord.getPropBlock();
         }
-        if ( type == PropertyType.STRING )
+        if ( type == PropertyType.SHORT_STRING )
+        {
+            return getPropertyStore().getStringFor( propertyRecord );
+        }
+        if ( PropertyStore.isDynamicString( type ) )
         {
             return null;
         }
@@ -245,7 +207,7 @@ class ReadTransaction
         {
             return (int) propertyRecord.getPropBlock();
         }
-        if ( type == PropertyType.STRING )
+        if ( PropertyStore.isString( type ) )
         {
             return getPropertyStore().getStringFor( propertyRecord );
         }
@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Replays the commands of recovered transactions on a pool of worker
+ * threads while a logical log is being recovered or applied.
+ * <p>
+ * Each worker has its own bounded queue that is executed in order, the
+ * thread reading the log blocks when the queue it dispatches to is full so
+ * a slow worker can not make the read ahead grow without limit. Node and
+ * relationship commands are routed to a worker on record id so all changes
+ * to a record are replayed in commit order. Property commands go to one
+ * worker, together with relationship type and property index commands,
+ * since the dynamic records holding string and array values are reused
+ * between property records and can not be partitioned on record id.
+ * <p>
+ * High ids of the stores are only updated once, when the replay is
+ * finished, see {@link #finish()}.
+ */
+class RecoveryApplier
+{
+    private static Logger log = Logger.getLogger( 
+        RecoveryApplier.class.getName() );
+
+    // interval between progress messages when replaying
+    private static final long PROGRESS_INTERVAL = 5000;
+
+    // commands a worker may have queued before the log reader waits
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private static final Runnable STOP = new Runnable()
+    {
+        public void run()
+        {
+        }
+    };
+
+    private final NeoStore neoStore;
+    private final int workerCount;
+    private final StringLogger msgLog;
+
+    private volatile boolean active = false;
+    private Worker[] workers = null;
+    private volatile Throwable failure = null;
+
+    private final AtomicLong replayedCommands = new AtomicLong();
+    private long replayedTransactions = 0;
+    private long replayStartTime = 0;
+    private long lastProgressTime = 0;
+    private long lastReplayTime = 0;
+
+    RecoveryApplier( NeoStore neoStore, int workerCount, StringLogger msgLog )
+    {
+        if ( workerCount < 2 )
+        {
+            throw new IllegalArgumentException( "Illegal worker count " + 
+                workerCount );
+        }
+        this.neoStore = neoStore;
+        this.workerCount = workerCount;
+        this.msgLog = msgLog;
+    }
+
+    /**
+     * Makes recovered transactions dispatch their commands to this applier
+     * until {@link #finish()} is called. Workers are started when the first
+     * transaction is replayed.
+     */
+    void begin()
+    {
+        failure = null;
+        replayedTransactions = 0;
+        replayStartTime = 0;
+        active = true;
+    }
+
+    boolean isActive()
+    {
+        return active;
+    }
+
+    /**
+     * Called by a recovered transaction before it dispatches its commands,
+     * always from the thread reading the log.
+     */
+    void transactionStarted()
+    {
+        if ( workers == null )
+        {
+            startWorkers();
+        }
+        checkFailure();
+        replayedTransactions++;
+        long now = System.currentTimeMillis();
+        if ( now - lastProgressTime >= PROGRESS_INTERVAL )
+        {
+            lastProgressTime = now;
+            if ( replayedTransactions > 1 )
+            {
+                logProgress( "Replay in progress", now );
+            }
+        }
+    }
+
+    void applyNodeCommand( int id, Runnable work )
+    {
+        workers[1 + (int) ( ( id & 0xFFFFFFFFL ) % ( workerCount - 1 ) )].add( 
+            work );
+    }
+
+    void applyRelationshipCommand( int id, Runnable work )
+    {
+        applyNodeCommand( id, work );
+    }
+
+    void applyOrderedCommand( Runnable work )
+    {
+        workers[0].add( work );
+    }
+
+    /**
+     * Waits for all dispatched commands to be replayed, stops the workers
+     * and updates the high ids of the stores.
+     * 
+     * @throws UnderlyingStorageException if a command failed to replay
+     */
+    void finish()
+    {
+        if ( !active )
+        {
+            return;
+        }
+        active = false;
+        if ( workers == null )
+        {
+            return;
+        }
+        for ( Worker worker : workers )
+        {
+            worker.add( STOP );
+        }
+        for ( Worker worker : workers )
+        {
+            try
+            {
+                worker.join();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.interrupted();
+            }
+        }
+        workers = null;
+        checkFailure();
+        neoStore.updateIdGenerators();
+        long now = System.currentTimeMillis();
+        lastReplayTime = now - replayStartTime;
+        logProgress( "Replay completed", now );
+    }
+
+    private void startWorkers()
+    {
+        replayStartTime = System.currentTimeMillis();
+        lastProgressTime = replayStartTime;
+        workers = new Worker[workerCount];
+        for ( int i = 0; i < workerCount; i++ )
+        {
+            workers[i] = new Worker( "Recovery worker[" + i + "] " + 
+                neoStore.getStorageFileName() );
+            workers[i].start();
+        }
+    }
+
+    private void checkFailure()
+    {
+        Throwable cause = failure;
+        if ( cause == null )
+        {
+            return;
+        }
+        if ( cause instanceof RuntimeException )
+        {
+            throw (RuntimeException) cause;
+        }
+        if ( cause instanceof Error )
+        {
+            throw (Error) cause;
+        }
+        throw new UnderlyingStorageException( "Replay of recovered " + 
+            "transaction failed", cause );
+    }
+
+    private void logProgress( String what, long now )
+    {
+        long commands = replayedCommands.get();
+        long time = Math.max( 1, now - replayStartTime );
+        String message = what + ": " + replayedTransactions + 
+            " transactions, " + commands + " commands in " + time + 
+            "ms (" + ( commands * 1000 / time ) + " commands/s) using " + 
+            workerCount + " workers";
+        log.info( message );
+        msgLog.logMessage( message );
+    }
+
+    /**
+     * @return number of commands replayed by the workers since the applier
+     * was created
+     */
+    long getReplayedCommandCount()
+    {
+        return replayedCommands.get();
+    }
+
+    /**
+     * @return time in milliseconds the last replay took from the first
+     * replayed transaction until all workers were done
+     */
+    long getLastReplayTime()
+    {
+        return lastReplayTime;
+    }
+
+    int getWorkerCount()
+    {
+        return workerCount;
+    }
+
+    private class Worker extends Thread
+    {
+        private final BlockingQueue<Runnable> queue = 
+            new ArrayBlockingQueue<Runnable>( QUEUE_CAPACITY );
+
+        Worker( String name )
+        {
+            super( name );
+            setDaemon( true );
+        }
+
+        /**
+         * Queues <CODE>work</CODE>, waiting for room if the queue is full.
+         * Workers never wait for each other and keep draining their queue
+         * after a failure, so there is always progress.
+         */
+        void add( Runnable work )
+        {
+            boolean interrupted = false;
+            while ( true )
+            {
+                try
+                {
+                    queue.put( work );
+                    break;
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                }
+            }
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void run()
+        {
+            while ( true )
+            {
+                Runnable work;
+                try
+                {
+                    work = queue.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.interrupted();
+                    continue;
+                }
+                if ( work == STOP )
+                {
+                    return;
+                }
+                // once a command has failed the rest are only drained
+                if ( failure != null )
+                {
+                    continue;
+                }
+                try
+                {
+                    work.run();
+                    replayedCommands.incrementAndGet();
+                }
+                catch ( Throwable t )
+                {
+                    failure = t;
+                }
+            }
+        }
+    }
+}
@@ -25,7 +25,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import javax.transaction.xa.XAException;
@@ -99,14 +98,17 @@ class WriteTransaction extends XaTransaction
 
     private final LockReleaser lockReleaser;
     private final LockManager lockManager;
+    private final RecoveryApplier recoveryApplier;
 
     WriteTransaction( int identifier, XaLogicalLog log, NeoStore neoStore,
-        LockReleaser lockReleaser, LockManager lockManager )
+        LockReleaser lockReleaser, LockManager lockManager, 
+        RecoveryApplier recoveryApplier )
     {
         super( identifier, log );
         this.neoStore = neoStore;
         this.lockReleaser = lockReleaser;
         this.lockManager = lockManager;
+        this.recoveryApplier = recoveryApplier;
     }
 
     public boolean isReadOnly()
@@ -357,12 +359,12 @@ class WriteTransaction extends XaTransaction
 
     private void removeRelationshipFromCache( int id )
     {
-        lockReleaser.removeRelationshipFromCache( id );
+        lockReleaser.removeRelationshipFromCache( id & 0xFFFFFFFFL );
     }
 
     private void removeNodeFromCache( int id )
     {
-        lockReleaser.removeNodeFromCache( id );
+        lockReleaser.removeNodeFromCache( id & 0xFFFFFFFFL );
     }
     
     private void addRelationshipType( int id )
@@ -468,6 +470,11 @@ class WriteTransaction extends XaTransaction
 
     private void commitRecovered()
     {
+        if ( recoveryApplier != null && recoveryApplier.isActive() )
+        {
+            dispatchRecovered();
+            return;
+        }
         try
         {
             committed = true;
@@ -529,6 +536,99 @@ class WriteTransaction extends XaTransaction
     }
     
 
+    /**
+     * Same as {@link #commitRecovered()} but the commands are handed to the
+     * recovery workers, high ids are updated once all transactions in the
+     * log have been replayed.
+     */
+    private void dispatchRecovered()
+    {
+        try
+        {
+            committed = true;
+            recoveryApplier.transactionStarted();
+            CommandSorter sorter = new CommandSorter();
+            java.util.Collections.sort( relTypeCommands, sorter );
+            for ( final Command.RelationshipTypeCommand command : 
+                relTypeCommands )
+            {
+                recoveryApplier.applyOrderedCommand( new Runnable()
+                {
+                    public void run()
+                    {
+                        command.execute();
+                        addRelationshipType( command.getKey() );
+                    }
+                } );
+            }
+            java.util.Collections.sort( nodeCommands, sorter );
+            for ( final Command.NodeCommand command : nodeCommands )
+            {
+                recoveryApplier.applyNodeCommand( command.getKey(), 
+                    new Runnable()
+                {
+                    public void run()
+                    {
+                        command.execute();
+                        removeNodeFromCache( command.getKey() );
+                    }
+                } );
+            }
+            java.util.Collections.sort( relCommands, sorter );
+            for ( final Command.RelationshipCommand command : relCommands )
+            {
+                recoveryApplier.applyRelationshipCommand( command.getKey(), 
+                    new Runnable()
+                {
+                    public void run()
+                    {
+                        command.execute();
+                        removeRelationshipFromCache( command.getKey() );
+                    }
+                } );
+            }
+            java.util.Collections.sort( propIndexCommands, sorter );
+            for ( final Command.PropertyIndexCommand command : 
+                propIndexCommands )
+            {
+                recoveryApplier.applyOrderedCommand( new Runnable()
+                {
+                    public void run()
+                    {
+                        command.execute();
+                        addPropertyIndexCommand( command.getKey() );
+                    }
+                } );
+            }
+            java.util.Collections.sort( propCommands, sorter );
+            for ( final Command.PropertyCommand command : propCommands )
+            {
+                recoveryApplier.applyOrderedCommand( new Runnable()
+                {
+                    public void run()
+                    {
+                        command.execute();
+                        removePropertyFromCache( command );
+                    }
+                } );
+            }
+        }
+        finally
+        {
+            nodeRecords.clear();
+            propertyRecords.clear();
+            relRecords.clear();
+            relTypeRecords.clear();
+            propIndexRecords.clear();
+
+            nodeCommands.clear();
+            propCommands.clear();
+            propIndexCommands.clear();
+            relCommands.clear();
+            relTypeCommands.clear();
+        }
+    }
+
     private void removePropertyFromCache( PropertyCommand command )
     {
         lockReleaser.clearCache();
@@ -847,46 +947,8 @@ class WriteTransaction extends XaTransaction
     public Iterable<RelationshipData> getMoreRelationships( int nodeId, 
         RelationshipChainPosition position )
     {
-        int nextRel = position.getNextRecord();
-        List<RelationshipData> rels = new ArrayList<RelationshipData>();
-        for ( int i = 0; i < getRelGrabSize() && 
-            nextRel != Record.NO_NEXT_RELATIONSHIP.intValue(); i++ )
-        {
-            RelationshipRecord relRecord = getRelationshipStore().getChainRecord( nextRel );
-            if ( relRecord == null )
-            {
-                // return what we got so far
-                position.setNextRecord( Record.NO_NEXT_RELATIONSHIP.intValue() );
-                return rels;
-            }
-            int firstNode = relRecord.getFirstNode();
-            int secondNode = relRecord.getSecondNode();
-            if ( relRecord.inUse() ) // && !relRecord.isCreated() )
-            {
-                rels.add( new RelationshipData( relRecord.getId(), firstNode, 
-                    secondNode, relRecord.getType() ) );
-            }
-            else
-            {
-                i--;
-            }
-            if ( firstNode == nodeId )
-            {
-                nextRel = relRecord.getFirstNextRel();
-            }
-            else if ( secondNode == nodeId )
-            {
-                nextRel = relRecord.getSecondNextRel();
-            }
-            else
-            {
-                throw new InvalidRecordException( "Node[" + nodeId + 
-                    "] not part of firstNode[" + firstNode + 
-                    "] or secondNode[" + secondNode + "]" );
-            }
-        }
-        position.setNextRecord( nextRel );
-        return rels;
+        return getRelationshipStore().getMoreRelationships( nodeId, position, 
+            getRelGrabSize() );
     }
     
     private void updateNodes( RelationshipRecord rel )
@@ -948,7 +1010,7 @@ class WriteTransaction extends XaTransaction
         {
             if ( valueRecord.inUse() )
             {
-                valueRecord.setInUse( false, propRecord.getType().intValue() );
+                valueRecord.setInUse( false );
             }
         }
         int prevProp = propRecord.getPrevProp();
@@ -1062,7 +1124,11 @@ class WriteTransaction extends XaTransaction
         {
             return (int) propertyRecord.getPropBlock();
         }
-        if ( type == PropertyType.STRING )
+        if ( type == PropertyType.SHORT_STRING )
+        {
+            return getPropertyStore().getStringFor( propertyRecord );
+        }
+        if ( PropertyStore.isDynamicString( type ) )
         {
             if ( propertyRecord.isLight() )
             {
@@ -1128,7 +1194,7 @@ class WriteTransaction extends XaTransaction
         {
             return (int) propertyRecord.getPropBlock();
         }
-        if ( type == PropertyType.STRING )
+        if ( PropertyStore.isString( type ) )
         {
             return getPropertyStore().getStringFor( propertyRecord );
         }
@@ -1209,7 +1275,7 @@ class WriteTransaction extends XaTransaction
         {
             if ( valueRecord.inUse() )
             {
-                valueRecord.setInUse( false, propRecord.getType().intValue() );
+                valueRecord.setInUse( false );
             }
         }
         int prevProp = propRecord.getPrevProp();
@@ -1273,7 +1339,7 @@ class WriteTransaction extends XaTransaction
             getPropertyStore().makeHeavy( propertyRecord );
         }
         propertyRecord.setChanged();
-        if ( propertyRecord.getType() == PropertyType.STRING )
+        if ( PropertyStore.isDynamicString( propertyRecord.getType() ) )
         {
             for ( DynamicRecord record : propertyRecord.getValueRecords() )
             {
@@ -1326,7 +1392,7 @@ class WriteTransaction extends XaTransaction
             getPropertyStore().makeHeavy( propertyRecord );
         }
         propertyRecord.setChanged();
-        if ( propertyRecord.getType() == PropertyType.STRING )
+        if ( PropertyStore.isDynamicString( propertyRecord.getType() ) )
         {
             for ( DynamicRecord record : propertyRecord.getValueRecords() )
             {
@@ -1688,7 +1754,7 @@ class WriteTransaction extends XaTransaction
 
         public long getId()
         {
-            return this.id;
+            return this.id & 0xFFFFFFFFL;
         }
 
         public GraphDatabaseService getGraphDatabase()
@@ -58,6 +58,16 @@ public class IdGenerator
         return getPersistenceSource().getNumberOfIdsInUse( clazz );
     }
 
+    public long getNumberOfAllocatedIds( Class<?> clazz )
+    {
+        return getPersistenceSource().getNumberOfAllocatedIds( clazz );
+    }
+
+    public long getNumberOfFreeIds( Class<?> clazz )
+    {
+        return getPersistenceSource().getNumberOfFreeIds( clazz );
+    }
+
     /**
      * Configures the IdGenerator. <B>WARNING</B>: This method should only be
      * invoked once from {@link IdGeneratorModule#start}.
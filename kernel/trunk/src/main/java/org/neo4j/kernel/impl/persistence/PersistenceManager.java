@@ -43,6 +43,7 @@ import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeData;
 import org.neo4j.kernel.impl.nioneo.xa.NioNeoDbPersistenceSource;
 import org.neo4j.kernel.impl.util.ArrayMap;
 import org.neo4j.kernel.impl.util.IntArray;
+import org.neo4j.kernel.impl.util.LongArray;
 
 public class PersistenceManager
 {
@@ -70,9 +71,11 @@ public class PersistenceManager
         return persistenceSource;
     }
 
-    public boolean loadLightNode( int id )
+    // node and relationship ids are narrowed to the unsigned 32 bit record
+    // ids used by the store
+    public boolean loadLightNode( long id )
     {
-        return getReadOnlyResource().nodeLoadLight( id );
+        return getReadOnlyResource().nodeLoadLight( (int) id );
     }
 
     public Object loadPropertyValue( int id )
@@ -90,32 +93,34 @@ public class PersistenceManager
         return getReadOnlyResource().loadPropertyIndexes( maxCount );
     }
 
-    public RelationshipChainPosition getRelationshipChainPosition( int nodeId )
+    public RelationshipChainPosition getRelationshipChainPosition( long nodeId )
     {
-        return getReadOnlyResource().getRelationshipChainPosition( nodeId );
+        return getReadOnlyResource().getRelationshipChainPosition( 
+            (int) nodeId );
     }
     
-    public Iterable<RelationshipData> getMoreRelationships( int nodeId,  
+    public Iterable<RelationshipData> getMoreRelationships( long nodeId,  
         RelationshipChainPosition position )
     {
-        return getReadOnlyResource().getMoreRelationships( nodeId, position );
+        return getReadOnlyResource().getMoreRelationships( (int) nodeId, 
+            position );
     }
     
-    public ArrayMap<Integer,PropertyData> loadNodeProperties( int nodeId, 
+    public ArrayMap<Integer,PropertyData> loadNodeProperties( long nodeId, 
             boolean light )
     {
-        return getReadOnlyResource().nodeLoadProperties( nodeId, light );
+        return getReadOnlyResource().nodeLoadProperties( (int) nodeId, light );
     }
 
-    public ArrayMap<Integer,PropertyData> loadRelProperties( int relId, 
+    public ArrayMap<Integer,PropertyData> loadRelProperties( long relId, 
             boolean light )
     {
-        return getReadOnlyResource().relLoadProperties( relId, light );
+        return getReadOnlyResource().relLoadProperties( (int) relId, light );
     }
 
-    public RelationshipData loadLightRelationship( int id )
+    public RelationshipData loadLightRelationship( long id )
     {
-        return getReadOnlyResource().relLoadLight( id );
+        return getReadOnlyResource().relLoadLight( (int) id );
     }
 
     public RelationshipTypeData[] loadAllRelationshipTypes()
@@ -123,55 +128,56 @@ public class PersistenceManager
         return getReadOnlyResource().loadRelationshipTypes();
     }
 
-    public ArrayMap<Integer,PropertyData> nodeDelete( int nodeId )
+    public ArrayMap<Integer,PropertyData> nodeDelete( long nodeId )
     {
-        return getResource().nodeDelete( nodeId );
+        return getResource().nodeDelete( (int) nodeId );
     }
 
-    public int nodeAddProperty( int nodeId, PropertyIndex index, Object value )
+    public int nodeAddProperty( long nodeId, PropertyIndex index, Object value )
     {
-        return getResource().nodeAddProperty( nodeId, index, value );
+        return getResource().nodeAddProperty( (int) nodeId, index, value );
     }
 
-    public void nodeChangeProperty( int nodeId, int propertyId, Object value )
+    public void nodeChangeProperty( long nodeId, int propertyId, Object value )
     {
-        getResource().nodeChangeProperty( nodeId, propertyId, value );
+        getResource().nodeChangeProperty( (int) nodeId, propertyId, value );
     }
 
-    public void nodeRemoveProperty( int nodeId, int propertyId )
+    public void nodeRemoveProperty( long nodeId, int propertyId )
     {
-        getResource().nodeRemoveProperty( nodeId, propertyId );
+        getResource().nodeRemoveProperty( (int) nodeId, propertyId );
     }
 
-    public void nodeCreate( int id )
+    public void nodeCreate( long id )
     {
-        getResource().nodeCreate( id );
+        getResource().nodeCreate( (int) id );
     }
 
-    public void relationshipCreate( int id, int typeId, int startNodeId,
-        int endNodeId )
+    public void relationshipCreate( long id, int typeId, long startNodeId,
+        long endNodeId )
     {
-        getResource().relationshipCreate( id, typeId, startNodeId, endNodeId );
+        getResource().relationshipCreate( (int) id, typeId, (int) startNodeId, 
+            (int) endNodeId );
     }
 
-    public ArrayMap<Integer,PropertyData> relDelete( int relId )
+    public ArrayMap<Integer,PropertyData> relDelete( long relId )
     {
-        return getResource().relDelete( relId );
+        return getResource().relDelete( (int) relId );
     }
 
-    public int relAddProperty( int relId, PropertyIndex index, Object value )
+    public int relAddProperty( long relId, PropertyIndex index, Object value )
     {
-        return getResource().relAddProperty( relId, index, value );
+        return getResource().relAddProperty( (int) relId, index, value );
     }
 
-    public void relChangeProperty( int relId, int propertyId, Object value )
+    public void relChangeProperty( long relId, int propertyId, Object value )
     {
-        getResource().relChangeProperty( relId, propertyId, value );
+        getResource().relChangeProperty( (int) relId, propertyId, value );
     }
 
-    public void relRemoveProperty( int relId, int propertyId )
+    public void relRemoveProperty( long relId, int propertyId )
     {
-        getResource().relRemoveProperty( relId, propertyId );
+        getResource().relRemoveProperty( (int) relId, propertyId );
     }
 
     public void createPropertyIndex( String key, int id )
@@ -346,19 +352,25 @@ public class PersistenceManager
         }
     }
 
-    public IntArray getCreatedNodes()
+    public LongArray getCreatedNodes()
     {
-        return getResource().getCreatedNodes();
+        IntArray createdNodes = getResource().getCreatedNodes();
+        LongArray result = new LongArray( createdNodes.length() + 1 );
+        for ( int i = 0; i < createdNodes.length(); i++ )
+        {
+            result.add( createdNodes.get( i ) & 0xFFFFFFFFL );
+        }
+        return result;
     }
 
-    public boolean isNodeCreated( int nodeId )
+    public boolean isNodeCreated( long nodeId )
     {
-        return getResource().isNodeCreated( nodeId );
+        return getResource().isNodeCreated( (int) nodeId );
     }
 
-    public boolean isRelationshipCreated( int relId )
+    public boolean isRelationshipCreated( long relId )
     {
-        return getResource().isRelationshipCreated( relId );
+        return getResource().isRelationshipCreated( (int) relId );
     }
 
     public int getKeyIdForProperty( int propertyId )
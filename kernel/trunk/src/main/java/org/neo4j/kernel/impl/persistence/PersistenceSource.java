@@ -49,6 +49,10 @@ public interface PersistenceSource
     public long getHighestPossibleIdInUse( Class<?> clazz );
 
     public long getNumberOfIdsInUse( Class<?> clazz );
+
+    public long getNumberOfAllocatedIds( Class<?> clazz );
+
+    public long getNumberOfFreeIds( Class<?> clazz );
     
     public XaDataSource getXaDataSource();
 }
\ No newline at end of file
@@ -43,25 +43,78 @@ import org.neo4j.kernel.DeadlockDetectedException;
  * must invoke <CODE>releaseReadLock</CODE> x times to release all the locks.
  * <p>
  * LockManager just maps locks to resources and they do all the hard work
- * together with a resource allocation graph.
+ * together with a resource allocation graph. The lock table is split into a 
+ * number of stripes (selected by the hash code of the resource) each guarded
+ * by its own monitor, so transactions locking different resources don't 
+ * contend with each other.
  */
 public class LockManager
 {
-    private final Map<Object,RWLock> resourceLockMap =
-        new HashMap<Object,RWLock>();
+    private static final int DEFAULT_STRIPE_COUNT = 
+        stripeCountFor( Runtime.getRuntime().availableProcessors() * 8 );
+
+    private final LockStripe[] resourceLockMaps;
+    private final int stripeMask;
 
     private final RagManager ragManager;
 
     public LockManager( TransactionManager tm )
     {
+        this( tm, DEFAULT_STRIPE_COUNT );
+    }
+
+    /**
+     * Creates a lock manager with a lock table split in 
+     * <CODE>stripeCount</CODE> stripes (rounded up to a power of two). A
+     * stripe count of one gives a single globally synchronized lock table.
+     */
+    LockManager( TransactionManager tm, int stripeCount )
+    {
+        stripeCount = stripeCountFor( stripeCount );
+        resourceLockMaps = new LockStripe[stripeCount];
+        for ( int i = 0; i < stripeCount; i++ )
+        {
+            resourceLockMaps[i] = new LockStripe();
+        }
+        stripeMask = stripeCount - 1;
         ragManager = new RagManager( tm );
     }
 
+    private static int stripeCountFor( int requested )
+    {
+        int count = 1;
+        while ( count < requested && count < ( 1 << 16 ) )
+        {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    private Map<Object,RWLock> stripeFor( Object resource )
+    {
+        int hash = resource.hashCode();
+        // spread bits since resource hash codes are often sequential ids
+        hash ^= ( hash >>> 20 ) ^ ( hash >>> 12 );
+        hash ^= ( hash >>> 7 ) ^ ( hash >>> 4 );
+        return resourceLockMaps[hash & stripeMask].locks;
+    }
+
+    // typed holder, since arrays of a generic type can't be created
+    private static final class LockStripe
+    {
+        private final Map<Object,RWLock> locks = new HashMap<Object,RWLock>();
+    }
+
     public long getDetectedDeadlockCount()
     {
         return ragManager.getDeadlockCount();
     }
 
+    int getStripeCount()
+    {
+        return resourceLockMaps.length;
+    }
+
     /**
      * Tries to acquire read lock on <CODE>resource</CODE> for the current
      * transaction. If read lock can't be acquired the transaction will wait for
@@ -77,23 +130,7 @@ public class LockManager
     public void getReadLock( Object resource )
         throws DeadlockDetectedException, IllegalResourceException
     {
-        if ( resource == null )
-        {
-            throw new IllegalResourceException( "Null parameter" );
-        }
-
-        RWLock lock = null;
-        synchronized ( resourceLockMap )
-        {
-            lock = resourceLockMap.get( resource );
-            if ( lock == null )
-            {
-                lock = new RWLock( resource, ragManager );
-                resourceLockMap.put( resource, lock );
-            }
-            lock.mark();
-        }
-        lock.acquireReadLock();
+        getRWLock( resource ).acquireReadLock();
     }
 
     /**
@@ -110,24 +147,31 @@ public class LockManager
      */
     public void getWriteLock( Object resource )
         throws DeadlockDetectedException, IllegalResourceException
+    {
+        getRWLock( resource ).acquireWriteLock();
+    }
+
+    // returns the (marked) lock for resource, creating it if needed
+    private RWLock getRWLock( Object resource ) 
+        throws IllegalResourceException
     {
         if ( resource == null )
         {
             throw new IllegalResourceException( "Null parameter" );
         }
 
-        RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = stripeFor( resource );
         synchronized ( resourceLockMap )
         {
-            lock = resourceLockMap.get( resource );
+            RWLock lock = resourceLockMap.get( resource );
             if ( lock == null )
             {
                 lock = new RWLock( resource, ragManager );
                 resourceLockMap.put( resource, lock );
             }
             lock.mark();
+            return lock;
         }
-        lock.acquireWriteLock();
     }
 
     /**
@@ -149,6 +193,7 @@ public class LockManager
         }
 
         RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = stripeFor( resource );
         synchronized ( resourceLockMap )
         {
             lock = resourceLockMap.get( resource );
@@ -186,6 +231,7 @@ public class LockManager
         }
 
         RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = stripeFor( resource );
         synchronized ( resourceLockMap )
         {
             lock = resourceLockMap.get( resource );
@@ -214,6 +260,7 @@ public class LockManager
     public void dumpLocksOnResource( Object resource )
     {
         RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = stripeFor( resource );
         synchronized ( resourceLockMap )
         {
             if ( !resourceLockMap.containsKey( resource ) )
@@ -240,35 +287,39 @@ public class LockManager
      */
     public void dumpAllLocks()
     {
-        synchronized ( resourceLockMap )
+        int emptyLockCount = 0;
+        for ( LockStripe stripe : resourceLockMaps )
         {
-            Iterator<RWLock> itr = resourceLockMap.values().iterator();
-            int emptyLockCount = 0;
-            while ( itr.hasNext() )
+            Map<Object,RWLock> resourceLockMap = stripe.locks;
+            synchronized ( resourceLockMap )
             {
-                RWLock lock = itr.next();
-                if ( lock.getWriteCount() > 0 || lock.getReadCount() > 0 )
-                {
-                    lock.dumpStack();
-                }
-                else
+                Iterator<RWLock> itr = resourceLockMap.values().iterator();
+                while ( itr.hasNext() )
                 {
-                    if ( lock.getWaitingThreadsCount() > 0 )
+                    RWLock lock = itr.next();
+                    if ( lock.getWriteCount() > 0 || lock.getReadCount() > 0 )
                     {
                         lock.dumpStack();
                     }
-                    emptyLockCount++;
+                    else
+                    {
+                        if ( lock.getWaitingThreadsCount() > 0 )
+                        {
+                            lock.dumpStack();
+                        }
+                        emptyLockCount++;
+                    }
                 }
             }
-            if ( emptyLockCount > 0 )
-            {
-                System.out.println( "There are " + emptyLockCount
-                    + " empty locks" );
-            }
-            else
-            {
-                System.out.println( "There are no empty locks" );
-            }
+        }
+        if ( emptyLockCount > 0 )
+        {
+            System.out.println( "There are " + emptyLockCount
+                + " empty locks" );
+        }
+        else
+        {
+            System.out.println( "There are no empty locks" );
         }
     }
-}
\ No newline at end of file
+}
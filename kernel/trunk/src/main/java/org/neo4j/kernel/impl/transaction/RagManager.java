@@ -20,12 +20,15 @@
 
 package org.neo4j.kernel.impl.transaction;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.transaction.SystemException;
@@ -34,7 +37,6 @@ import javax.transaction.TransactionManager;
 
 import org.neo4j.graphdb.TransactionFailureException;
 import org.neo4j.kernel.DeadlockDetectedException;
-import org.neo4j.kernel.impl.util.ArrayMap;
 
 /**
  * The Resource Allocation Graph manager is used for deadlock detection. It
@@ -57,6 +59,14 @@ import org.neo4j.kernel.impl.util.ArrayMap;
  * traverse node nodespace starting on the resource and see if we can get back
  * to the tx ( T1 wants to wait on R1 and R1->T2->R2->T3->R8->T1 <==>
  * deadlock!).
+ * <p>
+ * There is no global lock on the graph. R->T relationships are only modified
+ * while holding the monitor of the {@link RWLock} they belong to and the
+ * deadlock check is incremental, it only traverses the part of the graph 
+ * reachable from the resource about to be waited on. The T->R relationship
+ * is added <i>before</i> the graph is traversed so if two transactions 
+ * concurrently start waiting for each other at least one of them will see the
+ * cycle.
  */
 class RagManager
 {
@@ -73,12 +83,14 @@ class RagManager
     // in a DeadlockDetectedException the transaction must wait
     // o When the transaction wakes up from waiting on a resource the
     // stopWaitOn( resource ) method must be invoked
+    // o All of the above must be invoked holding the monitor of the resource
 
-    private final Map<Object,List<Transaction>> resourceMap =
-        new HashMap<Object,List<Transaction>>();
+    // the lists are guarded by their own monitor
+    private final ConcurrentMap<Object,List<Transaction>> resourceMap =
+        new ConcurrentHashMap<Object,List<Transaction>>();
 
-    private final ArrayMap<Transaction,Object> waitingTxMap =
-        new ArrayMap<Transaction,Object>( 5, false, true );
+    private final ConcurrentMap<Transaction,Object> waitingTxMap =
+        new ConcurrentHashMap<Transaction,Object>();
 
     private final TransactionManager tm;
 
@@ -94,13 +106,16 @@ class RagManager
         return deadlockCount.longValue();
     }
 
-    synchronized void lockAcquired( Object resource, Transaction tx )
+    void lockAcquired( Object resource, Transaction tx )
     {
         List<Transaction> lockingTxList = resourceMap.get( resource );
         if ( lockingTxList != null )
         {
-            assert !lockingTxList.contains( tx );
-            lockingTxList.add( tx );
+            synchronized ( lockingTxList )
+            {
+                assert !lockingTxList.contains( tx );
+                lockingTxList.add( tx );
+            }
         }
         else
         {
@@ -110,7 +125,7 @@ class RagManager
         }
     }
 
-    synchronized void lockReleased( Object resource, Transaction tx )
+    void lockReleased( Object resource, Transaction tx )
     {
         List<Transaction> lockingTxList = resourceMap.get( resource );
         if ( lockingTxList == null )
@@ -118,17 +133,20 @@ class RagManager
             throw new LockException( resource + " not found in resource map" );
         }
 
-        if ( !lockingTxList.remove( tx ) )
+        synchronized ( lockingTxList )
         {
-            throw new LockException( tx + "not found in locking tx list" );
-        }
-        if ( lockingTxList.size() == 0 )
-        {
-            resourceMap.remove( resource );
+            if ( !lockingTxList.remove( tx ) )
+            {
+                throw new LockException( tx + "not found in locking tx list" );
+            }
+            if ( lockingTxList.size() == 0 )
+            {
+                resourceMap.remove( resource );
+            }
         }
     }
 
-    synchronized void stopWaitOn( Object resource, Transaction tx )
+    void stopWaitOn( Object resource, Transaction tx )
     {
         if ( waitingTxMap.remove( tx ) == null )
         {
@@ -137,64 +155,86 @@ class RagManager
     }
 
     // after invoke the transaction must wait on the resource
-    synchronized void checkWaitOn( Object resource, Transaction tx )
+    void checkWaitOn( Object resource, Transaction tx )
         throws DeadlockDetectedException
     {
-        List<Transaction> lockingTxList = resourceMap.get( resource );
-        if ( lockingTxList == null )
+        Transaction[] lockingTxs = getLockingTransactions( resource );
+        if ( lockingTxs == null )
         {
             throw new LockException( "Illegal resource[" + resource
                 + "], not found in map" );
         }
 
-        if ( waitingTxMap.get( tx ) != null )
+        if ( waitingTxMap.putIfAbsent( tx, resource ) != null )
         {
             throw new LockException( tx + " already waiting for resource" );
         }
 
-        Iterator<Transaction> itr = lockingTxList.iterator();
-        List<Transaction> checkedTransactions = new LinkedList<Transaction>();
-        Stack<Object> graphStack = new Stack<Object>();
-        // has resource,transaction interleaved
-        graphStack.push( resource );
-        while ( itr.hasNext() )
+        boolean deadlock = true;
+        try
         {
-            Transaction lockingTx = itr.next();
-            // the if statement bellow is valid because:
-            // t1 -> r1 -> t1 (can happened with RW locks) is ok but,
-            // t1 -> r1 -> t1&t2 where t2 -> r1 is a deadlock
-            // think like this, we have two transactions and one resource
-            // o t1 takes read lock on r1
-            // o t2 takes read lock on r1
-            // o t1 wanna take write lock on r1 but has to wait for t2
-            // to release the read lock ( t1->r1->(t1&t2), ok not deadlock yet
-            // o t2 wanna take write lock on r1 but has to wait for t1
-            // to release read lock....
-            // DEADLOCK t1->r1->(t1&t2) and t2->r1->(t1&t2) ===>
-            // t1->r1->t2->r1->t1, t2->r1->t1->r1->t2 etc...
-            // to allow the first three steps above we check if lockingTx ==
-            // waitingTx on first level.
-            // because of this special case we have to keep track on the
-            // already "checked" tx since it is (now) legal for one type of
-            // circular reference to exist (t1->r1->t1) otherwise we may
-            // traverse t1->r1->t2->r1->t2->r1->t2... until SOE
-            // ... KISS to you too
-            if ( lockingTx.equals( tx ) )
+            Set<Transaction> checkedTransactions = new HashSet<Transaction>();
+            Stack<Object> graphStack = new Stack<Object>();
+            // has resource,transaction interleaved
+            graphStack.push( resource );
+            for ( Transaction lockingTx : lockingTxs )
             {
-                continue;
+                // the if statement bellow is valid because:
+                // t1 -> r1 -> t1 (can happened with RW locks) is ok but,
+                // t1 -> r1 -> t1&t2 where t2 -> r1 is a deadlock
+                // think like this, we have two transactions and one resource
+                // o t1 takes read lock on r1
+                // o t2 takes read lock on r1
+                // o t1 wanna take write lock on r1 but has to wait for t2
+                // to release the read lock ( t1->r1->(t1&t2), ok not deadlock yet
+                // o t2 wanna take write lock on r1 but has to wait for t1
+                // to release read lock....
+                // DEADLOCK t1->r1->(t1&t2) and t2->r1->(t1&t2) ===>
+                // t1->r1->t2->r1->t1, t2->r1->t1->r1->t2 etc...
+                // to allow the first three steps above we check if lockingTx ==
+                // waitingTx on first level.
+                // because of this special case we have to keep track on the
+                // already "checked" tx since it is (now) legal for one type of
+                // circular reference to exist (t1->r1->t1) otherwise we may
+                // traverse t1->r1->t2->r1->t2->r1->t2... until SOE
+                // ... KISS to you too
+                if ( lockingTx.equals( tx ) )
+                {
+                    continue;
+                }
+                graphStack.push( tx );
+                checkWaitOnRecursive( lockingTx, tx, checkedTransactions,
+                    graphStack );
+                graphStack.pop();
+            }
+            deadlock = false;
+        }
+        finally
+        {
+            if ( deadlock )
+            {
+                waitingTxMap.remove( tx );
             }
-            graphStack.push( tx );
-            checkWaitOnRecursive( lockingTx, tx, checkedTransactions,
-                graphStack );
-            graphStack.pop();
         }
-
         // ok no deadlock, we can wait on resource
-        waitingTxMap.put( tx, resource );
     }
 
-    private synchronized void checkWaitOnRecursive( Transaction lockingTx,
-        Transaction waitingTx, List<Transaction> checkedTransactions,
+    // returns a snapshot of the transactions holding locks on resource
+    private Transaction[] getLockingTransactions( Object resource )
+    {
+        List<Transaction> lockingTxList = resourceMap.get( resource );
+        if ( lockingTxList == null )
+        {
+            return null;
+        }
+        synchronized ( lockingTxList )
+        {
+            return lockingTxList.toArray( new Transaction[lockingTxList.size()] );
+        }
+    }
+
+    private void checkWaitOnRecursive( Transaction lockingTx,
+        Transaction waitingTx, Set<Transaction> checkedTransactions,
         Stack<Object> graphStack ) throws DeadlockDetectedException
     {
         if ( lockingTx.equals( waitingTx ) )
@@ -234,18 +274,16 @@ class RagManager
             // this is ok since current tx or any other tx will wake
             // in the synchronized block and will be forced to do the deadlock
             // check once more if lock cannot be acquired
-            List<Transaction> lockingTxList = resourceMap.get( resource );
-            if ( lockingTxList != null )
+            Transaction[] lockingTxs = getLockingTransactions( resource );
+            if ( lockingTxs != null )
             {
-                Iterator<Transaction> itr = lockingTxList.iterator();
-                while ( itr.hasNext() )
+                for ( Transaction tx : lockingTxs )
                 {
-                    lockingTx = itr.next();
                     // so we don't
-                    if ( !checkedTransactions.contains( lockingTx ) )
+                    if ( !checkedTransactions.contains( tx ) )
                     {
-                        graphStack.push( lockingTx );
-                        checkWaitOnRecursive( lockingTx, waitingTx,
+                        graphStack.push( tx );
+                        checkWaitOnRecursive( tx, waitingTx,
                             checkedTransactions, graphStack );
                         graphStack.pop();
                     }
@@ -255,7 +293,7 @@ class RagManager
         }
     }
 
-    synchronized void dumpStack()
+    void dumpStack()
     {
         System.out.print( "Waiting list: " );
         Iterator<Transaction> transactions = waitingTxMap.keySet().iterator();
@@ -286,7 +324,13 @@ class RagManager
         {
             Object resource = resources.next();
             System.out.print( "" + resource + "->" );
-            Iterator<Transaction> itr = resourceMap.get( resource ).iterator();
+            Transaction[] lockingTxs = getLockingTransactions( resource );
+            if ( lockingTxs == null )
+            {
+                System.out.println( " Released" );
+                continue;
+            }
+            Iterator<Transaction> itr = Arrays.asList( lockingTxs ).iterator();
             if ( !itr.hasNext() )
             {
                 System.out.println( " Error empty list found" );
@@ -18,41 +18,32 @@
  * along with this program. If not, see <http://www.gnu.org/licenses/>.
  */
 
-package org.neo4j.index.lucene;
+package org.neo4j.kernel.impl.transaction.xaframework;
 
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
-import org.apache.lucene.document.Document;
-import org.neo4j.helpers.collection.PrefetchingIterator;
-
-class HitsIterator extends PrefetchingIterator<Document>
+/**
+ * Forces a log file channel, and the memory mapped part of it if any.
+ */
+class ChannelForce implements LogBuffer.Force
 {
-    private final Hits hits;
-    private final int size;
-    private int index;
-    
-    HitsIterator( Hits hits )
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer mappedBufferOrNull;
+
+    ChannelForce( FileChannel fileChannel, MappedByteBuffer mappedBufferOrNull )
     {
-        this.hits = hits;
-        this.size = hits.length();
+        this.fileChannel = fileChannel;
+        this.mappedBufferOrNull = mappedBufferOrNull;
     }
 
-    @Override
-    protected Document fetchNextOrNull()
+    public void force() throws IOException
     {
-        int i = index++;
-        try
+        if ( mappedBufferOrNull != null )
         {
-            return i < size ? hits.doc( i ) : null;
+            mappedBufferOrNull.force();
         }
-        catch ( IOException e )
-        {
-            throw new RuntimeException( e );
-        }
-    }
-    
-    public int size()
-    {
-        return this.size;
+        fileChannel.force( false );
     }
 }
@@ -122,6 +122,12 @@ class DirectLogBuffer implements LogBuffer
         fileChannel.force( false );
     }
 
+    public Force writeOut() throws IOException
+    {
+        // puts are written to the channel directly
+        return new ChannelForce( fileChannel, null );
+    }
+
     public long getFileChannelPosition() throws IOException
     {
         return fileChannel.position();
@@ -144,6 +144,12 @@ class DirectMappedLogBuffer implements LogBuffer
         fileChannel.force( false );
     }
 
+    public Force writeOut() throws IOException
+    {
+        getNewDirectBuffer();
+        return new ChannelForce( fileChannel, null );
+    }
+
     public long getFileChannelPosition()
     {
         if ( byteBuffer != null )
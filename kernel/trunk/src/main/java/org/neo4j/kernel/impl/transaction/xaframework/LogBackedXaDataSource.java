@@ -115,6 +115,12 @@ public abstract class LogBackedXaDataSource extends XaDataSource
         logicalLog.makeBackupSlave();
     }
     
+    @Override
+    public XaLogicalLog getXaLogicalLog()
+    {
+        return logicalLog;
+    }
+    
     @Override
     public String getFileName( long version )
     {
@@ -41,7 +41,22 @@ public interface LogBuffer
 
     public void force() throws IOException;
 
+    /**
+     * Writes out what has been put so far, without forcing it to disk. The
+     * returned {@link Force} makes it durable without touching this buffer,
+     * so that it can be called after releasing the lock guarding the puts.
+     */
+    public Force writeOut() throws IOException;
+
     public long getFileChannelPosition() throws IOException;
 
     public FileChannel getFileChannel();
+
+    public interface Force
+    {
+        /**
+         * Forces what was written out to disk.
+         */
+        public void force() throws IOException;
+    }
 }
@@ -22,6 +22,7 @@ package org.neo4j.kernel.impl.transaction.xaframework;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
@@ -39,6 +40,7 @@ class MemoryMappedLogBuffer implements LogBuffer
     private MappedByteBuffer mappedBuffer = null;
     private long mappedStartPosition;
     private final ByteBuffer fallbackBuffer;
+    private final CharBuffer fallbackChars;
 
     MemoryMappedLogBuffer( FileChannel fileChannel ) throws IOException
     {
@@ -47,6 +49,7 @@ class MemoryMappedLogBuffer implements LogBuffer
         getNewMappedBuffer();
         fallbackBuffer = ByteBuffer.allocateDirect( 9 + Xid.MAXGTRIDSIZE
             + Xid.MAXBQUALSIZE * 10 );
+        fallbackChars = fallbackBuffer.asCharBuffer();
     }
 
     MappedByteBuffer getMappedBuffer()
@@ -245,18 +248,7 @@ class MemoryMappedLogBuffer implements LogBuffer
             getNewMappedBuffer();
             if ( mappedBuffer == null )
             {
-                int bytesToWrite = ( chars.length - offset ) * 2;
-                ByteBuffer buf = ByteBuffer.allocate( bytesToWrite );
-                buf.asCharBuffer().put( chars, offset, chars.length - offset );
-                buf.limit( chars.length * 2 );
-                int count = fileChannel.write( buf, mappedStartPosition );
-                if ( count != bytesToWrite )
-                {
-                    throw new UnderlyingStorageException( "Failed to write from " + 
-                        offset + " expected " + bytesToWrite + " but wrote " + 
-                        count );
-                }
-                mappedStartPosition += bytesToWrite;
+                writeThroughFallbackBuffer( chars, offset );
                 return;
             }
         }
@@ -270,6 +262,35 @@ class MemoryMappedLogBuffer implements LogBuffer
         }
     }
     
+    /**
+     * Writes chars to the file channel in chunks through the fallback
+     * buffer and its char view, used when the log could not be memory 
+     * mapped.
+     */
+    private void writeThroughFallbackBuffer( char[] chars, int offset ) 
+        throws IOException
+    {
+        while ( offset < chars.length )
+        {
+            int charsToWrite = Math.min( fallbackChars.capacity(), 
+                chars.length - offset );
+            fallbackChars.clear();
+            fallbackChars.put( chars, offset, charsToWrite );
+            int bytesToWrite = charsToWrite * 2;
+            fallbackBuffer.clear();
+            fallbackBuffer.limit( bytesToWrite );
+            int count = fileChannel.write( fallbackBuffer, mappedStartPosition );
+            if ( count != bytesToWrite )
+            {
+                throw new UnderlyingStorageException( "Failed to write from " + 
+                    offset + " expected " + bytesToWrite + " but wrote " + 
+                    count );
+            }
+            mappedStartPosition += bytesToWrite;
+            offset += charsToWrite;
+        }
+    }
+    
     void releaseMemoryMapped()
     {
         if ( mappedBuffer != null )
@@ -288,6 +309,13 @@ class MemoryMappedLogBuffer implements LogBuffer
         fileChannel.force( false );
     }
 
+    public Force writeOut() throws IOException
+    {
+        // puts go directly into the mapping (or to the channel if mapping
+        // failed), a remapped buffer is forced before it's released
+        return new ChannelForce( fileChannel, mappedBuffer );
+    }
+
     public long getFileChannelPosition()
     {
         if ( mappedBuffer != null )
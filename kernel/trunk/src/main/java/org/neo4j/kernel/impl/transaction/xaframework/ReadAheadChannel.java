@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads a logical log through a direct read ahead buffer so that the many
+ * small reads done when decoding log entries and commands are served from
+ * memory instead of each being a read on the underlying channel.
+ * <p>
+ * Every read fills the destination buffer completely unless the end of the
+ * underlying channel is reached, which is what the log entry readers
+ * expect. The underlying channel should not be read or positioned directly
+ * while it is in use through this channel.
+ */
+public class ReadAheadChannel implements ReadableByteChannel
+{
+    static final int DEFAULT_READ_AHEAD_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel source;
+    private final ByteBuffer aheadBuffer;
+    private long position;
+    private boolean endReached = false;
+
+    public ReadAheadChannel( ReadableByteChannel source ) throws IOException
+    {
+        this( source, DEFAULT_READ_AHEAD_SIZE );
+    }
+
+    public ReadAheadChannel( ReadableByteChannel source, int readAheadSize )
+        throws IOException
+    {
+        this.source = source;
+        this.aheadBuffer = ByteBuffer.allocateDirect( readAheadSize );
+        aheadBuffer.limit( 0 );
+        this.position = source instanceof FileChannel ? 
+            ((FileChannel) source).position() : 0;
+    }
+
+    public int read( ByteBuffer dst ) throws IOException
+    {
+        int read = 0;
+        while ( dst.hasRemaining() )
+        {
+            if ( !aheadBuffer.hasRemaining() && !fill() )
+            {
+                break;
+            }
+            int count = Math.min( dst.remaining(), aheadBuffer.remaining() );
+            if ( count == aheadBuffer.remaining() )
+            {
+                dst.put( aheadBuffer );
+            }
+            else
+            {
+                int limit = aheadBuffer.limit();
+                aheadBuffer.limit( aheadBuffer.position() + count );
+                dst.put( aheadBuffer );
+                aheadBuffer.limit( limit );
+            }
+            read += count;
+        }
+        position += read;
+        return read == 0 && endReached ? -1 : read;
+    }
+
+    private boolean fill() throws IOException
+    {
+        if ( endReached )
+        {
+            return false;
+        }
+        aheadBuffer.clear();
+        int count;
+        do
+        {
+            count = source.read( aheadBuffer );
+        } while ( count == 0 && aheadBuffer.hasRemaining() );
+        aheadBuffer.flip();
+        if ( count == -1 && aheadBuffer.limit() == 0 )
+        {
+            endReached = true;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return position in the underlying channel of the next byte to be 
+     * read through this channel.
+     */
+    public long position()
+    {
+        return position;
+    }
+
+    public boolean isOpen()
+    {
+        return source.isOpen();
+    }
+
+    public void close() throws IOException
+    {
+        source.close();
+    }
+}
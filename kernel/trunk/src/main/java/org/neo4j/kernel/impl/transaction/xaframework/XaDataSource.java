@@ -278,6 +278,66 @@ public abstract class XaDataSource
         throw new UnsupportedOperationException();
     }
     
+    /**
+     * Returns the logical log of this data source, used to monitor it.
+     * 
+     * @return the logical log or <CODE>null</CODE> if this data source 
+     * doesn't have one
+     */
+    public XaLogicalLog getXaLogicalLog()
+    {
+        return null;
+    }
+    
+    /**
+     * Returns the number of background checkpoints this data source has
+     * done, a checkpoint writes changed data to disk ahead of log rotation.
+     * 
+     * @return the number of checkpoints, <CODE>0</CODE> if this data source
+     * doesn't have a background checkpointer
+     */
+    public long getCheckpointCount()
+    {
+        return 0;
+    }
+    
+    /**
+     * @return number of dirty bytes written by background checkpoints
+     */
+    public long getCheckpointBytesWritten()
+    {
+        return 0;
+    }
+    
+    /**
+     * @return duration in milliseconds of the last background checkpoint
+     */
+    public long getLastCheckpointTime()
+    {
+        return 0;
+    }
+    
+    /**
+     * Returns the number of commands replayed in parallel when recovering
+     * or applying a logical log.
+     * 
+     * @return the number of replayed commands, <CODE>0</CODE> if this data
+     * source replays recovered transactions in the thread reading the log
+     */
+    public long getReplayedCommandCount()
+    {
+        return 0;
+    }
+    
+    /**
+     * @return duration in milliseconds of the last parallel replay of a
+     * logical log
+     */
+    public long getLastReplayTime()
+    {
+        return 0;
+    }
+    
     /**
      * Turns off/on auto rotate of logical logs. Default is <CODE>true</CODE>.
      * 
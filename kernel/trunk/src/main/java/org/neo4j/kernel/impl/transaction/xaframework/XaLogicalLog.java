@@ -24,6 +24,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.HashMap;
@@ -93,6 +95,8 @@ public class XaLogicalLog
         new HashMap<Integer,XaTransaction>();
     private int nextIdentifier = 1;
     private boolean scanIsComplete = false;
+    // reads the log ahead while it is being recovered
+    private ReadAheadChannel recoveryChannel = null;
 
     private String fileName = null;
     private final XaResourceManager xaRm;
@@ -105,6 +109,27 @@ public class XaLogicalLog
     private boolean backupSlave = false;
     private boolean useMemoryMapped = true;
 
+    // group commit, concurrent committers share a single force of the log
+    private final boolean groupCommit;
+    private final long groupCommitMaxWait;
+    private final int groupCommitMaxBatch;
+    private final Object groupCommitLock = new Object();
+    // number of entries appended that need to be forced, guarded by this
+    private long appendedForceEntries = 0;
+    // number of entries known to be forced, guarded by groupCommitLock
+    private long forcedEntries = 0;
+    private boolean forceInProgress = false;
+
+    private volatile long forceCount = 0;
+    private volatile long forcedEntryCount = 0;
+    private volatile int largestForceBatch = 0;
+    private volatile long totalForceTime = 0;
+    private volatile long lastRotationFlushTime = 0;
+    private volatile long recoveredEntryCount = 0;
+    private volatile long lastRecoveryTime = 0;
+    // interval between progress messages during recovery
+    private static final long RECOVERY_PROGRESS_INTERVAL = 5000;
+
     private final StringLogger msgLog;
     
     XaLogicalLog( String fileName, XaResourceManager xaRm, XaCommandFactory cf,
@@ -116,6 +141,11 @@ public class XaLogicalLog
         this.xaTf = xaTf;
         this.useMemoryMapped = getMemoryMapped( config );
         log = Logger.getLogger( this.getClass().getName() + "/" + fileName );
+        this.groupCommit = getGroupCommit( config );
+        this.groupCommitMaxWait = getConfigLong( config, 
+            Config.LOGICAL_LOG_GROUP_COMMIT_MAX_WAIT, 0 );
+        this.groupCommitMaxBatch = (int) Math.max( 1, getConfigLong( config, 
+            Config.LOGICAL_LOG_GROUP_COMMIT_MAX_BATCH, 64 ) );
         buffer = ByteBuffer.allocateDirect( 9 + Xid.MAXGTRIDSIZE
             + Xid.MAXBQUALSIZE * 10 );
         String root = (String) config.get( "store_dir" );
@@ -135,6 +165,41 @@ public class XaLogicalLog
         return true;
     }
     
+    private boolean getGroupCommit( Map<Object,Object> config )
+    {
+        if ( config != null )
+        {
+            String value = (String) config.get( Config.LOGICAL_LOG_GROUP_COMMIT );
+            if ( value != null && value.toLowerCase().equals( "true" ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private long getConfigLong( Map<Object,Object> config, String key, 
+        long defaultValue )
+    {
+        if ( config != null && config.containsKey( key ) )
+        {
+            Object value = config.get( key );
+            try
+            {
+                long result = Long.parseLong( (String) value );
+                if ( result >= 0 )
+                {
+                    return result;
+                }
+            }
+            catch ( NumberFormatException e )
+            {
+            }
+            log.warning( "Unable to parse " + key + " " + value );
+        }
+        return defaultValue;
+    }
+    
     synchronized void open() throws IOException
     {
         String activeFileName = fileName + ".active";
@@ -331,10 +396,10 @@ public class XaLogicalLog
     private boolean readTxStartEntry() throws IOException
     {
         // get the global id
-        long position = fileChannel.position();
+        long position = recoveryChannel.position();
         buffer.clear();
         buffer.limit( 1 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             return false;
         }
@@ -343,7 +408,7 @@ public class XaLogicalLog
         // get the branchId id
         buffer.clear();
         buffer.limit( 1 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             return false;
         }
@@ -351,20 +416,20 @@ public class XaLogicalLog
         byte branchIdLength = buffer.get();
         byte globalId[] = new byte[globalIdLength];
         ByteBuffer tmpBuffer = ByteBuffer.wrap( globalId );
-        if ( fileChannel.read( tmpBuffer ) != globalId.length )
+        if ( recoveryChannel.read( tmpBuffer ) != globalId.length )
         {
             return false;
         }
         byte branchId[] = new byte[branchIdLength];
         tmpBuffer = ByteBuffer.wrap( branchId );
-        if ( fileChannel.read( tmpBuffer ) != branchId.length )
+        if ( recoveryChannel.read( tmpBuffer ) != branchId.length )
         {
             return false;
         }
         // get the tx identifier
         buffer.clear();
         buffer.limit( 4 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             return false;
         }
@@ -377,7 +442,7 @@ public class XaLogicalLog
         // get the format id
         buffer.clear();
         buffer.limit( 4 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             return false;
         }
@@ -394,13 +459,22 @@ public class XaLogicalLog
     }
 
     // [TX_PREPARE][identifier]
-    public synchronized void prepare( int identifier ) throws XAException
+    public void prepare( int identifier ) throws XAException
+    {
+        waitForForce( appendPrepare( identifier ) );
+    }
+
+    /**
+     * Appends the prepare entry, returning the ticket to pass to
+     * {@link #waitForForce(long)} before the transaction counts as prepared.
+     */
+    synchronized long appendPrepare( int identifier ) throws XAException
     {
         assert xidIdentMap.get( identifier ) != null;
         try
         {
             writeBuffer.put( TX_PREPARE ).putInt( identifier );
-            writeBuffer.force();
+            return forceOrEnqueue();
         }
         catch ( IOException e )
         {
@@ -414,7 +488,7 @@ public class XaLogicalLog
         // get the tx identifier
         buffer.clear();
         buffer.limit( 4 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             return false;
         }
@@ -436,14 +510,24 @@ public class XaLogicalLog
     }
 
     // [TX_1P_COMMIT][identifier]
-    public synchronized void commitOnePhase( int identifier )
+    public void commitOnePhase( int identifier )
+        throws XAException
+    {
+        waitForForce( appendCommitOnePhase( identifier ) );
+    }
+
+    /**
+     * Appends the one phase commit entry, returning the ticket to pass to
+     * {@link #waitForForce(long)} before the transaction is applied.
+     */
+    synchronized long appendCommitOnePhase( int identifier )
         throws XAException
     {
         assert xidIdentMap.get( identifier ) != null;
         try
         {
             writeBuffer.put( TX_1P_COMMIT ).putInt( identifier );
-            writeBuffer.force();
+            return forceOrEnqueue();
         }
         catch ( IOException e )
         {
@@ -457,7 +541,7 @@ public class XaLogicalLog
         // get the tx identifier
         buffer.clear();
         buffer.limit( 4 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             return false;
         }
@@ -519,7 +603,7 @@ public class XaLogicalLog
         // get the tx identifier
         buffer.clear();
         buffer.limit( 4 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             return false;
         }
@@ -538,13 +622,23 @@ public class XaLogicalLog
     }
 
     // [TX_2P_COMMIT][identifier]
-    public synchronized void commitTwoPhase( int identifier ) throws XAException
+    public void commitTwoPhase( int identifier ) throws XAException
+    {
+        waitForForce( appendCommitTwoPhase( identifier ) );
+    }
+
+    /**
+     * Appends the two phase commit entry, returning the ticket to pass to
+     * {@link #waitForForce(long)} before the transaction is applied.
+     */
+    synchronized long appendCommitTwoPhase( int identifier )
+        throws XAException
     {
         assert xidIdentMap.get( identifier ) != null;
         try
         {
             writeBuffer.put( TX_2P_COMMIT ).putInt( identifier );
-            writeBuffer.force();
+            return forceOrEnqueue();
         }
         catch ( IOException e )
         {
@@ -553,12 +647,194 @@ public class XaLogicalLog
         }
     }
     
+    /**
+     * Called (holding the monitor of this log) after an entry that has to be
+     * durable has been appended. If group commit isn't enabled the log is
+     * forced right away, else the entry is enqueued and a ticket is returned
+     * that has to be passed to {@link #waitForForce(long)} after the
+     * monitor has been released.
+     * 
+     * @return the ticket of the appended entry or <CODE>-1</CODE> if the log
+     * already has been forced
+     */
+    private long forceOrEnqueue() throws IOException
+    {
+        if ( !groupCommit )
+        {
+            timedForce( 1 );
+            return -1;
+        }
+        return ++appendedForceEntries;
+    }
+
+    /**
+     * Waits until the entry with <CODE>ticket</CODE> has been forced to disk.
+     * The first thread that finds no force in progress becomes leader, waits 
+     * at most <CODE>logical_log_group_commit_max_wait</CODE> milliseconds for
+     * more entries to be appended (or until 
+     * <CODE>logical_log_group_commit_max_batch</CODE> entries are pending) 
+     * and then forces the log once for all entries appended so far. The
+     * force is done without holding the monitor of this log (or of the
+     * {@link XaResourceManager}, which only waits after releasing it) so
+     * that other committers can append the entries of the next batch
+     * meanwhile.
+     */
+    void waitForForce( long ticket ) throws XAException
+    {
+        if ( ticket == -1 )
+        {
+            return;
+        }
+        try
+        {
+            waitForGroupForce( ticket );
+        }
+        catch ( IOException e )
+        {
+            throw new XAException( "Logical log unable to force entry ["
+                + ticket + "] " + e );
+        }
+    }
+
+    private void waitForGroupForce( long ticket ) throws IOException
+    {
+        boolean interrupted = false;
+        try
+        {
+            synchronized ( groupCommitLock )
+            {
+                while ( forceInProgress && forcedEntries < ticket )
+                {
+                    if ( ticket - forcedEntries >= groupCommitMaxBatch )
+                    {
+                        // batch is full, wake up leader gathering entries
+                        groupCommitLock.notifyAll();
+                    }
+                    try
+                    {
+                        groupCommitLock.wait();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        interrupted = true;
+                    }
+                }
+                if ( forcedEntries >= ticket )
+                {
+                    return;
+                }
+                forceInProgress = true;
+                long waitUntil = System.currentTimeMillis() + 
+                    groupCommitMaxWait;
+                while ( groupCommitMaxWait > 0 && 
+                    pendingForceEntries() < groupCommitMaxBatch )
+                {
+                    long timeLeft = waitUntil - System.currentTimeMillis();
+                    if ( timeLeft <= 0 )
+                    {
+                        break;
+                    }
+                    try
+                    {
+                        groupCommitLock.wait( timeLeft );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            long forcedUpTo = -1;
+            try
+            {
+                LogBuffer.Force force = null;
+                synchronized ( this )
+                {
+                    forcedUpTo = appendedForceEntries;
+                    if ( writeBuffer != null )
+                    {
+                        force = writeBuffer.writeOut();
+                    }
+                }
+                if ( force != null )
+                {
+                    timedForce( force, (int) ( forcedUpTo - forcedEntries ) );
+                }
+            }
+            finally
+            {
+                synchronized ( groupCommitLock )
+                {
+                    if ( forcedUpTo > forcedEntries )
+                    {
+                        forcedEntries = forcedUpTo;
+                    }
+                    forceInProgress = false;
+                    groupCommitLock.notifyAll();
+                }
+            }
+        }
+        finally
+        {
+            if ( interrupted )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private long pendingForceEntries()
+    {
+        synchronized ( this )
+        {
+            return appendedForceEntries - forcedEntries;
+        }
+    }
+
+    private void timedForce( int entries ) throws IOException
+    {
+        long startTime = System.nanoTime();
+        writeBuffer.force();
+        forced( startTime, entries );
+    }
+
+    private void timedForce( LogBuffer.Force force, int entries ) 
+        throws IOException
+    {
+        long startTime = System.nanoTime();
+        try
+        {
+            force.force();
+        }
+        catch ( ClosedByInterruptException e )
+        {
+            throw e;
+        }
+        catch ( ClosedChannelException e )
+        {
+            // rotated or closed meanwhile, which forces the log before
+            // closing the channel
+        }
+        forced( startTime, entries );
+    }
+
+    private void forced( long startTime, int entries )
+    {
+        totalForceTime += System.nanoTime() - startTime;
+        forceCount++;
+        forcedEntryCount += entries;
+        if ( entries > largestForceBatch )
+        {
+            largestForceBatch = entries;
+        }
+    }
+
     private boolean readTxTwoPhaseCommit() throws IOException
     {
         // get the tx identifier
         buffer.clear();
         buffer.limit( 4 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             return false;
         }
@@ -600,13 +876,13 @@ public class XaLogicalLog
     {
         buffer.clear();
         buffer.limit( 4 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             return false;
         }
         buffer.flip();
         int identifier = buffer.getInt();
-        XaCommand command = cf.readCommand( fileChannel, buffer );
+        XaCommand command = cf.readCommand( recoveryChannel, buffer );
         if ( command == null )
         {
             // readCommand returns null if full command couldn't be loaded
@@ -772,17 +1048,42 @@ public class XaLogicalLog
         log.fine( "Logical log version: " + logVersion );
         msgLog.logMessage( "[" + logFileName + "] logVersion=" + logVersion  );
         long logEntriesFound = 0;
-        long lastEntryPos = fileChannel.position();
+        recoveryChannel = new ReadAheadChannel( fileChannel );
+        long lastEntryPos = recoveryChannel.position();
+        long logSize = fileChannel.size();
+        long recoveryStart = System.currentTimeMillis();
+        long lastProgress = recoveryStart;
         while ( readEntry() )
         {
             logEntriesFound++;
-            lastEntryPos = fileChannel.position();
+            lastEntryPos = recoveryChannel.position();
+            if ( ( logEntriesFound & 0x3FF ) == 0 )
+            {
+                long now = System.currentTimeMillis();
+                if ( now - lastProgress >= RECOVERY_PROGRESS_INTERVAL )
+                {
+                    lastProgress = now;
+                    String progress = "[" + logFileName + "] recovery at " + 
+                        ( lastEntryPos * 100 / Math.max( 1, logSize ) ) + 
+                        "%, " + logEntriesFound + " entries (" + 
+                        ( logEntriesFound * 1000 / ( now - recoveryStart ) ) +
+                        " entries/s)";
+                    log.info( progress );
+                    msgLog.logMessage( progress );
+                }
+            }
         }
+        recoveryChannel = null;
         // make sure we overwrite any broken records
         fileChannel.position( lastEntryPos );
+        long recoveryTime = System.currentTimeMillis() - recoveryStart;
+        recoveredEntryCount += logEntriesFound;
+        lastRecoveryTime = recoveryTime;
 
         msgLog.logMessage( "[" + logFileName + "] entries found=" + logEntriesFound + 
-                " lastEntryPos=" + lastEntryPos  );
+                " lastEntryPos=" + lastEntryPos + " time=" + recoveryTime + 
+                "ms (" + ( logEntriesFound * 1000 / Math.max( 1, recoveryTime ) ) + 
+                " entries/s)" );
         
         // zero out the slow way since windows don't support truncate very well
         buffer.clear();
@@ -836,7 +1137,7 @@ public class XaLogicalLog
     {
         buffer.clear();
         buffer.limit( 1 );
-        if ( fileChannel.read( buffer ) != buffer.limit() )
+        if ( recoveryChannel.read( buffer ) != buffer.limit() )
         {
             // ok no more entries we're done
             return false;
@@ -858,7 +1159,7 @@ public class XaLogicalLog
             case DONE:
                 return readDoneEntry();
             case EMPTY:
-                fileChannel.position( fileChannel.position() - 1 );
+                // recovery continues writing from the start of this entry
                 return false;
             default:
                 throw new IOException( "Internal recovery failed, "
@@ -1218,8 +1519,9 @@ public class XaLogicalLog
         msgLog.logMessage( "Applying log version=" + logVersion );
         log.fine( "Logical log version: " + logVersion );
         long logEntriesFound = 0;
-        LogApplier logApplier = new LogApplier( byteChannel, buffer, xaTf, xaRm,
-            cf, xidIdentMap, recoveredTxMap );
+        LogApplier logApplier = new LogApplier( 
+            new ReadAheadChannel( byteChannel ), buffer, xaTf, xaRm, cf, 
+            xidIdentMap, recoveredTxMap );
         scanIsComplete = false;
         while ( logApplier.readAndApplyEntry() )
         {
@@ -1238,7 +1540,9 @@ public class XaLogicalLog
     
     public synchronized void rotate() throws IOException
     {
+        long flushStart = System.currentTimeMillis();
         xaTf.flushAll();
+        lastRotationFlushTime = System.currentTimeMillis() - flushStart;
         String newLogFile = fileName + ".2";
         String currentLogFile = fileName + ".1";
         char newActiveLog = LOG2;
@@ -1614,6 +1918,70 @@ public class XaLogicalLog
         return this.rotateAtSize;
     }
     
+    public boolean isGroupCommitEnabled()
+    {
+        return groupCommit;
+    }
+    
+    /**
+     * @return number of times this log has been forced because of prepare or
+     * commit entries
+     */
+    public long getForceCount()
+    {
+        return forceCount;
+    }
+    
+    /**
+     * @return number of prepare and commit entries made durable by the forces
+     * counted in {@link #getForceCount()}
+     */
+    public long getForcedEntryCount()
+    {
+        return forcedEntryCount;
+    }
+    
+    public int getLargestForceBatch()
+    {
+        return largestForceBatch;
+    }
+    
+    /**
+     * @return total time in nanoseconds spent forcing this log
+     */
+    public long getTotalForceTime()
+    {
+        return totalForceTime;
+    }
+    
+    /**
+     * @return time in milliseconds it took to flush the data source at the
+     * last log rotation
+     */
+    public long getLastRotationFlushTime()
+    {
+        return lastRotationFlushTime;
+    }
+    
+    /**
+     * @return number of log entries read when recovering this log after
+     * non clean shutdowns
+     */
+    public long getRecoveredEntryCount()
+    {
+        return recoveredEntryCount;
+    }
+    
+    /**
+     * @return time in milliseconds it took to read and replay the entries of
+     * this log at the last recovery, replay done in other threads may
+     * finish later
+     */
+    public long getLastRecoveryTime()
+    {
+        return lastRecoveryTime;
+    }
+    
     private static class StartEntry
     {
         private final Xid xid;
@@ -54,6 +54,10 @@ public class XaResourceManager
     private final XaTransactionFactory tf;
     private final String name;
     private StringLogger msgLog;
+    // with group commit, commits are applied in the order they were
+    // appended to the logical log
+    private long appendedCommits = 0;
+    private long appliedCommits = 0;
 
     XaResourceManager( XaTransactionFactory tf, String name )
     {
@@ -274,33 +278,40 @@ public class XaResourceManager
         }
     }
 
-    synchronized int prepare( Xid xid ) throws XAException
+    int prepare( Xid xid ) throws XAException
     {
-        XidStatus status = xidMap.get( xid );
-        if ( status == null )
+        TransactionStatus txStatus;
+        long ticket;
+        synchronized ( this )
         {
-            throw new XAException( "Unknown xid[" + xid + "]" );
-        }
-        TransactionStatus txStatus = status.getTransactionStatus();
-        XaTransaction xaTransaction = txStatus.getTransaction();
-        if ( xaTransaction.isReadOnly() )
-        {
-            log.done( xaTransaction.getIdentifier() );
-            xidMap.remove( xid );
-            if ( xaTransaction.isRecovered() )
+            XidStatus status = xidMap.get( xid );
+            if ( status == null )
             {
-                recoveredTxCount--;
-                checkIfRecoveryComplete();
+                throw new XAException( "Unknown xid[" + xid + "]" );
+            }
+            txStatus = status.getTransactionStatus();
+            XaTransaction xaTransaction = txStatus.getTransaction();
+            if ( xaTransaction.isReadOnly() )
+            {
+                log.done( xaTransaction.getIdentifier() );
+                xidMap.remove( xid );
+                if ( xaTransaction.isRecovered() )
+                {
+                    recoveredTxCount--;
+                    checkIfRecoveryComplete();
+                }
+                return XAResource.XA_RDONLY;
             }
-            return XAResource.XA_RDONLY;
+            xaTransaction.prepare();
+            ticket = log.appendPrepare( xaTransaction.getIdentifier() );
         }
-        else
+        // see commit
+        log.waitForForce( ticket );
+        synchronized ( this )
         {
-            xaTransaction.prepare();
-            log.prepare( xaTransaction.getIdentifier() );
             txStatus.markAsPrepared();
-            return XAResource.XA_OK;
         }
+        return XAResource.XA_OK;
     }
 
     // called from XaResource internal recovery
@@ -350,6 +361,7 @@ public class XaResourceManager
         txStatus.markCommitStarted();
         XaTransaction xaTransaction = txStatus.getTransaction();
         xaTransaction.commit();
+        xaTransaction.completeCommit();
     }
     
     synchronized void injectTwoPhaseCommit( Xid xid ) throws XAException
@@ -365,9 +377,68 @@ public class XaResourceManager
         txStatus.markCommitStarted();
         XaTransaction xaTransaction = txStatus.getTransaction();
         xaTransaction.commit();
+        xaTransaction.completeCommit();
     }
     
-    synchronized XaTransaction commit( Xid xid, boolean onePhase )
+    XaTransaction commit( Xid xid, boolean onePhase )
+        throws XAException
+    {
+        XaTransaction xaTransaction;
+        if ( log.isGroupCommitEnabled() )
+        {
+            xaTransaction = groupCommit( xid, onePhase );
+        }
+        else
+        {
+            xaTransaction = appendAndApplyCommit( xid, onePhase );
+        }
+        // The commit is completed outside of the monitor, before marking
+        // the transaction as done
+        if ( !xaTransaction.isReadOnly() )
+        {
+            xaTransaction.completeCommit();
+        }
+        return doneCommit( xid );
+    }
+
+    private synchronized XaTransaction appendAndApplyCommit( Xid xid, 
+        boolean onePhase ) throws XAException
+    {
+        log.waitForForce( appendCommit( xid, onePhase ) );
+        return applyCommit( xid );
+    }
+
+    private XaTransaction groupCommit( Xid xid, boolean onePhase )
+        throws XAException
+    {
+        // The commit entry is appended holding the monitor but the force of
+        // the log is waited for after releasing it, so that concurrently
+        // committing transactions can share a force. They are then applied
+        // in the order they were appended, the order recovery applies them.
+        long ticket;
+        long sequence;
+        synchronized ( this )
+        {
+            ticket = appendCommit( xid, onePhase );
+            sequence = appendedCommits++;
+        }
+        boolean forced = false;
+        try
+        {
+            log.waitForForce( ticket );
+            forced = true;
+        }
+        finally
+        {
+            if ( !forced )
+            {
+                skipApply( sequence );
+            }
+        }
+        return applyCommitInOrder( xid, sequence );
+    }
+
+    private synchronized long appendCommit( Xid xid, boolean onePhase )
         throws XAException
     {
         XidStatus status = xidMap.get( xid );
@@ -377,6 +448,7 @@ public class XaResourceManager
         }
         TransactionStatus txStatus = status.getTransactionStatus();
         XaTransaction xaTransaction = txStatus.getTransaction();
+        long ticket = -1;
         if ( onePhase )
         {
             if ( !xaTransaction.isReadOnly() )
@@ -384,7 +456,8 @@ public class XaResourceManager
                 if ( !xaTransaction.isRecovered() )
                 {
                     xaTransaction.prepare();
-                    log.commitOnePhase( xaTransaction.getIdentifier() );
+                    ticket = log.appendCommitOnePhase( 
+                        xaTransaction.getIdentifier() );
                 }
             }
             txStatus.markAsPrepared();
@@ -400,12 +473,84 @@ public class XaResourceManager
             {
                 if ( !onePhase )
                 {
-                    log.commitTwoPhase( xaTransaction.getIdentifier() );
+                    ticket = log.appendCommitTwoPhase( 
+                        xaTransaction.getIdentifier() );
                 }
             }
             txStatus.markCommitStarted();
+        }
+        return ticket;
+    }
+
+    private synchronized XaTransaction applyCommit( Xid xid )
+        throws XAException
+    {
+        XidStatus status = xidMap.get( xid );
+        if ( status == null )
+        {
+            throw new XAException( "Unknown xid[" + xid + "]" );
+        }
+        TransactionStatus txStatus = status.getTransactionStatus();
+        XaTransaction xaTransaction = txStatus.getTransaction();
+        if ( !xaTransaction.isReadOnly() )
+        {
             xaTransaction.commit();
         }
+        return xaTransaction;
+    }
+
+    private synchronized XaTransaction applyCommitInOrder( Xid xid, 
+        long sequence ) throws XAException
+    {
+        waitForApplyTurn( sequence );
+        try
+        {
+            return applyCommit( xid );
+        }
+        finally
+        {
+            appliedCommits++;
+            notifyAll();
+        }
+    }
+
+    private synchronized void skipApply( long sequence )
+    {
+        waitForApplyTurn( sequence );
+        appliedCommits++;
+        notifyAll();
+    }
+
+    private void waitForApplyTurn( long sequence )
+    {
+        boolean interrupted = false;
+        while ( appliedCommits != sequence )
+        {
+            try
+            {
+                wait();
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted = true;
+            }
+        }
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized XaTransaction doneCommit( Xid xid )
+        throws XAException
+    {
+        XidStatus status = xidMap.get( xid );
+        if ( status == null )
+        {
+            throw new XAException( "Unknown xid[" + xid + "]" );
+        }
+        XaTransaction xaTransaction = 
+            status.getTransactionStatus().getTransaction();
         if ( !xaTransaction.isRecovered() )
         {
             log.done( xaTransaction.getIdentifier() );
@@ -555,6 +700,12 @@ public class XaResourceManager
             }
         } );
         txOrderMap.clear(); // = null;
+        if ( !xids.isEmpty() )
+        {
+            // recovered transactions may be applied asynchronously, their
+            // changes must be in the store before they are marked as done
+            tf.flushAll();
+        }
         Logger logger = Logger.getLogger( tf.getClass().getName() );
         while ( !xids.isEmpty() )
         {
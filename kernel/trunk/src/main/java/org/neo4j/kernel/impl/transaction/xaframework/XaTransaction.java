@@ -163,6 +163,20 @@ public abstract class XaTransaction
      */
     protected abstract void doCommit() throws XAException;
 
+    /**
+     * Called after {@link #doCommit} once the resource manager no longer
+     * holds its monitor, but before the transaction is marked as done in the
+     * logical log. Work that waits for something shared by concurrently
+     * committing transactions, like a group commit of an external store,
+     * should be done here. Does nothing by default.
+     * 
+     * @throws XAException
+     *             If unable to complete the commit
+     */
+    protected void doCompleteCommit() throws XAException
+    {
+    }
+
     private final int identifier;
     private final XaLogicalLog log;
     private boolean isRecovered = false;
@@ -321,4 +335,16 @@ public abstract class XaTransaction
             log.unregisterTxIdentifier();
         }
     }
+
+    /**
+     * Called by the resource manager after {@link #commit()} without holding
+     * its monitor. Calls {@link #doCompleteCommit()}.
+     * 
+     * @throws XAException
+     *             If unable to complete the commit
+     */
+    final void completeCommit() throws XAException
+    {
+        doCompleteCommit();
+    }
 }
\ No newline at end of file
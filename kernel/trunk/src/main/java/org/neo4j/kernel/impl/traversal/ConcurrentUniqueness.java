@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.traversal;
+
+import org.neo4j.graphdb.traversal.TraversalBranch;
+import org.neo4j.graphdb.traversal.UniquenessFactory;
+import org.neo4j.graphdb.traversal.UniquenessFilter;
+import org.neo4j.kernel.Uniqueness;
+import org.neo4j.kernel.impl.util.LongHashSet;
+
+/**
+ * Creates uniqueness filters that can be used by several threads expanding
+ * branches of the same traversal at once.
+ */
+final class ConcurrentUniqueness
+{
+    private ConcurrentUniqueness()
+    {
+    }
+
+    static UniquenessFilter create( UniquenessFactory uniqueness, 
+        Object parameter )
+    {
+        if ( uniqueness == Uniqueness.NODE_GLOBAL )
+        {
+            return new StripedGloballyUnique( true );
+        }
+        if ( uniqueness == Uniqueness.RELATIONSHIP_GLOBAL )
+        {
+            return new StripedGloballyUnique( false );
+        }
+        UniquenessFilter filter = uniqueness.create( parameter );
+        if ( uniqueness == Uniqueness.NODE_PATH || 
+            uniqueness == Uniqueness.RELATIONSHIP_PATH || 
+            uniqueness == Uniqueness.NONE )
+        {
+            // only look at the branch and its parents
+            return filter;
+        }
+        return new SynchronizedFilter( filter );
+    }
+
+    /**
+     * Visited ids spread over a number of primitive sets, each guarded by
+     * its own lock, so threads checking different ids rarely wait for each
+     * other.
+     */
+    private static class StripedGloballyUnique implements UniquenessFilter
+    {
+        private static final int STRIPE_BITS = 6;
+
+        private final boolean nodes;
+        private final LongHashSet[] stripes = 
+            new LongHashSet[1 << STRIPE_BITS];
+
+        StripedGloballyUnique( boolean nodes )
+        {
+            this.nodes = nodes;
+            for ( int i = 0; i < stripes.length; i++ )
+            {
+                stripes[i] = new LongHashSet();
+            }
+        }
+
+        public boolean checkFirst( TraversalBranch branch )
+        {
+            return nodes ? check( branch, true ) : true;
+        }
+
+        public boolean check( TraversalBranch branch, boolean remember )
+        {
+            long id = nodes ? branch.node().getId() : 
+                branch.relationship().getId();
+            int h = (int) ( id ^ ( id >>> 32 ) ) * 0x9E3779B9;
+            LongHashSet stripe = stripes[h >>> ( 32 - STRIPE_BITS )];
+            synchronized ( stripe )
+            {
+                return remember ? stripe.add( id ) : !stripe.contains( id );
+            }
+        }
+    }
+
+    private static class SynchronizedFilter implements UniquenessFilter
+    {
+        private final UniquenessFilter filter;
+
+        SynchronizedFilter( UniquenessFilter filter )
+        {
+            this.filter = filter;
+        }
+
+        public synchronized boolean checkFirst( TraversalBranch branch )
+        {
+            return filter.checkFirst( branch );
+        }
+
+        public synchronized boolean check( TraversalBranch branch, 
+            boolean remember )
+        {
+            return filter.check( branch, remember );
+        }
+    }
+}
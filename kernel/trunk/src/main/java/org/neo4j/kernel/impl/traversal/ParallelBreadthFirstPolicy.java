@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.traversal;
+
+import java.util.concurrent.ExecutorService;
+
+import org.neo4j.graphdb.traversal.BranchOrderingPolicy;
+import org.neo4j.graphdb.traversal.BranchSelector;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+
+/**
+ * Breadth first ordering where all branches of a depth are expanded in
+ * parallel by tasks on an {@link ExecutorService} before any branch of
+ * the next depth is returned. Traversals using it get a uniqueness filter
+ * that is safe to use from several threads, see 
+ * {@link org.neo4j.kernel.Traversal#parallelBreadthFirst(ExecutorService)}.
+ */
+public class ParallelBreadthFirstPolicy implements BranchOrderingPolicy
+{
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    /**
+     * @param executor runs the expansion tasks
+     * @param parallelism number of tasks to split the expansion of a depth
+     * in, at most
+     */
+    public ParallelBreadthFirstPolicy( ExecutorService executor, 
+        int parallelism )
+    {
+        if ( parallelism < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal parallelism " + 
+                parallelism );
+        }
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    public BranchSelector create( TraversalBranch startBranch )
+    {
+        return new ParallelBreadthFirstSelector( startBranch, executor, 
+            parallelism );
+    }
+}
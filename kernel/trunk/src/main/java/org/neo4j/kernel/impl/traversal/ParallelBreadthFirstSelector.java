@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.traversal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.neo4j.graphdb.traversal.BranchSelector;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+
+/**
+ * Returns the branches of one depth, in the order they were expanded from
+ * the previous depth, and then expands all of them to get the next depth.
+ * Depths with enough branches are expanded by tasks on an executor, each
+ * expanding a consecutive part of the depth, and the parts are put together
+ * in order. Small depths are expanded by the calling thread.
+ */
+class ParallelBreadthFirstSelector implements BranchSelector
+{
+    // fewer branches than this per task are not worth handing off
+    private static final int MIN_BRANCHES_PER_TASK = 32;
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private List<TraversalBranch> currentDepth;
+    private int index = 0;
+
+    ParallelBreadthFirstSelector( TraversalBranch startBranch, 
+        ExecutorService executor, int parallelism )
+    {
+        this.executor = executor;
+        this.parallelism = parallelism;
+        TraversalBranch first = startBranch.next();
+        this.currentDepth = first != null ? Collections.singletonList( first ) : 
+            Collections.<TraversalBranch>emptyList();
+    }
+
+    public TraversalBranch next()
+    {
+        while ( index >= currentDepth.size() )
+        {
+            if ( currentDepth.isEmpty() )
+            {
+                return null;
+            }
+            currentDepth = expand( currentDepth );
+            index = 0;
+        }
+        return currentDepth.get( index++ );
+    }
+
+    private List<TraversalBranch> expand( final List<TraversalBranch> branches )
+    {
+        int tasks = Math.min( parallelism, 
+            branches.size() / MIN_BRANCHES_PER_TASK );
+        if ( tasks < 2 )
+        {
+            return expand( branches, 0, branches.size() );
+        }
+        List<Future<List<TraversalBranch>>> parts = 
+            new ArrayList<Future<List<TraversalBranch>>>( tasks );
+        for ( int i = 0; i < tasks; i++ )
+        {
+            final int from = (int) ( (long) branches.size() * i / tasks );
+            final int to = (int) ( (long) branches.size() * ( i + 1 ) / tasks );
+            parts.add( executor.submit( new Callable<List<TraversalBranch>>()
+            {
+                public List<TraversalBranch> call()
+                {
+                    return expand( branches, from, to );
+                }
+            } ) );
+        }
+        List<TraversalBranch> result = new ArrayList<TraversalBranch>();
+        try
+        {
+            for ( Future<List<TraversalBranch>> part : parts )
+            {
+                result.addAll( part.get() );
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            cancel( parts );
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while expanding " + 
+                "branches", e );
+        }
+        catch ( ExecutionException e )
+        {
+            cancel( parts );
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( "Unable to expand branches", cause );
+        }
+        return result;
+    }
+
+    private static List<TraversalBranch> expand( 
+        List<TraversalBranch> branches, int from, int to )
+    {
+        List<TraversalBranch> result = new ArrayList<TraversalBranch>();
+        for ( int i = from; i < to; i++ )
+        {
+            TraversalBranch branch = branches.get( i );
+            TraversalBranch next;
+            while ( ( next = branch.next() ) != null )
+            {
+                result.add( next );
+            }
+        }
+        return result;
+    }
+
+    private static void cancel( List<Future<List<TraversalBranch>>> parts )
+    {
+        for ( Future<List<TraversalBranch>> part : parts )
+        {
+            part.cancel( false );
+        }
+    }
+}
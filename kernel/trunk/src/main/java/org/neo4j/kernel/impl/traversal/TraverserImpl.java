@@ -90,7 +90,10 @@ class TraverserImpl implements Traverser
         TraverserIterator()
         {
             this.description = TraverserImpl.this.description;
-            this.uniquness = description.uniqueness.create( description.uniquenessParameter );
+            this.uniquness = description.branchSelector instanceof 
+                ParallelBreadthFirstPolicy ? ConcurrentUniqueness.create( 
+                    description.uniqueness, description.uniquenessParameter ) : 
+                description.uniqueness.create( description.uniquenessParameter );
             this.startNode = TraverserImpl.this.startNode;
             this.sourceSelector = description.branchSelector.create(
                     new StartNodeTraversalBranch( this, startNode,
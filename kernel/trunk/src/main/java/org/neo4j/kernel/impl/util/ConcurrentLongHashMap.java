@@ -0,0 +1,311 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent map with primitive long keys. Keys are never boxed, so a
+ * lookup costs no allocation.
+ * <p>
+ * The map is split into segments the same way as
+ * {@link java.util.concurrent.ConcurrentHashMap}. A <CODE>get</CODE> takes
+ * no lock, it reads the volatile bucket table of the segment and walks an
+ * immutable chain of entries. <CODE>put</CODE> and <CODE>remove</CODE> lock
+ * the segment of the key; a removal copies the entries in front of the
+ * removed one so a concurrent reader always sees a complete chain.
+ * <p>
+ * <CODE>null</CODE> values are not allowed.
+ */
+public class ConcurrentLongHashMap<V>
+{
+    private static final int DEFAULT_SEGMENT_COUNT = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 8;
+
+    private final List<Segment<V>> segments;
+    private final int segmentMask;
+
+    public ConcurrentLongHashMap()
+    {
+        this( DEFAULT_SEGMENT_COUNT * MIN_SEGMENT_CAPACITY, 
+            DEFAULT_SEGMENT_COUNT );
+    }
+
+    /**
+     * @param expectedSize number of entries the map should hold without
+     * growing
+     * @param segmentCount number of independently locked segments, rounded
+     * up to a power of two
+     */
+    public ConcurrentLongHashMap( int expectedSize, int segmentCount )
+    {
+        if ( expectedSize < 0 || segmentCount < 1 )
+        {
+            throw new IllegalArgumentException( "expectedSize=" + 
+                expectedSize + ", segmentCount=" + segmentCount );
+        }
+        int count = 1;
+        while ( count < segmentCount )
+        {
+            count <<= 1;
+        }
+        int capacity = MIN_SEGMENT_CAPACITY;
+        while ( capacity * 3 / 4 < expectedSize / count )
+        {
+            capacity <<= 1;
+        }
+        this.segments = new ArrayList<Segment<V>>( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            segments.add( new Segment<V>( capacity ) );
+        }
+        this.segmentMask = count - 1;
+    }
+
+    private static int hash( long key )
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) ( h ^ ( h >>> 32 ) );
+    }
+
+    private Segment<V> segmentFor( int hash )
+    {
+        // the low bits pick the bucket, spread the high bits over segments
+        return segments.get( ( hash >>> 24 ) & segmentMask );
+    }
+
+    public V get( long key )
+    {
+        int hash = hash( key );
+        return segmentFor( hash ).get( key, hash );
+    }
+
+    public boolean containsKey( long key )
+    {
+        return get( key ) != null;
+    }
+
+    /**
+     * @return the previous value for <CODE>key</CODE> or <CODE>null</CODE>
+     */
+    public V put( long key, V value )
+    {
+        if ( value == null )
+        {
+            throw new IllegalArgumentException( "Null value for " + key );
+        }
+        int hash = hash( key );
+        return segmentFor( hash ).put( key, hash, value );
+    }
+
+    /**
+     * @return the removed value or <CODE>null</CODE> if there was no value
+     * for <CODE>key</CODE>
+     */
+    public V remove( long key )
+    {
+        int hash = hash( key );
+        return segmentFor( hash ).remove( key, hash, null );
+    }
+
+    /**
+     * Removes the entry for <CODE>key</CODE> only if it currently maps to
+     * <CODE>value</CODE> (compared by identity).
+     * 
+     * @return <CODE>true</CODE> if the entry was removed
+     */
+    public boolean remove( long key, Object value )
+    {
+        if ( value == null )
+        {
+            return false;
+        }
+        int hash = hash( key );
+        return segmentFor( hash ).remove( key, hash, value ) != null;
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for ( Segment<V> segment : segments )
+        {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    public void clear()
+    {
+        for ( Segment<V> segment : segments )
+        {
+            segment.clear();
+        }
+    }
+
+    private static final class Entry<V>
+    {
+        final long key;
+        final int hash;
+        volatile V value;
+        final Entry<V> next;
+
+        Entry( long key, int hash, V value, Entry<V> next )
+        {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private static final class Segment<V>
+    {
+        private volatile AtomicReferenceArray<Entry<V>> table;
+        // written last by every modification, read first by get
+        private volatile int count;
+        private int threshold;
+
+        Segment( int capacity )
+        {
+            setTable( new AtomicReferenceArray<Entry<V>>( capacity ) );
+        }
+
+        private void setTable( AtomicReferenceArray<Entry<V>> newTable )
+        {
+            threshold = newTable.length() * 3 / 4;
+            table = newTable;
+        }
+
+        V get( long key, int hash )
+        {
+            if ( count == 0 )
+            {
+                return null;
+            }
+            AtomicReferenceArray<Entry<V>> tab = table;
+            Entry<V> entry = tab.get( hash & ( tab.length() - 1 ) );
+            while ( entry != null )
+            {
+                if ( entry.key == key )
+                {
+                    return entry.value;
+                }
+                entry = entry.next;
+            }
+            return null;
+        }
+
+        synchronized V put( long key, int hash, V value )
+        {
+            int c = count;
+            if ( c >= threshold )
+            {
+                rehash();
+            }
+            AtomicReferenceArray<Entry<V>> tab = table;
+            int index = hash & ( tab.length() - 1 );
+            Entry<V> first = tab.get( index );
+            for ( Entry<V> entry = first; entry != null; entry = entry.next )
+            {
+                if ( entry.key == key )
+                {
+                    V old = entry.value;
+                    entry.value = value;
+                    return old;
+                }
+            }
+            tab.set( index, new Entry<V>( key, hash, value, first ) );
+            count = c + 1;
+            return null;
+        }
+
+        synchronized V remove( long key, int hash, Object expected )
+        {
+            AtomicReferenceArray<Entry<V>> tab = table;
+            int index = hash & ( tab.length() - 1 );
+            Entry<V> first = tab.get( index );
+            Entry<V> entry = first;
+            while ( entry != null && entry.key != key )
+            {
+                entry = entry.next;
+            }
+            if ( entry == null )
+            {
+                return null;
+            }
+            V old = entry.value;
+            if ( expected != null && expected != old )
+            {
+                return null;
+            }
+            Entry<V> newFirst = entry.next;
+            for ( Entry<V> p = first; p != entry; p = p.next )
+            {
+                newFirst = new Entry<V>( p.key, p.hash, p.value, newFirst );
+            }
+            tab.set( index, newFirst );
+            count = count - 1;
+            return old;
+        }
+
+        synchronized void clear()
+        {
+            if ( count != 0 )
+            {
+                setTable( new AtomicReferenceArray<Entry<V>>( 
+                    table.length() ) );
+                count = 0;
+            }
+        }
+
+        // must hold segment lock, readers keep walking the old table
+        private void rehash()
+        {
+            AtomicReferenceArray<Entry<V>> oldTable = table;
+            int capacity = oldTable.length() << 1;
+            if ( capacity <= 0 )
+            {
+                return;
+            }
+            AtomicReferenceArray<Entry<V>> newTable = 
+                new AtomicReferenceArray<Entry<V>>( capacity );
+            int mask = capacity - 1;
+            for ( int i = 0; i < oldTable.length(); i++ )
+            {
+                for ( Entry<V> entry = oldTable.get( i ); entry != null; 
+                    entry = entry.next )
+                {
+                    int index = entry.hash & mask;
+                    newTable.set( index, new Entry<V>( entry.key, entry.hash,
+                        entry.value, newTable.get( index ) ) );
+                }
+            }
+            setTable( newTable );
+        }
+    }
+}
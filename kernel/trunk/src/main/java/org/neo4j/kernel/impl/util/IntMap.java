@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+/**
+ * Map with primitive int keys. Up to a threshold entries are kept in two
+ * packed arrays that are scanned linearly (like {@link ArrayMap}), above it
+ * the map switches to an open addressing hash table with linear probing.
+ * Keys are never boxed and no entry objects are created.
+ * <p>
+ * Like {@link ArrayMap} this map is not synchronized for writers, but a
+ * reader running concurrently with a single writer will never see a
+ * half built table since every resize publishes a new one.
+ * <p>
+ * <code>null</code> values are not allowed.
+ */
+public class IntMap<V>
+{
+    private static final int DEFAULT_THRESHOLD = 5;
+
+    private final int toHashThreshold;
+    private volatile Table table;
+
+    public IntMap()
+    {
+        this( DEFAULT_THRESHOLD );
+    }
+
+    public IntMap( int hashThreshold )
+    {
+        if ( hashThreshold < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal threshold " + 
+                hashThreshold );
+        }
+        this.toHashThreshold = hashThreshold;
+        this.table = new Table( hashThreshold, false );
+    }
+
+    private static final class Table
+    {
+        final int[] keys;
+        final Object[] values;
+        final boolean hashed;
+        volatile int size;
+
+        Table( int capacity, boolean hashed )
+        {
+            this.keys = new int[capacity];
+            this.values = new Object[capacity];
+            this.hashed = hashed;
+        }
+    }
+
+    private static int hash( int key, int mask )
+    {
+        int h = key * 0x9E3779B9;
+        return ( h ^ ( h >>> 16 ) ) & mask;
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public V get( int key )
+    {
+        Table t = table;
+        if ( !t.hashed )
+        {
+            int count = t.size;
+            for ( int i = 0; i < count; i++ )
+            {
+                if ( t.keys[i] == key )
+                {
+                    return (V) t.values[i];
+                }
+            }
+            return null;
+        }
+        int mask = t.keys.length - 1;
+        int i = hash( key, mask );
+        Object value;
+        while ( ( value = t.values[i] ) != null )
+        {
+            if ( t.keys[i] == key )
+            {
+                return (V) value;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        return null;
+    }
+
+    public void put( int key, V value )
+    {
+        if ( value == null )
+        {
+            throw new IllegalArgumentException( "Null value for key " + key );
+        }
+        Table t = table;
+        if ( !t.hashed )
+        {
+            int count = t.size;
+            for ( int i = 0; i < count; i++ )
+            {
+                if ( t.keys[i] == key )
+                {
+                    t.values[i] = value;
+                    return;
+                }
+            }
+            if ( count < t.keys.length )
+            {
+                t.keys[count] = key;
+                t.values[count] = value;
+                t.size = count + 1;
+                return;
+            }
+            t = rehash( t, tableSizeFor( count + 1 ) );
+        }
+        else if ( ( t.size + 1 ) * 3 > t.keys.length * 2 )
+        {
+            t = rehash( t, t.keys.length * 2 );
+        }
+        if ( insert( t, key, value ) )
+        {
+            t.size++;
+        }
+    }
+
+    public V remove( int key )
+    {
+        Table t = table;
+        if ( !t.hashed )
+        {
+            int count = t.size;
+            for ( int i = 0; i < count; i++ )
+            {
+                if ( t.keys[i] == key )
+                {
+                    @SuppressWarnings( "unchecked" )
+                    V removed = (V) t.values[i];
+                    System.arraycopy( t.keys, i + 1, t.keys, i, count - i - 1 );
+                    System.arraycopy( t.values, i + 1, t.values, i, 
+                        count - i - 1 );
+                    t.values[count - 1] = null;
+                    t.size = count - 1;
+                    return removed;
+                }
+            }
+            return null;
+        }
+        int mask = t.keys.length - 1;
+        int i = hash( key, mask );
+        while ( t.values[i] != null )
+        {
+            if ( t.keys[i] == key )
+            {
+                @SuppressWarnings( "unchecked" )
+                V removed = (V) t.values[i];
+                deleteSlot( t, i );
+                t.size--;
+                if ( t.size < toHashThreshold / 2 )
+                {
+                    shrinkToArray( t );
+                }
+                return removed;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a copy of the keys currently in this map.
+     */
+    public int[] keys()
+    {
+        Table t = table;
+        int count = t.size;
+        if ( !t.hashed )
+        {
+            int[] result = new int[count];
+            System.arraycopy( t.keys, 0, result, 0, count );
+            return result;
+        }
+        int[] result = new int[count];
+        int index = 0;
+        for ( int i = 0; i < t.keys.length && index < count; i++ )
+        {
+            if ( t.values[i] != null )
+            {
+                result[index++] = t.keys[i];
+            }
+        }
+        if ( index < count )
+        {
+            int[] shorter = new int[index];
+            System.arraycopy( result, 0, shorter, 0, index );
+            return shorter;
+        }
+        return result;
+    }
+
+    public int size()
+    {
+        return table.size;
+    }
+
+    public void clear()
+    {
+        table = new Table( toHashThreshold, false );
+    }
+
+    boolean isHashed()
+    {
+        return table.hashed;
+    }
+
+    private static int tableSizeFor( int entries )
+    {
+        int capacity = 8;
+        while ( capacity * 2 < entries * 3 )
+        {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private Table rehash( Table old, int capacity )
+    {
+        Table t = new Table( capacity, true );
+        int count = 0;
+        for ( int i = 0; i < old.keys.length; i++ )
+        {
+            Object value = old.values[i];
+            if ( value != null )
+            {
+                insert( t, old.keys[i], value );
+                count++;
+            }
+        }
+        t.size = count;
+        table = t;
+        return t;
+    }
+
+    private void shrinkToArray( Table old )
+    {
+        Table t = new Table( toHashThreshold, false );
+        int count = 0;
+        for ( int i = 0; i < old.keys.length; i++ )
+        {
+            Object value = old.values[i];
+            if ( value != null )
+            {
+                t.keys[count] = old.keys[i];
+                t.values[count++] = value;
+            }
+        }
+        t.size = count;
+        table = t;
+    }
+
+    /**
+     * Returns <code>true</code> if the key was added, <code>false</code> if
+     * the value of an existing key was replaced.
+     */
+    private static boolean insert( Table t, int key, Object value )
+    {
+        int mask = t.keys.length - 1;
+        int i = hash( key, mask );
+        while ( t.values[i] != null )
+        {
+            if ( t.keys[i] == key )
+            {
+                t.values[i] = value;
+                return false;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        t.keys[i] = key;
+        t.values[i] = value;
+        return true;
+    }
+
+    private static void deleteSlot( Table t, int slot )
+    {
+        // backward shift deletion, keeps probe sequences intact without
+        // tombstones
+        int mask = t.keys.length - 1;
+        int hole = slot;
+        int i = ( slot + 1 ) & mask;
+        while ( t.values[i] != null )
+        {
+            int home = hash( t.keys[i], mask );
+            if ( ( ( i - home ) & mask ) >= ( ( i - hole ) & mask ) )
+            {
+                t.keys[hole] = t.keys[i];
+                t.values[hole] = t.values[i];
+                hole = i;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        t.values[hole] = null;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder result = new StringBuilder( "{" );
+        int[] keys = keys();
+        for ( int i = 0; i < keys.length; i++ )
+        {
+            if ( i > 0 )
+            {
+                result.append( ", " );
+            }
+            result.append( keys[i] ).append( "=" ).append( get( keys[i] ) );
+        }
+        return result.append( "}" ).toString();
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+import java.util.Arrays;
+
+public class LongArray
+{
+    private long[] rels;
+    private int arrayCount = 0;
+
+    public LongArray() 
+    {
+        rels = new long[2];
+    }
+    
+    public LongArray( int initialCapacity )
+    {
+        rels = new long[ initialCapacity ];
+    }
+    
+    public LongArray( long[] array )
+    {
+        rels = array;
+        arrayCount = array.length;
+    }
+    
+    public void add( long id )
+    {
+        if ( arrayCount == rels.length )
+        {
+            long newRels[] = new long[rels.length * 2];
+            System.arraycopy( rels, 0, newRels, 0, rels.length );
+            rels = newRels;
+        }
+        rels[arrayCount++] = id;
+    }
+    
+    public void addAll( LongArray array )
+    {
+        if ( array == null )
+        {
+            return;
+        }
+        if ( array.length() + arrayCount > rels.length )
+        {
+            int newSize = rels.length * 2;
+            while ( array.length() + arrayCount > newSize )
+            {
+                newSize = newSize * 2;
+            }
+            long newRels[] = new long[newSize];
+            System.arraycopy( rels, 0, newRels, 0, arrayCount );
+            rels = newRels;
+        }
+        System.arraycopy( array.getArray(), 0, rels, arrayCount, 
+            array.length() );
+        arrayCount += array.length();
+    }
+    
+    public int length()
+    {
+        return arrayCount;
+    }
+    
+    public long[] getArray()
+    {
+        return rels;
+    }
+    
+    public long get( int i )
+    {
+        assert i >= 0 && i < arrayCount;
+        return rels[i];
+    }
+    
+    public static LongArray composeNew( LongArray src, LongArray add, 
+        LongArray remove )
+    {
+        if ( remove == null )
+        {
+            if ( src == null )
+            {
+                return add;
+            }
+            if ( add != null )
+            {
+                LongArray newArray = new LongArray( add.length() + src.length() );
+                newArray.addAll( src );
+                newArray.addAll( add );
+                return newArray;
+            }
+            return src;
+        }
+        else
+        {
+            if ( src == null && add == null )
+            {
+                return null;
+            }
+            int newLength = 0;
+            if ( add != null )
+            {
+                newLength += add.length();
+            }
+            if ( src != null )
+            {
+                newLength += src.length();
+            }
+            LongArray newArray = new LongArray( newLength );
+            // sorted copy of the removed ids, looked up with binary search
+            // instead of boxing them into a set
+            long removed[] = new long[remove.length()];
+            System.arraycopy( remove.getArray(), 0, removed, 0, 
+                remove.length() );
+            Arrays.sort( removed );
+            newArray.addAll( src );
+            for ( int i = 0; i < newArray.length(); i++ )
+            {
+                long value = newArray.get( i );
+                if ( Arrays.binarySearch( removed, value ) >= 0 )
+                {
+                    boolean swapSuccessful = false;
+                    for ( int j = newArray.length() - 1; j >= i + 1; j--)
+                    {
+                        long backValue = newArray.get( j );
+                        newArray.arrayCount--;
+                        if ( Arrays.binarySearch( removed, backValue ) < 0 )
+                        {
+                            newArray.getArray()[i] = backValue;
+                            swapSuccessful = true;
+                            break;
+                        }
+                    }
+                    if ( !swapSuccessful ) // all elements from pos in remove
+                    {
+                        newArray.arrayCount--;
+                    }
+                }
+            }
+            if ( add != null )
+            {
+                for ( int i = 0; i < add.length(); i++ )
+                {
+                    long value = add.get( i );
+                    if ( Arrays.binarySearch( removed, value ) < 0 )
+                    {
+                        newArray.add( value );
+                    }
+                }
+            }
+           return newArray;
+        }
+    }
+}
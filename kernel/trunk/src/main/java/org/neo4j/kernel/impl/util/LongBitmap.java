@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+/**
+ * Bitmap over non negative long ids, e.g. node or relationship ids. The
+ * bitmap is split in pages of 65536 bits (8kb) that are only allocated
+ * once an id in their range is set, so ids that are clustered take little
+ * memory even if the id space is large.
+ * <p>
+ * Not synchronized.
+ */
+public class LongBitmap
+{
+    private static final int PAGE_SHIFT = 16;
+    private static final int PAGE_LONGS = ( 1 << PAGE_SHIFT ) / 64;
+
+    /**
+     * Number of bytes a page of the bitmap takes.
+     */
+    public static final int PAGE_BYTES = PAGE_LONGS * 8;
+
+    private long[][] pages = new long[16][];
+    private long size = 0;
+
+    /**
+     * @return <code>true</code> if the id was not already set
+     */
+    public boolean set( long id )
+    {
+        int pageIndex = pageIndex( id );
+        if ( pageIndex >= pages.length )
+        {
+            int length = pages.length * 2;
+            while ( length <= pageIndex )
+            {
+                length *= 2;
+            }
+            long[][] newPages = new long[length][];
+            System.arraycopy( pages, 0, newPages, 0, pages.length );
+            pages = newPages;
+        }
+        long[] page = pages[pageIndex];
+        if ( page == null )
+        {
+            page = new long[PAGE_LONGS];
+            pages[pageIndex] = page;
+        }
+        int index = (int) ( id >>> 6 ) & ( PAGE_LONGS - 1 );
+        long bit = 1L << id;
+        if ( ( page[index] & bit ) != 0 )
+        {
+            return false;
+        }
+        page[index] |= bit;
+        size++;
+        return true;
+    }
+
+    public boolean get( long id )
+    {
+        int pageIndex = pageIndex( id );
+        if ( pageIndex >= pages.length )
+        {
+            return false;
+        }
+        long[] page = pages[pageIndex];
+        if ( page == null )
+        {
+            return false;
+        }
+        int index = (int) ( id >>> 6 ) & ( PAGE_LONGS - 1 );
+        return ( page[index] & ( 1L << id ) ) != 0;
+    }
+
+    /**
+     * @return number of ids set
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    private static int pageIndex( long id )
+    {
+        if ( id < 0 || ( id >>> PAGE_SHIFT ) > Integer.MAX_VALUE )
+        {
+            throw new IllegalArgumentException( "Illegal id " + id );
+        }
+        return (int) ( id >>> PAGE_SHIFT );
+    }
+
+    /**
+     * Estimates the number of bytes a bitmap with <code>ids</code> set
+     * would take, counting the pages and the page directory.
+     */
+    public static long estimateSize( long[] ids )
+    {
+        LongHashSet pageIndexes = new LongHashSet();
+        long maxPage = 0;
+        for ( long id : ids )
+        {
+            long pageIndex = pageIndex( id );
+            pageIndexes.add( pageIndex );
+            maxPage = Math.max( maxPage, pageIndex );
+        }
+        return (long) pageIndexes.size() * PAGE_BYTES + ( maxPage + 1 ) * 8;
+    }
+}
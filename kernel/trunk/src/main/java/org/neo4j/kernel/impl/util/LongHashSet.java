@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs kept in an open addressing hash table with linear
+ * probing. Values are never boxed and no entry objects are created, so
+ * adding a value costs no allocation unless the table has to grow.
+ * <p>
+ * Not synchronized.
+ */
+public class LongHashSet
+{
+    // marks a free slot, the value itself is tracked by a flag
+    private static final long FREE = Long.MIN_VALUE;
+
+    private long[] table;
+    private int size = 0;
+    private boolean containsFree = false;
+
+    public LongHashSet()
+    {
+        this( 16 );
+    }
+
+    /**
+     * @param expectedSize number of values the set should hold without 
+     * growing
+     */
+    public LongHashSet( int expectedSize )
+    {
+        table = newTable( tableSizeFor( expectedSize ) );
+    }
+
+    private static long[] newTable( int capacity )
+    {
+        long[] table = new long[capacity];
+        Arrays.fill( table, FREE );
+        return table;
+    }
+
+    private static int hash( long value, int mask )
+    {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) ( h ^ ( h >>> 32 ) ) & mask;
+    }
+
+    /**
+     * @return <code>true</code> if the value was added, <code>false</code>
+     * if it was already in the set
+     */
+    public boolean add( long value )
+    {
+        if ( value == FREE )
+        {
+            if ( containsFree )
+            {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        if ( ( size + 1 ) * 3 > table.length * 2 )
+        {
+            rehash( table.length * 2 );
+        }
+        if ( insert( table, value ) )
+        {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean contains( long value )
+    {
+        if ( value == FREE )
+        {
+            return containsFree;
+        }
+        long[] t = table;
+        int mask = t.length - 1;
+        int i = hash( value, mask );
+        long current;
+        while ( ( current = t[i] ) != FREE )
+        {
+            if ( current == value )
+            {
+                return true;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if the value was in the set
+     */
+    public boolean remove( long value )
+    {
+        if ( value == FREE )
+        {
+            if ( !containsFree )
+            {
+                return false;
+            }
+            containsFree = false;
+            size--;
+            return true;
+        }
+        int mask = table.length - 1;
+        int i = hash( value, mask );
+        long current;
+        while ( ( current = table[i] ) != FREE )
+        {
+            if ( current == value )
+            {
+                deleteSlot( i );
+                size--;
+                return true;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of the values in this set, in no particular order.
+     */
+    public long[] values()
+    {
+        long[] result = new long[size];
+        int index = 0;
+        if ( containsFree )
+        {
+            result[index++] = FREE;
+        }
+        for ( int i = 0; i < table.length; i++ )
+        {
+            if ( table[i] != FREE )
+            {
+                result[index++] = table[i];
+            }
+        }
+        return result;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return number of slots in the hash table, each taking eight bytes
+     */
+    public int capacity()
+    {
+        return table.length;
+    }
+
+    public void clear()
+    {
+        Arrays.fill( table, FREE );
+        size = 0;
+        containsFree = false;
+    }
+
+    private static int tableSizeFor( int entries )
+    {
+        int capacity = 8;
+        while ( capacity * 2 < entries * 3 )
+        {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void rehash( int capacity )
+    {
+        long[] t = newTable( capacity );
+        for ( int i = 0; i < table.length; i++ )
+        {
+            if ( table[i] != FREE )
+            {
+                insert( t, table[i] );
+            }
+        }
+        table = t;
+    }
+
+    private static boolean insert( long[] t, long value )
+    {
+        int mask = t.length - 1;
+        int i = hash( value, mask );
+        long current;
+        while ( ( current = t[i] ) != FREE )
+        {
+            if ( current == value )
+            {
+                return false;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        t[i] = value;
+        return true;
+    }
+
+    private void deleteSlot( int slot )
+    {
+        // backward shift deletion, keeps probe sequences intact without
+        // tombstones
+        int mask = table.length - 1;
+        int hole = slot;
+        int i = ( slot + 1 ) & mask;
+        while ( table[i] != FREE )
+        {
+            int home = hash( table[i], mask );
+            if ( ( ( i - home ) & mask ) >= ( ( i - hole ) & mask ) )
+            {
+                table[hole] = table[i];
+                hole = i;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        table[hole] = FREE;
+    }
+}
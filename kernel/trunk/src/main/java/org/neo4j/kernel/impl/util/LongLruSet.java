@@ -0,0 +1,220 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+/**
+ * Set of at most <code>capacity</code> primitive longs that forgets the
+ * least recently used value when a value is added to a full set. Adding a
+ * value and finding it through {@link #touch(long)} both make it the most
+ * recently used one.
+ * <p>
+ * Values are kept in fixed arrays linked in recency order and found through
+ * an open addressing index with linear probing, so no allocation is done
+ * after construction.
+ * <p>
+ * Not synchronized.
+ */
+public class LongLruSet
+{
+    private static final int NONE = -1;
+
+    private final long[] values;
+    // slots linked from least to most recently used
+    private final int[] older;
+    private final int[] newer;
+    // slot + 1 of the value hashed to an index, 0 marks a free index
+    private final int[] index;
+    private int size = 0;
+    private int oldest = NONE;
+    private int newest = NONE;
+
+    public LongLruSet( int capacity )
+    {
+        if ( capacity < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal capacity " + 
+                capacity );
+        }
+        values = new long[capacity];
+        older = new int[capacity];
+        newer = new int[capacity];
+        // keeps the index at most half full
+        index = new int[Integer.highestOneBit( capacity ) << 2];
+    }
+
+    private static int hash( long value, int mask )
+    {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) ( h ^ ( h >>> 32 ) ) & mask;
+    }
+
+    /**
+     * @return <code>true</code> if the value is in the set, its recency is
+     * not changed
+     */
+    public boolean contains( long value )
+    {
+        return find( value ) != NONE;
+    }
+
+    /**
+     * Makes <code>value</code> the most recently used value if it is in the
+     * set.
+     * 
+     * @return <code>true</code> if the value is in the set
+     */
+    public boolean touch( long value )
+    {
+        int slot = find( value );
+        if ( slot == NONE )
+        {
+            return false;
+        }
+        if ( slot != newest )
+        {
+            unlink( slot );
+            linkNewest( slot );
+        }
+        return true;
+    }
+
+    /**
+     * Adds <code>value</code> as the most recently used value, forgetting
+     * the least recently used one if the set is full.
+     * 
+     * @return <code>true</code> if the value was added, <code>false</code>
+     * if it was already in the set (it is touched)
+     */
+    public boolean add( long value )
+    {
+        if ( touch( value ) )
+        {
+            return false;
+        }
+        int slot;
+        if ( size == values.length )
+        {
+            slot = oldest;
+            unlink( slot );
+            removeFromIndex( slot );
+        }
+        else
+        {
+            slot = size++;
+        }
+        values[slot] = value;
+        linkNewest( slot );
+        int mask = index.length - 1;
+        int i = hash( value, mask );
+        while ( index[i] != 0 )
+        {
+            i = ( i + 1 ) & mask;
+        }
+        index[i] = slot + 1;
+        return true;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int capacity()
+    {
+        return values.length;
+    }
+
+    private int find( long value )
+    {
+        int mask = index.length - 1;
+        int i = hash( value, mask );
+        int entry;
+        while ( ( entry = index[i] ) != 0 )
+        {
+            if ( values[entry - 1] == value )
+            {
+                return entry - 1;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        return NONE;
+    }
+
+    private void removeFromIndex( int slot )
+    {
+        int mask = index.length - 1;
+        int hole = hash( values[slot], mask );
+        while ( index[hole] != slot + 1 )
+        {
+            hole = ( hole + 1 ) & mask;
+        }
+        // backward shift deletion, see LongHashSet
+        int i = ( hole + 1 ) & mask;
+        while ( index[i] != 0 )
+        {
+            int home = hash( values[index[i] - 1], mask );
+            if ( ( ( i - home ) & mask ) >= ( ( i - hole ) & mask ) )
+            {
+                index[hole] = index[i];
+                hole = i;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        index[hole] = 0;
+    }
+
+    private void unlink( int slot )
+    {
+        int o = older[slot];
+        int n = newer[slot];
+        if ( o != NONE )
+        {
+            newer[o] = n;
+        }
+        else
+        {
+            oldest = n;
+        }
+        if ( n != NONE )
+        {
+            older[n] = o;
+        }
+        else
+        {
+            newest = o;
+        }
+    }
+
+    private void linkNewest( int slot )
+    {
+        older[slot] = newest;
+        newer[slot] = NONE;
+        if ( newest != NONE )
+        {
+            newer[newest] = slot;
+        }
+        else
+        {
+            oldest = slot;
+        }
+        newest = slot;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+public class SizeUtils
+{
+    /**
+     * Parses a number of bytes from a configuration value, optionally 
+     * suffixed with <CODE>k</CODE>, <CODE>M</CODE> or <CODE>G</CODE> for
+     * kilo-, mega- or gigabytes (powers of 1024), for example 
+     * <CODE>"512k"</CODE> or <CODE>"10M"</CODE>.
+     * 
+     * @param value the configuration value
+     * @return the number of bytes
+     * @throws NumberFormatException if <CODE>value</CODE> isn't a number 
+     * with an optional suffix
+     */
+    public static long parseSize( String value )
+    {
+        long multiplier = 1;
+        if ( value.endsWith( "M" ) )
+        {
+            multiplier = 1024 * 1024;
+            value = value.substring( 0, value.length() - 1 );
+        }
+        else if ( value.endsWith( "k" ) )
+        {
+            multiplier = 1024;
+            value = value.substring( 0, value.length() - 1 );
+        }
+        else if ( value.endsWith( "G" ) )
+        {
+            multiplier = 1024 * 1024 * 1024;
+            value = value.substring( 0, value.length() - 1 );
+        }
+        return Long.parseLong( value ) * multiplier;
+    }
+}
@@ -30,5 +30,15 @@ public interface Cache
 
     int getRelationshipCacheSize();
 
+    long getPropertyValueCacheCapacity();
+
+    long getPropertyValueCacheUsedBytes();
+
+    int getPropertyValueCacheSize();
+
+    long getPropertyValueCacheHits();
+
+    long getPropertyValueCacheMisses();
+
     void clear();
 }
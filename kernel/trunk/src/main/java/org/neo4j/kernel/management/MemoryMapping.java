@@ -25,4 +25,14 @@ public interface MemoryMapping
     final String NAME = "Memory Mapping";
 
     WindowPoolInfo[] getMemoryPools();
+
+    boolean isWarmingUp();
+
+    int getWarmUpWindowCount();
+
+    int getWarmedUpWindowCount();
+
+    int getSkippedWarmUpWindowCount();
+
+    long getWarmUpTime();
 }
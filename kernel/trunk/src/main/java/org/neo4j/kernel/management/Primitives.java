@@ -31,4 +31,16 @@ public interface Primitives
     long getNumberOfRelationshipTypeIdsInUse();
 
     long getNumberOfPropertyIdsInUse();
+
+    double getNodeIdAllocationRate();
+
+    double getRelationshipIdAllocationRate();
+
+    double getPropertyIdAllocationRate();
+
+    long getNumberOfFreeNodeIds();
+
+    long getNumberOfFreeRelationshipIds();
+
+    long getNumberOfFreePropertyIds();
 }
@@ -32,16 +32,17 @@ public final class WindowPoolInfo implements Serializable
     private final int windowSize;
     private final int hitCount;
     private final int missCount;
+    private final int switchCount;
     private final int oomCount;
 
     /* Java 1.6 specific
     @ConstructorProperties( { "windowPoolName", "availableMemory",
             "usedMemory", "numberOfWindows", "windowSize", "windowHitCount",
-            "windowMissCount", "numberOfOutOfMemory" } )
+            "windowMissCount", "windowSwitchCount", "numberOfOutOfMemory" } )
     */
     public WindowPoolInfo( String name, long memAvail, long memUsed,
             int windowCount, int windowSize, int hitCount, int missCount,
-            int oomCount )
+            int switchCount, int oomCount )
     {
         this.name = name;
         this.memAvail = memAvail;
@@ -50,6 +51,7 @@ public final class WindowPoolInfo implements Serializable
         this.windowSize = windowSize;
         this.hitCount = hitCount;
         this.missCount = missCount;
+        this.switchCount = switchCount;
         this.oomCount = oomCount;
     }
 
@@ -88,6 +90,11 @@ public final class WindowPoolInfo implements Serializable
         return missCount;
     }
 
+    public int getWindowSwitchCount()
+    {
+        return switchCount;
+    }
+
     public int getNumberOfOutOfMemory()
     {
         return oomCount;
@@ -26,14 +26,52 @@ public final class XaResourceInfo implements Serializable
 {
     private final String name;
     private final String branchId;
+    private final boolean groupCommit;
+    private final long logForceCount;
+    private final long forcedEntryCount;
+    private final int largestForceBatch;
+    private final double averageForceTime;
+    private final long lastRotationFlushTime;
+    private final long checkpointCount;
+    private final long checkpointBytesWritten;
+    private final long lastCheckpointTime;
+    private final long recoveredEntryCount;
+    private final long lastRecoveryTime;
+    private final long replayedCommandCount;
+    private final long lastReplayTime;
 
     /* Java 1.6 specific
-    @ConstructorProperties( { "name", "branchId" } )
+    @ConstructorProperties( { "name", "branchId", "groupCommitEnabled",
+            "numberOfLogForces", "numberOfForcedEntries",
+            "largestForceBatch", "averageForceTimeMillis",
+            "lastRotationFlushTimeMillis", "numberOfCheckpoints",
+            "checkpointBytesWritten", "lastCheckpointTimeMillis",
+            "numberOfRecoveredLogEntries", "lastRecoveryTimeMillis",
+            "numberOfReplayedCommands", "lastReplayTimeMillis" } )
     */
-    public XaResourceInfo( String name, String branchId )
+    public XaResourceInfo( String name, String branchId, boolean groupCommit,
+            long logForceCount, long forcedEntryCount, int largestForceBatch,
+            double averageForceTime, long lastRotationFlushTime,
+            long checkpointCount, long checkpointBytesWritten,
+            long lastCheckpointTime, long recoveredEntryCount,
+            long lastRecoveryTime, long replayedCommandCount,
+            long lastReplayTime )
     {
         this.name = name;
         this.branchId = branchId;
+        this.groupCommit = groupCommit;
+        this.logForceCount = logForceCount;
+        this.forcedEntryCount = forcedEntryCount;
+        this.largestForceBatch = largestForceBatch;
+        this.averageForceTime = averageForceTime;
+        this.lastRotationFlushTime = lastRotationFlushTime;
+        this.checkpointCount = checkpointCount;
+        this.checkpointBytesWritten = checkpointBytesWritten;
+        this.lastCheckpointTime = lastCheckpointTime;
+        this.recoveredEntryCount = recoveredEntryCount;
+        this.lastRecoveryTime = lastRecoveryTime;
+        this.replayedCommandCount = replayedCommandCount;
+        this.lastReplayTime = lastReplayTime;
     }
 
     public String getName()
@@ -45,4 +83,74 @@ public final class XaResourceInfo implements Serializable
     {
         return branchId;
     }
+
+    public boolean isGroupCommitEnabled()
+    {
+        return groupCommit;
+    }
+
+    public long getNumberOfLogForces()
+    {
+        return logForceCount;
+    }
+
+    public long getNumberOfForcedEntries()
+    {
+        return forcedEntryCount;
+    }
+
+    public double getAverageForceBatchSize()
+    {
+        return logForceCount == 0 ? 0 : (double) forcedEntryCount / logForceCount;
+    }
+
+    public int getLargestForceBatch()
+    {
+        return largestForceBatch;
+    }
+
+    public double getAverageForceTimeMillis()
+    {
+        return averageForceTime;
+    }
+
+    public long getLastRotationFlushTimeMillis()
+    {
+        return lastRotationFlushTime;
+    }
+
+    public long getNumberOfCheckpoints()
+    {
+        return checkpointCount;
+    }
+
+    public long getCheckpointBytesWritten()
+    {
+        return checkpointBytesWritten;
+    }
+
+    public long getLastCheckpointTimeMillis()
+    {
+        return lastCheckpointTime;
+    }
+
+    public long getNumberOfRecoveredLogEntries()
+    {
+        return recoveredEntryCount;
+    }
+
+    public long getLastRecoveryTimeMillis()
+    {
+        return lastRecoveryTime;
+    }
+
+    public long getNumberOfReplayedCommands()
+    {
+        return replayedCommandCount;
+    }
+
+    public long getLastReplayTimeMillis()
+    {
+        return lastReplayTime;
+    }
 }
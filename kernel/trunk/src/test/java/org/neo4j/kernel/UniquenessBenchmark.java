@@ -0,0 +1,218 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.graphdb.traversal.UniquenessFactory;
+import org.neo4j.graphdb.traversal.UniquenessFilter;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.cache.LruCache;
+
+/**
+ * Compares breadth first traversals over a random graph using the
+ * {@link Uniqueness} filters with the boxed <code>HashSet&lt;Long&gt;</code>
+ * and <code>LruCache&lt;Long,Object&gt;</code> filters they replaced.
+ * Reports traversal throughput and, when the JVM can count allocated 
+ * bytes per thread, the bytes allocated per visited node. Not run as part 
+ * of the test suite, run it with:
+ * <pre>
+ * java UniquenessBenchmark [nodes] [relationships per node] [rounds]
+ * </pre>
+ */
+public class UniquenessBenchmark
+{
+    private static final String PATH = 
+        AbstractNeo4jTestCase.getStorePath( "uniqueness-benchmark" );
+    private static final RelationshipType KNOWS = 
+        DynamicRelationshipType.withName( "KNOWS" );
+
+    public static void main( String[] args ) throws Exception
+    {
+        int nodeCount = args.length > 0 ? Integer.parseInt( args[0] ) : 
+            200000;
+        int relsPerNode = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+        int rounds = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        GraphDatabaseService db = new EmbeddedGraphDatabase( PATH );
+        try
+        {
+            Node start = createGraph( db, nodeCount, relsPerNode );
+            for ( int round = 0; round < rounds; round++ )
+            {
+                run( "boxed global", start, BOXED_GLOBAL, null );
+                run( "node global", start, Uniqueness.NODE_GLOBAL, null );
+                // remembering as many as there are nodes, forgetting some
+                // would let the breadth first traversal grow without bound
+                run( "boxed recent", start, BOXED_RECENT, nodeCount );
+                run( "node recent", start, Uniqueness.NODE_RECENT, nodeCount );
+            }
+        }
+        finally
+        {
+            db.shutdown();
+            AbstractNeo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        }
+    }
+
+    private static Node createGraph( GraphDatabaseService db, int nodeCount,
+        int relsPerNode )
+    {
+        Node[] nodes = new Node[nodeCount];
+        Random random = new Random( 1 );
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < nodeCount; i++ )
+            {
+                nodes[i] = db.createNode();
+                if ( i % 10000 == 9999 )
+                {
+                    tx.success();
+                    tx.finish();
+                    tx = db.beginTx();
+                }
+            }
+            for ( int i = 0; i < nodeCount; i++ )
+            {
+                for ( int j = 0; j < relsPerNode; j++ )
+                {
+                    // never to itself
+                    int other = ( i + 1 + random.nextInt( nodeCount - 1 ) ) % 
+                        nodeCount;
+                    nodes[i].createRelationshipTo( nodes[other], KNOWS );
+                }
+                if ( i % 10000 == 9999 )
+                {
+                    tx.success();
+                    tx.finish();
+                    tx = db.beginTx();
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        return nodes[0];
+    }
+
+    private static void run( String name, Node start, 
+        UniquenessFactory uniqueness, Object parameter )
+    {
+        TraversalDescription description = Traversal.description()
+            .breadthFirst().relationships( KNOWS ).uniqueness( uniqueness, 
+                parameter );
+        long allocatedBefore = allocatedBytes();
+        long startTime = System.currentTimeMillis();
+        long count = 0;
+        for ( Node node : description.traverse( start ).nodes() )
+        {
+            count++;
+        }
+        long time = Math.max( 1, System.currentTimeMillis() - startTime );
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.println( name + ": " + count + " nodes in " + time + 
+            "ms, " + count * 1000 / time + " nodes/s" + ( allocatedBefore < 0 
+                ? "" : ", " + allocated / Math.max( 1, count ) + 
+                    " bytes allocated/node" ) );
+    }
+
+    // com.sun.management.ThreadMXBean is not available on all JVMs
+    private static long allocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        try
+        {
+            Method method = Class.forName( 
+                "com.sun.management.ThreadMXBean" ).getMethod( 
+                    "getThreadAllocatedBytes", long.class );
+            return (Long) method.invoke( bean, 
+                Thread.currentThread().getId() );
+        }
+        catch ( Exception e )
+        {
+            return -1;
+        }
+    }
+
+    private static final UniquenessFactory BOXED_GLOBAL = 
+        new UniquenessFactory()
+    {
+        public UniquenessFilter create( Object optionalParameter )
+        {
+            return new AbstractUniquenessFilter( PrimitiveTypeFetcher.NODE )
+            {
+                private final Set<Long> visited = new HashSet<Long>();
+
+                public boolean check( TraversalBranch branch, 
+                    boolean remember )
+                {
+                    long id = type.getId( branch );
+                    return remember ? visited.add( id ) : 
+                        !visited.contains( id );
+                }
+            };
+        }
+    };
+
+    private static final UniquenessFactory BOXED_RECENT = 
+        new UniquenessFactory()
+    {
+        public UniquenessFilter create( final Object optionalParameter )
+        {
+            return new AbstractUniquenessFilter( PrimitiveTypeFetcher.NODE )
+            {
+                private final Object placeHolder = new Object();
+                private final LruCache<Long,Object> recentlyVisited = 
+                    new LruCache<Long,Object>( "Recently visited", 
+                        ((Number) optionalParameter).intValue(), null );
+
+                public boolean check( TraversalBranch branch, 
+                    boolean remember )
+                {
+                    long id = type.getId( branch );
+                    boolean add = recentlyVisited.get( id ) == null;
+                    if ( add && remember )
+                    {
+                        recentlyVisited.put( id, placeHolder );
+                    }
+                    return add;
+                }
+            };
+        }
+    };
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.batchinsert;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.batchinsert.BatchImporter.StageStatistics;
+
+public class TestBatchImporter
+{
+    private static final int NODES = 2000;
+    private static final int RELATIONSHIPS = 6000;
+    
+    private static final BatchImporter.LineParser CSV_PARSER = 
+        new BatchImporter.LineParser()
+    {
+        public ImportEntity parse( String line )
+        {
+            if ( line.startsWith( "#" ) )
+            {
+                return null;
+            }
+            String[] fields = line.split( "," );
+            Map<String,Object> properties = new HashMap<String,Object>();
+            if ( fields[0].equals( "n" ) )
+            {
+                properties.put( "name", fields[2] );
+                return ImportEntity.node( Long.parseLong( fields[1] ), 
+                    properties );
+            }
+            properties.put( "weight", Integer.parseInt( fields[4] ) );
+            return ImportEntity.relationship( Long.parseLong( fields[1] ), 
+                Long.parseLong( fields[2] ), 
+                DynamicRelationshipType.withName( fields[3] ), properties );
+        }
+    };
+    
+    private BatchInserter newBatchInserter()
+    {
+        String storePath = AbstractNeo4jTestCase.getStorePath( 
+            "neo-batch-import" );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( storePath ) );
+        return new BatchInserterImpl( storePath );
+    }
+    
+    @Test
+    public void testImport() throws Exception
+    {
+        // node 0 is the reference node created with the store
+        StringBuilder input = new StringBuilder( "# nodes\n" );
+        for ( int i = 1; i <= NODES; i++ )
+        {
+            input.append( "n," ).append( i ).append( ",node " ).append( i )
+                .append( '\n' );
+        }
+        int[] degrees = new int[NODES + 1];
+        for ( int i = 0; i < RELATIONSHIPS; i++ )
+        {
+            int from = 1 + ( i * 7 ) % NODES;
+            int to = 1 + ( i * 13 + 1 ) % NODES;
+            if ( from == to )
+            {
+                to = 1 + to % NODES;
+            }
+            degrees[from]++;
+            degrees[to]++;
+            input.append( "r," ).append( from ).append( ',' ).append( to )
+                .append( ",TYPE" ).append( i % 3 ).append( ',' ).append( i )
+                .append( '\n' );
+        }
+        
+        BatchInserter inserter = newBatchInserter();
+        final Map<Long,Object> indexed = new ConcurrentHashMap<Long,Object>();
+        BatchImporter importer = new BatchImporter( inserter, 3, 
+            new BatchImporter.Indexer()
+            {
+                public void index( long nodeId, 
+                    Map<String,Object> properties )
+                {
+                    indexed.put( nodeId, properties.get( "name" ) );
+                }
+            } );
+        importer.importFrom( new StringReader( input.toString() ), 
+            CSV_PARSER );
+        List<String> stages = new ArrayList<String>();
+        for ( StageStatistics stage : importer.getStageStatistics() )
+        {
+            stages.add( stage.getName() );
+        }
+        assertEquals( 6, stages.size() );
+        assertEquals( NODES + RELATIONSHIPS, 
+            importer.getStageStatistics().get( 3 ).getCount() );
+        assertEquals( NODES, indexed.size() );
+        assertEquals( "node 10", indexed.get( 10L ) );
+        String storeDir = inserter.getStore();
+        inserter.shutdown();
+        
+        GraphDatabaseService graphDb = new EmbeddedGraphDatabase( storeDir );
+        try
+        {
+            long weights = 0;
+            for ( int i = 1; i <= NODES; i++ )
+            {
+                Node node = graphDb.getNodeById( i );
+                assertEquals( "node " + i, node.getProperty( "name" ) );
+                int count = 0;
+                for ( Relationship rel : node.getRelationships() )
+                {
+                    if ( rel.getStartNode().equals( node ) )
+                    {
+                        weights += (Integer) rel.getProperty( "weight" );
+                    }
+                    count++;
+                }
+                assertEquals( degrees[i], count );
+            }
+            assertEquals( (long) RELATIONSHIPS * ( RELATIONSHIPS - 1 ) / 2, 
+                weights );
+        }
+        finally
+        {
+            graphDb.shutdown();
+        }
+    }
+    
+    @Test
+    public void testRelationshipToMissingNode() throws Exception
+    {
+        BatchInserter inserter = newBatchInserter();
+        BatchImporter importer = new BatchImporter( inserter );
+        try
+        {
+            importer.importFrom( new StringReader( 
+                "n,1,a\nn,2,b\nr,1,2,KNOWS,1\nr,2,5,KNOWS,2\n" ), 
+                CSV_PARSER );
+            fail( "Could create relationship to missing node" );
+        }
+        catch ( NotFoundException e )
+        {
+            // ok good
+        }
+        finally
+        {
+            inserter.shutdown();
+        }
+    }
+}
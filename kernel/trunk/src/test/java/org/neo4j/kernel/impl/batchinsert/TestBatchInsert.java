@@ -25,10 +25,13 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -37,6 +40,9 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
 import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
 import org.neo4j.kernel.impl.batchinsert.BatchInserter;
 import org.neo4j.kernel.impl.batchinsert.BatchInserterImpl;
@@ -91,6 +97,16 @@ public class TestBatchInsert
         return new BatchInserterImpl( storePath );
     }
     
+    private BatchInserter newSortedLinkingBatchInserter()
+    {
+        String storePath = AbstractNeo4jTestCase.getStorePath( 
+            "neo-batch-sorted" );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( storePath ) );
+        Map<String,String> config = new HashMap<String,String>();
+        config.put( Config.BATCH_SORTED_RELATIONSHIP_LINKING, "true" );
+        return new BatchInserterImpl( storePath, config );
+    }
+    
     @Test
     public void testSimple()
     {
@@ -234,4 +250,78 @@ public class TestBatchInsert
         }
         graphDb.shutdown();
     }
+    
+    private List<List<Long>> insertRandomGraph( BatchInserter inserter )
+    {
+        Random random = new Random( 1234 );
+        int nodeCount = 50;
+        for ( int i = 0; i < nodeCount; i++ )
+        {
+            inserter.createNode( null );
+        }
+        for ( int i = 0; i < 600; i++ )
+        {
+            long node1 = random.nextInt( nodeCount );
+            long node2 = ( node1 + 1 + random.nextInt( nodeCount - 1 ) ) % 
+                nodeCount;
+            inserter.createRelationship( node1, node2, relTypeArray[i % 5], 
+                i % 3 == 0 ? properties : null );
+            if ( i == 250 )
+            {
+                // links what has been created so far
+                inserter.getRelationshipIds( node1 ).iterator().next();
+            }
+        }
+        List<List<Long>> chains = new ArrayList<List<Long>>();
+        for ( int i = 0; i < nodeCount; i++ )
+        {
+            List<Long> chain = new ArrayList<Long>();
+            for ( long relId : inserter.getRelationshipIds( i ) )
+            {
+                chain.add( relId );
+            }
+            chains.add( chain );
+        }
+        return chains;
+    }
+    
+    @Test
+    public void testSortedRelationshipLinking()
+    {
+        BatchInserter inserter = newBatchInserter();
+        List<List<Long>> expected = insertRandomGraph( inserter );
+        inserter.shutdown();
+        inserter = newSortedLinkingBatchInserter();
+        assertEquals( expected, insertRandomGraph( inserter ) );
+        String storeDir = inserter.getStore();
+        inserter.shutdown();
+
+        GraphDatabaseService graphDb = new EmbeddedGraphDatabase( storeDir );
+        Transaction tx = graphDb.beginTx();
+        try
+        {
+            int deleted = 0;
+            for ( long relId = 0; relId < 600; relId += 7 )
+            {
+                graphDb.getRelationshipById( relId ).delete();
+                deleted++;
+            }
+            tx.success();
+            tx.finish();
+            int count = 0;
+            for ( Node node : graphDb.getAllNodes() )
+            {
+                for ( Relationship rel : node.getRelationships() )
+                {
+                    assertTrue( rel.getId() % 7 != 0 );
+                    count++;
+                }
+            }
+            assertEquals( ( 600 - deleted ) * 2, count );
+        }
+        finally
+        {
+            graphDb.shutdown();
+        }
+    }
 }
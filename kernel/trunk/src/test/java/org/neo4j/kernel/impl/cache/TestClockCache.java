@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class TestClockCache
+{
+    private static class ClockCacheTest<E> extends ClockCache<E>
+    {
+        private Object cleanedElement = null;
+        private int cleanedCount = 0;
+
+        ClockCacheTest( String name, int maxSize, int segmentCount )
+        {
+            super( name, maxSize, null, segmentCount );
+        }
+
+        @Override
+        public synchronized void elementCleaned( E element )
+        {
+            cleanedElement = element;
+            cleanedCount++;
+        }
+
+        synchronized Object getLastCleanedElement()
+        {
+            return cleanedElement;
+        }
+
+        synchronized int getCleanedCount()
+        {
+            return cleanedCount;
+        }
+    }
+
+    @Test
+    public void testCreate()
+    {
+        try
+        {
+            new ClockCache<Object>( "TestCache", 0, null );
+            fail( "Illegal maxSize should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        ClockCache<Object> cache = new ClockCache<Object>( "TestCache", 70,
+            null );
+        try
+        {
+            cache.put( null, new Object() );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.put( 1, null );
+            fail( "Null element should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.get( null );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.remove( null );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        cache.put( 1, new Object() );
+        cache.clear();
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testReferencedElementGetsSecondChance()
+    {
+        ClockCacheTest<Object> cache = new ClockCacheTest<Object>(
+            "TestCache", 3, 1 );
+        cache.put( 1, "1" );
+        cache.put( 2, "2" );
+        cache.put( 3, "3" );
+        cache.get( 2 );
+        assertEquals( null, cache.getLastCleanedElement() );
+        cache.put( 4, "4" );
+        assertEquals( "1", cache.getLastCleanedElement() );
+        cache.put( 5, "5" );
+        assertEquals( "3", cache.getLastCleanedElement() );
+        assertEquals( 3, cache.size() );
+        assertEquals( null, cache.get( 1 ) );
+        assertEquals( "2", cache.get( 2 ) );
+        assertEquals( null, cache.get( 3 ) );
+        assertEquals( "4", cache.get( 4 ) );
+        assertEquals( "5", cache.get( 5 ) );
+        assertEquals( "5", cache.remove( 5 ) );
+        assertEquals( 2, cache.size() );
+        cache.clear();
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void testResize()
+    {
+        ClockCacheTest<Object> cache = new ClockCacheTest<Object>(
+            "TestCache", 3, 1 );
+        cache.put( 1, "1" );
+        cache.put( 2, "2" );
+        cache.put( 3, "3" );
+        cache.resize( 5 );
+        assertEquals( 5, cache.maxSize() );
+        assertEquals( 3, cache.size() );
+        cache.put( 4, "4" );
+        cache.put( 5, "5" );
+        assertEquals( null, cache.getLastCleanedElement() );
+        cache.resize( 4 );
+        assertEquals( "1", cache.getLastCleanedElement() );
+        assertEquals( 4, cache.size() );
+        cache.resize( 2 );
+        assertEquals( "3", cache.getLastCleanedElement() );
+        assertEquals( 2, cache.size() );
+    }
+
+    @Test
+    public void testConcurrentAccessKeepsSizeBounded() throws Exception
+    {
+        final int maxSize = 1000;
+        final ClockCacheTest<Integer> cache = 
+            new ClockCacheTest<Integer>( "TestCache", maxSize, 16 );
+        Thread[] threads = new Thread[4];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final int offset = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int i = 0; i < 20000; i++ )
+                    {
+                        int key = ( i * 31 + offset ) % 5000;
+                        if ( cache.get( key ) == null )
+                        {
+                            cache.put( key, key );
+                        }
+                        if ( i % 10 == 0 )
+                        {
+                            cache.remove( key );
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertTrue( cache.size() <= maxSize + 16 );
+        assertTrue( cache.getCleanedCount() > 0 );
+        for ( int i = 0; i < 5000; i++ )
+        {
+            Integer element = cache.get( i );
+            assertTrue( element == null || element.intValue() == i );
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestOffHeapValueCache
+{
+    @Test
+    public void testValueTypes()
+    {
+        OffHeapValueCache cache = new OffHeapValueCache( 4096, 0 );
+        assertTrue( cache.put( 1, "a string value" ) );
+        assertTrue( cache.put( 2, new String[] { "one", "", "three" } ) );
+        assertTrue( cache.put( 3, new int[] { 1, -2, 3 } ) );
+        assertTrue( cache.put( 4, new long[] { 1l << 40, -2 } ) );
+        assertTrue( cache.put( 5, new byte[] { 1, 2, 3 } ) );
+        assertTrue( cache.put( 6, new short[] { 1, 2 } ) );
+        assertTrue( cache.put( 7, new char[] { 'a', 'b' } ) );
+        assertTrue( cache.put( 8, new float[] { 1.5f } ) );
+        assertTrue( cache.put( 9, new double[] { 2.5d, 3.5d } ) );
+        assertTrue( cache.put( 10, new boolean[] { true, false, true } ) );
+        assertFalse( cache.put( 11, 10 ) );
+        assertEquals( 10, cache.size() );
+
+        assertEquals( "a string value", cache.get( 1 ) );
+        assertArrayEquals( new String[] { "one", "", "three" }, 
+            (String[]) cache.get( 2 ) );
+        assertArrayEquals( new int[] { 1, -2, 3 }, (int[]) cache.get( 3 ) );
+        assertArrayEquals( new long[] { 1l << 40, -2 }, 
+            (long[]) cache.get( 4 ) );
+        assertArrayEquals( new byte[] { 1, 2, 3 }, (byte[]) cache.get( 5 ) );
+        assertEquals( 2, ((short[]) cache.get( 6 ))[1] );
+        assertEquals( "ab", new String( (char[]) cache.get( 7 ) ) );
+        assertEquals( 1.5f, ((float[]) cache.get( 8 ))[0], 0 );
+        double[] doubles = (double[]) cache.get( 9 );
+        assertEquals( 2, doubles.length );
+        assertEquals( 3.5d, doubles[1], 0 );
+        boolean[] booleans = (boolean[]) cache.get( 10 );
+        assertTrue( booleans[0] && !booleans[1] && booleans[2] );
+        assertNull( cache.get( 11 ) );
+        assertEquals( 10, cache.getHitCount() );
+        assertEquals( 1, cache.getMissCount() );
+    }
+
+    @Test
+    public void testMinAndMaxValueSize()
+    {
+        OffHeapValueCache cache = new OffHeapValueCache( 400, 20 );
+        assertFalse( cache.put( 1, "short" ) );
+        assertTrue( cache.put( 2, "long enough value" ) );
+        assertFalse( cache.put( 3, new long[13] ) );
+        assertEquals( 1, cache.size() );
+        assertEquals( 34, cache.getUsedBytes() );
+    }
+
+    @Test
+    public void testRemove()
+    {
+        OffHeapValueCache cache = new OffHeapValueCache( 400, 0 );
+        cache.put( 1, "first" );
+        cache.put( 1, "ignored, already cached" );
+        assertEquals( "first", cache.get( 1 ) );
+        cache.remove( 1 );
+        assertNull( cache.get( 1 ) );
+        assertEquals( 0, cache.getUsedBytes() );
+        cache.put( 1, "second" );
+        assertEquals( "second", cache.get( 1 ) );
+    }
+
+    @Test
+    public void testOldestValuesEvictedWhenFull()
+    {
+        OffHeapValueCache cache = new OffHeapValueCache( 100, 0 );
+        for ( int i = 0; i < 5; i++ )
+        {
+            assertTrue( cache.put( i, new int[5] ) );
+        }
+        // no room left at the end, wraps and evicts the two oldest
+        cache.remove( 3 );
+        assertTrue( cache.put( 5, new int[6] ) );
+        assertNull( cache.get( 0 ) );
+        assertNull( cache.get( 1 ) );
+        assertEquals( 5, ((int[]) cache.get( 2 )).length );
+        assertNull( cache.get( 3 ) );
+        assertEquals( 6, ((int[]) cache.get( 5 )).length );
+        assertEquals( 3, cache.size() );
+        assertEquals( 64, cache.getUsedBytes() );
+        assertEquals( 2, cache.getEvictionCount() );
+        for ( int i = 6; i < 20; i++ )
+        {
+            assertTrue( cache.put( i, new int[] { i, i, i, i, i } ) );
+        }
+        for ( int i = 15; i < 20; i++ )
+        {
+            assertEquals( i, ((int[]) cache.get( i ))[4] );
+        }
+        assertEquals( 100, cache.getUsedBytes() );
+    }
+
+    @Test
+    public void testPutAfterRemoveSinceStampIsRefused()
+    {
+        OffHeapValueCache cache = new OffHeapValueCache( 400, 0 );
+        cache.put( 1, "old value" );
+        // a reader misses, a writer changes and removes the key, the
+        // reader then tries to cache what it read before the change
+        cache.remove( 1 );
+        long stamp = cache.stamp( 1 );
+        cache.remove( 1 );
+        assertFalse( cache.put( 1, "old value", stamp ) );
+        assertNull( cache.get( 1 ) );
+        assertTrue( cache.put( 1, "new value", cache.stamp( 1 ) ) );
+        assertEquals( "new value", cache.get( 1 ) );
+    }
+
+    @Test
+    public void testKeysSpreadOverStripes()
+    {
+        OffHeapValueCache cache = new OffHeapValueCache( 4 * 1024, 0, 4 );
+        for ( int i = 0; i < 64; i++ )
+        {
+            assertTrue( cache.put( i, new int[] { i, i } ) );
+        }
+        assertEquals( 64, cache.size() );
+        assertEquals( 64 * 8, cache.getUsedBytes() );
+        for ( int i = 0; i < 64; i++ )
+        {
+            assertEquals( i, ((int[]) cache.get( i ))[1] );
+        }
+        // a value may use at most a quarter of its stripe
+        assertFalse( cache.put( 100, new byte[257] ) );
+        assertTrue( cache.put( 100, new byte[256] ) );
+    }
+}
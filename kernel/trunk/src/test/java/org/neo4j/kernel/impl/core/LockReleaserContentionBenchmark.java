@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.core;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+/**
+ * Measures write transaction throughput of the core layer as the number of
+ * concurrent writers doubles, while a number of idle transactions with
+ * locks and changes of their own stay open the whole time (so the per
+ * transaction state in {@link LockReleaser} has many live entries). Not run
+ * as part of the test suite, run it with:
+ * <pre>
+ * java LockReleaserContentionBenchmark [max writers] [idle txs] [seconds]
+ * </pre>
+ */
+public class LockReleaserContentionBenchmark
+{
+    private static final String PATH = 
+        AbstractNeo4jTestCase.getStorePath( "lock-releaser-benchmark" );
+    private static final RelationshipType NEXT = 
+        DynamicRelationshipType.withName( "NEXT" );
+
+    public static void main( String[] args ) throws Exception
+    {
+        int maxWriters = args.length > 0 ? Integer.parseInt( args[0] ) : 
+            Runtime.getRuntime().availableProcessors() * 4;
+        int idleTxs = args.length > 1 ? Integer.parseInt( args[1] ) : 200;
+        int seconds = args.length > 2 ? Integer.parseInt( args[2] ) : 5;
+
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        GraphDatabaseService db = new EmbeddedGraphDatabase( PATH );
+        CountDownLatch idleDone = new CountDownLatch( 1 );
+        Thread[] idle = startIdleTransactions( db, idleTxs, idleDone );
+        try
+        {
+            // warm up
+            run( db, maxWriters, 1 );
+            System.out.println( idleTxs + " idle transactions, " + seconds + 
+                "s per run" );
+            for ( int writers = 1; writers <= maxWriters; writers *= 2 )
+            {
+                long txs = run( db, writers, seconds );
+                System.out.println( writers + " writers: " + txs / seconds + 
+                    " tx/s" );
+            }
+        }
+        finally
+        {
+            idleDone.countDown();
+            for ( Thread thread : idle )
+            {
+                thread.join();
+            }
+            db.shutdown();
+        }
+    }
+
+    private static Thread[] startIdleTransactions( 
+        final GraphDatabaseService db, int count, final CountDownLatch done ) 
+        throws InterruptedException
+    {
+        final CountDownLatch started = new CountDownLatch( count );
+        Thread[] threads = new Thread[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Transaction tx = db.beginTx();
+                    try
+                    {
+                        db.createNode().setProperty( "idle", true );
+                        started.countDown();
+                        done.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    finally
+                    {
+                        tx.finish();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        started.await();
+        return threads;
+    }
+
+    private static long run( final GraphDatabaseService db, int writerCount, 
+        int seconds ) throws InterruptedException
+    {
+        final long endTime = System.currentTimeMillis() + seconds * 1000l;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final long[] counts = new long[writerCount];
+        Thread[] threads = new Thread[writerCount];
+        for ( int i = 0; i < writerCount; i++ )
+        {
+            final int threadIndex = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    long count = 0;
+                    Node previous = null;
+                    while ( System.currentTimeMillis() < endTime )
+                    {
+                        Transaction tx = db.beginTx();
+                        try
+                        {
+                            Node node = db.createNode();
+                            node.setProperty( "count", count );
+                            if ( previous != null )
+                            {
+                                previous.createRelationshipTo( node, NEXT );
+                            }
+                            previous = node;
+                            tx.success();
+                        }
+                        finally
+                        {
+                            tx.finish();
+                        }
+                        count++;
+                    }
+                    counts[threadIndex] = count;
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        long total = 0;
+        for ( int i = 0; i < writerCount; i++ )
+        {
+            threads[i].join();
+            total += counts[i];
+        }
+        return total;
+    }
+}
@@ -89,6 +89,14 @@ public class TestCacheTypes extends AbstractNeo4jTestCase
         db.shutdown();
     }
 
+    @Test
+    public void testClockCache()
+    {
+        GraphDatabaseService db = newDb( "clock" );
+        assertEquals( CacheType.clock, ((EmbeddedGraphDatabase) db).getConfig().getGraphDbModule().getNodeManager().getCacheType() );
+        db.shutdown();
+    }
+
     @Test
     public void testInvalidCache()
     {
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.cache.OffHeapValueCache;
+
+public class TestOffHeapPropertyValues
+{
+    private static final String PATH = 
+        AbstractNeo4jTestCase.getStorePath( "offheap-values-db" );
+
+    private EmbeddedGraphDatabase db;
+    private NodeManager nodeManager;
+
+    @Before
+    public void startDb()
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        db = new EmbeddedGraphDatabase( PATH, MapUtil.stringMap( 
+            Config.PROPERTY_VALUE_CACHE_SIZE, "1M", 
+            Config.PROPERTY_VALUE_CACHE_MIN_SIZE, "64" ) );
+        nodeManager = db.getConfig().getGraphDbModule().getNodeManager();
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    private String largeString( char c )
+    {
+        StringBuilder builder = new StringBuilder();
+        for ( int i = 0; i < 200; i++ )
+        {
+            builder.append( c );
+        }
+        return builder.toString();
+    }
+
+    private long createNode( String key, Object value )
+    {
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node node = db.createNode();
+            node.setProperty( key, value );
+            tx.success();
+            return node.getId();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    @Test
+    public void testLargeValuesServedFromOffHeapCache()
+    {
+        OffHeapValueCache cache = nodeManager.getPropertyValueCache();
+        long stringNode = createNode( "name", largeString( 'a' ) );
+        long arrayNode = createNode( "numbers", new long[100] );
+        long smallNode = createNode( "name", "small" );
+        nodeManager.clearCache();
+
+        assertEquals( largeString( 'a' ), 
+            db.getNodeById( stringNode ).getProperty( "name" ) );
+        assertEquals( 100, ((long[]) db.getNodeById( arrayNode ).getProperty( 
+            "numbers" )).length );
+        assertEquals( "small", db.getNodeById( smallNode ).getProperty( "name" ) );
+        assertEquals( 2, cache.size() );
+        long hits = cache.getHitCount();
+        assertEquals( largeString( 'a' ), 
+            db.getNodeById( stringNode ).getProperty( "name" ) );
+        assertEquals( hits + 1, cache.getHitCount() );
+    }
+
+    @Test
+    public void testChangedAndRemovedValuesInvalidated()
+    {
+        OffHeapValueCache cache = nodeManager.getPropertyValueCache();
+        long nodeId = createNode( "name", largeString( 'a' ) );
+        long otherId = createNode( "values", new int[] { 1 } );
+        nodeManager.clearCache();
+        assertEquals( largeString( 'a' ), 
+            db.getNodeById( nodeId ).getProperty( "name" ) );
+        assertEquals( 1, cache.size() );
+
+        Transaction tx = db.beginTx();
+        try
+        {
+            db.getNodeById( nodeId ).setProperty( "name", largeString( 'b' ) );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertEquals( 0, cache.size() );
+        nodeManager.removeNodeFromCache( nodeId );
+        assertEquals( largeString( 'b' ), 
+            db.getNodeById( nodeId ).getProperty( "name" ) );
+        assertEquals( 1, cache.size() );
+
+        tx = db.beginTx();
+        try
+        {
+            assertEquals( largeString( 'b' ), 
+                db.getNodeById( nodeId ).removeProperty( "name" ) );
+            db.getNodeById( otherId ).setProperty( "values", new int[100] );
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertEquals( 0, cache.size() );
+        nodeManager.removeNodeFromCache( nodeId );
+        nodeManager.removeNodeFromCache( otherId );
+        assertFalse( db.getNodeById( nodeId ).hasProperty( "name" ) );
+        assertNull( db.getNodeById( nodeId ).getProperty( "name", null ) );
+        assertArrayEquals( new int[100], 
+            (int[]) db.getNodeById( otherId ).getProperty( "values" ) );
+        assertTrue( cache.size() == 1 );
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestRelationshipChainLoading extends AbstractNeo4jTestCase
+{
+    private static final String PATH = NEO4J_BASE_PATH + "rel-chain-db";
+    private static final RelationshipType KNOWS = 
+        DynamicRelationshipType.withName( "KNOWS" );
+    private static final RelationshipType LIKES = 
+        DynamicRelationshipType.withName( "LIKES" );
+
+    @Test
+    public void testLoadChainInParts()
+    {
+        loadHub( "false" );
+    }
+
+    @Test
+    public void testLoadChainInPartsWithPrefetch()
+    {
+        loadHub( "true" );
+    }
+
+    private void loadHub( String prefetch )
+    {
+        deleteFileOrDirectory( new File( PATH ) );
+        Map<String,String> config = MapUtil.stringMap( 
+            "relationship_grab_size", "7", 
+            Config.RELATIONSHIP_GRAB_PREFETCH, prefetch );
+        GraphDatabaseService db = new EmbeddedGraphDatabase( PATH, config );
+        Set<Long> knows = new HashSet<Long>();
+        Set<Long> likes = new HashSet<Long>();
+        long hubId;
+        Transaction tx = db.beginTx();
+        try
+        {
+            Node hub = db.createNode();
+            hubId = hub.getId();
+            for ( int i = 0; i < 300; i++ )
+            {
+                Node other = db.createNode();
+                // spread the chain of the hub over the store
+                other.createRelationshipTo( db.createNode(), KNOWS );
+                if ( i % 3 == 0 )
+                {
+                    likes.add( other.createRelationshipTo( hub, LIKES ).getId() );
+                }
+                else
+                {
+                    knows.add( hub.createRelationshipTo( other, KNOWS ).getId() );
+                }
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        db.shutdown();
+
+        db = new EmbeddedGraphDatabase( PATH, config );
+        try
+        {
+            Node hub = db.getNodeById( hubId );
+            assertEquals( knows, ids( hub.getRelationships( KNOWS ) ) );
+            assertEquals( likes, ids( hub.getRelationships( LIKES, 
+                Direction.INCOMING ) ) );
+            assertEquals( knows.size() + likes.size(), 
+                ids( hub.getRelationships() ).size() );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private Set<Long> ids( Iterable<Relationship> relationships )
+    {
+        Set<Long> ids = new HashSet<Long>();
+        for ( Relationship relationship : relationships )
+        {
+            ids.add( relationship.getId() );
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.kernel.AsyncTransactionEventHandler;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestAsyncTransactionEvents extends AbstractNeo4jTestCase
+{
+    private static class RecordingHandler implements 
+        AsyncTransactionEventHandler.BatchHandler<Object>
+    {
+        private final List<Long> createdNodes = 
+            Collections.synchronizedList( new ArrayList<Long>() );
+        private final List<Integer> batchSizes = 
+            Collections.synchronizedList( new ArrayList<Integer>() );
+        private final CountDownLatch started = new CountDownLatch( 1 );
+        private final CountDownLatch release;
+        
+        RecordingHandler( CountDownLatch release )
+        {
+            this.release = release;
+        }
+        
+        public Object beforeCommit( TransactionData data )
+        {
+            return null;
+        }
+        
+        public void afterCommit( List<TransactionData> data, 
+            List<Object> states )
+        {
+            started.countDown();
+            try
+            {
+                release.await();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.interrupted();
+            }
+            batchSizes.add( data.size() );
+            for ( TransactionData transaction : data )
+            {
+                for ( Node node : transaction.createdNodes() )
+                {
+                    createdNodes.add( node.getId() );
+                }
+            }
+        }
+        
+        public void afterCommit( TransactionData data, Object state )
+        {
+            throw new UnsupportedOperationException();
+        }
+        
+        public void afterRollback( TransactionData data, Object state )
+        {
+        }
+    }
+    
+    private List<Long> createNodes( int count )
+    {
+        List<Long> ids = new ArrayList<Long>();
+        for ( int i = 0; i < count; i++ )
+        {
+            Transaction tx = getGraphDb().beginTx();
+            try
+            {
+                ids.add( getGraphDb().createNode().getId() );
+                tx.success();
+            }
+            finally
+            {
+                tx.finish();
+            }
+        }
+        return ids;
+    }
+    
+    @Test
+    public void testDeliveredInCommitOrderInBatches() throws Exception
+    {
+        commit();
+        CountDownLatch release = new CountDownLatch( 1 );
+        RecordingHandler handler = new RecordingHandler( release );
+        AsyncTransactionEventHandler<Object> async = 
+            new AsyncTransactionEventHandler<Object>( handler, 100, 5, null );
+        getGraphDb().registerTransactionEventHandler( async );
+        try
+        {
+            List<Long> ids = createNodes( 1 );
+            handler.started.await();
+            // committed while the first batch is being delivered
+            ids.addAll( createNodes( 20 ) );
+            assertEquals( 20, async.getQueuedCount() );
+            release.countDown();
+            assertTrue( async.awaitDelivery( 10000 ) );
+            assertEquals( ids, handler.createdNodes );
+            assertEquals( 21, async.getDeliveredCount() );
+            assertEquals( 5, async.getBatchCount() );
+            assertEquals( Integer.valueOf( 1 ), handler.batchSizes.get( 0 ) );
+            assertEquals( Integer.valueOf( 5 ), handler.batchSizes.get( 1 ) );
+            assertEquals( 0, async.getBlockedCommitCount() );
+        }
+        finally
+        {
+            getGraphDb().unregisterTransactionEventHandler( async );
+            async.shutdown( 10000 );
+            newTransaction();
+        }
+    }
+    
+    @Test
+    public void testCommitsWaitWhenBufferIsFull() throws Exception
+    {
+        commit();
+        CountDownLatch release = new CountDownLatch( 1 );
+        RecordingHandler handler = new RecordingHandler( release );
+        final AsyncTransactionEventHandler<Object> async = 
+            new AsyncTransactionEventHandler<Object>( handler, 2, 10, null );
+        getGraphDb().registerTransactionEventHandler( async );
+        try
+        {
+            createNodes( 1 );
+            handler.started.await();
+            createNodes( 2 );
+            Thread committer = new Thread()
+            {
+                public void run()
+                {
+                    createNodes( 2 );
+                }
+            };
+            committer.start();
+            while ( async.getBlockedCommitCount() == 0 )
+            {
+                Thread.sleep( 10 );
+            }
+            assertTrue( committer.isAlive() );
+            assertEquals( 2, async.getQueuedCount() );
+            release.countDown();
+            committer.join();
+            assertTrue( async.awaitDelivery( 10000 ) );
+            assertEquals( 5, async.getDeliveredCount() );
+            assertEquals( 5, handler.createdNodes.size() );
+            assertTrue( async.getBlockedCommitCount() >= 1 );
+        }
+        finally
+        {
+            getGraphDb().unregisterTransactionEventHandler( async );
+            async.shutdown( 10000 );
+            newTransaction();
+        }
+    }
+}
@@ -31,8 +31,11 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.junit.Test;
 import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
@@ -490,4 +493,93 @@ public class TestIdGenerator
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentNextIdAndFreeId() throws Exception
+    {
+        concurrentNextIdAndFreeId( 1 );
+        concurrentNextIdAndFreeId( 16 );
+    }
+
+    private void concurrentNextIdAndFreeId( int rangeSize ) throws Exception
+    {
+        try
+        {
+            IdGeneratorImpl.createGenerator( idGeneratorFile() );
+            final IdGenerator idGenerator = new IdGeneratorImpl( 
+                idGeneratorFile(), 8, rangeSize );
+            final Map<Long,Object> taken = 
+                new ConcurrentHashMap<Long,Object>();
+            final List<Throwable> failures = new ArrayList<Throwable>();
+            Thread[] threads = new Thread[4];
+            for ( int i = 0; i < threads.length; i++ )
+            {
+                threads[i] = new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            for ( int j = 0; j < 1000; j++ )
+                            {
+                                long id = idGenerator.nextId();
+                                if ( taken.put( id, this ) != null )
+                                {
+                                    throw new AssertionError( "Id " + id + 
+                                        " handed out twice" );
+                                }
+                                if ( j % 3 == 0 )
+                                {
+                                    taken.remove( id );
+                                    idGenerator.freeId( id );
+                                }
+                            }
+                        }
+                        catch ( Throwable t )
+                        {
+                            synchronized ( failures )
+                            {
+                                failures.add( t );
+                            }
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for ( Thread thread : threads )
+            {
+                thread.join();
+            }
+            assertTrue( failures.toString(), failures.isEmpty() );
+            assertEquals( 4000, idGenerator.getNumberOfAllocatedIds() );
+            long freeIds = idGenerator.getNumberOfFreeIds();
+            long highId = idGenerator.getHighId();
+            idGenerator.close();
+
+            // ids freed and ids left in thread ranges are reused next time
+            IdGenerator reopened = new IdGeneratorImpl( idGeneratorFile(), 8 );
+            assertEquals( highId, reopened.getHighId() );
+            assertEquals( highId - taken.size(), reopened.getNumberOfFreeIds() );
+            assertTrue( freeIds <= reopened.getNumberOfFreeIds() );
+            Set<Long> reused = new HashSet<Long>();
+            for ( long i = taken.size(); i < highId; i++ )
+            {
+                long id = reopened.nextId();
+                assertTrue( id < highId );
+                assertTrue( taken.get( id ) == null );
+                assertTrue( reused.add( id ) );
+            }
+            assertEquals( highId, reopened.nextId() );
+            reopened.close();
+        }
+        finally
+        {
+            File file = new File( idGeneratorFile() );
+            if ( file.exists() )
+            {
+                assertTrue( file.delete() );
+            }
+        }
+    }
+}
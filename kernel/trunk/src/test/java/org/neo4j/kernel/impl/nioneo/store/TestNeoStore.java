@@ -365,7 +365,7 @@ public class TestNeoStore extends AbstractNeo4jTestCase
         {
             return (int) propertyRecord.getPropBlock();
         }
-        if ( type == PropertyType.STRING )
+        if ( PropertyStore.isString( type ) )
         {
             return pStore.getStringFor( propertyRecord );
         }
@@ -0,0 +1,368 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.core.LockReleaser;
+import org.neo4j.kernel.impl.core.PropertyIndex;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaConnection;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.transaction.LockManager;
+import org.neo4j.kernel.impl.transaction.XidImpl;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+public class TestParallelReplay extends AbstractNeo4jTestCase
+{
+    private static class ReplayPropertyIndex extends PropertyIndex
+    {
+        ReplayPropertyIndex( String key, int keyId )
+        {
+            super( key, keyId );
+        }
+    }
+
+    private LockManager lockManager;
+    private LockReleaser lockReleaser;
+    private String sourcePath;
+    private String replayPath;
+
+    @Override
+    protected boolean restartGraphDbBetweenTests()
+    {
+        return true;
+    }
+
+    @Before
+    public void setUpPaths()
+    {
+        lockManager = getEmbeddedGraphDb().getConfig().getLockManager();
+        lockReleaser = getEmbeddedGraphDb().getConfig().getLockReleaser();
+        sourcePath = getStorePath( "replay-source" );
+        replayPath = getStorePath( "replay-target" );
+        deleteFileOrDirectory( new File( sourcePath ) );
+        deleteFileOrDirectory( new File( replayPath ) );
+        new File( sourcePath ).mkdirs();
+        new File( replayPath ).mkdirs();
+    }
+
+    @After
+    public void tearDownPaths()
+    {
+        StringLogger.close( sourcePath + "/messages.log" );
+        StringLogger.close( replayPath + "/messages.log" );
+        deleteFileOrDirectory( new File( sourcePath ) );
+        deleteFileOrDirectory( new File( replayPath ) );
+    }
+
+    private NeoStoreXaDataSource newDataSource( String path, int workers )
+        throws Exception
+    {
+        Map<Object,Object> config = new HashMap<Object,Object>();
+        config.put( "store_dir", path );
+        config.put( "neo_store", path + File.separator + "neo" );
+        config.put( "logical_log", path + File.separator + 
+            "nioneo_logical.log" );
+        config.put( LockManager.class, lockManager );
+        config.put( LockReleaser.class, lockReleaser );
+        config.put( Config.RECOVERY_WORKERS, "" + workers );
+        return new NeoStoreXaDataSource( config );
+    }
+
+    @Test
+    public void testParallelApplyOfLogicalLog() throws Exception
+    {
+        NeoStore.createStore( sourcePath + File.separator + "neo", 
+            Collections.EMPTY_MAP );
+        NeoStoreXaDataSource ds = newDataSource( sourcePath, 1 );
+        ds.keepLogicalLogs( true );
+        int relType = -1;
+        PropertyIndex index = null;
+        int[] nodes = new int[40];
+        int[] props = new int[20];
+        for ( int i = 0; i < 20; i++ )
+        {
+            NeoStoreXaConnection xaCon = 
+                (NeoStoreXaConnection) ds.getXaConnection();
+            XAResource xaRes = xaCon.getXaResource();
+            Xid xid = new XidImpl( new byte[1], new byte[1] );
+            xaRes.start( xid, XAResource.TMNOFLAGS );
+            if ( relType == -1 )
+            {
+                relType = ds.nextId( RelationshipType.class );
+                xaCon.getRelationshipTypeConsumer().addRelationshipType( 
+                    relType, "relationshiptype1" );
+                int keyId = ds.nextId( PropertyIndex.class );
+                index = new ReplayPropertyIndex( "prop1", keyId );
+                xaCon.getPropertyIndexConsumer().createPropertyIndex( keyId, 
+                    "prop1" );
+            }
+            nodes[i * 2] = ds.nextId( Node.class );
+            xaCon.getNodeConsumer().createNode( nodes[i * 2] );
+            nodes[i * 2 + 1] = ds.nextId( Node.class );
+            xaCon.getNodeConsumer().createNode( nodes[i * 2 + 1] );
+            props[i] = ds.nextId( PropertyStore.class );
+            xaCon.getNodeConsumer().addProperty( nodes[i * 2], props[i],
+                index, "a value long enough for several blocks " + i + 
+                " of the string store" );
+            int rel = ds.nextId( Relationship.class );
+            xaCon.getRelationshipConsumer().createRelationship( rel, 
+                nodes[i * 2], nodes[i * 2 + 1], relType );
+            if ( i > 0 )
+            {
+                // later transactions overwrite records of the first one
+                xaCon.getNodeConsumer().changeProperty( nodes[0], props[0], 
+                    "changed " + i );
+            }
+            xaRes.end( xid, XAResource.TMSUCCESS );
+            xaRes.commit( xid, true );
+        }
+        long version = ds.getCurrentLogVersion();
+        ds.rotateLogicalLog();
+
+        NeoStore.createStore( replayPath + File.separator + "neo", 
+            Collections.EMPTY_MAP );
+        NeoStoreXaDataSource replayDs = newDataSource( replayPath, 4 );
+        replayDs.setCurrentLogVersion( version );
+        replayDs.makeBackupSlave();
+        replayDs.applyLog( ds.getLogicalLog( version ) );
+        ds.close();
+        // one relationship type, one property index and five records per
+        // transaction, the first transaction has no property change
+        assertEquals( 2 + 20 * 5 - 1, replayDs.getReplayedCommandCount() );
+        replayDs.close();
+
+        NeoStore replayed = new NeoStore( replayPath + File.separator + 
+            "neo" );
+        replayed.makeStoreOk();
+        NodeStore nodeStore = replayed.getNodeStore();
+        for ( int i = 0; i < 40; i++ )
+        {
+            assertTrue( nodeStore.getRecord( nodes[i] ).inUse() );
+        }
+        PropertyStore propStore = replayed.getPropertyStore();
+        assertEquals( "changed 19", propStore.getValue( 
+            propStore.getRecord( props[0] ) ) );
+        for ( int i = 1; i < 20; i++ )
+        {
+            assertEquals( "a value long enough for several blocks " + i + 
+                " of the string store", propStore.getValue( 
+                    propStore.getRecord( props[i] ) ) );
+        }
+        replayed.close();
+    }
+
+    @Test
+    public void testRecoveryCompletesAfterParallelReplay() throws Exception
+    {
+        NeoStore.createStore( sourcePath + File.separator + "neo", 
+            Collections.EMPTY_MAP );
+        NeoStore.createStore( replayPath + File.separator + "neo", 
+            Collections.EMPTY_MAP );
+        // a store that wasn't shut down cleanly has its id generators
+        // rebuilt when recovery completes
+        stripVersion( replayPath + File.separator + "neo.nodestore.db", 
+            "NodeStore v0.9.5" );
+        stripVersion( replayPath + File.separator + "neo.propertystore.db", 
+            "PropertyStore v0.9.6" );
+        NeoStoreXaDataSource ds = newDataSource( sourcePath, 1 );
+        ds.keepLogicalLogs( true );
+        NeoStoreXaConnection xaCon = 
+            (NeoStoreXaConnection) ds.getXaConnection();
+        XAResource xaRes = xaCon.getXaResource();
+        Xid xid = new XidImpl( new byte[1], new byte[1] );
+        xaRes.start( xid, XAResource.TMNOFLAGS );
+        int keyId = ds.nextId( PropertyIndex.class );
+        PropertyIndex index = new ReplayPropertyIndex( "prop1", keyId );
+        xaCon.getPropertyIndexConsumer().createPropertyIndex( keyId, "prop1" );
+        // mostly node commands, spread over the workers
+        int[] nodes = new int[20000];
+        int[] props = new int[nodes.length / 100];
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            nodes[i] = ds.nextId( Node.class );
+            xaCon.getNodeConsumer().createNode( nodes[i] );
+            if ( i % 100 == 0 )
+            {
+                props[i / 100] = ds.nextId( PropertyStore.class );
+                xaCon.getNodeConsumer().addProperty( nodes[i], props[i / 100], 
+                    index, "value " + i );
+            }
+        }
+        xaRes.end( xid, XAResource.TMSUCCESS );
+        xaRes.commit( xid, true );
+        long version = ds.getCurrentLogVersion();
+        ds.rotateLogicalLog();
+        ByteBuffer log = readLog( ds.getLogicalLog( version ), 
+            ds.getLogicalLogLength( version ) );
+        ds.close();
+
+        // the log of a crash after the commit entry was forced but before
+        // the transaction was marked as done: [DONE][identifier] at the end
+        assertEquals( 4, log.get( log.limit() - 5 ) );
+        log.limit( log.limit() - 5 );
+        writeFile( replayPath + File.separator + "nioneo_logical.log.1", log );
+        ByteBuffer active = ByteBuffer.allocate( 4 );
+        active.asCharBuffer().put( '1' );
+        writeFile( replayPath + File.separator + 
+            "nioneo_logical.log.active", active );
+
+        NeoStoreXaDataSource replayDs = newDataSource( replayPath, 4 );
+        assertEquals( 1 + nodes.length + props.length, 
+            replayDs.getReplayedCommandCount() );
+        // id generators are rebuilt after the replay, no recovered record
+        // is handed out again
+        assertEquals( 0, replayDs.getNumberOfFreeIds( Node.class ) );
+        assertEquals( nodes[nodes.length - 1] + 1, 
+            replayDs.nextId( Node.class ) );
+        assertEquals( props[props.length - 1] + 1, 
+            replayDs.nextId( PropertyStore.class ) );
+        replayDs.close();
+        // the store is made ok and the transaction marked as done only
+        // once all of its commands have been replayed
+        List<String> messages = readLines( replayPath + File.separator + 
+            "messages.log" );
+        int replayDone = indexOf( messages, "Replay completed" );
+        int recovered = indexOf( messages, "recovery completed." );
+        assertTrue( replayDone != -1 );
+        assertTrue( recovered != -1 );
+        assertTrue( replayDone < recovered );
+
+        NeoStore replayed = new NeoStore( replayPath + File.separator + 
+            "neo" );
+        NodeStore nodeStore = replayed.getNodeStore();
+        PropertyStore propStore = replayed.getPropertyStore();
+        for ( int i = 0; i < nodes.length; i++ )
+        {
+            assertTrue( nodeStore.getRecord( nodes[i] ).inUse() );
+        }
+        for ( int i = 0; i < props.length; i++ )
+        {
+            assertEquals( "value " + i * 100, propStore.getValue( 
+                propStore.getRecord( props[i] ) ) );
+        }
+        replayed.close();
+    }
+
+    private void stripVersion( String fileName, String version ) 
+        throws Exception
+    {
+        FileChannel channel = new RandomAccessFile( fileName, "rw" )
+            .getChannel();
+        try
+        {
+            long size = channel.size() - version.length();
+            ByteBuffer buffer = ByteBuffer.allocate( version.length() );
+            channel.read( buffer, size );
+            assertEquals( version, new String( buffer.array() ) );
+            channel.truncate( size );
+            channel.force( false );
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    private List<String> readLines( String fileName ) throws Exception
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader( 
+            new FileReader( fileName ) );
+        try
+        {
+            for ( String line = reader.readLine(); line != null; 
+                line = reader.readLine() )
+            {
+                lines.add( line );
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private int indexOf( List<String> lines, String text )
+    {
+        for ( int i = 0; i < lines.size(); i++ )
+        {
+            if ( lines.get( i ).contains( text ) )
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ByteBuffer readLog( ReadableByteChannel channel, long length )
+        throws Exception
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( (int) length );
+        while ( buffer.hasRemaining() && channel.read( buffer ) != -1 )
+        {
+        }
+        channel.close();
+        buffer.flip();
+        return buffer;
+    }
+
+    private void writeFile( String name, ByteBuffer buffer ) throws Exception
+    {
+        FileChannel channel = new FileOutputStream( name ).getChannel();
+        try
+        {
+            channel.write( buffer );
+            channel.force( false );
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+}
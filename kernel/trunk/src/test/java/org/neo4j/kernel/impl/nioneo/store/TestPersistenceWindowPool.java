@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestPersistenceWindowPool
+{
+    private static final int BLOCK_SIZE = 8;
+    private static final int BLOCK_COUNT = 20000;
+    private static final int THREADS = 4;
+    private static final int OPERATIONS = 20000;
+
+    private RandomAccessFile file;
+    private FileChannel channel;
+
+    @Before
+    public void createFile() throws Exception
+    {
+        String path = AbstractNeo4jTestCase.getStorePath( "windowpool" );
+        new File( path ).mkdirs();
+        File storeFile = new File( path, "windowpool.db" );
+        storeFile.delete();
+        file = new RandomAccessFile( storeFile, "rw" );
+        channel = file.getChannel();
+        ByteBuffer buffer = ByteBuffer.allocate( BLOCK_SIZE * BLOCK_COUNT );
+        for ( int i = 0; i < BLOCK_COUNT; i++ )
+        {
+            buffer.putLong( i );
+        }
+        buffer.flip();
+        channel.write( buffer, 0 );
+        channel.force( false );
+    }
+
+    @After
+    public void closeFile() throws Exception
+    {
+        channel.close();
+        file.close();
+    }
+
+    @Test
+    public void testConcurrentAcquireWithRefresh() throws Exception
+    {
+        // room for a tenth of the file, the rest goes through rows
+        final PersistenceWindowPool pool = new PersistenceWindowPool( 
+            "windowpool", BLOCK_SIZE, channel, BLOCK_SIZE * BLOCK_COUNT / 10, 
+            true, false );
+        final AtomicReference<Throwable> failure = 
+            new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for ( int i = 0; i < threads.length; i++ )
+        {
+            final Random random = new Random( i );
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int j = 0; j < OPERATIONS; j++ )
+                        {
+                            // skew the access towards the start of the file
+                            int position = random.nextBoolean() ? 
+                                random.nextInt( BLOCK_COUNT / 20 ) : 
+                                random.nextInt( BLOCK_COUNT );
+                            PersistenceWindow window = pool.acquire( 
+                                position, OperationType.READ );
+                            try
+                            {
+                                Buffer buffer = 
+                                    window.getOffsettedBuffer( position );
+                                assertEquals( position, buffer.getLong() );
+                            }
+                            finally
+                            {
+                                pool.release( window );
+                            }
+                        }
+                    }
+                    catch ( Throwable t )
+                    {
+                        failure.compareAndSet( null, t );
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure.get() != null )
+        {
+            throw new RuntimeException( failure.get() );
+        }
+        WindowPoolStats stats = pool.getStats();
+        assertEquals( THREADS * OPERATIONS, 
+            stats.getHitCount() + stats.getMissCount() );
+        assertTrue( stats.getMemUsed() <= stats.getMemAvail() );
+        pool.close();
+    }
+
+    @Test
+    public void testWritesVisibleThroughPool() throws Exception
+    {
+        PersistenceWindowPool pool = new PersistenceWindowPool( "windowpool",
+            BLOCK_SIZE, channel, BLOCK_SIZE * BLOCK_COUNT / 10, true, false );
+        for ( int i = 0; i < BLOCK_COUNT; i++ )
+        {
+            PersistenceWindow window = pool.acquire( i, OperationType.WRITE );
+            try
+            {
+                window.getOffsettedBuffer( i ).putLong( -i );
+            }
+            finally
+            {
+                pool.release( window );
+            }
+        }
+        for ( int i = 0; i < BLOCK_COUNT; i++ )
+        {
+            PersistenceWindow window = pool.acquire( i, OperationType.READ );
+            try
+            {
+                assertEquals( -i, window.getOffsettedBuffer( i ).getLong() );
+            }
+            finally
+            {
+                pool.release( window );
+            }
+        }
+        pool.close();
+    }
+
+    @Test
+    public void testOnlyDirtyWindowsAreFlushed() throws Exception
+    {
+        // a thousandth of the memory, 64000 bytes, per window
+        PersistenceWindowPool pool = new PersistenceWindowPool( "windowpool",
+            BLOCK_SIZE, channel, 64000 * 1000, true, false );
+        // windows are mapped by the background refresh after enough misses
+        long timeout = System.currentTimeMillis() + 10000;
+        while ( pool.getMappedBricks().length < 2 && 
+            System.currentTimeMillis() < timeout )
+        {
+            for ( int i = 0; i < BLOCK_COUNT; i++ )
+            {
+                pool.release( pool.acquire( i, OperationType.READ ) );
+            }
+        }
+        assertTrue( pool.getMappedBricks().length >= 2 );
+        assertEquals( 0, pool.flushDirtyWindows( Long.MAX_VALUE ) );
+
+        int position = BLOCK_COUNT / 2;
+        write( pool, position, -1 );
+        // only the page holding the record counts as written
+        assertEquals( 4096, pool.flushDirtyWindows( 1 ) );
+        assertEquals( 0, pool.flushDirtyWindows( Long.MAX_VALUE ) );
+
+        // two records in one page and one in another window
+        write( pool, position, -2 );
+        write( pool, position + 1, -3 );
+        write( pool, 0, -4 );
+        assertEquals( 2 * 4096, pool.flushDirtyWindows( Long.MAX_VALUE ) );
+        pool.close();
+
+        ByteBuffer buffer = ByteBuffer.allocate( BLOCK_SIZE );
+        channel.read( buffer, (long) position * BLOCK_SIZE );
+        buffer.flip();
+        assertEquals( -2, buffer.getLong() );
+    }
+
+    private void write( PersistenceWindowPool pool, int position, long value )
+    {
+        PersistenceWindow window = pool.acquire( position, OperationType.WRITE );
+        assertFalse( window instanceof PersistenceRow );
+        try
+        {
+            window.getOffsettedBuffer( position ).putLong( value );
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+}
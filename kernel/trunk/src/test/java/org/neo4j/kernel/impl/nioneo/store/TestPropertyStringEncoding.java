@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestPropertyStringEncoding
+{
+    private PropertyStore store;
+
+    private String path()
+    {
+        String path = AbstractNeo4jTestCase.getStorePath( "propertystrings" );
+        new File( path ).mkdirs();
+        return path;
+    }
+
+    private String storeFile()
+    {
+        return path() + File.separator + "neostore.propertystore.db";
+    }
+
+    @Before
+    public void createStore()
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( path() ) );
+        PropertyStore.createStore( storeFile(), Collections.EMPTY_MAP );
+        store = new PropertyStore( storeFile() );
+    }
+
+    @After
+    public void deleteStore()
+    {
+        if ( store != null )
+        {
+            store.close();
+        }
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( path() ) );
+    }
+
+    private PropertyRecord write( String value )
+    {
+        PropertyRecord record = new PropertyRecord( store.nextId() );
+        record.setInUse( true );
+        store.encodeValue( record, value );
+        store.updateRecord( record );
+        return record;
+    }
+
+    private void assertStored( String value, PropertyType expectedType )
+    {
+        PropertyRecord written = write( value );
+        assertEquals( value, expectedType, written.getType() );
+        PropertyRecord read = store.getRecord( written.getId() );
+        assertEquals( expectedType, read.getType() );
+        assertEquals( value, store.getValue( read ) );
+        if ( expectedType == PropertyType.SHORT_STRING )
+        {
+            assertTrue( read.getValueRecords().isEmpty() );
+            assertEquals( value, store.getValue( 
+                store.getLightRecord( written.getId() ) ) );
+        }
+    }
+
+    @Test
+    public void testShortStringsAreInlined()
+    {
+        assertStored( "", PropertyType.SHORT_STRING );
+        assertStored( "a", PropertyType.SHORT_STRING );
+        assertStored( "name", PropertyType.SHORT_STRING );
+        assertStored( "12345678", PropertyType.SHORT_STRING );
+        assertStored( "\u007f\u0000 \t\n", PropertyType.SHORT_STRING );
+        assertStored( "\u00e5\u00e4\u00f6\u00e5\u00e4\u00f6\u00ff",
+            PropertyType.SHORT_STRING );
+    }
+
+    @Test
+    public void testLongerStringsAreEncoded()
+    {
+        assertStored( "123456789", PropertyType.ENCODED_STRING );
+        assertStored( "\u00e5\u00e4\u00f6\u00e5\u00e4\u00f6\u00e5\u00e4",
+            PropertyType.ENCODED_STRING );
+        StringBuilder latin1 = new StringBuilder();
+        StringBuilder mixed = new StringBuilder();
+        for ( int i = 0; i < 200; i++ )
+        {
+            latin1.append( (char) ( 0x20 + i % 0xDF ) );
+            mixed.append( i % 5 == 0 ? '\u03a9' : (char) ( 'a' + i % 26 ) );
+        }
+        assertStored( latin1.toString(), PropertyType.ENCODED_STRING );
+        assertStored( mixed.toString(), PropertyType.ENCODED_STRING );
+    }
+
+    @Test
+    public void testStringsNotSmallerInUtf8AreKeptAsChars()
+    {
+        assertStored( "\u0100", PropertyType.STRING );
+        assertStored( "\u65e5\u672c\u8a9e\u306e\u6587\u5b57\u5217",
+            PropertyType.STRING );
+        assertStored( "a\ud834\udd1eb", PropertyType.STRING );
+        assertStored( "unpaired \ud834 surrogate", PropertyType.STRING );
+    }
+
+    @Test
+    public void testOldStoreVersionIsUpgraded() throws Exception
+    {
+        int id = write( "a value that is kept" ).getId();
+        store.close();
+        store = null;
+        // replace the version trailer with the previous one
+        FileChannel channel = new RandomAccessFile( storeFile(), "rw" )
+            .getChannel();
+        byte[] old = "PropertyStore v0.9.5".getBytes();
+        channel.write( ByteBuffer.wrap( old ), channel.size() - old.length );
+        channel.close();
+        store = new PropertyStore( storeFile() );
+        assertTrue( store.getStoreOk() );
+        assertEquals( "a value that is kept", 
+            store.getValue( store.getRecord( id ) ) );
+        store.close();
+        store = null;
+        channel = new RandomAccessFile( storeFile(), "r" ).getChannel();
+        ByteBuffer version = ByteBuffer.allocate( old.length );
+        channel.read( version, channel.size() - old.length );
+        channel.close();
+        assertEquals( "PropertyStore v0.9.6", new String( version.array() ) );
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+
+public class TestStoreWarmer
+{
+    private static final String PATH = 
+        AbstractNeo4jTestCase.getStorePath( "store-warmup" );
+
+    private Map<String,String> config( boolean warmUp )
+    {
+        Map<String,String> config = new HashMap<String,String>();
+        config.put( Config.USE_MEMORY_MAPPED_BUFFERS, "true" );
+        config.put( Config.NODE_STORE_MMAP_SIZE, "1M" );
+        config.put( Config.STORE_WARMUP, "" + warmUp );
+        config.put( Config.STORE_WARMUP_RECORD_INTERVAL, "0" );
+        return config;
+    }
+
+    private NeoStoreXaDataSource getDataSource( EmbeddedGraphDatabase db )
+    {
+        return (NeoStoreXaDataSource) db.getConfig().getTxModule()
+            .getXaDataSourceManager().getXaDataSource( "nioneodb" );
+    }
+
+    private long getNodeStoreMemUsed( EmbeddedGraphDatabase db )
+    {
+        for ( WindowPoolStats stats : getDataSource( db ).getWindowPoolStats() )
+        {
+            if ( stats.getName().endsWith( "nodestore.db" ) )
+            {
+                return stats.getMemUsed();
+            }
+        }
+        throw new IllegalStateException( "No node store window pool" );
+    }
+
+    @Test
+    public void testWindowsInUseAreWarmedUpAfterRestart() throws Exception
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( PATH, 
+            config( true ) );
+        Transaction tx = db.beginTx();
+        try
+        {
+            for ( int i = 0; i < 20000; i++ )
+            {
+                db.createNode();
+            }
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+        assertTrue( getNodeStoreMemUsed( db ) > 0 );
+        db.shutdown();
+        assertTrue( new File( PATH, "neostore.warmup" ).exists() );
+
+        db = new EmbeddedGraphDatabase( PATH, config( true ) );
+        try
+        {
+            StoreWarmer warmer = getDataSource( db ).getStoreWarmer();
+            assertNotNull( warmer );
+            long end = System.currentTimeMillis() + 10000;
+            while ( warmer.isWarmingUp() && System.currentTimeMillis() < end )
+            {
+                Thread.sleep( 10 );
+            }
+            assertFalse( warmer.isWarmingUp() );
+            assertTrue( warmer.getWarmedWindowCount() > 0 );
+            // windows mapped past the end of a store file are not warmed up
+            assertEquals( warmer.getWindowsToWarmCount(), 
+                warmer.getWarmedWindowCount() + 
+                warmer.getSkippedWindowCount() );
+            assertTrue( getNodeStoreMemUsed( db ) > 0 );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    @Test
+    public void testNoWarmUpWhenDisabled() throws Exception
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( PATH, 
+            config( false ) );
+        try
+        {
+            assertEquals( null, getDataSource( db ).getStoreWarmer() );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+        assertFalse( new File( PATH, "neostore.warmup" ).exists() );
+    }
+}
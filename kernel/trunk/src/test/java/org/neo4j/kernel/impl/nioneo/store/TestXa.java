@@ -566,7 +566,7 @@ public class TestXa extends AbstractNeo4jTestCase
         ds.close();
         deleteLogicalLogIfExist();
         renameCopiedLogicalLog();
-        truncateLogicalLog( 141 );
+        truncateLogicalLog( 106 );
         ds = new NeoStoreXaDataSource( file( "neo" ), path(), // file( "nioneo_logical.log" ),
             lockManager, lockReleaser );
         xaCon = (NeoStoreXaConnection) ds.getXaConnection();
@@ -595,7 +595,7 @@ public class TestXa extends AbstractNeo4jTestCase
         ds.close();
         deleteLogicalLogIfExist();
         renameCopiedLogicalLog();
-        truncateLogicalLog( 145 );
+        truncateLogicalLog( 110 );
         ds = new NeoStoreXaDataSource( file( "neo" ), path(), // file( "nioneo_logical.log" ),
             lockManager, lockReleaser );
         xaCon = (NeoStoreXaConnection) ds.getXaConnection();
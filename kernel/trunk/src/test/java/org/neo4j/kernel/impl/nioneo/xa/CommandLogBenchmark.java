@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.nioneo.store.DynamicRecord;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.PropertyType;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
+import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
+import org.neo4j.kernel.impl.transaction.xaframework.ReadAheadChannel;
+
+/**
+ * Measures how fast node, relationship and property commands are written
+ * to a log buffer and read back from a log file, reading the file both
+ * straight from the file channel and through a {@link ReadAheadChannel} the
+ * way recovery and applying a log do. Not run as part of the test suite, 
+ * run it with:
+ * <pre>
+ * java CommandLogBenchmark [commands] [rounds]
+ * </pre>
+ */
+public class CommandLogBenchmark
+{
+    private static final String PATH = 
+        AbstractNeo4jTestCase.getStorePath( "command-log-benchmark" );
+
+    public static void main( String[] args ) throws Exception
+    {
+        int count = args.length > 0 ? Integer.parseInt( args[0] ) : 1000000;
+        int rounds = args.length > 1 ? Integer.parseInt( args[1] ) : 5;
+
+        File dir = new File( PATH );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( dir );
+        dir.mkdirs();
+        String storeName = PATH + File.separator + "neo";
+        NeoStore.createStore( storeName, Collections.EMPTY_MAP );
+        NeoStore neoStore = new NeoStore( storeName );
+        File log = new File( dir, "commands.log" );
+        Command[] commands = createCommands( neoStore, count );
+        try
+        {
+            for ( int round = 0; round < rounds; round++ )
+            {
+                long time = write( commands, log );
+                System.out.println( "write: " + rate( count, time ) );
+                time = read( neoStore, log, count, false );
+                System.out.println( "read from file channel: " + 
+                    rate( count, time ) );
+                time = read( neoStore, log, count, true );
+                System.out.println( "read ahead: " + rate( count, time ) );
+            }
+        }
+        finally
+        {
+            neoStore.close();
+            AbstractNeo4jTestCase.deleteFileOrDirectory( dir );
+        }
+    }
+
+    private static String rate( int count, long time )
+    {
+        return count * 1000L / Math.max( 1, time ) + " commands/s (" + 
+            time + "ms)";
+    }
+
+    // same mix as creating a node with two properties and a relationship 
+    // to it, one of the properties a string needing a dynamic record
+    private static Command[] createCommands( NeoStore neoStore, int count )
+    {
+        Command[] commands = new Command[count];
+        byte[] data = new byte[100];
+        for ( int i = 0; i < count; i++ )
+        {
+            switch ( i % 4 )
+            {
+                case 0:
+                    NodeRecord node = new NodeRecord( i );
+                    node.setInUse( true );
+                    node.setNextRel( i + 3 );
+                    node.setNextProp( i + 1 );
+                    commands[i] = new Command.NodeCommand( 
+                        neoStore.getNodeStore(), node );
+                    break;
+                case 3:
+                    RelationshipRecord rel = 
+                        new RelationshipRecord( i, i - 4, i - 3, 0 );
+                    rel.setInUse( true );
+                    commands[i] = new Command.RelationshipCommand( 
+                        neoStore.getRelationshipStore(), rel );
+                    break;
+                default:
+                    PropertyRecord prop = new PropertyRecord( i );
+                    prop.setInUse( true );
+                    prop.setKeyIndexId( i % 4 );
+                    prop.setPrevProp( i - 1 );
+                    prop.setNextProp( i + 1 );
+                    if ( i % 4 == 1 )
+                    {
+                        prop.setType( PropertyType.INT );
+                        prop.setPropBlock( i );
+                    }
+                    else
+                    {
+                        prop.setType( PropertyType.STRING );
+                        prop.setPropBlock( i );
+                        DynamicRecord value = new DynamicRecord( i );
+                        value.setInUse( true, 
+                            PropertyType.STRING.intValue() );
+                        value.setData( data );
+                        value.setLength( data.length );
+                        prop.addValueRecord( value );
+                    }
+                    commands[i] = new Command.PropertyCommand( 
+                        neoStore.getPropertyStore(), prop );
+            }
+        }
+        return commands;
+    }
+
+    private static long write( Command[] commands, File log ) 
+        throws IOException
+    {
+        log.delete();
+        FileChannel channel = new RandomAccessFile( log, "rw" ).getChannel();
+        ChannelLogBuffer buffer = new ChannelLogBuffer( channel );
+        long start = System.currentTimeMillis();
+        for ( Command command : commands )
+        {
+            command.writeToFile( buffer );
+        }
+        buffer.force();
+        long time = System.currentTimeMillis() - start;
+        channel.close();
+        return time;
+    }
+
+    private static long read( NeoStore neoStore, File log, int count, 
+        boolean readAhead ) throws IOException
+    {
+        FileChannel fileChannel = 
+            new RandomAccessFile( log, "r" ).getChannel();
+        ReadableByteChannel channel = readAhead ? 
+            new ReadAheadChannel( fileChannel ) : fileChannel;
+        ByteBuffer buffer = ByteBuffer.allocateDirect( 1024 );
+        long start = System.currentTimeMillis();
+        int read = 0;
+        while ( Command.readCommand( neoStore, channel, buffer ) != null )
+        {
+            read++;
+        }
+        long time = System.currentTimeMillis() - start;
+        channel.close();
+        if ( read != count )
+        {
+            throw new IllegalStateException( "Read " + read + 
+                " commands, expected " + count );
+        }
+        return time;
+    }
+
+    private static class ChannelLogBuffer implements LogBuffer
+    {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = 
+            ByteBuffer.allocateDirect( 1024 * 1024 );
+
+        ChannelLogBuffer( FileChannel channel )
+        {
+            this.channel = channel;
+        }
+
+        private ByteBuffer room( int size ) throws IOException
+        {
+            if ( buffer.remaining() < size )
+            {
+                flush();
+            }
+            return buffer;
+        }
+
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while ( buffer.hasRemaining() )
+            {
+                channel.write( buffer );
+            }
+            buffer.clear();
+        }
+
+        public LogBuffer put( byte b ) throws IOException
+        {
+            room( 1 ).put( b );
+            return this;
+        }
+
+        public LogBuffer putInt( int i ) throws IOException
+        {
+            room( 4 ).putInt( i );
+            return this;
+        }
+
+        public LogBuffer putLong( long l ) throws IOException
+        {
+            room( 8 ).putLong( l );
+            return this;
+        }
+
+        public LogBuffer putFloat( float f ) throws IOException
+        {
+            room( 4 ).putFloat( f );
+            return this;
+        }
+
+        public LogBuffer putDouble( double d ) throws IOException
+        {
+            room( 8 ).putDouble( d );
+            return this;
+        }
+
+        public LogBuffer put( byte[] bytes ) throws IOException
+        {
+            room( bytes.length ).put( bytes );
+            return this;
+        }
+
+        public LogBuffer put( char[] chars ) throws IOException
+        {
+            ByteBuffer target = room( chars.length * 2 );
+            target.asCharBuffer().put( chars );
+            target.position( target.position() + chars.length * 2 );
+            return this;
+        }
+
+        public void force() throws IOException
+        {
+            flush();
+            channel.force( false );
+        }
+
+        public Force writeOut() throws IOException
+        {
+            flush();
+            return new Force()
+            {
+                public void force() throws IOException
+                {
+                    channel.force( false );
+                }
+            };
+        }
+
+        public long getFileChannelPosition() throws IOException
+        {
+            return channel.position() + buffer.position();
+        }
+
+        public FileChannel getFileChannel()
+        {
+            return channel;
+        }
+    }
+}
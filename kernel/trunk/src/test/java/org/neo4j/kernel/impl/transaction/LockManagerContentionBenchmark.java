@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.transaction;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares throughput of a {@link LockManager} with a single lock table
+ * (how it used to be) against the striped lock table when many threads take
+ * and release read locks on a shared set of resources, like read heavy 
+ * transactions do on nodes. Not run as part of the test suite, run it with:
+ * <pre>
+ * java LockManagerContentionBenchmark [threads] [locks per tx] [seconds]
+ * </pre>
+ */
+public class LockManagerContentionBenchmark
+{
+    private static final int RESOURCE_COUNT = 100000;
+
+    public static void main( String[] args ) throws Exception
+    {
+        int threads = args.length > 0 ? Integer.parseInt( args[0] ) : 
+            Runtime.getRuntime().availableProcessors() * 2;
+        int locksPerTx = args.length > 1 ? Integer.parseInt( args[1] ) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt( args[2] ) : 10;
+        Long[] resources = new Long[RESOURCE_COUNT];
+        for ( int i = 0; i < resources.length; i++ )
+        {
+            resources[i] = (long) i;
+        }
+        
+        // warm up both
+        run( new LockManager( new PlaceboTm(), 1 ), resources, threads, 
+            locksPerTx, 1 );
+        run( new LockManager( new PlaceboTm() ), resources, threads, 
+            locksPerTx, 1 );
+        
+        long single = run( new LockManager( new PlaceboTm(), 1 ), resources, 
+            threads, locksPerTx, seconds );
+        LockManager striped = new LockManager( new PlaceboTm() );
+        long stripes = run( striped, resources, threads, locksPerTx, seconds );
+        System.out.println( threads + " threads, " + locksPerTx + 
+            " read locks per tx, " + seconds + "s" );
+        System.out.println( "single lock table: " + single / seconds + 
+            " lock+release/s" );
+        System.out.println( striped.getStripeCount() + " stripes: " + 
+            stripes / seconds + " lock+release/s" );
+    }
+
+    private static long run( final LockManager lm, final Long[] resources, 
+        int threadCount, final int locksPerTx, int seconds ) 
+        throws InterruptedException
+    {
+        final long endTime = System.currentTimeMillis() + seconds * 1000l;
+        final CountDownLatch start = new CountDownLatch( 1 );
+        final long[] counts = new long[threadCount];
+        Thread[] threads = new Thread[threadCount];
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            final int threadIndex = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    int offset = threadIndex * 7919;
+                    try
+                    {
+                        start.await();
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        return;
+                    }
+                    long count = 0;
+                    while ( System.currentTimeMillis() < endTime )
+                    {
+                        for ( int i = 0; i < locksPerTx; i++ )
+                        {
+                            lm.getReadLock( resources[(offset + i) % 
+                                resources.length] );
+                        }
+                        for ( int i = 0; i < locksPerTx; i++ )
+                        {
+                            lm.releaseReadLock( resources[(offset + i) % 
+                                resources.length] );
+                        }
+                        offset += locksPerTx;
+                        count += locksPerTx;
+                    }
+                    counts[threadIndex] = count;
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        long total = 0;
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            threads[i].join();
+            total += counts[i];
+        }
+        return total;
+    }
+}
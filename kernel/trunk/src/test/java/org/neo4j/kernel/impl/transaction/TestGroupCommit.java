@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.transaction.xaframework.XaLogicalLog;
+
+public class TestGroupCommit
+{
+    private static final String PATH = AbstractNeo4jTestCase.getStorePath( "group-commit-db" );
+    private static final int THREADS = 8;
+    private static final int TX_PER_THREAD = 50;
+
+    @BeforeClass
+    public static void clear()
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( PATH ) );
+    }
+
+    @Test
+    public void testConcurrentCommittersShareForce() throws Exception
+    {
+        final EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( PATH, MapUtil.stringMap(
+                Config.LOGICAL_LOG_GROUP_COMMIT, "true",
+                Config.LOGICAL_LOG_GROUP_COMMIT_MAX_WAIT, "2" ) );
+        final List<Long> nodeIds = new ArrayList<Long>();
+        try
+        {
+            List<Thread> threads = new ArrayList<Thread>();
+            for ( int i = 0; i < THREADS; i++ )
+            {
+                threads.add( new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        for ( int i = 0; i < TX_PER_THREAD; i++ )
+                        {
+                            Transaction tx = db.beginTx();
+                            try
+                            {
+                                Node node = db.createNode();
+                                node.setProperty( "name", getName() + i );
+                                synchronized ( nodeIds )
+                                {
+                                    nodeIds.add( node.getId() );
+                                }
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                    }
+                } );
+            }
+            for ( Thread thread : threads )
+            {
+                thread.start();
+            }
+            for ( Thread thread : threads )
+            {
+                thread.join();
+            }
+            XaLogicalLog log = db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                    Config.DEFAULT_DATA_SOURCE_NAME ).getXaLogicalLog();
+            assertTrue( log.isGroupCommitEnabled() );
+            assertEquals( THREADS * TX_PER_THREAD, log.getForcedEntryCount() );
+            // committers waiting for the force of the leader append their
+            // entries meanwhile, so some forces must have covered several
+            assertTrue( "forces=" + log.getForceCount() + ", entries=" + 
+                log.getForcedEntryCount(), 
+                log.getForceCount() < log.getForcedEntryCount() );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        EmbeddedGraphDatabase restarted = new EmbeddedGraphDatabase( PATH );
+        try
+        {
+            assertEquals( THREADS * TX_PER_THREAD, nodeIds.size() );
+            for ( long id : nodeIds )
+            {
+                restarted.getNodeById( id );
+            }
+        }
+        finally
+        {
+            restarted.shutdown();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.xa.XAResource;
+import javax.transaction.xa.Xid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.transaction.XidImpl;
+
+public class TestGroupCommitApplyOrder
+{
+    private static final int THREADS = 8;
+    private static final int TX_PER_THREAD = 100;
+
+    private final List<Integer> logged = new ArrayList<Integer>();
+    private final List<Integer> applied = new ArrayList<Integer>();
+    private String path;
+    private XaContainer container;
+
+    @Before
+    public void openContainer() throws Exception
+    {
+        path = AbstractNeo4jTestCase.getStorePath( "group-commit-order" );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( path ) );
+        new File( path ).mkdirs();
+        Map<Object,Object> config = new HashMap<Object,Object>();
+        config.put( "store_dir", path );
+        config.put( Config.LOGICAL_LOG_GROUP_COMMIT, "true" );
+        config.put( Config.LOGICAL_LOG_GROUP_COMMIT_MAX_WAIT, "2" );
+        container = XaContainer.create( path + File.separator + "log", 
+            new RecordingCommandFactory(), new RecordingTransactionFactory(), 
+            config );
+        container.openLogicalLog();
+    }
+
+    @After
+    public void closeContainer()
+    {
+        container.close();
+    }
+
+    @Test
+    public void testCommitsAreAppliedInLogOrder() throws Exception
+    {
+        final XaResourceManager rm = container.getResourceManager();
+        final List<Exception> failures = new ArrayList<Exception>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < THREADS; i++ )
+        {
+            final int thread = i;
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        XAResource resource = new RecordingXaResource( rm );
+                        for ( int i = 0; i < TX_PER_THREAD; i++ )
+                        {
+                            Xid xid = new XidImpl( new byte[] { 
+                                (byte) thread, (byte) ( i >> 8 ), (byte) i }, 
+                                new byte[0] );
+                            resource.start( xid, XAResource.TMNOFLAGS );
+                            resource.end( xid, XAResource.TMSUCCESS );
+                            resource.commit( xid, true );
+                        }
+                    }
+                    catch ( Exception e )
+                    {
+                        synchronized ( failures )
+                        {
+                            failures.add( e );
+                        }
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertEquals( "[]", failures.toString() );
+        assertEquals( THREADS * TX_PER_THREAD, logged.size() );
+        // the commit entry is appended right after prepare, recovery would
+        // apply the transactions in that order
+        assertEquals( logged, applied );
+    }
+
+    private class RecordingTransaction extends XaTransaction
+    {
+        RecordingTransaction( int identifier, XaLogicalLog log )
+        {
+            super( identifier, log );
+        }
+
+        public boolean isReadOnly()
+        {
+            return false;
+        }
+
+        protected void doAddCommand( XaCommand command )
+        {
+        }
+
+        protected void doPrepare()
+        {
+            synchronized ( logged )
+            {
+                logged.add( getIdentifier() );
+            }
+        }
+
+        protected void doCommit()
+        {
+            // give committers woken by the same force a chance to overtake
+            Thread.yield();
+            synchronized ( applied )
+            {
+                applied.add( getIdentifier() );
+            }
+        }
+
+        protected void doRollback()
+        {
+        }
+    }
+
+    private class RecordingTransactionFactory extends XaTransactionFactory
+    {
+        public XaTransaction create( int identifier )
+        {
+            return new RecordingTransaction( identifier, getLogicalLog() );
+        }
+
+        public void flushAll()
+        {
+        }
+
+        public long getCurrentVersion()
+        {
+            return -1;
+        }
+
+        public long getAndSetNewVersion()
+        {
+            return -1;
+        }
+    }
+
+    private static class RecordingCommandFactory extends XaCommandFactory
+    {
+        public XaCommand readCommand( ReadableByteChannel byteChannel, 
+            ByteBuffer buffer ) throws IOException
+        {
+            return null;
+        }
+    }
+
+    private static class RecordingXaResource extends XaResourceHelpImpl
+    {
+        RecordingXaResource( XaResourceManager xaRm )
+        {
+            super( xaRm, null );
+        }
+
+        public boolean isSameRM( XAResource resource )
+        {
+            return resource == this;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestReadAheadChannel
+{
+    private static final int SIZE = 1000;
+
+    private File file;
+
+    @Before
+    public void writeFile() throws Exception
+    {
+        File dir = new File( AbstractNeo4jTestCase.getStorePath( 
+            "read-ahead" ) );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( dir );
+        dir.mkdirs();
+        file = new File( dir, "log" );
+        byte[] bytes = new byte[SIZE];
+        for ( int i = 0; i < SIZE; i++ )
+        {
+            bytes[i] = (byte) i;
+        }
+        FileOutputStream out = new FileOutputStream( file );
+        out.write( bytes );
+        out.close();
+    }
+
+    @After
+    public void deleteFile()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void testReadsFillBufferAcrossReadAheads() throws Exception
+    {
+        FileChannel fileChannel = new RandomAccessFile( file, "r" ).getChannel();
+        ReadAheadChannel channel = new ReadAheadChannel( fileChannel, 64 );
+        ByteBuffer buffer = ByteBuffer.allocate( 100 );
+        int expected = 0;
+        int size = 1;
+        while ( expected < SIZE )
+        {
+            buffer.clear();
+            buffer.limit( Math.min( size, SIZE - expected ) );
+            assertEquals( buffer.limit(), channel.read( buffer ) );
+            buffer.flip();
+            while ( buffer.hasRemaining() )
+            {
+                assertEquals( (byte) expected++, buffer.get() );
+            }
+            assertEquals( expected, channel.position() );
+            size = size % 93 + 7;
+        }
+        buffer.clear();
+        assertEquals( -1, channel.read( buffer ) );
+        assertEquals( SIZE, channel.position() );
+        channel.close();
+        assertFalse( fileChannel.isOpen() );
+    }
+
+    @Test
+    public void testPartialReadAtEndAndStartPosition() throws Exception
+    {
+        FileChannel fileChannel = new RandomAccessFile( file, "r" ).getChannel();
+        fileChannel.position( SIZE - 10 );
+        ReadAheadChannel channel = new ReadAheadChannel( fileChannel, 64 );
+        assertEquals( SIZE - 10, channel.position() );
+        ByteBuffer buffer = ByteBuffer.allocate( 16 );
+        assertEquals( 10, channel.read( buffer ) );
+        buffer.flip();
+        assertEquals( (byte) ( SIZE - 10 ), buffer.get() );
+        assertEquals( SIZE, channel.position() );
+        buffer.clear();
+        assertEquals( -1, channel.read( buffer ) );
+        channel.close();
+    }
+}
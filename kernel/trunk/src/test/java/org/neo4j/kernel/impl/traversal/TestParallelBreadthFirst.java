@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.traversal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.kernel.Traversal;
+import org.neo4j.kernel.Uniqueness;
+
+public class TestParallelBreadthFirst extends AbstractTestBase
+{
+    private static final RelationshipType LINK = 
+        DynamicRelationshipType.withName( "LINK" );
+    private static final int NODE_COUNT = 3000;
+
+    private static ExecutorService executor;
+    private static Node start;
+
+    @BeforeClass
+    public static void setupGraph()
+    {
+        executor = Executors.newFixedThreadPool( 4 );
+        GraphDatabaseService graphDb = referenceNode().getGraphDatabase();
+        Random random = new Random( 7 );
+        Transaction tx = beginTx();
+        try
+        {
+            Node[] nodes = new Node[NODE_COUNT];
+            for ( int i = 0; i < NODE_COUNT; i++ )
+            {
+                nodes[i] = graphDb.createNode();
+            }
+            for ( int i = 0; i < NODE_COUNT; i++ )
+            {
+                for ( int j = 0; j < 4; j++ )
+                {
+                    int other = ( i + 1 + random.nextInt( NODE_COUNT - 1 ) ) % 
+                        NODE_COUNT;
+                    nodes[i].createRelationshipTo( nodes[other], LINK );
+                }
+            }
+            start = nodes[0];
+            tx.success();
+        }
+        finally
+        {
+            tx.finish();
+        }
+    }
+
+    @AfterClass
+    public static void shutdownExecutor()
+    {
+        executor.shutdown();
+    }
+
+    private Map<Node,Integer> depths( TraversalDescription description )
+    {
+        Map<Node,Integer> depths = new HashMap<Node,Integer>();
+        int lastDepth = 0;
+        for ( Path path : description.traverse( start ) )
+        {
+            assertTrue( "returned out of depth order", 
+                path.length() >= lastDepth );
+            lastDepth = path.length();
+            assertEquals( "node returned twice", null, 
+                depths.put( path.endNode(), path.length() ) );
+        }
+        return depths;
+    }
+
+    @Test
+    public void testSameDepthsAsBreadthFirst()
+    {
+        TraversalDescription description = Traversal.description()
+            .relationships( LINK );
+        Map<Node,Integer> expected = depths( description.breadthFirst() );
+        Map<Node,Integer> parallel = depths( description.order( 
+            Traversal.parallelBreadthFirst( executor ) ) );
+        assertEquals( NODE_COUNT, parallel.size() );
+        assertEquals( expected, parallel );
+    }
+
+    @Test
+    public void testRelationshipGlobalUniqueness()
+    {
+        TraversalDescription description = Traversal.description()
+            .relationships( LINK ).uniqueness( 
+                Uniqueness.RELATIONSHIP_GLOBAL );
+        int expected = 0;
+        for ( Path path : description.breadthFirst().traverse( start ) )
+        {
+            expected++;
+        }
+        int count = 0;
+        for ( Path path : description.order( Traversal.parallelBreadthFirst( 
+            executor ) ).traverse( start ) )
+        {
+            count++;
+        }
+        // every relationship once, plus the start node
+        assertEquals( NODE_COUNT * 4 + 1, count );
+        assertEquals( expected, count );
+    }
+
+    @Test
+    public void testPruningStopsExpansion()
+    {
+        TraversalDescription description = Traversal.description()
+            .relationships( LINK ).prune( Traversal.pruneAfterDepth( 2 ) );
+        Map<Node,Integer> expected = depths( description.breadthFirst() );
+        Map<Node,Integer> parallel = depths( description.order( 
+            Traversal.parallelBreadthFirst( executor ) ) );
+        assertEquals( expected, parallel );
+        for ( int depth : parallel.values() )
+        {
+            assertTrue( depth <= 2 );
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestConcurrentLongHashMap
+{
+    @Test
+    public void testPutGetRemove()
+    {
+        ConcurrentLongHashMap<String> map = 
+            new ConcurrentLongHashMap<String>();
+        long big = Integer.MAX_VALUE + 10L;
+        assertNull( map.put( 1, "one" ) );
+        assertNull( map.put( big, "big" ) );
+        assertEquals( "one", map.put( 1, "uno" ) );
+        assertNull( map.put( -1, "minus" ) );
+        assertEquals( 3, map.size() );
+        assertEquals( "uno", map.get( 1 ) );
+        assertEquals( "big", map.get( big ) );
+        assertEquals( "minus", map.get( -1 ) );
+        assertNull( map.get( 2 ) );
+        assertEquals( "uno", map.remove( 1 ) );
+        assertNull( map.remove( 1 ) );
+        assertEquals( 2, map.size() );
+        map.clear();
+        assertTrue( map.isEmpty() );
+        assertNull( map.get( big ) );
+    }
+
+    @Test
+    public void testConditionalRemoveComparesIdentity()
+    {
+        ConcurrentLongHashMap<String> map = 
+            new ConcurrentLongHashMap<String>();
+        String value = "value";
+        map.put( 7, value );
+        assertFalse( map.remove( 7, new String( "value" ) ) );
+        assertTrue( map.containsKey( 7 ) );
+        assertTrue( map.remove( 7, value ) );
+        assertFalse( map.containsKey( 7 ) );
+    }
+
+    @Test
+    public void testRandomOperationsAgainstHashMap()
+    {
+        ConcurrentLongHashMap<Long> map = 
+            new ConcurrentLongHashMap<Long>( 0, 4 );
+        Map<Long,Long> expected = new HashMap<Long,Long>();
+        Random random = new Random( 42 );
+        for ( int i = 0; i < 50000; i++ )
+        {
+            long key = random.nextInt( 2000 ) * 0x100000001L;
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                assertEquals( expected.remove( key ), map.remove( key ) );
+            }
+            else
+            {
+                Long value = Long.valueOf( i );
+                assertEquals( expected.put( key, value ), 
+                    map.put( key, value ) );
+            }
+        }
+        assertEquals( expected.size(), map.size() );
+        for ( Map.Entry<Long,Long> entry : expected.entrySet() )
+        {
+            assertEquals( entry.getValue(), map.get( entry.getKey() ) );
+        }
+    }
+
+    @Test
+    public void testConcurrentReadersSeeEveryStableKey() throws Exception
+    {
+        final ConcurrentLongHashMap<Long> map = 
+            new ConcurrentLongHashMap<Long>( 0, 2 );
+        for ( long key = 0; key < 1000; key += 2 )
+        {
+            map.put( key, key );
+        }
+        final boolean[] failed = new boolean[1];
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                // adds and removes odd keys, growing and shrinking chains
+                for ( int round = 0; round < 20; round++ )
+                {
+                    for ( long key = 1; key < 5000; key += 2 )
+                    {
+                        map.put( key, key );
+                    }
+                    for ( long key = 1; key < 5000; key += 2 )
+                    {
+                        map.remove( key );
+                    }
+                }
+            }
+        };
+        writer.start();
+        while ( writer.isAlive() )
+        {
+            for ( long key = 0; key < 1000; key += 2 )
+            {
+                Long value = map.get( key );
+                if ( value == null || value.longValue() != key )
+                {
+                    failed[0] = true;
+                }
+            }
+        }
+        writer.join();
+        assertFalse( failed[0] );
+        assertEquals( 500, map.size() );
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestIntMap
+{
+    @Test
+    public void testPutGetRemoveInArrayMode()
+    {
+        IntMap<String> map = new IntMap<String>( 5 );
+        map.put( 1, "one" );
+        map.put( 2, "two" );
+        map.put( 1, "uno" );
+        assertFalse( map.isHashed() );
+        assertEquals( 2, map.size() );
+        assertEquals( "uno", map.get( 1 ) );
+        assertEquals( "two", map.get( 2 ) );
+        assertNull( map.get( 3 ) );
+        assertEquals( "uno", map.remove( 1 ) );
+        assertNull( map.remove( 1 ) );
+        assertEquals( 1, map.size() );
+        assertTrue( Arrays.equals( new int[] { 2 }, map.keys() ) );
+    }
+
+    @Test
+    public void testSwitchesToHashingAndBack()
+    {
+        IntMap<Integer> map = new IntMap<Integer>( 4 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            map.put( i * 31, i );
+        }
+        assertTrue( map.isHashed() );
+        assertEquals( 100, map.size() );
+        for ( int i = 0; i < 100; i++ )
+        {
+            assertEquals( Integer.valueOf( i ), map.get( i * 31 ) );
+        }
+        for ( int i = 0; i < 99; i++ )
+        {
+            assertEquals( Integer.valueOf( i ), map.remove( i * 31 ) );
+        }
+        assertFalse( map.isHashed() );
+        assertEquals( 1, map.size() );
+        assertEquals( Integer.valueOf( 99 ), map.get( 99 * 31 ) );
+    }
+
+    @Test
+    public void testRandomOperationsAgainstHashMap()
+    {
+        Random random = new Random( 1234 );
+        IntMap<Integer> map = new IntMap<Integer>( 9 );
+        Map<Integer,Integer> expected = new HashMap<Integer,Integer>();
+        for ( int i = 0; i < 20000; i++ )
+        {
+            int key = random.nextInt( 300 ) - 50;
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                assertEquals( expected.remove( key ), map.remove( key ) );
+            }
+            else
+            {
+                expected.put( key, i );
+                map.put( key, i );
+            }
+            assertEquals( expected.size(), map.size() );
+        }
+        for ( int key = -50; key < 250; key++ )
+        {
+            assertEquals( expected.get( key ), map.get( key ) );
+        }
+        int[] keys = map.keys();
+        Arrays.sort( keys );
+        int[] expectedKeys = new int[expected.size()];
+        int index = 0;
+        for ( Integer key : expected.keySet() )
+        {
+            expectedKeys[index++] = key;
+        }
+        Arrays.sort( expectedKeys );
+        assertTrue( Arrays.equals( expectedKeys, keys ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testNullValueNotAllowed()
+    {
+        new IntMap<Object>().put( 1, null );
+    }
+}
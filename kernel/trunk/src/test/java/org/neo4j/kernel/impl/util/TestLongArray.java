@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestLongArray
+{
+    private static final long BIG = Integer.MAX_VALUE + 10l;
+
+    private LongArray array( long... values )
+    {
+        LongArray array = new LongArray();
+        for ( long value : values )
+        {
+            array.add( value );
+        }
+        return array;
+    }
+
+    private long[] sorted( LongArray array )
+    {
+        long result[] = new long[array.length()];
+        System.arraycopy( array.getArray(), 0, result, 0, array.length() );
+        Arrays.sort( result );
+        return result;
+    }
+
+    @Test
+    public void testAddAndGet()
+    {
+        LongArray array = array( 1, BIG, BIG * 2 );
+        array.addAll( array( 3, 4, 5 ) );
+        assertEquals( 6, array.length() );
+        assertEquals( BIG, array.get( 1 ) );
+        assertEquals( BIG * 2, array.get( 2 ) );
+        assertEquals( 5, array.get( 5 ) );
+    }
+
+    @Test
+    public void testComposeNew()
+    {
+        LongArray src = array( 1, 2, BIG, BIG + 1 );
+        assertSame( src, LongArray.composeNew( src, null, null ) );
+        assertNull( LongArray.composeNew( null, null, array( 1 ) ) );
+
+        LongArray added = LongArray.composeNew( src, array( 7 ), null );
+        assertEquals( 5, added.length() );
+
+        LongArray composed = LongArray.composeNew( src, array( 7, BIG + 2 ), 
+            array( 2, BIG + 1, BIG + 2 ) );
+        assertEquals( Arrays.toString( new long[] { 1, 7, BIG } ), 
+            Arrays.toString( sorted( composed ) ) );
+
+        LongArray allRemoved = LongArray.composeNew( src, null, src );
+        assertEquals( 0, allRemoved.length() );
+    }
+}
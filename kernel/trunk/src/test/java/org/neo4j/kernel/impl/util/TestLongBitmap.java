@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestLongBitmap
+{
+    @Test
+    public void testSetAndGetAcrossPages()
+    {
+        LongBitmap bitmap = new LongBitmap();
+        long[] ids = { 0, 63, 64, 65535, 65536, 1L << 34, 7 };
+        for ( long id : ids )
+        {
+            assertFalse( bitmap.get( id ) );
+            assertTrue( bitmap.set( id ) );
+            assertFalse( bitmap.set( id ) );
+            assertTrue( bitmap.get( id ) );
+        }
+        assertEquals( ids.length, bitmap.size() );
+        assertFalse( bitmap.get( 1 ) );
+        assertFalse( bitmap.get( 65537 ) );
+        assertFalse( bitmap.get( ( 1L << 34 ) + 1 ) );
+        assertFalse( bitmap.get( 1L << 40 ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testNegativeIdsAreIllegal()
+    {
+        new LongBitmap().set( -1 );
+    }
+
+    @Test
+    public void testEstimateSizeCountsPages()
+    {
+        assertEquals( LongBitmap.PAGE_BYTES + 8, 
+            LongBitmap.estimateSize( new long[] { 1, 2, 3 } ) );
+        assertEquals( 2 * LongBitmap.PAGE_BYTES + 2 * 8, 
+            LongBitmap.estimateSize( new long[] { 1, 65536 } ) );
+    }
+}
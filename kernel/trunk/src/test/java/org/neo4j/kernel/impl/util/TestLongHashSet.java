@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestLongHashSet
+{
+    @Test
+    public void testAddContainsRemove()
+    {
+        LongHashSet set = new LongHashSet();
+        assertTrue( set.add( 5 ) );
+        assertFalse( set.add( 5 ) );
+        assertTrue( set.add( Long.MIN_VALUE ) );
+        assertTrue( set.add( -1 ) );
+        assertEquals( 3, set.size() );
+        assertTrue( set.contains( 5 ) );
+        assertTrue( set.contains( Long.MIN_VALUE ) );
+        assertFalse( set.contains( 6 ) );
+        long[] values = set.values();
+        Arrays.sort( values );
+        assertTrue( Arrays.equals( new long[] { Long.MIN_VALUE, -1, 5 }, 
+            values ) );
+        assertTrue( set.remove( Long.MIN_VALUE ) );
+        assertFalse( set.remove( Long.MIN_VALUE ) );
+        assertTrue( set.remove( 5 ) );
+        assertFalse( set.contains( 5 ) );
+        assertEquals( 1, set.size() );
+        set.clear();
+        assertEquals( 0, set.size() );
+        assertFalse( set.contains( -1 ) );
+    }
+
+    @Test
+    public void testAgainstHashSet()
+    {
+        LongHashSet set = new LongHashSet( 4 );
+        Set<Long> expected = new HashSet<Long>();
+        Random random = new Random( 42 );
+        for ( int i = 0; i < 100000; i++ )
+        {
+            long value = random.nextInt( 5000 );
+            if ( random.nextInt( 3 ) == 0 )
+            {
+                assertEquals( expected.remove( value ), set.remove( value ) );
+            }
+            else
+            {
+                assertEquals( expected.add( value ), set.add( value ) );
+            }
+        }
+        assertEquals( expected.size(), set.size() );
+        for ( long value = 0; value < 5000; value++ )
+        {
+            assertEquals( expected.contains( value ), set.contains( value ) );
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2002-2010 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestLongLruSet
+{
+    @Test
+    public void testForgetsLeastRecentlyUsed()
+    {
+        LongLruSet set = new LongLruSet( 3 );
+        assertTrue( set.add( 1 ) );
+        assertTrue( set.add( 2 ) );
+        assertTrue( set.add( 3 ) );
+        assertFalse( set.add( 2 ) );
+        // 1 is the least recently used, touching it makes 3 the one
+        assertTrue( set.touch( 1 ) );
+        assertTrue( set.add( 4 ) );
+        assertEquals( 3, set.size() );
+        assertTrue( set.contains( 1 ) );
+        assertTrue( set.contains( 2 ) );
+        assertFalse( set.contains( 3 ) );
+        assertTrue( set.contains( 4 ) );
+        // contains doesn't change the order, 2 goes next
+        assertTrue( set.add( 5 ) );
+        assertFalse( set.contains( 2 ) );
+        assertFalse( set.touch( 2 ) );
+    }
+
+    @Test
+    public void testSingleValue()
+    {
+        LongLruSet set = new LongLruSet( 1 );
+        assertTrue( set.add( Long.MIN_VALUE ) );
+        assertTrue( set.touch( Long.MIN_VALUE ) );
+        assertTrue( set.add( 0 ) );
+        assertFalse( set.contains( Long.MIN_VALUE ) );
+        assertEquals( 1, set.size() );
+    }
+
+    @Test
+    public void testRandomOperationsAgainstLinkedHashMap()
+    {
+        final int capacity = 100;
+        LongLruSet set = new LongLruSet( capacity );
+        Map<Long,Object> expected = new LinkedHashMap<Long,Object>( 16, 
+            0.75f, true )
+        {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Long,Object> e )
+            {
+                return size() > capacity;
+            }
+        };
+        Random random = new Random( 7 );
+        for ( int i = 0; i < 100000; i++ )
+        {
+            long value = random.nextInt( 300 ) * 0x100000001L;
+            if ( random.nextBoolean() )
+            {
+                assertEquals( expected.get( value ) != null, 
+                    set.touch( value ) );
+            }
+            else
+            {
+                assertEquals( expected.put( value, this ) == null, 
+                    set.add( value ) );
+            }
+        }
+        assertEquals( expected.size(), set.size() );
+        for ( int i = 0; i < 300; i++ )
+        {
+            long value = i * 0x100000001L;
+            assertEquals( expected.containsKey( value ), 
+                set.contains( value ) );
+        }
+    }
+}